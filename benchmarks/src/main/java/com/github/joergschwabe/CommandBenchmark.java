@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Substituting the parameters of a submitted job into the command of the
+ * server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 3, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class CommandBenchmark {
+
+	/**
+	 * The command of the docker image.
+	 */
+	private final String[] command_ = { "./scripts/run_ELK-SAT_experiments.sh",
+			"<t>", "<g>", "<s>", "<o>", "docker", "scripts", "<w>", "<q>" };
+
+	@Benchmark
+	public String[] substituteCommand() {
+		return ExperimentServer.substituteCommand(command_, 60000, 3600000,
+				"http://example.org/ontologies.zip", "go-plus.owl snomed.owl",
+				"--seed 1", "/workspace/jobs/1");
+	}
+
+}
@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Appending the output of an experiment to an {@link ExperimentLog} and
+ * reading it back as the log page does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 3, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ExperimentLogBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int lines;
+	/**
+	 * How many times the progress bar is updated per line.
+	 */
+	@Param({ "0", "20" })
+	public int updates;
+
+	private static final int PAGE_ = 1000;
+
+	private File dir_;
+	private List<String> output_;
+	/**
+	 * A log into which all output was appended.
+	 */
+	private ExperimentLog log_;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dir_ = Files.createTempDirectory("log").toFile();
+		output_ = SyntheticOutput.generate(lines, updates);
+		log_ = new ExperimentLog(new File(dir_, "full.log"));
+		for (final String chunk : output_) {
+			log_.append(chunk);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		log_.close();
+		SyntheticRecords.delete(dir_);
+	}
+
+	/**
+	 * All output of an experiment as it is read from the process.
+	 */
+	@Benchmark
+	public ExperimentLog append() {
+		final ExperimentLog log = new ExperimentLog(
+				new File(dir_, "append.log"));
+		for (final String chunk : output_) {
+			log.append(chunk);
+		}
+		log.close();
+		return log;
+	}
+
+	/**
+	 * What the log page shows when it is opened.
+	 */
+	@Benchmark
+	public String tail() throws IOException {
+		return log_.getTail(PAGE_);
+	}
+
+	/**
+	 * The first lines, which are read from the file for long logs.
+	 */
+	@Benchmark
+	public List<String> firstLines() throws IOException {
+		return log_.getLines(0, PAGE_);
+	}
+
+	@Benchmark
+	public List<String> lastLines() throws IOException {
+		return log_.getLines(log_.getLineCount() - PAGE_, PAGE_);
+	}
+
+}
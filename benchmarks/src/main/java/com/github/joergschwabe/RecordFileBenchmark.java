@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Indexing a result file and reading pages of its rows as the result file
+ * page does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 3, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class RecordFileBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int queries;
+
+	private static final int PAGE_ = 1000;
+
+	private File dir_;
+	private File file_;
+	private RecordFile record_;
+	private int timeColumn_;
+	private int timedOutColumn_;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dir_ = Files.createTempDirectory("results").toFile();
+		file_ = new SyntheticRecords(1, 1, 1, queries, 1).write(dir_, false)
+				.get(0);
+		record_ = RecordFile.index(file_);
+		timeColumn_ = record_.getColumnIndex("time");
+		timedOutColumn_ = record_.getColumnIndex("didTimeOut");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SyntheticRecords.delete(dir_);
+	}
+
+	@Benchmark
+	public RecordFile index() throws IOException {
+		return RecordFile.index(file_);
+	}
+
+	@Benchmark
+	public List<String[]> firstPage() throws IOException {
+		final int[] rows = record_.select(-1, false, -1, true);
+		return record_.readRows(rows, 0, PAGE_);
+	}
+
+	/**
+	 * A page in the middle of the rows sorted by time, once the order is
+	 * cached.
+	 */
+	@Benchmark
+	public List<String[]> sortedPage() throws IOException {
+		final int[] rows = record_.select(timeColumn_, true, -1, true);
+		return record_.readRows(rows, rows.length / 2, rows.length / 2 + PAGE_);
+	}
+
+	@Benchmark
+	public List<String[]> filteredPage() throws IOException {
+		final int[] rows = record_.select(timeColumn_, false, timedOutColumn_,
+				false);
+		return record_.readRows(rows, 0, PAGE_);
+	}
+
+}
@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long it takes to read all results of a job into a {@link ResultsIndex},
+ * which happens on the first request of the results page after a restart and
+ * whenever an experiment writes a new result file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 3, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ResultsIndexBenchmark {
+
+	@Param({ "4", "16" })
+	public int tools;
+	@Param({ "0", "1" })
+	public int timesTools;
+	@Param({ "2" })
+	public int ontologies;
+	@Param({ "1000", "100000" })
+	public int queries;
+	/**
+	 * Whether the results are read from {@link ColumnarRecord}s.
+	 */
+	@Param({ "false", "true" })
+	public boolean columnar;
+
+	private File dir_;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dir_ = Files.createTempDirectory("results").toFile();
+		new SyntheticRecords(tools, timesTools, ontologies, queries, 1)
+				.write(dir_, columnar);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SyntheticRecords.delete(dir_);
+	}
+
+	@Benchmark
+	public String index() {
+		final ResultsIndex index = new ResultsIndex(dir_);
+		// watching would only add the cost of the watch service
+		index.stopWatching();
+		index.update();
+		return index.appendJson(new StringBuilder());
+	}
+
+}
@@ -0,0 +1,165 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The JSON that the results page requests from the server, computed from a
+ * {@link ResultsIndex} that is up to date.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 3, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ResultsPlotBenchmark {
+
+	@Param({ "4", "16" })
+	public int tools;
+	@Param({ "0", "1" })
+	public int timesTools;
+	@Param({ "1000", "100000" })
+	public int queries;
+
+	private static final int POINTS_ = 1000;
+
+	private File dir_;
+	private ResultsIndex index_;
+	private ResultsPlot plot_;
+	private BitSet all_;
+	/**
+	 * All lines but the first or the second one, so that the minimum is
+	 * computed again.
+	 */
+	private final BitSet[] subsets_ = new BitSet[2];
+	private int subset_ = 0;
+	private String line_;
+	private String query_;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dir_ = Files.createTempDirectory("results").toFile();
+		new SyntheticRecords(tools, timesTools, 1, queries, 1).write(dir_,
+				false);
+		index_ = new ResultsIndex(dir_);
+		index_.stopWatching();
+		index_.update();
+		plot_ = index_.getPlot(SyntheticRecords.getOntologyName(0));
+		all_ = new BitSet();
+		all_.set(0, plot_.getLineCount());
+		for (int k = 0; k < subsets_.length; k++) {
+			subsets_[k] = (BitSet) all_.clone();
+			subsets_[k].clear(k);
+		}
+		line_ = SyntheticRecords.getToolName(0, timesTools >= tools);
+		query_ = SyntheticRecords.getQuery(queries / 2);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SyntheticRecords.delete(dir_);
+	}
+
+	/**
+	 * What the results page requests first.
+	 */
+	@Benchmark
+	public StringBuilder summary() {
+		final StringBuilder json = new StringBuilder();
+		index_.update();
+		index_.appendJson(json);
+		return json;
+	}
+
+	@Benchmark
+	public StringBuilder pointsLttb() {
+		final StringBuilder json = new StringBuilder();
+		plot_.appendPoints(json, 0, 100, POINTS_, ResultsPlot.Sampling.LTTB,
+				all_);
+		return json;
+	}
+
+	@Benchmark
+	public StringBuilder pointsQuantiles() {
+		final StringBuilder json = new StringBuilder();
+		plot_.appendPoints(json, 0, 100, POINTS_,
+				ResultsPlot.Sampling.QUANTILES, all_);
+		return json;
+	}
+
+	@Benchmark
+	public StringBuilder pointsZoomed() {
+		final StringBuilder json = new StringBuilder();
+		plot_.appendPoints(json, 40, 60, POINTS_, ResultsPlot.Sampling.LTTB,
+				all_);
+		return json;
+	}
+
+	/**
+	 * The points after a line was hidden, for which the minimum of the other
+	 * lines is computed. The hidden line alternates, because the last minimum
+	 * is cached.
+	 */
+	@Benchmark
+	public StringBuilder pointsSubset() {
+		final StringBuilder json = new StringBuilder();
+		subset_ = 1 - subset_;
+		plot_.appendPoints(json, 0, 100, POINTS_, ResultsPlot.Sampling.LTTB,
+				subsets_[subset_]);
+		return json;
+	}
+
+	@Benchmark
+	public StringBuilder line() {
+		final StringBuilder json = new StringBuilder();
+		plot_.appendLine(json, line_);
+		return json;
+	}
+
+	@Benchmark
+	public StringBuilder query() {
+		final StringBuilder json = new StringBuilder();
+		plot_.appendQuery(json, query_, all_);
+		return json;
+	}
+
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates output like that of an experiment, which prints a line per query
+ * and updates a progress bar by carriage returns in between. The output is
+ * split into chunks of the size in which {@link ExperimentJob} reads it from
+ * the process, so a chunk may end in the middle of a line or of an update.
+ */
+public class SyntheticOutput {
+
+	/**
+	 * The size of the buffer with which the output of the process is read.
+	 */
+	public static final int CHUNK_SIZE = 8192;
+
+	private static final int BAR_WIDTH_ = 40;
+
+	/**
+	 * @param lines
+	 *            how many lines are printed
+	 * @param updates
+	 *            how many times the progress bar is updated before each line
+	 * @return the output split into chunks
+	 */
+	public static List<String> generate(final int lines, final int updates) {
+		final StringBuilder output = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			for (int u = 0; u < updates; u++) {
+				appendProgress(output, i * updates + u, lines * updates);
+				output.append('\r');
+			}
+			output.append("query ").append(i).append(" of ").append(lines)
+					.append(": ").append(SyntheticRecords.getQuery(i))
+					.append(" done\n");
+		}
+		final List<String> chunks = new ArrayList<>();
+		for (int start = 0; start < output.length(); start += CHUNK_SIZE) {
+			chunks.add(output.substring(start,
+					Math.min(output.length(), start + CHUNK_SIZE)));
+		}
+		return chunks;
+	}
+
+	private static void appendProgress(final StringBuilder output,
+			final int done, final int total) {
+		final int filled = (int) ((long) BAR_WIDTH_ * done / total);
+		output.append('[');
+		for (int i = 0; i < BAR_WIDTH_; i++) {
+			output.append(i < filled ? '=' : ' ');
+		}
+		output.append("] ").append(100L * done / total).append('%');
+	}
+
+}
@@ -0,0 +1,236 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates result files that look like the records written by the
+ * experiments, so that the server can be benchmarked on results of any size.
+ * Each tool gets one file per ontology named like the files copied by
+ * {@link ExperimentMatrix}. Some of the tools may be {@code _Times} variants,
+ * whose records contain the times of the components of the computation.
+ * <p>
+ * The times are log-normally distributed around a different median for each
+ * tool and queries that take longer than the timeout are marked as timed out,
+ * so the files resemble real results in how they sort and plot.
+ */
+public class SyntheticRecords {
+
+	public static final String DATE = "18-01-01";
+	public static final String MACHINE = "bench";
+	public static final String INFERENCES = "el";
+	public static final String TIMES_SUFFIX = "_Times";
+
+	/**
+	 * Milliseconds after which a query times out.
+	 */
+	private static final double TIMEOUT_ = 60000;
+
+	private final int tools_;
+	private final int timesTools_;
+	private final int ontologies_;
+	private final int queries_;
+	private final long seed_;
+
+	/**
+	 * @param tools
+	 *            how many tools were run
+	 * @param timesTools
+	 *            how many of the tools are {@code _Times} variants
+	 * @param ontologies
+	 *            on how many ontologies each tool was run
+	 * @param queries
+	 *            how many queries there are on each ontology
+	 * @param seed
+	 *            the seed of the random times
+	 */
+	public SyntheticRecords(final int tools, final int timesTools,
+			final int ontologies, final int queries, final long seed) {
+		this.tools_ = tools;
+		this.timesTools_ = Math.min(timesTools, tools);
+		this.ontologies_ = ontologies;
+		this.queries_ = queries;
+		this.seed_ = seed;
+	}
+
+	public static String getToolName(final int tool, final boolean times) {
+		return "tool" + tool + (times ? TIMES_SUFFIX : "");
+	}
+
+	public static String getOntologyName(final int ontology) {
+		return "ontology" + ontology;
+	}
+
+	public static String getQuery(final int query) {
+		// a subsumption between two classes, like the generated queries
+		return "<http://example.org/C" + query
+				+ "> SubClassOf <http://example.org/C" + (query / 7) + ">";
+	}
+
+	public static String getRecordName(final String ontology,
+			final String tool) {
+		return DATE + "." + ontology + "." + tool + "." + MACHINE + "."
+				+ INFERENCES;
+	}
+
+	public static String getFileName(final String ontology,
+			final String tool) {
+		return getRecordName(ontology, tool) + ".csv";
+	}
+
+	/**
+	 * Writes all result files into the directory.
+	 *
+	 * @param dir
+	 * @param columnar
+	 *            whether a {@link ColumnarRecord} is written next to each file
+	 *            as {@link ExperimentMatrix} does
+	 * @return the written result files
+	 * @throws IOException
+	 */
+	public List<File> write(final File dir, final boolean columnar)
+			throws IOException {
+		Utils.cleanIfNotDir(dir);
+		final File columnsDir = new File(dir, ColumnarRecord.DIRECTORY);
+		if (columnar) {
+			Utils.cleanIfNotDir(columnsDir);
+		}
+		final Map<String, QueryDictionary> dictionaries = new HashMap<>();
+		final List<File> result = new ArrayList<>();
+		for (int o = 0; o < ontologies_; o++) {
+			final String ontology = getOntologyName(o);
+			for (int t = 0; t < tools_; t++) {
+				final String tool = getToolName(t, t >= tools_ - timesTools_);
+				final File file = new File(dir, getFileName(ontology, tool));
+				writeRecord(file, tool.endsWith(TIMES_SUFFIX),
+						new Random(seed_ + 31 * o + t), 1 + t % 5);
+				if (columnar) {
+					QueryDictionary dictionary = dictionaries.get(ontology);
+					if (dictionary == null) {
+						dictionary = new QueryDictionary(new File(columnsDir,
+								ontology + QueryDictionary.SUFFIX));
+						dictionaries.put(ontology, dictionary);
+					}
+					ColumnarRecord.convert(file,
+							new File(columnsDir, getRecordName(ontology, tool)
+									+ ColumnarRecord.SUFFIX),
+							dictionary);
+				}
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the record of one tool on one ontology in the order in which
+	 * the queries were run.
+	 *
+	 * @param file
+	 * @param times
+	 *            whether the times of the components are written
+	 * @param random
+	 * @param speed
+	 *            how many times slower the tool is than the fastest one
+	 * @throws IOException
+	 */
+	public void writeRecord(final File file, final boolean times,
+			final Random random, final int speed) throws IOException {
+		final BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		try {
+			out.write("query,didTimeOut,time,nJust");
+			if (times) {
+				out.write(",timeSatSolver,timeJustComp,timeCycleComp");
+			}
+			out.write("\n");
+			for (int q = 0; q < queries_; q++) {
+				final double time = Math
+						.exp(random.nextGaussian() * 2 + Math.log(50 * speed));
+				final boolean timedOut = time > TIMEOUT_;
+				final double total = timedOut ? TIMEOUT_ : time;
+				out.write(getQuery(q));
+				out.write(timedOut ? ",TRUE," : ",FALSE,");
+				out.write(String.format(Locale.ROOT, "%.3f", total));
+				out.write("," + (1 + random.nextInt(20)));
+				if (times) {
+					final double sat = total * random.nextDouble();
+					final double just = (total - sat) * random.nextDouble();
+					out.write(String.format(Locale.ROOT, ",%.3f,%.3f,%.3f", sat, just,
+							total - sat - just));
+				}
+				out.write("\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Deletes a directory written by the benchmarks.
+	 *
+	 * @param file
+	 */
+	public static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Writes result files for trying the server or the benchmarks by hand.
+	 *
+	 * @param args
+	 *            the directory, the numbers of tools, of {@code _Times}
+	 *            variants, of ontologies and of queries, and optionally
+	 *            {@code columnar}
+	 * @throws IOException
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 5) {
+			System.err.println("Usage: " + SyntheticRecords.class.getName()
+					+ " DIR TOOLS TIMES_TOOLS ONTOLOGIES QUERIES [columnar]");
+			System.exit(2);
+		}
+		// else
+		final List<File> files = new SyntheticRecords(
+				Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+				Integer.parseInt(args[3]), Integer.parseInt(args[4]), 1)
+						.write(new File(args[0]), args.length > 5
+								&& "columnar".equals(args[5]));
+		System.out.println("wrote " + files.size() + " result files");
+	}
+
+}
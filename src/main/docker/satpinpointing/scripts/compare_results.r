@@ -1,5 +1,8 @@
 #!/usr/bin/env Rscript
 
+scriptFile <- sub("^--file=", "", grep("^--file=", commandArgs(FALSE), value=TRUE))
+source(file.path(dirname(scriptFile), "read_record.r"))
+
 
 mergeBy <- "query"
 selectedColumns <- c("didTimeOut","time","nJust")
@@ -15,8 +18,8 @@ if(length(args) < requiredArgCount) {
 }
 
 
-X <- read.csv(args[1])
-Y <- read.csv(args[2])
+X <- readRecord(args[1])
+Y <- readRecord(args[2])
 
 cat("\n")
 cat("X:", args[1], "\n")
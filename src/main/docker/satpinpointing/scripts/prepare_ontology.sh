@@ -0,0 +1,97 @@
+#!/bin/bash
+
+# Generates the queries for one ontology and encodes its ELK inferences to SAT,
+# or takes both from the cache. Started by com.github.joergschwabe.Preprocessing
+# with JAVA_MEMORY_OPTIONS sized for the ontology.
+
+ONTOLOGY=$1
+shift
+WORKSPACE_DIR=$1
+shift
+QUERY_GENERATION_OPTIONS=$1
+shift
+
+QUERIES_DIR=$WORKSPACE_DIR/queries
+INFS_DIR=$WORKSPACE_DIR/inferences
+
+TIME_LOG_FORMAT='+%y-%m-%d %H:%M:%S'
+
+# Queries and encodings are cached by the ontology, the query generation
+# options and the jars of the tools; change the version when this script
+# changes what is generated
+ENCODING_CACHE_VERSION=1
+if [ -z "$ENCODING_CACHE" ]
+then
+	ENCODING_CACHE=$WORKSPACE_DIR/encodings
+fi
+mkdir -p $ENCODING_CACHE
+
+# Prints the jars on the class path
+tool_jars() {
+	local IFS=:
+	local ENTRY
+	# a wildcard of the class path expands to the files of its directory
+	for ENTRY in $CLASSPATH
+	do
+		if [ -f "$ENTRY" ]
+		then
+			echo "$ENTRY"
+		fi
+	done
+}
+
+# Copies the source to the target, sharing the data of the files if the file
+# system supports it; hard links would let a job that changes its files, e.g.,
+# by appending, change the cache and the files of other jobs as well, even if
+# they were read-only, because the jobs run as root
+copy() {
+	rm -rf "$2"
+	cp -r --reflink=auto "$1" "$2"
+}
+
+NAME=`basename -s ".owl" $ONTOLOGY`
+ONTOLOGY_HASH=`sha256sum < $ONTOLOGY | cut -d ' ' -f 1`
+TOOLS_HASH=`tool_jars | xargs -r sha256sum | cut -d ' ' -f 1 | sha256sum | cut -d ' ' -f 1`
+CACHE_KEY=`echo "$ENCODING_CACHE_VERSION $ONTOLOGY_HASH $TOOLS_HASH $QUERY_GENERATION_OPTIONS" | sha256sum | cut -d ' ' -f 1`
+CACHED=$ENCODING_CACHE/$CACHE_KEY
+
+if [ -d $CACHED ]
+then
+	echo `date "$TIME_LOG_FORMAT"` "using the cached queries and elk inferences for $NAME"
+	for QUERIES in sorted seed1 bottom_up
+	do
+		copy $CACHED/queries.$QUERIES $QUERIES_DIR/$NAME.queries.$QUERIES || exit $?
+	done
+	copy $CACHED/elk $INFS_DIR/elk/$NAME || exit $?
+	exit 0
+fi
+
+# Generate queries and encode ELK inferences to SAT, in one JVM
+
+PROPS='-Delk.reasoner.tracing.evictor=RecencyEvictor(1000000,0.75)'
+java $JAVA_MEMORY_OPTIONS $PROPS -Dlog4j.configurationFile=log4j2-paramfiles.xml -Dlog.file.out=$INFS_DIR/elk/$NAME.out.log -Dlog.file.err=$INFS_DIR/elk/$NAME.err.log -cp "$CLASSPATH" com.github.joergschwabe.PrepareOntology --threads ${ENCODING_THREADS:-1} $ONTOLOGY $QUERIES_DIR/$NAME.queries $INFS_DIR/elk/$NAME -- $QUERY_GENERATION_OPTIONS || exit $?
+
+if [ -d $CACHED ]
+then
+	exit 0
+fi
+
+# store the queries and the encoding under a temporary name, so that other
+# jobs see them only when they are complete
+CACHING=`mktemp -d $ENCODING_CACHE/.tmp.XXXXXX` || exit 0
+COMPLETE=true
+for QUERIES in sorted seed1 bottom_up
+do
+	copy $QUERIES_DIR/$NAME.queries.$QUERIES $CACHING/queries.$QUERIES || COMPLETE=false
+done
+copy $INFS_DIR/elk/$NAME $CACHING/elk || COMPLETE=false
+if ! $COMPLETE
+then
+	# the results of this job are complete anyway
+	echo `date "$TIME_LOG_FORMAT"` "cannot cache the queries and elk inferences for $NAME"
+	rm -rf $CACHING
+elif ! mv -T $CACHING $CACHED 2> /dev/null
+then
+	# another job cached the ontology in the meantime
+	rm -rf $CACHING
+fi
@@ -0,0 +1,63 @@
+# Reads records either from their columnar files written by ExperimentMatrix
+# or, if there is none, from the CSV file.
+#
+# A CSV file "results/<name>.csv" has its columnar file in
+# "results/columns/<name>.col", which may also be passed directly.
+
+readColumnarString <- function(con) {
+	length <- readBin(con, "integer", size=4, endian="big")
+	rawToChar(readBin(con, "raw", length))
+}
+
+readColumnar <- function(path) {
+	con <- file(path, "rb")
+	on.exit(close(con))
+	if(rawToChar(readBin(con, "raw", 4)) != "SPRC") {
+		stop("Not a columnar record: ", path)
+	}
+	version <- readBin(con, "integer", size=4, endian="big")
+	if(version != 1) {
+		stop("Unsupported version ", version, " of ", path)
+	}
+	nRows <- readBin(con, "integer", size=4, endian="big")
+	nColumns <- readBin(con, "integer", size=4, endian="big")
+	dictionary <- file.path(dirname(path), readColumnarString(con))
+	names <- character(nColumns)
+	types <- integer(nColumns)
+	for(c in seq_len(nColumns)) {
+		names[c] <- readColumnarString(con)
+		types[c] <- readBin(con, "integer", size=1, endian="big")
+	}
+	queries <- NULL
+	X <- list()
+	for(c in seq_len(nColumns)) {
+		if(types[c] == 0) {
+			if(is.null(queries)) {
+				# the queries are stored as they appear in the CSV files
+				queries <- readLines(dictionary, encoding="UTF-8")
+				quoted <- grepl('^".*"$', queries)
+				queries[quoted] <- gsub('""', '"',
+						substr(queries[quoted], 2, nchar(queries[quoted]) - 1))
+			}
+			ids <- readBin(con, "integer", nRows, size=4, endian="big")
+			X[[names[c]]] <- queries[ids + 1]
+		} else if(types[c] == 2) {
+			X[[names[c]]] <- readBin(con, "integer", nRows, size=1, endian="big") == 1
+		} else {
+			X[[names[c]]] <- readBin(con, "double", nRows, size=8, endian="big")
+		}
+	}
+	as.data.frame(X, stringsAsFactors=FALSE, optional=TRUE)
+}
+
+readRecord <- function(path) {
+	if(grepl("\\.col$", path)) {
+		return(readColumnar(path))
+	}
+	columnar <- file.path(dirname(path), "columns",
+			sub("\\.csv$", ".col", basename(path)))
+	if(file.exists(columnar)) {
+		return(readColumnar(columnar))
+	}
+	read.csv(path)
+}
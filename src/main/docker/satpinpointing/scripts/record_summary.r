@@ -1,5 +1,8 @@
 #!/usr/bin/env Rscript
 
+scriptFile <- sub("^--file=", "", grep("^--file=", commandArgs(FALSE), value=TRUE))
+source(file.path(dirname(scriptFile), "read_record.r"))
+
 queryCol = "query"
 timeoutCol = "didTimeOut"
 
@@ -10,7 +13,7 @@ if(length(args) < requiredArgCount) {
 	q(status=1)
 }
 
-X <- read.csv(args[1])
+X <- readRecord(args[1])
 
 nRecords = length(X[[queryCol]])
 nTimeouts = sum(X[[timeoutCol]])
@@ -24,9 +24,7 @@ INFS_DIR=$WORKSPACE_DIR/inferences
 EXPERIMENT_DIR=$WORKSPACE_DIR/experiments
 LOGS_DIR=$WORKSPACE_DIR/logs
 RESULTS_DIR=$WORKSPACE_DIR/results
-RESULTS_ARCHIVE=$WORKSPACE_DIR/results.zip
 
-DATE=`date +%y-%m-%d`
 TIME_LOG_FORMAT='+%y-%m-%d %H:%M:%S'
 
 # Obtain the ontologies
@@ -37,6 +35,12 @@ then
 	
 	INPUT_FILE=$INPUT
 	
+elif [ $SOURCE == "extracted" ]
+then
+	
+	# the server extracted the uploaded archive while it was uploaded
+	echo `date "$TIME_LOG_FORMAT"` "using the extracted input ontologies"
+	
 elif [ $SOURCE == "web" ]
 then
 	
@@ -45,59 +49,68 @@ then
 	rm -rf $INPUT_DIR
 	mkdir -p $INPUT_DIR
 	
-	CURRENT_DIR=`pwd`
-	cd $INPUT_DIR
-
-	wget -nv $INPUT
-	INPUT_FILE=$(realpath $(ls -1 | head -n1))
-
-	cd $CURRENT_DIR
+	# the server shares the cache among its jobs
+	if [ -z "$DOWNLOAD_CACHE" ]
+	then
+		DOWNLOAD_CACHE=$WORKSPACE_DIR/downloads
+	fi
+	INPUT_FILE=$(java -cp "$CLASSPATH" com.github.joergschwabe.DownloadCache $DOWNLOAD_CACHE $INPUT $INPUT_DIR)
+	if [ ! -f "$INPUT_FILE" ]
+	then
+		>&2 echo `date "$TIME_LOG_FORMAT"` "Cannot download $INPUT!"
+		exit 1
+	fi
 	
 else
 	
-	>&2 echo `date "$TIME_LOG_FORMAT"` "Wrong option for the 3rd argument! Must be one of {file,web}."
+	>&2 echo `date "$TIME_LOG_FORMAT"` "Wrong option for the 3rd argument! Must be one of {file,extracted,web}."
 	exit 2
 	
 fi
 
-rm -rf $ONTOLOGIES_DIR
-mkdir -p $ONTOLOGIES_DIR
-
-if [[ $INPUT_FILE == *.tar.gz ]] ||  [[ $INPUT_FILE == *.tgz ]]
+if [ $SOURCE != "extracted" ]
 then
+
+	rm -rf $ONTOLOGIES_DIR
+	mkdir -p $ONTOLOGIES_DIR
+
+	if [[ $INPUT_FILE == *.tar.gz ]] ||  [[ $INPUT_FILE == *.tgz ]]
+	then
 	
-	echo `date "$TIME_LOG_FORMAT"` "extracting the input ontologies"
+		echo `date "$TIME_LOG_FORMAT"` "extracting the input ontologies"
 	
-	ABSPLUTE_ONTOLOGIES_ARCHIVE=`realpath $INPUT_FILE`
-	CURRENT_DIR=`pwd`
-	cd $ONTOLOGIES_DIR
+		ABSPLUTE_ONTOLOGIES_ARCHIVE=`realpath $INPUT_FILE`
+		CURRENT_DIR=`pwd`
+		cd $ONTOLOGIES_DIR
 	
-	tar xzf $ABSPLUTE_ONTOLOGIES_ARCHIVE
+		tar xzf $ABSPLUTE_ONTOLOGIES_ARCHIVE
 	
-	cd $CURRENT_DIR
+		cd $CURRENT_DIR
 	
-elif [[ $INPUT_FILE == *.zip ]]
-then
+	elif [[ $INPUT_FILE == *.zip ]]
+	then
 	
-	echo `date "$TIME_LOG_FORMAT"` "extracting the input ontologies"
+		echo `date "$TIME_LOG_FORMAT"` "extracting the input ontologies"
 	
-	ABSPLUTE_ONTOLOGIES_ARCHIVE=`realpath $INPUT_FILE`
-	CURRENT_DIR=`pwd`
-	cd $ONTOLOGIES_DIR
+		ABSPLUTE_ONTOLOGIES_ARCHIVE=`realpath $INPUT_FILE`
+		CURRENT_DIR=`pwd`
+		cd $ONTOLOGIES_DIR
 	
-	unzip -q $ABSPLUTE_ONTOLOGIES_ARCHIVE
+		unzip -q $ABSPLUTE_ONTOLOGIES_ARCHIVE
 	
-	cd $CURRENT_DIR
+		cd $CURRENT_DIR
 	
-else
+	else
 	
-	cp $INPUT_FILE $ONTOLOGIES_DIR
+		cp $INPUT_FILE $ONTOLOGIES_DIR
 	
+	fi
+
 fi
 
 
 
-# Generate queries
+# Generate queries and encode ELK inferences to SAT
 
 if [ -e $QUERIES_DIR ] && [ ! -d $QUERIES_DIR ]
 then
@@ -105,20 +118,6 @@ then
 fi
 mkdir -p $QUERIES_DIR
 
-for ONTOLOGY in `ls -1 $ONTOLOGIES_DIR`
-do
-	
-	NAME=`basename -s ".owl" $ONTOLOGY`
-	echo `date "$TIME_LOG_FORMAT"` "generating queries for $NAME"
-	java $JAVA_MEMORY_OPTIONS -Dlog4j.configurationFile=log4j2-paramfiles.xml -Dlog.file.out=$QUERIES_DIR/$NAME.sorted.out.log -Dlog.file.err=$QUERIES_DIR/$NAME.sorted.err.log -cp "$CLASSPATH" com.github.joergschwabe.ExtractSubsumptions $QUERY_GENERATION_OPTIONS --sort $ONTOLOGIES_DIR/$ONTOLOGY $QUERIES_DIR/$NAME.queries.sorted
-	java $JAVA_MEMORY_OPTIONS -cp "$CLASSPATH" com.github.joergschwabe.Shuffler 1 < $QUERIES_DIR/$NAME.queries.sorted > $QUERIES_DIR/$NAME.queries.seed1
-	java $JAVA_MEMORY_OPTIONS -Dlog4j.configurationFile=log4j2-paramfiles.xml -Dlog.file.out=$QUERIES_DIR/$NAME.bottom_up.out.log -Dlog.file.err=$QUERIES_DIR/$NAME.bottom_up.err.log -cp "$CLASSPATH" com.github.joergschwabe.ExtractSubsumptions $QUERY_GENERATION_OPTIONS --traversal BOTTOM_UP --collection SUB_TO_SUPER $ONTOLOGIES_DIR/$ONTOLOGY $QUERIES_DIR/$NAME.queries.bottom_up
-done
-
-
-
-# Encode ELK inferences to SAT
-
 if [ -e $INFS_DIR ] && [ ! -d $INFS_DIR ]
 then
 	rm -rf $INFS_DIR
@@ -131,15 +130,10 @@ then
 fi
 mkdir -p $INFS_DIR/elk
 
-for ONTOLOGY in `ls -1 $ONTOLOGIES_DIR`
-do
-	
-	NAME=`basename -s ".owl" $ONTOLOGY`
-	echo `date "$TIME_LOG_FORMAT"` "tracing elk inferences for $NAME"
-	PROPS='-Delk.reasoner.tracing.evictor=RecencyEvictor(1000000,0.75)'
-	java $JAVA_MEMORY_OPTIONS $PROPS -Dlog4j.configurationFile=log4j2-paramfiles.xml -Dlog.file.out=$INFS_DIR/elk/$NAME.out.log -Dlog.file.err=$INFS_DIR/elk/$NAME.err.log -cp "$CLASSPATH" com.github.joergschwabe.DirectSatEncodingUsingElkCsvQuery $ONTOLOGIES_DIR/$ONTOLOGY $QUERIES_DIR/$NAME.queries.bottom_up $INFS_DIR/elk/$NAME --minimal --progress
-	
-done
+# the ontologies are prepared side by side as far as the memory allows
+# the ontologies that were prepared are used even if others failed
+java -cp "$CLASSPATH" com.github.joergschwabe.Preprocessing $SCRIPTS_DIR/prepare_ontology.sh $WORKSPACE_DIR -- $QUERY_GENERATION_OPTIONS
+PREPROCESSING_STATUS=$?
 
 
 
@@ -148,49 +142,17 @@ done
 rm -rf $RESULTS_DIR
 mkdir -p $RESULTS_DIR
 
-for INF_TYPE in `ls -1 $INFS_DIR`
-do
-	
-	echo `date "$TIME_LOG_FORMAT"` "running experiments on $INF_TYPE inferences"
-	
-	for EXPERIMENT in `ls -1 $EXPERIMENT_DIR`
-	do
-		
-		EXPERIMENT_NAME=`basename -s ".sh" $EXPERIMENT`
-		echo `date "$TIME_LOG_FORMAT"` "running experiment $EXPERIMENT_NAME ..."
-		
-		for NAME in `ls -1 $INFS_DIR/$INF_TYPE/`
-		do
-			if [ ! -d $INFS_DIR/$INF_TYPE/$NAME ]
-			then
-				continue
-			fi
-			
-			echo `date "$TIME_LOG_FORMAT"` "... on $NAME"
-			DIR_NAME=$DATE.$NAME.$EXPERIMENT_NAME.$MACHINE_NAME.$INF_TYPE
-			rm -rf $LOGS_DIR/$DIR_NAME
-			mkdir -p $LOGS_DIR/$DIR_NAME
-			$EXPERIMENT_DIR/$EXPERIMENT $TIMEOUT $GLOBAL_TIMEOUT $QUERIES_DIR/$NAME.queries.seed1 $INFS_DIR/$INF_TYPE/$NAME $SCRIPTS_DIR $LOGS_DIR/$DIR_NAME
-			cp $LOGS_DIR/$DIR_NAME/record.csv $RESULTS_DIR/$DIR_NAME.csv
-			
-		done
-		
-	done
-	
-done
-
+# every experiment on every ontology, in parallel on the CPUs of this job, the
+# Java experiments in workers that stay warm between them; each experiment
+# gets EXPERIMENT_CELL_CPUS CPUs, on which the native solvers run as many
+# queries at once
+java -cp "$CLASSPATH" com.github.joergschwabe.ExperimentMatrix --warm --cell-cpus ${EXPERIMENT_CELL_CPUS:-1} $TIMEOUT $GLOBAL_TIMEOUT $MACHINE_NAME $SCRIPTS_DIR $WORKSPACE_DIR
+MATRIX_STATUS=$?
 
-# Pack the results
 
-echo `date "$TIME_LOG_FORMAT"` "packing the results"
-
-CURRENT_DIR=`pwd`
-ABSOLUTE_RESULTS_ARCHIVE=`realpath $RESULTS_ARCHIVE`
-cd $WORKSPACE_DIR
-
-zip -r -q $ABSOLUTE_RESULTS_ARCHIVE `basename $RESULTS_DIR`
-
-cd $CURRENT_DIR
-
-
-echo `date "$TIME_LOG_FORMAT"` "Done."
\ No newline at end of file
+echo `date "$TIME_LOG_FORMAT"` "Done."
+if [ $MATRIX_STATUS -ne 0 ]
+then
+	exit $MATRIX_STATUS
+fi
+exit $PREPROCESSING_STATUS
\ No newline at end of file
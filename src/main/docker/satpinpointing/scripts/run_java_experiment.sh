@@ -0,0 +1,51 @@
+#!/bin/bash
+
+# Runs java with the given arguments. If the experiments run with warm
+# workers, the arguments are sent to the worker of this experiment instead,
+# see com.github.joergschwabe.ExperimentWorker, and its standard output and
+# standard error are printed to the ones of this script. If the worker
+# refuses the run, because it does not use the same options of java, java is
+# run here instead. Exits with the exit code of the run.
+
+if [ -n "$EXPERIMENT_WORKER_PORT" ] && { exec 3<> /dev/tcp/127.0.0.1/$EXPERIMENT_WORKER_PORT; } 2> /dev/null
+then
+	
+	TOKEN=`head -c 16 /dev/urandom | od -An -tx1 | tr -d ' \n'`
+	# the arguments may contain line breaks, so they are terminated by NUL
+	printf '%s\n' "$TOKEN" "$#" >&3
+	printf '%s\0' "$@" >&3
+	while IFS= read -r LINE <&3
+	do
+		case $LINE in
+		"1 "*)
+			printf '%s\n' "${LINE#"1 "}"
+			;;
+		"2 "*)
+			>&2 printf '%s\n' "${LINE#"2 "}"
+			;;
+		# a line that is not complete yet, e.g., progress
+		"1-"*)
+			printf '%s' "${LINE#"1-"}"
+			;;
+		"2-"*)
+			>&2 printf '%s' "${LINE#"2-"}"
+			;;
+		"$TOKEN refused")
+			break
+			;;
+		"$TOKEN "*)
+			exit ${LINE#"$TOKEN "}
+			;;
+		esac
+	done
+	
+	if [ "$LINE" != "$TOKEN refused" ]
+	then
+		>&2 echo "The worker on port $EXPERIMENT_WORKER_PORT stopped during the run!"
+		exit 1
+	fi
+	exec 3<&-
+	
+fi
+
+exec java "$@"
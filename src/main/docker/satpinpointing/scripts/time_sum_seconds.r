@@ -1,5 +1,8 @@
 #!/usr/bin/env Rscript
 
+scriptFile <- sub("^--file=", "", grep("^--file=", commandArgs(FALSE), value=TRUE))
+source(file.path(dirname(scriptFile), "read_record.r"))
+
 timeCol = "time"
 
 args <- commandArgs(TRUE)
@@ -9,7 +12,7 @@ if(length(args) < requiredArgCount) {
 	q(status=1)
 }
 
-X <- read.csv(args[1])
+X <- readRecord(args[1])
 
 result = ceiling(sum(X[[timeCol]]) / 1000.0)
 
@@ -0,0 +1,401 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts a {@code .tar.gz}, {@code .tgz} or {@code .zip} archive from a
+ * stream, so that it can be extracted while it is downloaded or uploaded.
+ * The archive is decompressed in the calling thread, while the entries that
+ * fit into memory are written by other threads in parallel.
+ */
+public class ArchiveExtractor {
+
+	/**
+	 * Larger entries are written by the thread that reads the archive.
+	 */
+	private static final int MAX_PARALLEL_ENTRY_SIZE_ = 8 << 20;
+	/**
+	 * How many bytes of entries may wait for being written.
+	 */
+	private static final int MAX_BUFFERED_ = 64 << 20;
+	private static final int TAR_BLOCK_SIZE_ = 512;
+	private static final int BUFFER_SIZE_ = 65536;
+
+	private final File dir_;
+	private final ExecutorService writers_;
+	private final Semaphore buffered_ = new Semaphore(MAX_BUFFERED_);
+	private final List<Future<?>> writes_ = new ArrayList<>();
+	private int entryCount_ = 0;
+
+	/**
+	 * @param dir
+	 *            the directory into which the archive is extracted
+	 * @param writers
+	 *            the threads that write the entries
+	 */
+	public ArchiveExtractor(final File dir, final ExecutorService writers) {
+		this.dir_ = dir;
+		this.writers_ = writers;
+	}
+
+	/**
+	 * @param fileName
+	 * @return whether the file is an archive that can be extracted
+	 */
+	public static boolean isArchive(final String fileName) {
+		final String name = fileName.toLowerCase(Locale.ROOT);
+		return name.endsWith(".tar.gz") || name.endsWith(".tgz")
+				|| name.endsWith(".zip");
+	}
+
+	/**
+	 * Extracts the archive and waits until all entries are written. The
+	 * stream is read only up to the end of the archive.
+	 *
+	 * @param fileName
+	 *            the name of the archive, which determines its format
+	 * @param in
+	 *            the content of the archive
+	 * @throws IOException
+	 */
+	public void extract(final String fileName, final InputStream in)
+			throws IOException {
+		try {
+			if (fileName.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+				extractZip(new ZipInputStream(in));
+			} else {
+				extractTar(new GZIPInputStream(in, BUFFER_SIZE_));
+			}
+		} finally {
+			await();
+		}
+	}
+
+	/**
+	 * @return the number of extracted files
+	 */
+	public int getEntryCount() {
+		return entryCount_;
+	}
+
+	private void extractZip(final ZipInputStream in) throws IOException {
+		ZipEntry entry;
+		while ((entry = in.getNextEntry()) != null) {
+			if (entry.isDirectory()) {
+				mkdirs(resolve(entry.getName()));
+			} else {
+				write(entry.getName(), in);
+			}
+		}
+	}
+
+	private void extractTar(final InputStream in) throws IOException {
+		final byte[] header = new byte[TAR_BLOCK_SIZE_];
+		String longName = null;
+		while (readFully(in, header) && !isZero(header)) {
+			final long size = parseNumber(header, 124, 12);
+			final byte type = header[156];
+			String name = longName == null ? getTarName(header) : longName;
+			longName = null;
+			final BoundedInputStream content = new BoundedInputStream(in,
+					size);
+			switch (type) {
+			case 'L':
+				// GNU tar stores long names in an extra entry
+				longName = trimNul(readString(content));
+				break;
+			case 'x':
+				longName = getPaxPath(readString(content));
+				break;
+			case '5':
+				mkdirs(resolve(name));
+				break;
+			case '0':
+			case '\0':
+				write(name, content);
+				break;
+			default:
+				// links, devices, ...
+			}
+			content.drain();
+			if (content.getRemaining() > 0) {
+				throw new IOException("Truncated tar archive");
+			}
+			// else
+			final long padding = (TAR_BLOCK_SIZE_ - size % TAR_BLOCK_SIZE_)
+					% TAR_BLOCK_SIZE_;
+			new BoundedInputStream(in, padding).drain();
+		}
+	}
+
+	private static boolean readFully(final InputStream in, final byte[] b)
+			throws IOException {
+		int offset = 0;
+		while (offset < b.length) {
+			final int read = in.read(b, offset, b.length - offset);
+			if (read == -1) {
+				if (offset == 0) {
+					return false;
+				}
+				// else
+				throw new IOException("Truncated tar archive");
+			}
+			// else
+			offset += read;
+		}
+		return true;
+	}
+
+	private static boolean isZero(final byte[] block) {
+		for (final byte b : block) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a number of a tar header, which is octal or, if its first byte
+	 * has the high bit set, as written by GNU tar for sizes of 8 GB and more,
+	 * big-endian base-256.
+	 *
+	 * @param header
+	 * @param offset
+	 * @param length
+	 * @return the number
+	 * @throws IOException
+	 *             if the field is not a number or the number is negative
+	 */
+	private static long parseNumber(final byte[] header, final int offset,
+			final int length) throws IOException {
+		if ((header[offset] & 0x80) != 0) {
+			return parseBase256(header, offset, length);
+		}
+		// else
+		long result = 0;
+		for (int i = offset; i < offset + length; i++) {
+			final byte b = header[i];
+			if (b == 0 || b == ' ') {
+				if (result > 0) {
+					break;
+				}
+				// else
+				continue;
+			}
+			// else
+			if (b < '0' || b > '7') {
+				throw new IOException("Not a tar archive");
+			}
+			// else
+			result = result * 8 + (b - '0');
+		}
+		return result;
+	}
+
+	private static long parseBase256(final byte[] header, final int offset,
+			final int length) throws IOException {
+		if ((header[offset] & 0x40) != 0) {
+			throw new IOException("Negative number in tar header");
+		}
+		// else
+		long result = header[offset] & 0x3F;
+		for (int i = offset + 1; i < offset + length; i++) {
+			if (result > Long.MAX_VALUE >> 8) {
+				throw new IOException("Too large number in tar header");
+			}
+			// else
+			result = (result << 8) | (header[i] & 0xFF);
+		}
+		return result;
+	}
+
+	private static String getTarName(final byte[] header) {
+		final String name = trimNul(
+				new String(header, 0, 100, StandardCharsets.UTF_8));
+		final String prefix = trimNul(
+				new String(header, 345, 155, StandardCharsets.UTF_8));
+		// the prefix is used only by ustar
+		return prefix.isEmpty()
+				|| header[257] != 'u' ? name : prefix + "/" + name;
+	}
+
+	private static String trimNul(final String value) {
+		final int nul = value.indexOf('\0');
+		return nul < 0 ? value : value.substring(0, nul);
+	}
+
+	private static String readString(final InputStream in)
+			throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[TAR_BLOCK_SIZE_];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			result.write(buffer, 0, read);
+		}
+		return new String(result.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param pax
+	 *            the records of a pax header
+	 * @return the path of the next entry or {@code null}
+	 */
+	private static String getPaxPath(final String pax) {
+		for (final String record : pax.split("\n")) {
+			// "<length> <key>=<value>"
+			final int space = record.indexOf(' ');
+			final int equals = record.indexOf('=');
+			if (space >= 0 && equals > space
+					&& "path".equals(record.substring(space + 1, equals))) {
+				return record.substring(equals + 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param name
+	 *            the name of an entry
+	 * @return the file of the entry
+	 * @throws IOException
+	 *             if the entry would be outside of the directory
+	 */
+	private File resolve(final String name) throws IOException {
+		final File result = new File(dir_, name);
+		final String dir = dir_.getCanonicalPath();
+		final String path = result.getCanonicalPath();
+		if (!path.equals(dir) && !path.startsWith(dir + File.separator)) {
+			throw new IOException("Archive entry outside of the archive: "
+					+ name);
+		}
+		// else
+		return result;
+	}
+
+	private static void mkdirs(final File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+	}
+
+	/**
+	 * Writes the entry in another thread if it is small enough.
+	 *
+	 * @param name
+	 * @param content
+	 * @throws IOException
+	 */
+	private void write(final String name, final InputStream content)
+			throws IOException {
+		final File file = resolve(name);
+		mkdirs(file.getParentFile());
+		entryCount_++;
+		final ByteArrayOutputStream head = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[BUFFER_SIZE_];
+		int read = 0;
+		while (head.size() <= MAX_PARALLEL_ENTRY_SIZE_
+				&& (read = content.read(buffer)) != -1) {
+			head.write(buffer, 0, read);
+		}
+		if (read == -1) {
+			final byte[] bytes = head.toByteArray();
+			try {
+				buffered_.acquire(bytes.length);
+			} catch (final InterruptedException e) {
+				throw new InterruptedIOException(
+						"Interrupted while extracting " + name);
+			}
+			writes_.add(writers_.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final OutputStream out = new FileOutputStream(file);
+						try {
+							out.write(bytes);
+						} finally {
+							out.close();
+						}
+					} catch (final IOException e) {
+						throw new RuntimeException(e);
+					} finally {
+						buffered_.release(bytes.length);
+					}
+				}
+			}));
+			return;
+		}
+		// else
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			head.writeTo(out);
+			while ((read = content.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Waits until the entries are written.
+	 *
+	 * @throws IOException
+	 *             if an entry could not be written
+	 */
+	private void await() throws IOException {
+		try {
+			for (final Future<?> write : writes_) {
+				write.get();
+			}
+		} catch (final InterruptedException e) {
+			throw new InterruptedIOException(
+					"Interrupted while extracting into " + dir_);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause().getCause();
+			throw cause instanceof IOException ? (IOException) cause
+					: new IOException(e.getCause());
+		} finally {
+			writes_.clear();
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads only a number of bytes of a stream, e.g., the body of a request of a
+ * connection that is kept alive, or an entry of an archive. Closing this
+ * stream does not close the underlying one.
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+	private long remaining_;
+
+	/**
+	 * @param in
+	 * @param length
+	 *            how many bytes may be read
+	 */
+	public BoundedInputStream(final InputStream in, final long length) {
+		super(in);
+		this.remaining_ = length;
+	}
+
+	public long getRemaining() {
+		return remaining_;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (remaining_ <= 0) {
+			return -1;
+		}
+		// else
+		final int result = in.read();
+		if (result != -1) {
+			remaining_--;
+		}
+		return result;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		if (remaining_ <= 0) {
+			return -1;
+		}
+		// else
+		final int read = in.read(b, off, (int) Math.min(len, remaining_));
+		if (read > 0) {
+			remaining_ -= read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final long skipped = in.skip(Math.min(n, remaining_));
+		remaining_ -= skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(in.available(), remaining_);
+	}
+
+	/**
+	 * Reads the rest of the bytes.
+	 *
+	 * @throws IOException
+	 */
+	public void drain() throws IOException {
+		final byte[] buffer = new byte[8192];
+		while (read(buffer, 0, buffer.length) != -1) {
+			// skipping
+		}
+	}
+
+	@Override
+	public void close() {
+		// the underlying stream continues
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+}
@@ -0,0 +1,325 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A record of an experiment stored by columns in a binary file, which is
+ * memory-mapped for reading. Boolean columns are stored as bytes, the query
+ * column as numbers from the {@link QueryDictionary} of the ontology, and all
+ * other columns as doubles, where values that are not numbers become
+ * {@link Double#NaN}.
+ * <p>
+ * The file is big-endian and consists of the magic bytes {@code SPRC}, the
+ * format version, the number of rows, the number of columns, the name of the
+ * dictionary file in the same directory, the name and the type of each column
+ * and then the values of each column. Numbers of bytes of strings precede the
+ * UTF-8 bytes.
+ */
+public class ColumnarRecord {
+
+	public static final String SUFFIX = ".col";
+	/**
+	 * The directory in the results directory in which the columnar records
+	 * and the dictionaries are stored.
+	 */
+	public static final String DIRECTORY = "columns";
+	public static final String QUERY_COLUMN = "query";
+
+	public static final byte TYPE_QUERY = 0;
+	public static final byte TYPE_DOUBLE = 1;
+	public static final byte TYPE_BOOLEAN = 2;
+
+	private static final byte[] MAGIC_ = "SPRC"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION_ = 1;
+
+	private final File file_;
+	private final ByteBuffer data_;
+	private final int rowCount_;
+	private final String dictionary_;
+	private final String[] columns_;
+	private final byte[] types_;
+	private final int[] offsets_;
+
+	private ColumnarRecord(final File file, final ByteBuffer data,
+			final int rowCount, final String dictionary, final String[] columns,
+			final byte[] types, final int[] offsets) {
+		this.file_ = file;
+		this.data_ = data;
+		this.rowCount_ = rowCount;
+		this.dictionary_ = dictionary;
+		this.columns_ = columns;
+		this.types_ = types;
+		this.offsets_ = offsets;
+	}
+
+	/**
+	 * Converts a CSV record into a columnar file. The file appears only when
+	 * it is complete.
+	 *
+	 * @param csv
+	 * @param target
+	 * @param dictionary
+	 *            the dictionary of the ontology of the record, which must be
+	 *            in the same directory as the target
+	 * @throws IOException
+	 */
+	public static void convert(final File csv, final File target,
+			final QueryDictionary dictionary) throws IOException {
+		final String[] columns;
+		final List<String[]> rows = new ArrayList<>();
+		final BufferedReader in = new BufferedReader(new FileReader(csv));
+		try {
+			final String header = in.readLine();
+			columns = header == null ? new String[0] : header.split(",", -1);
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (!line.isEmpty()) {
+					rows.add(line.split(",", -1));
+				}
+			}
+		} finally {
+			Utils.closeQuietly(in);
+		}
+
+		final byte[] types = new byte[columns.length];
+		for (int c = 0; c < columns.length; c++) {
+			types[c] = getType(columns[c], c, rows);
+		}
+
+		final File tmp = new File(target.getParentFile(),
+				"." + target.getName() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.write(MAGIC_);
+			out.writeInt(VERSION_);
+			out.writeInt(rows.size());
+			out.writeInt(columns.length);
+			writeString(out, dictionary.getFile().getName());
+			for (int c = 0; c < columns.length; c++) {
+				writeString(out, columns[c]);
+				out.writeByte(types[c]);
+			}
+			for (int c = 0; c < columns.length; c++) {
+				for (final String[] row : rows) {
+					final String value = c < row.length ? row[c] : "";
+					switch (types[c]) {
+					case TYPE_QUERY:
+						out.writeInt(dictionary.getId(value));
+						break;
+					case TYPE_BOOLEAN:
+						out.writeByte(parseBoolean(value) ? 1 : 0);
+						break;
+					default:
+						out.writeDouble(parseDouble(value));
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		// the record may refer only to queries that are in the file
+		dictionary.flush();
+		Files.move(tmp.toPath(), target.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static byte getType(final String column, final int index,
+			final List<String[]> rows) {
+		if (QUERY_COLUMN.equals(column)) {
+			return TYPE_QUERY;
+		}
+		// else
+		boolean isBoolean = !rows.isEmpty();
+		for (final String[] row : rows) {
+			final String value = index < row.length ? row[index].trim() : "";
+			if (!value.equalsIgnoreCase("true")
+					&& !value.equalsIgnoreCase("false")) {
+				isBoolean = false;
+				break;
+			}
+		}
+		return isBoolean ? TYPE_BOOLEAN : TYPE_DOUBLE;
+	}
+
+	/**
+	 * @param value
+	 *            a value of a boolean column, which some experiments write in
+	 *            upper case
+	 * @return whether the value is true
+	 */
+	static boolean parseBoolean(final String value) {
+		return value.trim().equalsIgnoreCase("true");
+	}
+
+	private static double parseDouble(final String value) {
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (final NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	private static void writeString(final DataOutputStream out,
+			final String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(final ByteBuffer in) {
+		final byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Maps a columnar file into memory.
+	 *
+	 * @param file
+	 * @return the record stored in the file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a columnar record
+	 */
+	public static ColumnarRecord open(final File file) throws IOException {
+		final ByteBuffer data;
+		final FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			// the mapping stays valid when the channel is closed
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			channel.close();
+		}
+		try {
+			final byte[] magic = new byte[MAGIC_.length];
+			data.get(magic);
+			if (!Arrays.equals(magic, MAGIC_)) {
+				throw new IOException("Not a columnar record: " + file);
+			}
+			// else
+			final int version = data.getInt();
+			if (version != VERSION_) {
+				throw new IOException("Unsupported version " + version
+						+ " of columnar record: " + file);
+			}
+			// else
+			final int rowCount = data.getInt();
+			final int columnCount = data.getInt();
+			final String dictionary = readString(data);
+			final String[] columns = new String[columnCount];
+			final byte[] types = new byte[columnCount];
+			for (int c = 0; c < columnCount; c++) {
+				columns[c] = readString(data);
+				types[c] = data.get();
+			}
+			final int[] offsets = new int[columnCount];
+			long offset = data.position();
+			for (int c = 0; c < columnCount; c++) {
+				offsets[c] = (int) offset;
+				offset += (long) rowCount * getWidth(types[c]);
+			}
+			if (offset > data.limit()) {
+				throw new IOException("Truncated columnar record: " + file);
+			}
+			// else
+			return new ColumnarRecord(file, data, rowCount, dictionary,
+					columns, types, offsets);
+		} catch (final BufferUnderflowException
+				| NegativeArraySizeException e) {
+			throw new IOException("Corrupted columnar record: " + file, e);
+		}
+	}
+
+	private static int getWidth(final byte type) {
+		switch (type) {
+		case TYPE_QUERY:
+			return 4;
+		case TYPE_BOOLEAN:
+			return 1;
+		default:
+			return 8;
+		}
+	}
+
+	public int getRowCount() {
+		return rowCount_;
+	}
+
+	public String[] getColumns() {
+		return columns_.clone();
+	}
+
+	/**
+	 * @param column
+	 * @return the index of the column or -1 if there is no such column
+	 */
+	public int getColumnIndex(final String column) {
+		return Arrays.asList(columns_).indexOf(column);
+	}
+
+	public byte getType(final int column) {
+		return types_[column];
+	}
+
+	public double getDouble(final int column, final int row) {
+		return data_.getDouble(offsets_[column] + 8 * row);
+	}
+
+	public boolean getBoolean(final int column, final int row) {
+		return data_.get(offsets_[column] + row) != 0;
+	}
+
+	public int getQueryId(final int column, final int row) {
+		return data_.getInt(offsets_[column] + 4 * row);
+	}
+
+	/**
+	 * @return the file of the {@link QueryDictionary} that numbers the queries
+	 *         of this record
+	 */
+	public File getDictionaryFile() {
+		return new File(file_.getParentFile(), dictionary_);
+	}
+
+}
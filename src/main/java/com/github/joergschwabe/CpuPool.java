@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.util.BitSet;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Hands out disjoint subsets of a {@link CpuSet}, so that processes running
+ * side by side do not compete for the same cores.
+ */
+public class CpuPool {
+
+	private final CpuSet cpus_;
+
+	@GuardedBy("this")
+	private final BitSet free_;
+
+	public CpuPool(final CpuSet cpus) {
+		this.cpus_ = cpus;
+		this.free_ = cpus.getBits();
+	}
+
+	public CpuSet getCpus() {
+		return cpus_;
+	}
+
+	/**
+	 * @param count
+	 * @return {@code count} free CPUs, which are not free any more, or
+	 *         {@code null} if there are not so many free CPUs
+	 */
+	public synchronized CpuSet acquire(final int count) {
+		if (count <= 0 || free_.cardinality() < count) {
+			return null;
+		}
+		// else
+		final BitSet result = new BitSet();
+		int cpu = free_.nextSetBit(0);
+		for (int i = 0; i < count; i++) {
+			result.set(cpu);
+			cpu = free_.nextSetBit(cpu + 1);
+		}
+		free_.andNot(result);
+		return CpuSet.of(result);
+	}
+
+	public synchronized void release(final CpuSet cpus) {
+		if (cpus != null) {
+			free_.or(cpus.getBits());
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable set of CPU cores, written in the list format of
+ * {@code taskset}, e.g., "0-3,8,10-11".
+ */
+public class CpuSet {
+
+	private static final Logger LOGGER_ = LoggerFactory.getLogger(CpuSet.class);
+
+	private static final String PROC_STATUS_ = "/proc/self/status";
+	private static final String CPUS_ALLOWED_ = "Cpus_allowed_list:";
+	private static final String[] TASKSET_ = { "/usr/bin/taskset",
+			"/bin/taskset" };
+
+	private final BitSet cpus_;
+
+	private CpuSet(final BitSet cpus) {
+		this.cpus_ = cpus;
+	}
+
+	/**
+	 * @param list
+	 *            comma separated CPU numbers or ranges of CPU numbers
+	 * @return the CPUs from the list
+	 * @throws NumberFormatException
+	 *             if the list cannot be parsed
+	 */
+	public static CpuSet parse(final String list) {
+		final BitSet cpus = new BitSet();
+		for (final String part : list.trim().split(",")) {
+			if (part.isEmpty()) {
+				continue;
+			}
+			// else
+			final int dash = part.indexOf('-');
+			if (dash < 0) {
+				cpus.set(Integer.parseInt(part.trim()));
+			} else {
+				cpus.set(Integer.parseInt(part.substring(0, dash).trim()),
+						Integer.parseInt(part.substring(dash + 1).trim()) + 1);
+			}
+		}
+		return new CpuSet(cpus);
+	}
+
+	/**
+	 * @return the CPUs on which this process may run
+	 */
+	public static CpuSet getAvailable() {
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader(PROC_STATUS_));
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith(CPUS_ALLOWED_)) {
+					return parse(line.substring(CPUS_ALLOWED_.length()));
+				}
+			}
+		} catch (final IOException | NumberFormatException e) {
+			LOGGER_.debug("Cannot read {}", PROC_STATUS_, e);
+		} finally {
+			Utils.closeQuietly(in);
+		}
+		final BitSet cpus = new BitSet();
+		cpus.set(0, SystemResources.getAvailableProcessors());
+		return new CpuSet(cpus);
+	}
+
+	public int size() {
+		return cpus_.cardinality();
+	}
+
+	BitSet getBits() {
+		return (BitSet) cpus_.clone();
+	}
+
+	static CpuSet of(final BitSet cpus) {
+		return new CpuSet((BitSet) cpus.clone());
+	}
+
+	/**
+	 * @param command
+	 * @return the command prefixed so that it runs only on these CPUs, or the
+	 *         command itself if {@code taskset} is not available
+	 */
+	public List<String> pin(final List<String> command) {
+		for (final String taskset : TASKSET_) {
+			if (new File(taskset).canExecute()) {
+				final List<String> result = new ArrayList<>(
+						command.size() + 3);
+				result.add(taskset);
+				result.add("-c");
+				result.add(toString());
+				result.addAll(command);
+				return result;
+			}
+		}
+		LOGGER_.warn("taskset not available, not pinning to CPUs {}", this);
+		return command;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder();
+		int from = cpus_.nextSetBit(0);
+		while (from >= 0) {
+			final int to = cpus_.nextClearBit(from) - 1;
+			if (result.length() > 0) {
+				result.append(',');
+			}
+			result.append(from);
+			if (to > from) {
+				result.append('-').append(to);
+			}
+			from = cpus_.nextSetBit(to + 1);
+		}
+		return result.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return cpus_.hashCode();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		return obj instanceof CpuSet && cpus_.equals(((CpuSet) obj).cpus_);
+	}
+
+}
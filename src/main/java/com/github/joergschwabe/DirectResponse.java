@@ -0,0 +1,281 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.iki.elonen.NanoHTTPD.Method;
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * A response that writes its content to the connection itself instead of
+ * letting {@link Response} copy it from an input stream. The content is never
+ * compressed. If its length is not known in advance, it is sent in chunks, or,
+ * if the connection is not kept alive, until the connection is closed.
+ * <p>
+ * Content that becomes available only over time can be offered as a
+ * {@link PushSource}, which a {@link PushOutput} sends without a thread that
+ * waits for it.
+ */
+abstract class DirectResponse extends Response {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(DirectResponse.class);
+
+	static final String DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss 'GMT'";
+
+	private static final int CHUNK_SIZE_ = 8192;
+
+	/**
+	 * Content that becomes available over time and can be taken without
+	 * waiting.
+	 */
+	interface PushSource {
+
+		/**
+		 * @return the content that is available now, which is empty if there
+		 *         is nothing new, or {@code null} if the content ended
+		 * @throws IOException
+		 */
+		byte[] poll() throws IOException;
+
+		/**
+		 * @param listener
+		 *            called, without blocking, when new content may be
+		 *            available, or {@code null} to stop calling the previous
+		 *            listener
+		 */
+		void setListener(Runnable listener);
+
+	}
+
+	/**
+	 * An output that sends the content of a {@link PushSource} whenever there
+	 * is something new.
+	 */
+	interface PushOutput {
+
+		/**
+		 * Sends the content of the source after what was written so far, until
+		 * the source ends. Returns immediately.
+		 *
+		 * @param source
+		 * @param chunked
+		 *            whether the content is sent in chunks that end with an
+		 *            empty chunk
+		 * @throws IOException
+		 */
+		void pushFrom(PushSource source, boolean chunked) throws IOException;
+
+	}
+
+	private final long length_;
+	private final Map<String, String> headers_ = new LinkedHashMap<>();
+	private boolean keepAlive_ = true;
+
+	/**
+	 * @param status
+	 * @param mimeType
+	 * @param length
+	 *            the number of bytes of the content or -1 if it is not known
+	 */
+	DirectResponse(final IStatus status, final String mimeType,
+			final long length) {
+		super(status, mimeType, null, length);
+		this.length_ = length;
+	}
+
+	/**
+	 * Writes the content after the headers.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	abstract void sendContent(OutputStream out) throws IOException;
+
+	/**
+	 * @return the source of the content if a {@link PushOutput} should send it
+	 *         instead of {@link #sendContent(OutputStream)}, or {@code null}
+	 */
+	PushSource getPushSource() {
+		return null;
+	}
+
+	static String formatDate(final long time) {
+		final SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT,
+				Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(time));
+	}
+
+	@Override
+	public void addHeader(final String name, final String value) {
+		super.addHeader(name, value);
+		headers_.put(name, value);
+	}
+
+	@Override
+	public void setKeepAlive(final boolean keepAlive) {
+		super.setKeepAlive(keepAlive);
+		this.keepAlive_ = keepAlive;
+	}
+
+	@Override
+	protected void send(final OutputStream out) {
+		// HTTP/1.0 connections are not kept alive and do not know chunks
+		final boolean keepAlive = keepAlive_ && !isCloseConnection();
+		final boolean chunked = length_ < 0 && keepAlive;
+		final StringBuilder head = new StringBuilder("HTTP/1.1 ")
+				.append(getStatus().getDescription()).append("\r\n");
+		appendHeader(head, "Content-Type", getMimeType());
+		appendHeader(head, "Date", formatDate(System.currentTimeMillis()));
+		for (final Map.Entry<String, String> header : headers_.entrySet()) {
+			appendHeader(head, header.getKey(), header.getValue());
+		}
+		appendHeader(head, "Connection", keepAlive ? "keep-alive" : "close");
+		if (chunked) {
+			appendHeader(head, "Transfer-Encoding", "chunked");
+		} else if (length_ >= 0) {
+			appendHeader(head, "Content-Length", "" + length_);
+		} else {
+			// the end of the content is the end of the connection
+			closeConnection(true);
+		}
+		head.append("\r\n");
+		try {
+			out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+			final PushSource source = getPushSource();
+			if (getRequestMethod() != Method.HEAD && length_ != 0) {
+				if (source != null && out instanceof PushOutput) {
+					((PushOutput) out).pushFrom(source, chunked);
+				} else if (chunked) {
+					final ChunkedOutputStream chunks = new ChunkedOutputStream(
+							out);
+					sendContent(chunks);
+					chunks.finish();
+				} else {
+					sendContent(out);
+				}
+			}
+			out.flush();
+		} catch (final IOException e) {
+			LOGGER_.debug("Cannot send {}", this, e);
+			// the promised content may not be sent
+			closeConnection(true);
+		}
+	}
+
+	private static void appendHeader(final StringBuilder head,
+			final String name, final String value) {
+		head.append(name).append(": ").append(value).append("\r\n");
+	}
+
+	/**
+	 * Collects what is written into chunks of {@link #CHUNK_SIZE_} bytes, so
+	 * that small writes do not become small chunks.
+	 */
+	private static class ChunkedOutputStream extends FilterOutputStream {
+
+		private final byte[] buffer_ = new byte[CHUNK_SIZE_];
+		private int count_ = 0;
+
+		ChunkedOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			if (count_ == buffer_.length) {
+				writeChunk();
+			}
+			buffer_[count_++] = (byte) b;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len)
+				throws IOException {
+			int written = 0;
+			while (written < len) {
+				if (count_ == buffer_.length) {
+					writeChunk();
+				}
+				final int n = Math.min(len - written, buffer_.length - count_);
+				System.arraycopy(b, off + written, buffer_, count_, n);
+				count_ += n;
+				written += n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writeChunk();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			// the connection stays open
+			finish();
+		}
+
+		private void writeChunk() throws IOException {
+			if (count_ <= 0) {
+				return;
+			}
+			// else
+			out.write((Integer.toHexString(count_) + "\r\n")
+					.getBytes(StandardCharsets.US_ASCII));
+			out.write(buffer_, 0, count_);
+			out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+			count_ = 0;
+		}
+
+		/**
+		 * Writes the remaining bytes and the last chunk.
+		 *
+		 * @throws IOException
+		 */
+		void finish() throws IOException {
+			if (count_ < 0) {
+				return;
+			}
+			// else
+			writeChunk();
+			out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			count_ = -1;
+		}
+
+	}
+
+}
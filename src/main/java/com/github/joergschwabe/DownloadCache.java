@@ -0,0 +1,419 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.annotation.Arg;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+/**
+ * Downloads files and keeps them, so that a file that did not change is not
+ * downloaded again. Whether it changed is asked by a conditional request with
+ * the {@code ETag} and {@code Last-Modified} of the cached copy. The content
+ * is stored under its SHA-256 checksum, so different URLs of the same file
+ * share one copy.
+ * <p>
+ * The cache directory may be used by several processes at once; downloads of
+ * the same URL wait for each other.
+ */
+public class DownloadCache {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(DownloadCache.class);
+
+	/**
+	 * The cache directory shared by the jobs of {@link JobScheduler}.
+	 */
+	public static final String ENV_DOWNLOAD_CACHE = "DOWNLOAD_CACHE";
+
+	public static final String OPT_CACHE = "cache";
+	public static final String OPT_URL = "url";
+	public static final String OPT_TARGET = "target";
+
+	public static class Options {
+		@Arg(dest = OPT_CACHE)
+		public File cache;
+		@Arg(dest = OPT_URL)
+		public String url;
+		@Arg(dest = OPT_TARGET)
+		public File target;
+	}
+
+	private static final String BLOBS_ = "blobs";
+	private static final String URLS_ = "urls";
+	private static final String KEY_URL_ = "url";
+	private static final String KEY_ETAG_ = "etag";
+	private static final String KEY_LAST_MODIFIED_ = "last-modified";
+	private static final String KEY_CHECKSUM_ = "sha256";
+	private static final String KEY_FILE_NAME_ = "file-name";
+	private static final String DEFAULT_FILE_NAME_ = "download";
+
+	private static final int CONNECT_TIMEOUT_MILLIS_ = 30000;
+	private static final int READ_TIMEOUT_MILLIS_ = 300000;
+	private static final long PROGRESS_INTERVAL_MILLIS_ = 1000;
+	private static final String TIME_LOG_FORMAT_ = "yy-MM-dd HH:mm:ss";
+
+	public static void main(final String[] args) {
+
+		final ArgumentParser parser = ArgumentParsers
+				.newArgumentParser(DownloadCache.class.getSimpleName())
+				.description(
+						"Downloads a file into a directory unless the cached copy is current.");
+		parser.addArgument(OPT_CACHE).type(File.class)
+				.help("the cache directory");
+		parser.addArgument(OPT_URL).help("the URL of the file");
+		parser.addArgument(OPT_TARGET).type(File.class)
+				.help("the directory into which the file is put");
+
+		try {
+
+			final Options opt = new Options();
+			parser.parseArgs(args, opt);
+
+			// the output is the downloaded file, the log goes to the errors
+			final File file = new DownloadCache(opt.cache, System.err)
+					.get(opt.url, opt.target);
+			System.out.println(file);
+
+		} catch (final ArgumentParserException e) {
+			parser.handleError(e);
+			System.exit(2);
+		} catch (final IOException e) {
+			LOGGER_.error("Cannot download!", e);
+			System.exit(1);
+		}
+	}
+
+	private final File blobsDir_;
+	private final File urlsDir_;
+	private final PrintStream log_;
+
+	/**
+	 * @param dir
+	 *            the cache directory
+	 * @param log
+	 *            where the progress of downloads is reported
+	 * @throws IOException
+	 */
+	public DownloadCache(final File dir, final PrintStream log)
+			throws IOException {
+		this.blobsDir_ = new File(dir, BLOBS_);
+		this.urlsDir_ = new File(dir, URLS_);
+		this.log_ = log;
+		Utils.cleanIfNotDir(blobsDir_);
+		Utils.cleanIfNotDir(urlsDir_);
+	}
+
+	/**
+	 * Puts the current content of the URL into the target directory,
+	 * downloading it only if the cached copy is not current. If the server
+	 * cannot be reached or the transfer fails, the cached copy is used, but an
+	 * error status of the server is not ignored.
+	 *
+	 * @param url
+	 * @param targetDir
+	 * @return the file in the target directory
+	 * @throws IOException
+	 */
+	public File get(final String url, final File targetDir)
+			throws IOException {
+		final String key = ETags.digest(url);
+		final File entryFile = new File(urlsDir_, key);
+		final FileChannel lock = FileChannel.open(
+				new File(urlsDir_, key + ".lock").toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			final FileLock fileLock = lock.lock();
+			try {
+				final Properties entry = load(entryFile);
+				final File blob = entry == null ? null
+						: new File(blobsDir_,
+								entry.getProperty(KEY_CHECKSUM_));
+				Properties current;
+				try {
+					current = fetch(url,
+							blob != null && blob.exists() ? entry : null);
+				} catch (final StatusException e) {
+					// the server answered, so the cached copy may be outdated
+					throw e;
+				} catch (final IOException e) {
+					if (blob == null || !blob.exists()) {
+						throw e;
+					}
+					// else
+					LOGGER_.warn("Cannot download {}, using the cached copy",
+							url, e);
+					log("cannot download " + url + " (" + e.getMessage()
+							+ "), using the cached copy");
+					current = entry;
+				}
+				if (current != entry) {
+					store(current, entryFile);
+				}
+				return link(new File(blobsDir_,
+						current.getProperty(KEY_CHECKSUM_)),
+						new File(targetDir,
+								current.getProperty(KEY_FILE_NAME_)));
+			} finally {
+				fileLock.release();
+			}
+		} finally {
+			lock.close();
+		}
+	}
+
+	/**
+	 * @param url
+	 * @param cached
+	 *            the entry of the cached copy or {@code null}
+	 * @return the cached entry if the content did not change, otherwise the
+	 *         entry of the downloaded content
+	 * @throws IOException
+	 */
+	private Properties fetch(final String url, final Properties cached)
+			throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url)
+				.openConnection();
+		try {
+			connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS_);
+			connection.setReadTimeout(READ_TIMEOUT_MILLIS_);
+			if (cached != null) {
+				final String etag = cached.getProperty(KEY_ETAG_);
+				if (etag != null) {
+					connection.setRequestProperty("If-None-Match", etag);
+				}
+				final String lastModified = cached
+						.getProperty(KEY_LAST_MODIFIED_);
+				if (lastModified != null) {
+					connection.setRequestProperty("If-Modified-Since",
+							lastModified);
+				}
+			}
+			final int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED
+					&& cached != null) {
+				log(url + " not modified, using the cached copy");
+				return cached;
+			}
+			// else
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new StatusException("Cannot download " + url + ": "
+						+ status + " " + connection.getResponseMessage());
+			}
+			// else
+			final Properties result = new Properties();
+			result.setProperty(KEY_URL_, url);
+			if (connection.getHeaderField("ETag") != null) {
+				result.setProperty(KEY_ETAG_, connection.getHeaderField("ETag"));
+			}
+			if (connection.getHeaderField("Last-Modified") != null) {
+				result.setProperty(KEY_LAST_MODIFIED_,
+						connection.getHeaderField("Last-Modified"));
+			}
+			// the URL after redirects names the file, as with wget
+			final String fileName = getFileName(connection.getURL());
+			result.setProperty(KEY_FILE_NAME_, fileName);
+			result.setProperty(KEY_CHECKSUM_, download(connection, fileName));
+			return result;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static String getFileName(final URL url) {
+		final String path = url.getPath();
+		final String name = path.substring(path.lastIndexOf('/') + 1);
+		return name.isEmpty() || name.equals(".") || name.equals("..")
+				? DEFAULT_FILE_NAME_
+				: name;
+	}
+
+	/**
+	 * Stores the content of the response as a blob.
+	 *
+	 * @return the checksum of the content
+	 */
+	private String download(final HttpURLConnection connection,
+			final String fileName) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			// every JVM implements SHA-256
+			throw new RuntimeException(e);
+		}
+		final long length = connection.getContentLengthLong();
+		final File tmp = File.createTempFile(".download", ".tmp", blobsDir_);
+		try {
+			final InputStream in = connection.getInputStream();
+			final OutputStream out = new FileOutputStream(tmp);
+			try {
+				final byte[] buffer = new byte[65536];
+				long received = 0;
+				long lastReport = 0;
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+					digest.update(buffer, 0, read);
+					received += read;
+					final long now = System.currentTimeMillis();
+					if (now - lastReport >= PROGRESS_INTERVAL_MILLIS_) {
+						lastReport = now;
+						progress(fileName, received, length);
+					}
+				}
+				progress(fileName, received, length);
+				log_.println();
+				if (length >= 0 && received != length) {
+					throw new IOException("Download of " + fileName
+							+ " ended after " + received + " of " + length
+							+ " bytes");
+				}
+			} finally {
+				out.close();
+				in.close();
+			}
+			final String checksum = ETags.toHex(digest.digest());
+			final File blob = new File(blobsDir_, checksum);
+			if (blob.exists()) {
+				log("the content of " + fileName + " is already cached");
+			} else {
+				Files.move(tmp.toPath(), blob.toPath(),
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			return checksum;
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+
+	/**
+	 * Makes the blob available as the target file. The blob must not be
+	 * modified through the target.
+	 *
+	 * @return the target
+	 */
+	private static File link(final File blob, final File target)
+			throws IOException {
+		Utils.cleanIfNotDir(target.getParentFile());
+		Files.deleteIfExists(target.toPath());
+		try {
+			Files.createLink(target.toPath(), blob.toPath());
+		} catch (final IOException | UnsupportedOperationException e) {
+			// e.g., on another file system
+			Files.copy(blob.toPath(), target.toPath());
+		}
+		return target;
+	}
+
+	private static Properties load(final File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		// else
+		final Properties result = new Properties();
+		final InputStream in = new FileInputStream(file);
+		try {
+			result.load(in);
+		} finally {
+			in.close();
+		}
+		return result.getProperty(KEY_CHECKSUM_) == null ? null : result;
+	}
+
+	private static void store(final Properties entry, final File file)
+			throws IOException {
+		final File tmp = new File(file.getParentFile(),
+				"." + file.getName() + ".tmp");
+		final OutputStream out = new FileOutputStream(tmp);
+		try {
+			entry.store(out, entry.getProperty(KEY_URL_));
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Overwrites the current line of the log, see {@link ExperimentLog}.
+	 */
+	private void progress(final String fileName, final long received,
+			final long length) {
+		final StringBuilder line = new StringBuilder("\r")
+				.append(getTime()).append(" downloading ").append(fileName)
+				.append(": ").append(received >> 20).append(" MB");
+		if (length > 0) {
+			line.append(" of ").append(length >> 20).append(" MB (")
+					.append(100 * received / length).append("%)");
+		}
+		log_.print(line);
+		log_.flush();
+	}
+
+	private void log(final String message) {
+		log_.println(getTime() + " " + message);
+	}
+
+	private static String getTime() {
+		return new SimpleDateFormat(TIME_LOG_FORMAT_).format(new Date());
+	}
+
+	/**
+	 * The server answered with an error status.
+	 */
+	private static class StatusException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		StatusException(final String message) {
+			super(message);
+		}
+
+	}
+
+}
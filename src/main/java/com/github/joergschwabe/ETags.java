@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Strong entity tags of HTTP responses, so that a client can validate its
+ * cached copy and get {@code 304 Not Modified} if it did not change.
+ */
+class ETags {
+
+	private static final char[] HEX_ = "0123456789abcdef".toCharArray();
+
+	/**
+	 * @param value
+	 * @return the hexadecimal SHA-1 digest of the value
+	 */
+	static String digest(final String value) {
+		final byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1")
+					.digest(value.getBytes(StandardCharsets.UTF_8));
+		} catch (final NoSuchAlgorithmException e) {
+			// every JVM implements SHA-1
+			throw new RuntimeException(e);
+		}
+		return toHex(digest);
+	}
+
+	/**
+	 * @param bytes
+	 * @return the bytes as lower case hexadecimal digits
+	 */
+	static String toHex(final byte[] bytes) {
+		final char[] result = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			result[2 * i] = HEX_[(bytes[i] >> 4) & 0xF];
+			result[2 * i + 1] = HEX_[bytes[i] & 0xF];
+		}
+		return new String(result);
+	}
+
+	/**
+	 * @param parts
+	 *            everything that the content of the response depends on
+	 * @return the quoted entity tag
+	 */
+	static String of(final String... parts) {
+		final StringBuilder value = new StringBuilder();
+		for (final String part : parts) {
+			value.append(part).append('\n');
+		}
+		return '"' + digest(value.toString()) + '"';
+	}
+
+	/**
+	 * @param ifNoneMatch
+	 *            the value of the {@code If-None-Match} header of a request
+	 * @param etag
+	 * @return whether the client has the content with the entity tag
+	 */
+	static boolean matches(final String ifNoneMatch, final String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		// else
+		for (final String tag : ifNoneMatch.split(",")) {
+			final String trimmed = tag.trim();
+			if (trimmed.equals("*") || trimmed.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,287 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One submission of experiments. Each job has its own workspace in which the
+ * experiment command manipulates files, and its own log.
+ */
+public class ExperimentJob {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(ExperimentJob.class);
+
+	public static enum State {
+		QUEUED, RUNNING, FINISHED, KILLED
+	}
+
+	private static final String WS_INPUT_ = "input";
+	private static final String WS_ONTOLOGIES_ = "ontologies";
+	private static final String WS_EXPS_ = "experiments";
+	private static final String WS_RESULTS_ = "results";
+	private static final String WS_PLOTS_ = "plots";
+	private static final String WS_LOG_ = "experiment.log";
+
+	private final String id_;
+	private final File workspace_;
+	private final File inputDir_;
+	private final File ontologiesDir_;
+	private final File expsDir_;
+	private final File resultsDir_;
+	private final Map<String, String> environment_;
+	private final File plotsDir_;
+
+	@GuardedBy("this")
+	private String[] command_ = null;
+	@GuardedBy("this")
+	private State state_ = State.QUEUED;
+	@GuardedBy("this")
+	private Process process_ = null;
+	@GuardedBy("this")
+	private CpuSet cpus_ = null;
+	private final ExperimentLog log_;
+	private final ResultsIndex resultsIndex_;
+
+	/**
+	 * @param id
+	 * @param workspace
+	 * @param environment
+	 *            the variables added to the environment of the command
+	 * @throws IOException
+	 */
+	public ExperimentJob(final String id, final File workspace,
+			final Map<String, String> environment) throws IOException {
+		this.id_ = id;
+		this.workspace_ = workspace;
+		Utils.cleanIfNotDir(workspace_);
+		this.inputDir_ = new File(workspace, WS_INPUT_);
+		Utils.cleanIfNotDir(inputDir_);
+		this.ontologiesDir_ = new File(workspace, WS_ONTOLOGIES_);
+		this.expsDir_ = new File(workspace, WS_EXPS_);
+		this.resultsDir_ = new File(workspace, WS_RESULTS_);
+		this.environment_ = environment;
+		this.plotsDir_ = new File(resultsDir_, WS_PLOTS_);
+		this.log_ = new ExperimentLog(new File(workspace, WS_LOG_));
+		this.resultsIndex_ = new ResultsIndex(resultsDir_);
+	}
+
+	public String getId() {
+		return id_;
+	}
+
+	public File getWorkspace() {
+		return workspace_;
+	}
+
+	public File getInputDir() {
+		return inputDir_;
+	}
+
+	/**
+	 * @return the directory from which the experiments take the ontologies
+	 */
+	public File getOntologiesDir() {
+		return ontologiesDir_;
+	}
+
+	public File getExperimentsDir() {
+		return expsDir_;
+	}
+
+	public File getResultsDir() {
+		return resultsDir_;
+	}
+
+	public ResultsIndex getResultsIndex() {
+		return resultsIndex_;
+	}
+
+	public File getPlotsDir() {
+		return plotsDir_;
+	}
+
+	public synchronized void setCommand(final String... command) {
+		this.command_ = command;
+	}
+
+	public synchronized State getState() {
+		if (state_ == State.RUNNING && !process_.isAlive()) {
+			state_ = State.FINISHED;
+		}
+		return state_;
+	}
+
+	public synchronized boolean isDone() {
+		final State state = getState();
+		return state == State.FINISHED || state == State.KILLED;
+	}
+
+	/**
+	 * Starts the experiment command. The output of the command is drained by
+	 * a dedicated thread into the log of the job, so that the command never
+	 * blocks on its output, even if nobody watches the log.
+	 *
+	 * @param cpus
+	 *            the CPUs to which the command is pinned, or {@code null} if it
+	 *            may run on any CPU
+	 * @param memory
+	 *            how much memory the command may use
+	 * @throws IOException
+	 */
+	synchronized void start(final CpuSet cpus, final long memory)
+			throws IOException {
+		if (state_ != State.QUEUED) {
+			throw new IllegalStateException(
+					"Job " + id_ + " cannot be started when " + state_);
+		}
+		// else
+		LOGGER_.info("starting job {} on CPUs {}", id_, cpus);
+		List<String> command = Arrays.asList(command_);
+		if (cpus != null) {
+			command = cpus.pin(command);
+		}
+		final ProcessBuilder builder = new ProcessBuilder(
+				Processes.inNewGroup(command));
+		final Map<String, String> env = builder.environment();
+		env.put(SystemResources.ENV_EXPERIMENT_CPUS,
+				(cpus == null ? CpuSet.getAvailable() : cpus).toString());
+		env.put(SystemResources.ENV_EXPERIMENT_MEMORY, "" + memory);
+		env.putAll(environment_);
+		process_ = builder.redirectErrorStream(true).start();
+		cpus_ = cpus;
+		final Thread logReader = new Thread(
+				new LogReader(process_.getInputStream()), "log-" + id_);
+		logReader.setDaemon(true);
+		logReader.start();
+		state_ = State.RUNNING;
+	}
+
+	/**
+	 * @return the CPUs to which the job is pinned, or {@code null} if it is
+	 *         not pinned
+	 */
+	synchronized CpuSet getCpus() {
+		return cpus_;
+	}
+
+	/**
+	 * Blocks until the experiment command of a running job exits.
+	 *
+	 * @throws InterruptedException
+	 */
+	void waitFor() throws InterruptedException {
+		final Process process;
+		synchronized (this) {
+			process = process_;
+		}
+		if (process != null) {
+			process.waitFor();
+		}
+	}
+
+	/**
+	 * Kills a queued or running job. A job whose command already exited stays
+	 * finished.
+	 */
+	synchronized void kill() {
+		if (state_ == State.QUEUED) {
+			LOGGER_.info("killing job {}", id_);
+			// never started, so there is no log reader to close the log
+			log_.close();
+			resultsIndex_.stopWatching();
+			state_ = State.KILLED;
+		} else if (state_ == State.RUNNING && process_.isAlive()) {
+			LOGGER_.info("killing job {}", id_);
+			// also the experiments started by the command
+			Processes.destroyGroup(process_);
+			state_ = State.KILLED;
+		}
+	}
+
+	/**
+	 * Drops what is kept in memory of the log and the results of a job that is
+	 * done. Both are read again from the workspace when they are needed.
+	 */
+	void release() {
+		LOGGER_.debug("releasing job {}", id_);
+		log_.release();
+		resultsIndex_.release();
+	}
+
+	/**
+	 * @return the log of the experiment command, which is closed when all of
+	 *         its output was read
+	 */
+	public ExperimentLog getLog() {
+		return log_;
+	}
+
+	private class LogReader implements Runnable {
+
+		private final InputStream output_;
+
+		LogReader(final InputStream output) {
+			this.output_ = output;
+		}
+
+		@Override
+		public void run() {
+			final Reader in = new InputStreamReader(output_);
+			try {
+				final char[] buffer = new char[8192];
+				int read;
+				while ((read = in.read(buffer)) >= 0) {
+					log_.append(new String(buffer, 0, read));
+				}
+			} catch (final IOException e) {
+				LOGGER_.error("Cannot read the output of " + ExperimentJob.this,
+						e);
+			} finally {
+				// the command and everything it started finished
+				log_.close();
+				resultsIndex_.stopWatching();
+				Utils.closeQuietly(in);
+			}
+		}
+
+	}
+
+	@Override
+	public String toString() {
+		return "job " + id_;
+	}
+
+}
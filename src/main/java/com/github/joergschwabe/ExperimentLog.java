@@ -0,0 +1,438 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The output of an experiment command, split into lines. The output is
+ * appended by one thread and can be read concurrently by any number of
+ * threads, which may wait for new output.
+ * <p>
+ * A carriage return resets the current line, so that progress bars do not
+ * fill the log. The current line becomes a line of the log only when it is
+ * terminated or when the log is closed.
+ * <p>
+ * Every terminated line is written to the log file. Only the most recent
+ * segments of lines are kept in memory, older lines are read from the file,
+ * so the memory used by the log is bounded however long the experiment runs.
+ */
+public class ExperimentLog {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(ExperimentLog.class);
+
+	private static final int SEGMENT_LINES_ = 1024;
+	private static final int MAX_SEGMENTS_IN_MEMORY_ = 8;
+
+	private final File file_;
+
+	/**
+	 * The segments that are in memory, the last one is being filled.
+	 */
+	@GuardedBy("this")
+	private final ArrayDeque<List<String>> segments_ = new ArrayDeque<>();
+	@GuardedBy("this")
+	private int firstLineInMemory_ = 0;
+	@GuardedBy("this")
+	private int lineCount_ = 0;
+	/**
+	 * The offset of the first line of each segment in the log file.
+	 */
+	@GuardedBy("this")
+	private long[] segmentOffsets_ = new long[16];
+	@GuardedBy("this")
+	private OutputStream out_ = null;
+	@GuardedBy("this")
+	private long fileLength_ = 0;
+	@GuardedBy("this")
+	private boolean fileFailed_ = false;
+	@GuardedBy("this")
+	private final StringBuilder lastLine_ = new StringBuilder();
+	/**
+	 * Incremented on every change of the log.
+	 */
+	@GuardedBy("this")
+	private long version_ = 0;
+	@GuardedBy("this")
+	private boolean closed_ = false;
+	/**
+	 * Whether the lines are dropped from memory once the log is closed.
+	 */
+	@GuardedBy("this")
+	private boolean released_ = false;
+	@GuardedBy("this")
+	private final List<Runnable> listeners_ = new ArrayList<>();
+
+	/**
+	 * @param file
+	 *            the file into which the terminated lines are written
+	 */
+	public ExperimentLog(final File file) {
+		this.file_ = file;
+	}
+
+	/**
+	 * @return the file with all terminated lines of the log, which may not
+	 *         exist if no line was terminated yet
+	 */
+	public File getFile() {
+		return file_;
+	}
+
+	/**
+	 * Appends output of the command. Output appended after the log is closed
+	 * is ignored.
+	 *
+	 * @param output
+	 */
+	public synchronized void append(final String output) {
+		if (closed_ || output.isEmpty()) {
+			return;
+		}
+		// else
+		final String[] lines = output.split("\n", -1);
+		updateLastLine(lines[0]);
+		for (int i = 1; i < lines.length; i++) {
+			addLine(lastLine_.toString());
+			lastLine_.setLength(0);
+			updateLastLine(lines[i]);
+		}
+		flush();
+		changed();
+	}
+
+	@GuardedBy("this")
+	private void updateLastLine(final String line) {
+		final int lastIndex = line.lastIndexOf("\r");
+		if (lastIndex < 0) {
+			lastLine_.append(line);
+		} else {
+			lastLine_.setLength(0);
+			lastLine_.append(line.substring(lastIndex + 1));
+		}
+	}
+
+	@GuardedBy("this")
+	private void addLine(final String line) {
+		if (lineCount_ % SEGMENT_LINES_ == 0) {
+			final int segment = lineCount_ / SEGMENT_LINES_;
+			if (segment >= segmentOffsets_.length) {
+				segmentOffsets_ = Arrays.copyOf(segmentOffsets_,
+						2 * segmentOffsets_.length);
+			}
+			segmentOffsets_[segment] = fileLength_;
+			segments_.addLast(new ArrayList<String>(SEGMENT_LINES_));
+			if (segments_.size() > MAX_SEGMENTS_IN_MEMORY_) {
+				// the lines are in the file
+				segments_.removeFirst();
+				firstLineInMemory_ += SEGMENT_LINES_;
+			}
+		}
+		segments_.getLast().add(line);
+		lineCount_++;
+		write(line);
+	}
+
+	@GuardedBy("this")
+	private void write(final String line) {
+		if (fileFailed_) {
+			return;
+		}
+		// else
+		final byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+		try {
+			if (out_ == null) {
+				out_ = new BufferedOutputStream(new FileOutputStream(file_));
+			}
+			out_.write(bytes);
+			fileLength_ += bytes.length;
+		} catch (final IOException e) {
+			LOGGER_.error("Cannot write " + file_
+					+ ", older lines of the log will be lost", e);
+			fileFailed_ = true;
+			Utils.closeQuietly(out_);
+			out_ = null;
+		}
+	}
+
+	@GuardedBy("this")
+	private void flush() {
+		if (out_ != null) {
+			try {
+				out_.flush();
+			} catch (final IOException e) {
+				LOGGER_.error("Cannot write " + file_
+						+ ", older lines of the log will be lost", e);
+				fileFailed_ = true;
+				Utils.closeQuietly(out_);
+				out_ = null;
+			}
+		}
+	}
+
+	@GuardedBy("this")
+	private void changed() {
+		version_++;
+		notifyAll();
+		for (final Runnable listener : listeners_) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Lets the listener know about every change of the log instead of
+	 * waiting for it. The listener is called while the log is locked, so it
+	 * must not block.
+	 *
+	 * @param listener
+	 */
+	public synchronized void addListener(final Runnable listener) {
+		listeners_.add(listener);
+	}
+
+	public synchronized void removeListener(final Runnable listener) {
+		listeners_.remove(listener);
+	}
+
+	/**
+	 * Marks the end of the output. The current line becomes the last line of
+	 * the log.
+	 */
+	public synchronized void close() {
+		if (closed_) {
+			return;
+		}
+		// else
+		if (lastLine_.length() > 0) {
+			addLine(lastLine_.toString());
+			lastLine_.setLength(0);
+		}
+		flush();
+		Utils.closeQuietly(out_);
+		out_ = null;
+		closed_ = true;
+		if (released_) {
+			dropLines();
+		}
+		changed();
+	}
+
+	/**
+	 * Drops the lines from memory when the log is closed, or right away if it
+	 * is closed already, so that all lines are read from the log file. Lines
+	 * that could not be written to the file are kept.
+	 */
+	public synchronized void release() {
+		released_ = true;
+		if (closed_) {
+			dropLines();
+		}
+	}
+
+	@GuardedBy("this")
+	private void dropLines() {
+		if (fileFailed_) {
+			return;
+		}
+		// else
+		segments_.clear();
+		firstLineInMemory_ = lineCount_;
+	}
+
+	public synchronized boolean isClosed() {
+		return closed_;
+	}
+
+	public synchronized long getVersion() {
+		return version_;
+	}
+
+	/**
+	 * @return the number of terminated lines
+	 */
+	public synchronized int getLineCount() {
+		return lineCount_;
+	}
+
+	/**
+	 * Lines that are not in memory any more are read from the log file, so
+	 * fewer than the available lines may be returned. The rest can be read
+	 * by the next call.
+	 *
+	 * @param from
+	 *            index of the first returned line
+	 * @param max
+	 *            maximal number of returned lines
+	 * @return the terminated lines starting from the index
+	 * @throws IOException
+	 *             if the lines cannot be read from the log file
+	 */
+	public List<String> getLines(final int from, final int max)
+			throws IOException {
+		final long offset;
+		final int skip;
+		final int count;
+		synchronized (this) {
+			final int start = Math.max(0, Math.min(from, lineCount_));
+			if (start >= firstLineInMemory_) {
+				return getLinesInMemory(start, max);
+			}
+			// else
+			if (fileFailed_) {
+				throw new IOException(
+						"Line " + start + " of the log was lost!");
+			}
+			// else
+			final int segment = start / SEGMENT_LINES_;
+			offset = segmentOffsets_[segment];
+			skip = start - segment * SEGMENT_LINES_;
+			count = Math.min(max, firstLineInMemory_ - start);
+		}
+		// the file is only appended, so it is read without blocking the writer
+		return readLines(offset, skip, count);
+	}
+
+	@GuardedBy("this")
+	private List<String> getLinesInMemory(final int from, final int max) {
+		final List<String> result = new ArrayList<>();
+		int segmentStart = firstLineInMemory_;
+		final Iterator<List<String>> segments = segments_.iterator();
+		while (segments.hasNext() && result.size() < max) {
+			final List<String> segment = segments.next();
+			final int segmentEnd = segmentStart + segment.size();
+			if (from < segmentEnd) {
+				final int start = Math.max(from, segmentStart) - segmentStart;
+				final int end = (int) Math.min(segment.size(),
+						(long) start + max - result.size());
+				result.addAll(segment.subList(start, end));
+			}
+			segmentStart = segmentEnd;
+		}
+		return result;
+	}
+
+	private List<String> readLines(final long offset, final int skip,
+			final int count) throws IOException {
+		final RandomAccessFile file = new RandomAccessFile(file_, "r");
+		try {
+			file.seek(offset);
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					Channels.newInputStream(file.getChannel()),
+					StandardCharsets.UTF_8));
+			for (int i = 0; i < skip; i++) {
+				in.readLine();
+			}
+			final List<String> result = new ArrayList<>(count);
+			String line;
+			while (result.size() < count && (line = in.readLine()) != null) {
+				result.add(line);
+			}
+			return result;
+		} finally {
+			Utils.closeQuietly(file);
+		}
+	}
+
+	/**
+	 * @return the current line, which is not terminated yet
+	 */
+	public synchronized String getLastLine() {
+		return lastLine_.toString();
+	}
+
+	/**
+	 * Lines that are not in memory any more are read from the log file.
+	 *
+	 * @param maxLines
+	 * @return at most the given number of the most recent lines followed by
+	 *         the current line
+	 * @throws IOException
+	 *             if the lines cannot be read from the log file
+	 */
+	public String getTail(final int maxLines) throws IOException {
+		final int lineCount;
+		final String lastLine;
+		synchronized (this) {
+			lineCount = lineCount_;
+			lastLine = lastLine_.toString();
+		}
+		final StringBuilder result = new StringBuilder();
+		int from = Math.max(0, lineCount - maxLines);
+		while (from < lineCount) {
+			final List<String> lines = getLines(from, lineCount - from);
+			if (lines.isEmpty()) {
+				break;
+			}
+			// else
+			for (final String line : lines) {
+				result.append(line).append("\n");
+			}
+			from += lines.size();
+		}
+		return result.append(lastLine).toString();
+	}
+
+	/**
+	 * Waits until the log changes.
+	 *
+	 * @param version
+	 *            the version of the log that was seen last
+	 * @param timeoutMillis
+	 * @return {@code true} if the log changed since the version and
+	 *         {@code false} if the timeout elapsed
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitChange(final long version,
+			final long timeoutMillis) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (version_ == version) {
+			final long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			// else
+			wait(remaining);
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,553 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.annotation.Arg;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+/**
+ * Runs every experiment on every ontology for every type of inferences. The
+ * runs are independent cells of this matrix and are executed side by side,
+ * each on its own CPUs, so that they do not skew each others time
+ * measurements. The record of each cell is copied to the results as soon as
+ * the cell finishes, together with its {@link ColumnarRecord}. With
+ * {@code --warm} the Java experiments of each CPUs run in one
+ * {@link ExperimentWorker}, which is stopped before other experiments on its
+ * CPUs if the memory does not suffice for both.
+ */
+public class ExperimentMatrix {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(ExperimentMatrix.class);
+
+	public static final String OPT_TIMEOUT = "timeout";
+	public static final String OPT_GLOBAL_TIMEOUT = "global_timeout";
+	public static final String OPT_MACHINE = "machine";
+	public static final String OPT_SCRIPTS = "scripts";
+	public static final String OPT_WORKSPACE = "workspace";
+	public static final String OPT_CELL_CPUS = "cell-cpus";
+	public static final String OPT_WARM = "warm";
+
+	public static final Integer DEFAULT_CELL_CPUS = 1;
+
+	public static class Options {
+		@Arg(dest = OPT_TIMEOUT)
+		public String timeout;
+		@Arg(dest = OPT_GLOBAL_TIMEOUT)
+		public String globalTimeout;
+		@Arg(dest = OPT_MACHINE)
+		public String machine;
+		@Arg(dest = OPT_SCRIPTS)
+		public String scripts;
+		@Arg(dest = OPT_WORKSPACE)
+		public File workspace;
+		@Arg(dest = OPT_CELL_CPUS)
+		public Integer cellCpus;
+		@Arg(dest = OPT_WARM)
+		public boolean warm;
+	}
+
+	private static final String WS_QUERIES_ = "queries";
+	private static final String WS_INFS_ = "inferences";
+	private static final String WS_EXPS_ = "experiments";
+	private static final String WS_LOGS_ = "logs";
+	private static final String WS_RESULTS_ = "results";
+
+	private static final String QUERIES_SUFFIX_ = ".queries.seed1";
+	private static final String RECORD_FILE_ = "record.csv";
+	private static final String WORKER_ = "worker.";
+	private static final String JAVA_EXPERIMENT_SCRIPT_ = "run_java_experiment.sh";
+	private static final String LOG4J_CONFIGURATION_ = "log4j2-paramfiles.xml";
+	private static final long WORKER_POLL_MILLIS_ = 50;
+
+	private static final String TIME_LOG_FORMAT_ = "yy-MM-dd HH:mm:ss";
+	private static final String DATE_FORMAT_ = "yy-MM-dd";
+
+	public static void main(final String[] args) {
+
+		final ArgumentParser parser = ArgumentParsers
+				.newArgumentParser(ExperimentMatrix.class.getSimpleName())
+				.description(
+						"Runs all experiments on all ontologies in parallel, each on its own CPUs.");
+		parser.addArgument(OPT_TIMEOUT)
+				.help("the local timeout passed to the experiments");
+		parser.addArgument(OPT_GLOBAL_TIMEOUT)
+				.help("the global timeout passed to the experiments");
+		parser.addArgument(OPT_MACHINE)
+				.help("the machine name used in the names of result files");
+		parser.addArgument(OPT_SCRIPTS)
+				.help("the directory passed to the experiments as scripts directory");
+		parser.addArgument(OPT_WORKSPACE).type(File.class)
+				.help("the workspace with experiments, queries and inferences");
+		parser.addArgument("--" + OPT_CELL_CPUS).dest(OPT_CELL_CPUS)
+				.type(Integer.class)
+				.setDefault(DEFAULT_CELL_CPUS)
+				.help("how many CPUs are dedicated to one experiment run (default: "
+						+ DEFAULT_CELL_CPUS + ")");
+		parser.addArgument("--" + OPT_WARM).dest(OPT_WARM)
+				.action(Arguments.storeTrue())
+				.help("run the Java experiments in workers that stay alive and warm up each experiment");
+
+		try {
+
+			final Options opt = new Options();
+			parser.parseArgs(args, opt);
+
+			final ExperimentMatrix matrix = new ExperimentMatrix(opt,
+					SystemResources.getExperimentCpus(),
+					SystemResources.getExperimentMemory());
+			final int failed = matrix.run();
+			if (failed > 0) {
+				LOGGER_.error("{} experiment runs failed!", failed);
+				System.exit(1);
+			}
+
+		} catch (final ArgumentParserException e) {
+			parser.handleError(e);
+			System.exit(2);
+		} catch (final IOException e) {
+			LOGGER_.error("Cannot run the experiments!", e);
+			System.exit(1);
+		} catch (final InterruptedException e) {
+			LOGGER_.error("Interrupted!", e);
+			System.exit(1);
+		}
+	}
+
+	private final Options options_;
+	private final File queriesDir_;
+	private final File infsDir_;
+	private final File expsDir_;
+	private final File logsDir_;
+	private final File resultsDir_;
+	private final File columnsDir_;
+	private final CpuPool cpus_;
+	private final int parallelism_;
+	private final String date_;
+	/**
+	 * The idle workers if the experiments run warm, otherwise {@code null}.
+	 */
+	private final BlockingQueue<Worker> workers_;
+	private final List<Worker> allWorkers_ = new ArrayList<>();
+	/**
+	 * Whether a worker may stay alive while another experiment starts a JVM
+	 * on its CPUs.
+	 */
+	private final boolean keepWorkers_;
+	@GuardedBy("this")
+	private final Map<File, Boolean> javaExperiments_ = new HashMap<>();
+	@GuardedBy("this")
+	private final Map<String, QueryDictionary> dictionaries_ = new HashMap<>();
+
+	ExperimentMatrix(final Options options, final CpuSet cpus,
+			final long memory) {
+		this.options_ = options;
+		this.queriesDir_ = new File(options.workspace, WS_QUERIES_);
+		this.infsDir_ = new File(options.workspace, WS_INFS_);
+		this.expsDir_ = new File(options.workspace, WS_EXPS_);
+		this.logsDir_ = new File(options.workspace, WS_LOGS_);
+		this.resultsDir_ = new File(options.workspace, WS_RESULTS_);
+		this.columnsDir_ = new File(resultsDir_, ColumnarRecord.DIRECTORY);
+		this.cpus_ = new CpuPool(cpus);
+		// each cell may start a JVM
+		final long byMemory = memory / SystemResources.getJvmMemory();
+		final int byCpus = cpus.size() / Math.max(1, options.cellCpus);
+		this.parallelism_ = (int) Math.max(1, Math.min(byCpus, byMemory));
+		// an idle worker keeps its heap
+		this.keepWorkers_ = memory >= 2 * parallelism_
+				* SystemResources.getJvmMemory();
+		this.date_ = new SimpleDateFormat(DATE_FORMAT_).format(new Date());
+		if (options.warm) {
+			// each worker keeps its CPUs
+			this.workers_ = new LinkedBlockingQueue<>();
+			for (int i = 0; i < parallelism_; i++) {
+				final Worker worker = new Worker(i, cpus_.acquire(
+						Math.min(options.cellCpus, cpus.size())));
+				workers_.add(worker);
+				allWorkers_.add(worker);
+			}
+		} else {
+			this.workers_ = null;
+		}
+	}
+
+	/**
+	 * An {@link ExperimentWorker} on its own CPUs, which is started when it is
+	 * needed first and again when it stopped.
+	 */
+	private class Worker {
+		final int number;
+		final CpuSet cpus;
+		Process process = null;
+		int port;
+
+		Worker(final int number, final CpuSet cpus) {
+			this.number = number;
+			this.cpus = cpus;
+		}
+
+		int getPort() throws IOException, InterruptedException {
+			if (process != null && process.isAlive()) {
+				// a worker stops accepting runs before it exits
+				try {
+					new Socket(InetAddress.getLoopbackAddress(), port).close();
+					return port;
+				} catch (final IOException e) {
+					stop();
+				}
+			}
+			// else
+			final String name = WORKER_ + number;
+			final File portFile = new File(logsDir_, name + ".port");
+			Files.deleteIfExists(portFile.toPath());
+			final List<String> command = new ArrayList<>();
+			command.add(new File(System.getProperty("java.home"), "bin/java")
+					.getPath());
+			final String memoryOptions = System
+					.getenv(SystemResources.ENV_JAVA_MEMORY_OPTIONS);
+			if (memoryOptions != null && !memoryOptions.trim().isEmpty()) {
+				command.addAll(
+						Arrays.asList(memoryOptions.trim().split("\\s+")));
+			}
+			command.addAll(ExperimentWorker.getJvmOptions());
+			command.add("-Dlog4j.configurationFile=" + LOG4J_CONFIGURATION_);
+			command.add("-Dlog.file.out="
+					+ new File(logsDir_, name + ".out.log"));
+			command.add("-Dlog.file.err="
+					+ new File(logsDir_, name + ".err.log"));
+			command.addAll(Arrays.asList("-cp",
+					System.getProperty("java.class.path"),
+					ExperimentWorker.class.getName(), portFile.getPath()));
+			process = new ProcessBuilder(
+					cpus == null ? command : cpus.pin(command))
+							.redirectErrorStream(true)
+							.redirectOutput(new File(logsDir_, name + ".log"))
+							.start();
+			while (!portFile.exists()) {
+				if (!process.isAlive()) {
+					throw new IOException("worker " + number + " exited with "
+							+ process.exitValue());
+				}
+				// else
+				Thread.sleep(WORKER_POLL_MILLIS_);
+			}
+			port = Integer.parseInt(new String(
+					Files.readAllBytes(portFile.toPath()),
+					StandardCharsets.US_ASCII).trim());
+			log("started worker " + number + " on CPUs " + cpus);
+			return port;
+		}
+
+		/**
+		 * Stops the worker and waits until it exited.
+		 *
+		 * @return whether it was running
+		 * @throws InterruptedException
+		 */
+		boolean stop() throws InterruptedException {
+			if (process == null || !process.isAlive()) {
+				return false;
+			}
+			// else
+			process.destroyForcibly().waitFor();
+			return true;
+		}
+
+	}
+
+	private static class Cell {
+		final String infType;
+		final File experiment;
+		final String experimentName;
+		final String name;
+
+		Cell(final String infType, final File experiment, final String name) {
+			this.infType = infType;
+			this.experiment = experiment;
+			this.experimentName = dropSuffix(experiment.getName(), ".sh");
+			this.name = name;
+		}
+
+	}
+
+	private static String dropSuffix(final String name, final String suffix) {
+		return name.endsWith(suffix)
+				? name.substring(0, name.length() - suffix.length())
+				: name;
+	}
+
+	private static String[] listSorted(final File dir) {
+		final String[] result = dir.list();
+		if (result == null) {
+			return new String[0];
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * @param experiment
+	 * @return whether the script of the experiment runs it with
+	 *         {@value #JAVA_EXPERIMENT_SCRIPT_}, i.e., whether it can run in a
+	 *         worker
+	 * @throws IOException
+	 */
+	private synchronized boolean isJava(final File experiment)
+			throws IOException {
+		Boolean result = javaExperiments_.get(experiment);
+		if (result == null) {
+			result = new String(Files.readAllBytes(experiment.toPath()),
+					StandardCharsets.UTF_8).contains(JAVA_EXPERIMENT_SCRIPT_);
+			javaExperiments_.put(experiment, result);
+		}
+		return result;
+	}
+
+	List<Cell> getCells() {
+		final List<Cell> cells = new ArrayList<>();
+		for (final String infType : listSorted(infsDir_)) {
+			final File infDir = new File(infsDir_, infType);
+			if (!infDir.isDirectory()) {
+				continue;
+			}
+			for (final String experiment : listSorted(expsDir_)) {
+				for (final String name : listSorted(infDir)) {
+					if (new File(infDir, name).isDirectory()) {
+						cells.add(new Cell(infType,
+								new File(expsDir_, experiment), name));
+					}
+				}
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Runs all cells.
+	 *
+	 * @return the number of cells that failed
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	int run() throws IOException, InterruptedException {
+		final List<Cell> cells = getCells();
+		Utils.cleanIfNotDir(resultsDir_);
+		Utils.cleanIfNotDir(columnsDir_);
+		Utils.cleanIfNotDir(logsDir_);
+		log("running " + cells.size() + " experiment runs, " + parallelism_
+				+ " at once on CPUs " + cpus_.getCpus()
+				+ (workers_ == null ? "" : " in warm workers"));
+
+		final ExecutorService executor = Executors
+				.newFixedThreadPool(parallelism_);
+		final AtomicInteger done = new AtomicInteger(0);
+		final AtomicInteger failed = new AtomicInteger(0);
+		for (final Cell cell : cells) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!runCell(cell)) {
+							failed.incrementAndGet();
+						}
+					} catch (final IOException | RuntimeException e) {
+						failed.incrementAndGet();
+						log("experiment " + cell.experimentName + " on "
+								+ cell.name + " (" + cell.infType
+								+ " inferences) failed: " + e);
+						LOGGER_.error("Experiment run {} on {} failed!",
+								cell.experimentName, cell.name, e);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					log("finished " + done.incrementAndGet() + " of "
+							+ cells.size() + " experiment runs");
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} finally {
+			for (final Worker worker : allWorkers_) {
+				worker.stop();
+			}
+		}
+		if (failed.get() > 0) {
+			log(failed.get() + " of " + cells.size()
+					+ " experiment runs failed");
+		}
+		return failed.get();
+	}
+
+	/**
+	 * @param cell
+	 * @return whether the experiment exited normally and produced a record
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private boolean runCell(final Cell cell)
+			throws IOException, InterruptedException {
+		final String dirName = date_ + "." + cell.name + "."
+				+ cell.experimentName + "." + options_.machine + "."
+				+ cell.infType;
+		final File logDir = new File(logsDir_, dirName);
+		// the experiment may recreate its output directory
+		final File outputLog = new File(logsDir_, dirName + ".log");
+		Utils.cleanDir(logDir);
+
+		final List<String> command = Arrays.asList(
+				cell.experiment.getPath(), options_.timeout,
+				options_.globalTimeout,
+				new File(queriesDir_, cell.name + QUERIES_SUFFIX_).getPath(),
+				new File(new File(infsDir_, cell.infType), cell.name)
+						.getPath(),
+				options_.scripts, logDir.getPath());
+
+		final Worker worker = workers_ == null ? null : workers_.take();
+		if (worker != null && !keepWorkers_ && !isJava(cell.experiment)
+				&& worker.stop()) {
+			log("stopped worker " + worker.number + " to free its memory for "
+					+ cell.experimentName);
+		}
+		final CpuSet cpus = worker == null
+				? cpus_.acquire(
+						Math.min(options_.cellCpus, cpus_.getCpus().size()))
+				: worker.cpus;
+		if (cpus == null) {
+			log("no free CPUs for experiment " + cell.experimentName + " on "
+					+ cell.name + ", running it unpinned");
+		}
+		final int exitCode;
+		try {
+			log("running experiment " + cell.experimentName + " on "
+					+ cell.name + " (" + cell.infType + " inferences, CPUs "
+					+ cpus + ")");
+			final ProcessBuilder builder = new ProcessBuilder(
+					cpus == null ? command : cpus.pin(command))
+							.redirectErrorStream(true).redirectOutput(outputLog);
+			if (worker != null && isJava(cell.experiment)) {
+				try {
+					builder.environment().put(ExperimentWorker.ENV_WORKER_PORT,
+							"" + worker.getPort());
+				} catch (final IOException e) {
+					log("cannot start worker " + worker.number
+							+ ", running experiment " + cell.experimentName
+							+ " on " + cell.name + " cold: " + e.getMessage());
+				}
+			}
+			final Process process = builder.start();
+			exitCode = process.waitFor();
+			if (exitCode != 0) {
+				log("experiment " + cell.experimentName + " on " + cell.name
+						+ " exited with " + exitCode + ", see " + outputLog);
+			}
+		} finally {
+			if (worker == null) {
+				cpus_.release(cpus);
+			} else {
+				workers_.add(worker);
+			}
+		}
+
+		final File record = new File(logDir, RECORD_FILE_);
+		if (record.exists()) {
+			// before the CSV, so that it is there when the CSV is noticed
+			try {
+				ColumnarRecord.convert(record,
+						new File(columnsDir_, dirName + ColumnarRecord.SUFFIX),
+						getDictionary(cell.name));
+			} catch (final IOException e) {
+				log("cannot convert the record of " + cell.experimentName
+						+ " on " + cell.name + ": " + e.getMessage());
+				LOGGER_.error("Cannot convert record!", e);
+			}
+			// make the result visible only when it is complete
+			final File result = new File(resultsDir_, dirName + ".csv");
+			final File tmp = new File(resultsDir_, "." + dirName + ".tmp");
+			Files.copy(record.toPath(), tmp.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp.toPath(), result.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			return exitCode == 0;
+		}
+		// else
+		log("experiment " + cell.experimentName + " on " + cell.name
+				+ " produced no record, see " + outputLog);
+		return false;
+	}
+
+	/**
+	 * @param name
+	 *            the name of an ontology
+	 * @return the dictionary shared by all records on the ontology
+	 * @throws IOException
+	 */
+	private synchronized QueryDictionary getDictionary(final String name)
+			throws IOException {
+		QueryDictionary result = dictionaries_.get(name);
+		if (result == null) {
+			result = new QueryDictionary(
+					new File(columnsDir_, name + QueryDictionary.SUFFIX));
+			dictionaries_.put(name, result);
+		}
+		return result;
+	}
+
+	private static synchronized void log(final String message) {
+		System.out.println(
+				new SimpleDateFormat(TIME_LOG_FORMAT_).format(new Date()) + " "
+						+ message);
+	}
+
+}
@@ -23,27 +23,34 @@ package com.github.joergschwabe;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -64,21 +71,41 @@ public class ExperimentServer extends NanoHTTPD {
 			.getLogger(ExperimentServer.class);
 
 	public static final String OPT_PORT = "port";
+	public static final String OPT_ENGINE = "engine";
 	public static final String OPT_EXPERIMENTS = "exps";
 	public static final String OPT_WORKSPACE = "workspace";
 	public static final String OPT_COMMAND = "command";
+	public static final String OPT_JOBS = "jobs";
+	public static final String OPT_PLOT_POINTS = "plot-points";
+	public static final String OPT_PLOT_SAMPLING = "plot-sampling";
+	public static final String OPT_MAX_UPLOAD = "max-upload";
 
 	public static final Integer DEFAULT_PORT = 80;
+	public static final String DEFAULT_ENGINE = "nanohttpd";
+	public static final Integer DEFAULT_MAX_QUEUED_JOBS = 64;
+	public static final Integer DEFAULT_PLOT_POINTS = 1000;
+	public static final String DEFAULT_PLOT_SAMPLING = "lttb";
+	public static final Long DEFAULT_MAX_UPLOAD = 16384L;
 
 	public static class Options {
 		@Arg(dest = OPT_PORT)
 		public Integer port;
+		@Arg(dest = OPT_ENGINE)
+		public String engine;
 		@Arg(dest = OPT_EXPERIMENTS)
 		public File experiments;
 		@Arg(dest = OPT_WORKSPACE)
 		public File workspace;
 		@Arg(dest = OPT_COMMAND)
 		public String[] command;
+		@Arg(dest = OPT_JOBS)
+		public Integer jobs;
+		@Arg(dest = OPT_PLOT_POINTS)
+		public Integer plotPoints;
+		@Arg(dest = OPT_PLOT_SAMPLING)
+		public String plotSampling;
+		@Arg(dest = OPT_MAX_UPLOAD)
+		public Long maxUpload;
 	}
 
 	public static void main(final String[] args) {
@@ -91,17 +118,44 @@ public class ExperimentServer extends NanoHTTPD {
 				.setDefault(DEFAULT_PORT)
 				.help("the port on which the server listens (default: "
 						+ DEFAULT_PORT + ")");
+		parser.addArgument("--" + OPT_ENGINE)
+				.choices("nanohttpd", "nio", "virtual")
+				.setDefault(DEFAULT_ENGINE)
+				.help("how connections are served: a thread per connection, an event loop, or a virtual thread per connection, which needs Java 21 (default: "
+						+ DEFAULT_ENGINE + ")");
 		parser.addArgument("--" + OPT_EXPERIMENTS)
 				.type(Arguments.fileType().verifyExists().verifyIsDirectory())
 				.required(true)
 				.help("the directory that contains available experiments");
 		parser.addArgument("--" + OPT_WORKSPACE).type(File.class).required(true)
 				.help("the directory in which the experiment manipulates files");
+		final int defaultMaxJobs = JobScheduler.getDefaultMaxRunning();
+		parser.addArgument("--" + OPT_JOBS).type(Integer.class)
+				.setDefault(defaultMaxJobs)
+				.help("how many experiments may run at once (default: "
+						+ defaultMaxJobs
+						+ ", computed from available cores and memory)");
+		parser.addArgument("--" + OPT_PLOT_POINTS).dest(OPT_PLOT_POINTS)
+				.type(Integer.class)
+				.setDefault(DEFAULT_PLOT_POINTS)
+				.help("how many points of each line of a plot are sent for the shown range of queries (default: "
+						+ DEFAULT_PLOT_POINTS + ")");
+		parser.addArgument("--" + OPT_PLOT_SAMPLING).dest(OPT_PLOT_SAMPLING)
+				.choices("lttb", "quantiles").setDefault(DEFAULT_PLOT_SAMPLING)
+				.help("how the points of a line are chosen if there are more (default: "
+						+ DEFAULT_PLOT_SAMPLING + ")");
+		parser.addArgument("--" + OPT_MAX_UPLOAD).dest(OPT_MAX_UPLOAD)
+				.type(Long.class)
+				.setDefault(DEFAULT_MAX_UPLOAD)
+				.help("how many megabytes of ontologies may be uploaded (default: "
+						+ DEFAULT_MAX_UPLOAD + ")");
 		parser.addArgument(OPT_COMMAND).nargs("+").help(
 				"the command that starts the experiment and its arguments\n"
 						+ "(" + PATTERN_TIMEPUT_
-						+ " will be substituted for timeout and "
-						+ PATTERN_GLOBAL_TIMEPUT_ + " for global timeout)");
+						+ " will be substituted for timeout, "
+						+ PATTERN_GLOBAL_TIMEPUT_ + " for global timeout and "
+						+ PATTERN_WORKSPACE_
+						+ " for the workspace of the experiment)");
 
 		try {
 
@@ -109,10 +163,19 @@ public class ExperimentServer extends NanoHTTPD {
 			parser.parseArgs(args, opt);
 
 			LOGGER_.info("Binding server to port {}", opt.port);
+			LOGGER_.info("engine={}", opt.engine);
 			LOGGER_.info("workspace={}", opt.workspace);
 			LOGGER_.info("command={}", Arrays.toString(opt.command));
-			new ExperimentServer(opt.port, opt.experiments, opt.workspace,
-					opt.command);
+			LOGGER_.info("jobs={}", opt.jobs);
+			LOGGER_.info("plot points={} sampling={}", opt.plotPoints,
+					opt.plotSampling);
+			LOGGER_.info("max upload={} MB", opt.maxUpload);
+			new ExperimentServer(opt.port,
+					Engine.valueOf(opt.engine.toUpperCase()), opt.experiments,
+					opt.workspace,
+					opt.jobs, opt.plotPoints,
+					ResultsPlot.Sampling.valueOf(opt.plotSampling.toUpperCase()),
+					opt.maxUpload << 20, opt.command);
 
 		} catch (final IOException e) {
 			LOGGER_.error("Cannot start server!", e);
@@ -123,44 +186,197 @@ public class ExperimentServer extends NanoHTTPD {
 		}
 	}
 
-	private static final String WS_INPUT_ = "input";
-	private static final String WS_EXPS_ = "experiments";
-	private static final String WS_RESULTS_ = "results";
-	private static final String WS_PLOTS_ = "plots";
-	private static final String WS_RESULTS_ARCHIVE_ = "results.zip";
+	private static final String WS_JOBS_ = "jobs";
+	private static final String WS_DOWNLOADS_ = "downloads";
+	private static final String WS_ENCODINGS_ = "encodings";
+	/**
+	 * The directory in which the experiment command keeps the queries and
+	 * encodings that it generated for an ontology, see
+	 * {@code run_ELK-SAT_experiments.sh}.
+	 */
+	public static final String ENV_ENCODING_CACHE = "ENCODING_CACHE";
+
+	/**
+	 * How the connections to the server are served.
+	 */
+	public enum Engine {
+		/**
+		 * A thread of {@link NanoHTTPD} for each connection.
+		 */
+		NANOHTTPD,
+		/**
+		 * An event loop of {@link NioHttpServer} for all connections.
+		 */
+		NIO,
+		/**
+		 * A virtual thread for each connection, otherwise as
+		 * {@link #NANOHTTPD}.
+		 */
+		VIRTUAL
+	}
 
-	public ExperimentServer(final int port, final File availableExpsDir,
-			final File workspace, final String... command) throws IOException {
+	public ExperimentServer(final int port, final Engine engine,
+			final File availableExpsDir,
+			final File workspace, final int maxJobs, final int plotPoints,
+			final ResultsPlot.Sampling plotSampling, final long maxUpload,
+			final String... command) throws IOException {
 		super(port);
 		this.availableExpsDir_ = availableExpsDir;
 		this.workspace_ = workspace;
+		this.plotPoints_ = plotPoints;
+		this.plotSampling_ = plotSampling;
+		this.maxUpload_ = maxUpload;
 		Utils.cleanIfNotDir(this.workspace_);
-		this.inputDir_ = new File(workspace, WS_INPUT_);
-		Utils.cleanIfNotDir(this.inputDir_);
-		this.expsDir_ = new File(workspace, WS_EXPS_);
-		this.resultsDir_ = new File(workspace, WS_RESULTS_);
-		this.plotsDir_ = new File(resultsDir_, WS_PLOTS_);
-		this.resultsFile_ = new File(workspace, WS_RESULTS_ARCHIVE_);
+		final Map<String, String> environment = new HashMap<>();
+		environment.put(DownloadCache.ENV_DOWNLOAD_CACHE,
+				new File(workspace, WS_DOWNLOADS_).getAbsolutePath());
+		environment.put(ENV_ENCODING_CACHE,
+				new File(workspace, WS_ENCODINGS_).getAbsolutePath());
+		this.scheduler_ = new JobScheduler(new File(workspace, WS_JOBS_),
+				environment, maxJobs, DEFAULT_MAX_QUEUED_JOBS);
 		this.command_ = command;
-		start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+		switch (engine) {
+		case NIO:
+			this.nio_ = new NioHttpServer(new NioHttpServer.Handler() {
+				@Override
+				public void handle(final InputStream request,
+						final OutputStream response, final InetAddress address)
+						throws IOException {
+					final TempFileManager tempFiles = getTempFileManagerFactory()
+							.create();
+					try {
+						new HTTPSession(tempFiles, request, response, address)
+								.execute();
+					} finally {
+						tempFiles.clear();
+					}
+				}
+			}, port, newWorkers(), maxUpload + MAX_FORM_OVERHEAD_);
+			nio_.start();
+			break;
+		case VIRTUAL:
+			this.nio_ = null;
+			setAsyncRunner(new ExecutorAsyncRunner(newVirtualThreadExecutor()));
+			start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+			break;
+		default:
+			this.nio_ = null;
+			start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+		}
 		LOGGER_.info("Server running ;-)");
 	}
 
+	/**
+	 * @return an executor that runs each task in a new virtual thread
+	 * @throws IOException
+	 *             if the JVM does not support virtual threads
+	 */
+	private static ExecutorService newVirtualThreadExecutor()
+			throws IOException {
+		try {
+			// not available in Java 8
+			return (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (final ReflectiveOperationException e) {
+			throw new IOException("Virtual threads need Java 21 or newer", e);
+		}
+	}
+
+	/**
+	 * @return the executor that produces the responses of
+	 *         {@link NioHttpServer}, which uses virtual threads if possible
+	 */
+	private static ExecutorService newWorkers() {
+		try {
+			return newVirtualThreadExecutor();
+		} catch (final IOException e) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "http-worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs the connections of {@link NanoHTTPD} in an executor.
+	 */
+	private static class ExecutorAsyncRunner implements AsyncRunner {
+
+		private final ExecutorService executor_;
+		@GuardedBy("this")
+		private final List<ClientHandler> running_ = new ArrayList<>();
+
+		ExecutorAsyncRunner(final ExecutorService executor) {
+			this.executor_ = executor;
+		}
+
+		@Override
+		public void exec(final ClientHandler handler) {
+			synchronized (this) {
+				running_.add(handler);
+			}
+			executor_.execute(handler);
+		}
+
+		@Override
+		public synchronized void closed(final ClientHandler handler) {
+			running_.remove(handler);
+		}
+
+		@Override
+		public void closeAll() {
+			final List<ClientHandler> running;
+			synchronized (this) {
+				running = new ArrayList<>(running_);
+			}
+			for (final ClientHandler handler : running) {
+				handler.close();
+			}
+		}
+
+	}
+
+	@Override
+	public void stop() {
+		if (nio_ != null) {
+			nio_.stop();
+		}
+		super.stop();
+	}
+
 	private final File availableExpsDir_;
 	private final File workspace_;
-	private final File inputDir_;
-	private final File expsDir_;
-	private final File resultsDir_;
-	private final File plotsDir_;
-	private final File resultsFile_;
+	private final JobScheduler scheduler_;
+	private final int plotPoints_;
+	private final ResultsPlot.Sampling plotSampling_;
+	/**
+	 * The maximal number of bytes of uploaded ontologies.
+	 */
+	private final long maxUpload_;
 	private final String[] command_;
-
-	@GuardedBy("this")
-	private Process experimentProcess_ = null; 
-	@GuardedBy("this")
-	private StringBuilder experimentLog_ = new StringBuilder();
-	@GuardedBy("this")
-	private StringBuilder experimentLogLastLine_ = new StringBuilder();
+	/**
+	 * Write the files of uploaded archives while they are extracted.
+	 */
+	private final ExecutorService archiveWriters_ = Executors
+			.newFixedThreadPool(SystemResources.getAvailableProcessors(),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(final Runnable r) {
+							final Thread thread = new Thread(r,
+									"archive-writer");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+	/**
+	 * The server that owns the connections instead of {@link NanoHTTPD}, or
+	 * {@code null}.
+	 */
+	private final NioHttpServer nio_;
 
 	private static final String FIELD_TIMEOUT_ = "timeout";
 	private static final String FIELD_GLOBAL_TIMEOUT_ = "global_timeout";
@@ -172,14 +388,61 @@ public class ExperimentServer extends NanoHTTPD {
 	private static final String FIELD_UNTOLD_ = "untold";
 	private static final String FIELD_TAUT_ = "taut";
 	private static final String FIELD_NOBOTTOM_ = "nobottom";
+	/**
+	 * The source passed to the command when the server extracted the
+	 * uploaded archive into the ontologies directory of the job.
+	 */
+	private static final String SOURCE_EXTRACTED_ = "extracted";
+	private static final int MAX_FIELD_LENGTH_ = 65536;
+	/**
+	 * Bound on the other fields and the multipart framing of a request that
+	 * uploads ontologies.
+	 */
+	private static final long MAX_FORM_OVERHEAD_ = 1 << 20;
+	private static final String CHECKSUM_SUFFIX_ = ".sha256";
+
+	private static final String PARAM_SINCE_ = "since";
+	private static final String PARAM_LIMIT_ = "limit";
+	private static final String PARAM_OFFSET_ = "offset";
+	private static final String PARAM_SORT_ = "sort";
+	private static final String PARAM_ORDER_ = "order";
+	private static final String PARAM_FILTER_ = "filter";
+	private static final String PARAM_FROM_ = "from";
+	private static final String PARAM_TO_ = "to";
+	private static final String PARAM_POINTS_ = "points";
+	private static final String PARAM_ACTIVE_ = "active";
+	private static final String PARAM_LINE_ = "line";
+	private static final String PARAM_RANK_ = "rank";
+	private static final String PARAM_QUERY_ = "q";
+	private static final String PARAM_ONTOLOGY_ = "ontology";
+	private static final String PARAM_EXPERIMENT_ = "experiment";
+	private static final String PARAM_DATE_ = "date";
+	private static final String HEADER_NEXT_SINCE_ = "X-Next-Since";
+	private static final String HEADER_IF_NONE_MATCH_ = "if-none-match";
 
 	private static final int DEFAULT_TIMEOUT_ = 60;
+	/**
+	 * How many lines of the log are shown on a page.
+	 */
+	private static final int LOG_VIEW_LINES_ = 1000;
+	private static final int DEFAULT_LOG_LINES_LIMIT_ = 1000;
+	private static final int MAX_LOG_LINES_LIMIT_ = 10000;
+	private static final int DEFAULT_ROWS_LIMIT_ = 1000;
+	private static final int MAX_ROWS_LIMIT_ = 10000;
+	private static final int MAX_PLOT_POINTS_ = 100000;
+	/**
+	 * For how many seconds the results page may be used from a cache.
+	 */
+	private static final int RESULTS_MAX_AGE_ = 3600;
+
+	private static final String MIME_JSON_ = "application/json";
 	private static final int DEFAULT_GLOBAL_TIMEOUT_ = 3600;
 
 	// @formatter:off
 	private static final String TEMPLATE_INDEX_ = "<!DOCTYPE html>\n"
 			+ "<html>\n"
 			+ "<body>\n"
+			+ "%s"// submitted experiments
 			+ "  <h1>Choose experiment parameters:</h1>\n"
 			+ "  <form method='post' enctype='multipart/form-data'>\n"
 			+ "    <p><label for='" + FIELD_TIMEOUT_ + "'>Local timeout (seconds, 0 for no timeout):</label><br/>\n"
@@ -221,17 +484,29 @@ public class ExperimentServer extends NanoHTTPD {
 			+ "<html>\n"
 			+ "<body>\n"
 			+ "  <h1>Experiment log</h1>\n"
-			+ "  <p><a href=/kill/>Kill</a> (Carefully! No confirmation, no questions asked.)"
-			+ "  <pre id='log'>%s</pre>\n"
+			+ "  <p><a href=%1$s/kill/>Kill</a> (Carefully! No confirmation, no questions asked.)"
+			+ "  <a href=/>Submit another experiment.</a>"
+			+ "  <a href=%1$s/experiment.log>Download the full log.</a></p>\n"
+			+ "  <p id='status'>%2$s</p>\n"// queue status
+			+ "  <pre id='log'></pre>\n"
 			+ "  <script type='text/javascript'>\n"
-			+ "    var source = new EventSource('/log_source/');\n"
+			+ "    var queueStatus = document.getElementById('status');\n"
+			+ "    var log = document.getElementById('log');\n"
+			+ "    var lines = log.appendChild(document.createTextNode(''));\n"
+			+ "    var progress = log.appendChild(document.createTextNode(''));\n"
+			+ "    var source = new EventSource('%1$s/log_source/?since=%3$s');\n"
 			+ "    source.onmessage = function(event) {\n"
-			+ "      document.getElementById('log').innerHTML = event.data;\n"
-			+ "      if (event.lastEventId == 'last_log') {\n"
-			+ "        source.close();\n"
-			+ "        window.location.assign('/done/');\n"
-			+ "      }\n"
+			+ "      queueStatus.textContent = '';\n"
+			+ "      lines.appendData(event.data + '\\n');\n"
 			+ "    };\n"
+			+ "    source.addEventListener('" + LogEventStream.EVENT_PROGRESS + "', function(event) {\n"
+			+ "      queueStatus.textContent = '';\n"
+			+ "      progress.data = event.data;\n"
+			+ "    });\n"
+			+ "    source.addEventListener('" + LogEventStream.EVENT_DONE + "', function(event) {\n"
+			+ "      source.close();\n"
+			+ "      window.location.assign('%1$s/done/');\n"
+			+ "    });\n"
 			+ "  </script>\n"
 			+ "</body>\n"
 			+ "</html>";
@@ -239,49 +514,258 @@ public class ExperimentServer extends NanoHTTPD {
 			+ "<html>\n"
 			+ "<body>\n"
 			+ "  <h1>Experiment finished</h1>\n"
-			+ "  <p>View the results <a href=/results/>here</a>."
-			+ "  Download the results from <a href=/results.zip>here</a>."
+			+ "  <p>View the results <a href=%1$s/results/>here</a>."
+			+ "  Download the results as <a href=%1$s/results.zip>zip</a>"
+			+ "  or <a href=%1$s/results.tar.zst>tar.zst</a>."
 			+ "  Or start from beginning <a href=/>here</a>.</p>\n"
-			+ "  <pre id='log'>%s</pre>\n"
+			+ "  <p>%3$s Download the full log <a href=%1$s/experiment.log>here</a>.</p>\n"
+			+ "  <pre id='log'>%2$s</pre>\n"
 			+ "</body>\n"
 			+ "</html>";
+	/**
+	 * The same for all jobs, the data is loaded from the API of the job.
+	 */
 	private static final String TEMPLATE_RESULTS_ = "<!doctype html>\n"
 			+ "<head>\n"
 			+ "  <script src=\"https://cdn.plot.ly/plotly-latest.min.js\"></script>"
 			+ "</head>\n"
 			+ "<body>\n"
 			+ "  <h1>Experiment results</h1>\n"
-			+ "  <p>Download the results from <a href=/results.zip>here</a>."
-			+ "  See the log <a href=/done/>here</a>.\n"
+			+ "  <p>Download the results as <a id='archive'>zip</a>"
+			+ "  or <a id='archive-zst'>tar.zst</a>."
+			+ "  See the log <a id='log'>here</a>.\n"
 			+ "  Or start from beginning <a href=/>here</a>.</p>\n"
-			+ "  %s\n"// The plots
-			+ "  %s\n"// The result list
+			+ "  <div id='plots'></div>\n"
+			+ "  <ul id='files'></ul>\n"
+			+ "<script>\n"
+			+ "  var base = location.pathname.replace(/\\/results\\/?$/, '');\n"
+			+ "  document.getElementById('archive').href = base + '/results.zip';\n"
+			+ "  document.getElementById('archive-zst').href = base + '/results.tar.zst';\n"
+			+ "  document.getElementById('log').href = base + '/done/';\n"
+			+ "  var allColors = ['#426CDA','#53CE40','#FFC100','#8B008B','#D2691E','#87CEFA','#008000','#FF00FF','#FF8C00','#A9A9A9'];\n"
+			+ "  function round(num) {\n"
+			+ "    return Math.round(num * 100) / 100;\n"
+			+ "  }\n"
+			+ "  function getTime(time) {\n"
+			+ "    if (time < 1) return round(time * 1000) + ' ms';\n"
+			+ "    return time < 60 ? round(time) + ' s' : round(time / 60) + ' min';\n"
+			+ "  }\n"
+			+ "  function escape(text) {\n"
+			+ "    var div = document.createElement('div');\n"
+			+ "    div.textContent = text;\n"
+			+ "    return div.innerHTML;\n"
+			+ "  }\n"
+			+ "  function getJson(uri, callback) {\n"
+			+ "    var request = new XMLHttpRequest();\n"
+			+ "    request.onload = function() {\n"
+			+ "      if (request.status == 200) callback(JSON.parse(request.responseText));\n"
+			+ "    };\n"
+			+ "    request.open('GET', uri);\n"
+			+ "    request.send();\n"
+			+ "  }\n"
+			+ "  function addElement(parent, tag) {\n"
+			+ "    return parent.appendChild(document.createElement(tag));\n"
+			+ "  }\n"
+			+ "  function addPlot(ontology) {\n"
+			+ "    var names = ontology.lines, expSize = names.length;\n"
+			+ "    var plots = document.getElementById('plots');\n"
+			+ "    var plot = addElement(plots, 'div');\n"
+			+ "    var clickinfo = addElement(plots, 'div'), hoverinfo = addElement(plots, 'div');\n"
+			+ "    clickinfo.style.marginLeft = hoverinfo.style.marginLeft = '80px';\n"
+			+ "    var colors = allColors.slice(0, expSize);\n"
+			+ "    if (ontology.hasMinimum) colors[expSize - 1] = '#000000';\n"
+			// the lines shown in the legend, the ranks of the loaded points,
+			// the zoomed range of queries and the clicked query
+			+ "    var active = [], ranks = [], range = null, clicked = null, requests = 0;\n"
+			+ "    var traces = [];\n"
+			+ "    for (var k = 0; k < expSize; k++) {\n"
+			+ "      active.push(true);\n"
+			+ "      ranks.push([]);\n"
+			+ "      traces.push({x: [], y: [], name: names[k], visible: true, mode: 'lines', text: [], hoverinfo: 'x+text', line: {color: colors[k]}});\n"
+			+ "    }\n"
+			// markers for red points on click
+			+ "    traces.push({x: [], y: [], mode: 'markers', visible: false});\n"
+			+ "    var layout = {\n"
+			+ "      hovermode: 'closest',\n"
+			+ "      title: 'Plot for ' + ontology.name,\n"
+			+ "      xaxis: {title: '% of queries', showline: true, tickvals: [0, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100],\n"
+			+ "        ticktext: ['', '10', '20', '30', '40', '50', '60', '70', '80', '90', '100'], mirror: 'ticks', linewidth: 1, autorange: true},\n"
+			+ "      yaxis: {type: 'log', tickvals: [0.001, 0.01, 0.1, 1, 10, 60], ticktext: ['', '0.01', '0.1', '1', '10', '60'],\n"
+			+ "        mirror: 'ticks', linewidth: 1, range: [-3, 2], title: 'time in seconds'}\n"
+			+ "    };\n"
+			+ "    function get(uri, params, callback) {\n"
+			+ "      var activeLines = [];\n"
+			+ "      for (var k = 0; k < expSize; k++) if (active[k]) activeLines.push(k);\n"
+			+ "      getJson(base + uri + encodeURIComponent(ontology.name) + '?" + PARAM_ACTIVE_ + "=' + activeLines.join(',') + params, callback);\n"
+			+ "    }\n"
+			+ "    function load() {\n"
+			+ "      var params = range == null ? '' : '&" + PARAM_FROM_ + "=' + range[0] + '&" + PARAM_TO_ + "=' + range[1];\n"
+			+ "      var request = ++requests;\n"
+			+ "      get('/api/results/', params, function(data) {\n"
+			+ "        if (request != requests) return;\n"
+			+ "        var update = {x: [], y: [], text: []}, indices = [];\n"
+			+ "        for (var k = 0; k < expSize; k++) {\n"
+			+ "          var line = data.lines[k];\n"
+			+ "          if (line == null) continue;\n"
+			+ "          ranks[k] = line.r;\n"
+			+ "          update.x.push(line.x);\n"
+			+ "          update.y.push(line.y);\n"
+			+ "          update.text.push(line.y.map(getTime));\n"
+			+ "          indices.push(k);\n"
+			+ "        }\n"
+			+ "        if (indices.length > 0) Plotly.restyle(plot, update, indices);\n"
+			+ "        if (clicked != null) showQuery('&" + PARAM_QUERY_ + "=' + encodeURIComponent(clicked), true);\n"
+			+ "      });\n"
+			+ "    }\n"
+			// the times of a query in all active lines
+			+ "    function showQuery(params, click) {\n"
+			+ "      get('/api/query/', params, function(data) {\n"
+			+ "        var info = click ? clickinfo : hoverinfo;\n"
+			+ "        var html = click ? '<b><span style=\"color:#FF0000\">QUERY: ' + escape(data.query) + '</span></b><br>'\n"
+			+ "            : '<b>QUERY: ' + escape(data.query) + '</b><br> ';\n"
+			+ "        var xArr = [], yArr = [], text = [];\n"
+			+ "        for (var k = 0; k < expSize; k++) {\n"
+			+ "          var point = data.points[k];\n"
+			+ "          if (point == null) continue;\n"
+			+ "          xArr.push(point.x);\n"
+			+ "          yArr.push(point.y);\n"
+			+ "          text.push(getTime(point.y));\n"
+			+ "          html += '<span style=\"color:' + colors[k] + '\"> ' + escape(names[k]) + ': </span>' + getTime(point.y) + (point.timedOut ? ' (timeout)' : '') + ' <br>';\n"
+			+ "        }\n"
+			+ "        info.innerHTML = html + (click ? '<br>' : '');\n"
+			+ "        if (click) {\n"
+			+ "          clicked = data.query;\n"
+			+ "          Plotly.restyle(plot, {x: [xArr], y: [yArr], text: [text], hoverinfo: 'x+text', showlegend: false, visible: true,\n"
+			+ "            marker: {size: 7, color: '#FF0000'}}, expSize);\n"
+			+ "        }\n"
+			+ "      });\n"
+			+ "    }\n"
+			+ "    function pointParams(data) {\n"
+			+ "      if (data.points.length != 1 || data.points[0].curveNumber >= expSize) return null;\n"
+			+ "      var k = data.points[0].curveNumber;\n"
+			+ "      return '&" + PARAM_LINE_ + "=' + k + '&" + PARAM_RANK_ + "=' + ranks[k][data.points[0].pointNumber];\n"
+			+ "    }\n"
+			+ "    function toggle(data) {\n"
+			+ "      active[data.curveNumber] = !active[data.curveNumber];\n"
+			+ "      load();\n"
+			+ "    }\n"
+			+ "    Plotly.newPlot(plot, traces, layout);\n"
+			+ "    plot.on('plotly_legendclick', toggle);\n"
+			+ "    plot.on('plotly_legenddoubleclick', function(data) {\n"
+			+ "      toggle(data);\n"
+			+ "      Plotly.restyle(plot, {visible: active[data.curveNumber] ? true : 'legendonly'}, data.curveNumber);\n"
+			+ "      return false;\n"
+			+ "    });\n"
+			+ "    plot.on('plotly_hover', function(data) {\n"
+			+ "      var params = pointParams(data);\n"
+			+ "      if (params == null) hoverinfo.innerHTML = '';\n"
+			+ "      else showQuery(params, false);\n"
+			+ "    });\n"
+			+ "    plot.on('plotly_unhover', function(data) {\n"
+			+ "      hoverinfo.innerHTML = '';\n"
+			+ "    });\n"
+			+ "    plot.on('plotly_click', function(data) {\n"
+			+ "      var params = pointParams(data);\n"
+			+ "      if (params != null) showQuery(params, true);\n"
+			+ "    });\n"
+			+ "    plot.on('plotly_doubleclick', function(data) {\n"
+			+ "      clicked = null;\n"
+			+ "      Plotly.restyle(plot, {x: [[]], y: [[]], visible: false}, expSize);\n"
+			+ "      clickinfo.innerHTML = '';\n"
+			+ "    });\n"
+			// load the points in full resolution for the zoomed range
+			+ "    plot.on('plotly_relayout', function(data) {\n"
+			+ "      if (data['xaxis.autorange']) {\n"
+			+ "        range = null;\n"
+			+ "        load();\n"
+			+ "      } else if (data['xaxis.range[0]'] !== undefined) {\n"
+			+ "        range = [data['xaxis.range[0]'], data['xaxis.range[1]']];\n"
+			+ "        load();\n"
+			+ "      }\n"
+			+ "    });\n"
+			+ "    load();\n"
+			+ "  }\n"
+			+ "  getJson(base + '/api/results', function(results) {\n"
+			+ "    results.ontologies.forEach(addPlot);\n"
+			+ "    var files = document.getElementById('files');\n"
+			+ "    results.files.forEach(function(file) {\n"
+			+ "      var link = addElement(addElement(files, 'li'), 'a');\n"
+			+ "      link.href = base + '/results/' + encodeURIComponent(file);\n"
+			+ "      link.textContent = file;\n"
+			+ "    });\n"
+			+ "  });\n"
+			+ "</script>\n"
 			+ "</body>";
+	private static final String ETAG_RESULTS_ = ETags.of(TEMPLATE_RESULTS_);
 	// The first line and no <html> tag seem to have huge impact on performance!
 	private static final String TEMPLATE_RESULT_FILE_ = "<!doctype html>\n"
 			+ "<body>\n"
-			+ "  <h1>%s</h1>\n"// Title
+			+ "  <h1>%1$s</h1>\n"// Title
+			+ "  <p>Download the file from <a href='%2$s/raw'>here</a>.</p>\n"
+			+ "  <p>Sort by <select id='sort'><option value=''>order in the file</option></select>\n"
+			+ "    <select id='order'><option value='asc'>ascending</option><option value='desc'>descending</option></select>\n"
+			+ "    show <select id='filter'><option value=''>all rows</option></select>\n"
+			+ "    <button id='prev'>&lt;</button> <span id='info'></span> <button id='next'>&gt;</button></p>\n"
 			+ "  <div id=\"handsontable-container\"></div>\n"
-			+ "  <pre id='data'>%s</pre>\n"// Result file
 			+ "  <script src=\"https://cdn.jsdelivr.net/handsontable/0.28.4/handsontable.full.min.js\"></script>\n"
-			+ "  <script src=\"https://cdn.jsdelivr.net/papaparse/4.1.2/papaparse.min.js\"></script>\n"
 			+ "  <script type='text/javascript'>\n"
-			+ "    var dataElement = document.getElementById('data')\n"
-			+ "    var dataString = dataElement.innerHTML\n"
-			+ "    dataElement.innerHTML = ''\n"
-			+ "    var data = Papa.parse(dataString, {header: true, skipEmptyLines: true})\n"
-			+ "    var handsontableContainer = document.getElementById('handsontable-container')\n"
-			+ "    Handsontable(handsontableContainer, {data: data.data, rowHeaders: true, colHeaders: data.meta.fields, columnSorting: true, wordWrap: false})\n"
+			+ "    var limit = %3$s, offset = 0, total = 0, table = null;\n"
+			+ "    var sort = document.getElementById('sort'), order = document.getElementById('order'), filter = document.getElementById('filter');\n"
+			+ "    function addOption(select, value, text) {\n"
+			+ "      var option = document.createElement('option');\n"
+			+ "      option.value = value;\n"
+			+ "      option.textContent = text;\n"
+			+ "      select.appendChild(option);\n"
+			+ "    }\n"
+			+ "    function load() {\n"
+			+ "      var query = '?" + PARAM_OFFSET_ + "=' + offset + '&" + PARAM_LIMIT_ + "=' + limit;\n"
+			+ "      if (sort.value) query += '&" + PARAM_SORT_ + "=' + encodeURIComponent(sort.value) + '&" + PARAM_ORDER_ + "=' + order.value;\n"
+			+ "      if (filter.value) query += '&" + PARAM_FILTER_ + "=' + encodeURIComponent(filter.value);\n"
+			+ "      var request = new XMLHttpRequest();\n"
+			+ "      request.onload = function() {\n"
+			+ "        var page = JSON.parse(request.responseText);\n"
+			+ "        var rowHeaders = [];\n"
+			+ "        for (var i = 0; i < page.rows.length; i++) rowHeaders.push(page.offset + i + 1);\n"
+			+ "        if (table == null) {\n"
+			+ "          page.columns.forEach(function(column, i) {\n"
+			+ "            addOption(sort, column, column);\n"
+			+ "            if (page.rows.length > 0 && /^(true|false)$/i.test(page.rows[0][i])) {\n"
+			+ "              addOption(filter, column, column + ' is true');\n"
+			+ "              addOption(filter, '!' + column, column + ' is false');\n"
+			+ "            }\n"
+			+ "          });\n"
+			+ "          table = new Handsontable(document.getElementById('handsontable-container'), {data: page.rows, rowHeaders: rowHeaders, colHeaders: page.columns, readOnly: true, wordWrap: false});\n"
+			+ "        } else {\n"
+			+ "          table.updateSettings({rowHeaders: rowHeaders});\n"
+			+ "          table.loadData(page.rows);\n"
+			+ "        }\n"
+			+ "        total = page.total;\n"
+			+ "        document.getElementById('info').textContent = (page.rows.length == 0 ? 0 : page.offset + 1) + '-' + (page.offset + page.rows.length) + ' of ' + total;\n"
+			+ "      };\n"
+			+ "      request.open('GET', '%2$s/rows' + query);\n"
+			+ "      request.send();\n"
+			+ "    }\n"
+			+ "    document.getElementById('prev').onclick = function() { if (offset > 0) { offset = Math.max(0, offset - limit); load(); } };\n"
+			+ "    document.getElementById('next').onclick = function() { if (offset + limit < total) { offset += limit; load(); } };\n"
+			+ "    sort.onchange = order.onchange = filter.onchange = function() { offset = 0; load(); };\n"
+			+ "    load();\n"
 			+ "  </script>\n"
 			+ "  <link rel=\"stylesheet\" href=\"https://cdn.jsdelivr.net/handsontable/0.28.4/handsontable.full.min.css\">\n"
 			+ "</body>";
-	private static final String TEMPLATE_ALREADY_RUNNING_ = "<!DOCTYPE html>\n"
+	private static final String TEMPLATE_QUEUE_FULL_ = "<!DOCTYPE html>\n"
 			+ "<html>\n"
 			+ "<body>\n"
-			+ "  <h1>An experiment is already running!</h1>\n"
-			+ "  <a href=/log/>See the log here.</a>\n"
+			+ "  <h1>Too many experiments are waiting!</h1>\n"
+			+ "  <a href=/>Try again later.</a>\n"
 			+ "</body>\n"
 			+ "</html>";
+	private static final String TEMPLATE_JOBS_ = ""
+			+ "  <h1>Submitted experiments:</h1>\n"
+			+ "  <ul>\n"
+			+ "%s"// jobs
+			+ "  </ul>\n";
+	private static final String TEMPLATE_JOB_ = ""
+			+ "    <li>%2$s: <a href=%1$s/log/>log</a>, <a href=%1$s/results/>results</a>%3$s</li>\n";
 	private static final String TEMPLATE_NOT_FOUND_ = "<!DOCTYPE html>\n"
 			+ "<html>\n"
 			+ "<body>\n"
@@ -302,60 +786,148 @@ public class ExperimentServer extends NanoHTTPD {
 			+ "</html>";
 	// @formatter:on
 
+	/**
+	 * Routes of a job start with this prefix. If it is missing, the route
+	 * refers to the most recently submitted job.
+	 */
+	private static final String URI_JOB_ = "^(?:/jobs/(?<job>[^/]+))?";
+	private static final String URI_JOB_FORMAT_ = "/jobs/%s";
+
 	private static final Pattern URI_INDEX_ = Pattern.compile("^/$");
-	private static final Pattern URI_LOG_ = Pattern.compile("^/log/?$");
+	private static final Pattern URI_LOG_ = Pattern
+			.compile(URI_JOB_ + "/log/?$");
+	private static final Pattern URI_LOG_LINES_ = Pattern
+			.compile(URI_JOB_ + "/log/lines/?$");
+	private static final Pattern URI_LOG_FILE_ = Pattern
+			.compile(URI_JOB_ + "/experiment.log$");
 	private static final Pattern URI_LOG_SOURCE_ = Pattern
-			.compile("^/log_source/?$");
-	private static final Pattern URI_DONE_ = Pattern.compile("^/done/?$");
-	private static final Pattern URI_KILL_ = Pattern.compile("^/kill/?$");
-	private static final Pattern URI_RESULTS_ = Pattern.compile("^/results/?$");
+			.compile(URI_JOB_ + "/log_source/?$");
+	private static final Pattern URI_DONE_ = Pattern
+			.compile(URI_JOB_ + "/done/?$");
+	private static final Pattern URI_KILL_ = Pattern
+			.compile(URI_JOB_ + "/kill/?$");
+	private static final Pattern URI_RESULTS_ = Pattern
+			.compile(URI_JOB_ + "/results/?$");
+	private static final Pattern URI_RESULTS_ROWS_ = Pattern
+			.compile(URI_JOB_ + "/results/(?<file>[^/]+)/rows/?$");
+	private static final Pattern URI_RESULTS_RAW_ = Pattern
+			.compile(URI_JOB_ + "/results/(?<file>[^/]+)/raw/?$");
 	private static final Pattern URI_RESULTS_FILE_ = Pattern
-			.compile("^/results/(?<file>[^/]+)$");
+			.compile(URI_JOB_ + "/results/(?<file>[^/]+)$");
+	private static final Pattern URI_API_RESULTS_ = Pattern
+			.compile(URI_JOB_ + "/api/results/?$");
+	private static final Pattern URI_API_ONTOLOGY_ = Pattern
+			.compile(URI_JOB_ + "/api/results/(?<ontology>[^/]+)/?$");
+	private static final Pattern URI_API_EXPERIMENT_ = Pattern.compile(
+			URI_JOB_ + "/api/results/(?<ontology>[^/]+)/(?<experiment>[^/]+)/?$");
+	private static final Pattern URI_API_QUERY_ = Pattern
+			.compile(URI_JOB_ + "/api/query/(?<ontology>[^/]+)/?$");
 	private static final Pattern URI_PLOT_FILE_ = Pattern
-			.compile("^/results/plots/(?<file>[^/]+)$");
+			.compile(URI_JOB_ + "/results/plots/(?<file>[^/]+)$");
 	private static final Pattern URI_RESULTS_ARCHIVE_ = Pattern
-			.compile("^/results.zip$");
+			.compile(URI_JOB_ + "/results\\.(?<format>zip|tar\\.zst)$");
 
 	@Override
 	public Response serve(final IHTTPSession session) {
 		LOGGER_.info("request URI: {}", session.getUri());
 		try {
 			final URI requestUri = new URI(session.getUri());
-			final Matcher uriResultsFileMatcher = URI_RESULTS_FILE_
-					.matcher(requestUri.getPath());
-			final Matcher uriPlotFileMatcher = URI_PLOT_FILE_
-					.matcher(requestUri.getPath());
-			if (URI_INDEX_.matcher(requestUri.getPath()).matches()) {
+			final String path = requestUri.getPath();
+			if (URI_INDEX_.matcher(path).matches()) {
 				return indexView(session);
-			} else if (URI_LOG_.matcher(requestUri.getPath()).matches()) {
-				return logView(session);
-			} else if (URI_LOG_SOURCE_.matcher(requestUri.getPath())
-					.matches()) {
-				return logSourceView(session);
-			} else if (URI_DONE_.matcher(requestUri.getPath()).matches()) {
-				return doneView(session);
-			} else if (URI_RESULTS_.matcher(requestUri.getPath()).matches()) {
-				return resultsView(session);
-			} else if (uriResultsFileMatcher.matches()) {
-				return resultFileView(session,
-						uriResultsFileMatcher.group("file"));
-			} else if (uriPlotFileMatcher.matches()) {
-				return plotFileView(session, uriPlotFileMatcher.group("file"));
-			} else if (URI_KILL_.matcher(requestUri.getPath()).matches()) {
-				return killView(session);
-			} else if (URI_RESULTS_ARCHIVE_.matcher(requestUri.getPath())
-					.matches()) {
-				return resultsArchiveView(session);
+			}
+			// else
+			Matcher m;
+			if ((m = URI_LOG_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: logView(session, job);
+			} else if ((m = URI_LOG_LINES_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: logLinesView(session, job);
+			} else if ((m = URI_LOG_FILE_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: logFileView(session, job);
+			} else if ((m = URI_LOG_SOURCE_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: logSourceView(session, job);
+			} else if ((m = URI_DONE_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: doneView(session, job);
+			} else if ((m = URI_RESULTS_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: resultsView(session, job);
+			} else if ((m = URI_API_RESULTS_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: apiResultsView(session, job);
+			} else if ((m = URI_API_ONTOLOGY_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: apiOntologyView(session, job, m.group("ontology"));
+			} else if ((m = URI_API_EXPERIMENT_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: apiExperimentView(session, job, m.group("ontology"),
+								m.group("experiment"));
+			} else if ((m = URI_API_QUERY_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: apiQueryView(session, job, m.group("ontology"));
+			} else if ((m = URI_PLOT_FILE_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: plotFileView(session, job, m.group("file"));
+			} else if ((m = URI_RESULTS_ROWS_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: resultRowsView(session, job, m.group("file"));
+			} else if ((m = URI_RESULTS_RAW_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: resultRawView(session, job, m.group("file"));
+			} else if ((m = URI_RESULTS_FILE_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: resultFileView(session, job, m.group("file"));
+			} else if ((m = URI_KILL_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: killView(session, job);
+			} else if ((m = URI_RESULTS_ARCHIVE_.matcher(path)).matches()) {
+				final ExperimentJob job = getJob(m);
+				return job == null ? newNotFoundResponse(path)
+						: resultsArchiveView(session, job,
+								ResultsArchive.Format.of(m.group("format")));
 			} else {
-				return newFixedLengthResponse(Status.NOT_FOUND,
-						NanoHTTPD.MIME_HTML, String.format(TEMPLATE_NOT_FOUND_,
-								requestUri.getPath()));
+				return newNotFoundResponse(path);
 			}
 		} catch (final URISyntaxException e) {
 			return newErrorResponse("Illegal request URI!", e);
 		}
 	}
 
+	/**
+	 * @param uriMatcher
+	 *            a matched URI of a job route
+	 * @return the job with the id from the URI, or the most recently submitted
+	 *         job if the URI does not contain an id, or {@code null} if there
+	 *         is no such job
+	 */
+	private ExperimentJob getJob(final Matcher uriMatcher) {
+		final String id = uriMatcher.group("job");
+		return id == null ? scheduler_.getLatestJob() : scheduler_.getJob(id);
+	}
+
+	private static String getJobUri(final ExperimentJob job) {
+		return String.format(URI_JOB_FORMAT_, job.getId());
+	}
+
 	private Response indexView(final IHTTPSession session) {
 		LOGGER_.info("index view");
 
@@ -369,16 +941,30 @@ public class ExperimentServer extends NanoHTTPD {
 		final String globalTimeoutValue;
 		final int globalTimeout;
 		final String sourceValue;
+		final Upload upload;
 		final String ontologies;
 		final String queryGenerationOptions;
 		final Set<String> selectedTools = new HashSet<>();
+		final Map<String, String> params = new HashMap<>();
+		try {
+			upload = receiveForm(session, params);
+		} catch (final UploadInputStream.TooLargeException e) {
+			LOGGER_.info("upload too large", e);
+			final Response response = newFixedLengthResponse(
+					Status.PAYLOAD_TOO_LARGE, NanoHTTPD.MIME_PLAINTEXT,
+					e.getMessage());
+			// the rest of the upload is not read
+			response.closeConnection(true);
+			return response;
+		} catch (final IOException | ResponseException e) {
+			final Response response = newErrorResponse(
+					"Cannot parse the request!", e);
+			response.closeConnection(true);
+			return response;
+		}
 		try {
 
-			final Map<String, String> files = new HashMap<String, String>();
-			session.parseBody(files);
-			final Map<String, String> params = session.getParms();
 			LOGGER_.info("params: {}", params);
-			LOGGER_.info("files: {}", files);
 
 			if (params.containsKey(FIELD_TIMEOUT_)) {
 				timeoutValue = params.get(FIELD_TIMEOUT_);
@@ -434,25 +1020,14 @@ public class ExperimentServer extends NanoHTTPD {
 				sourceValue = params.get(FIELD_SOURCE_);
 				if (FIELD_SOURCE_FILE_.equals(sourceValue)) {
 
-					if (params.containsKey(FIELD_ONTOLOGIES_)
-							&& files.containsKey(FIELD_ONTOLOGIES_)) {
-						Utils.cleanDir(inputDir_);
-						final File source = new File(
-								files.get(FIELD_ONTOLOGIES_));
-						final File target = new File(inputDir_,
-								params.get(FIELD_ONTOLOGIES_));
-						LOGGER_.info("ontolgiesTmpFile: {}", source);
-						if (source.exists()) {
-							LOGGER_.info("copying ontologies");
-							Files.copy(source.toPath(), target.toPath(),
-									StandardCopyOption.REPLACE_EXISTING);
-							ontologies = target.getAbsolutePath();
-						} else {
-							formDataIsReady = false;
-							ontologies = null;
-							validationMessages.put(FIELD_ONTOLOGIES_,
-									"<strong>Ontologies archive not provided!</strong><br/>\n");
-						}
+					if (upload != null) {
+						LOGGER_.info("uploaded ontologies: {}", upload.file);
+						ontologies = upload.file.getName();
+					} else if (params.containsKey(FIELD_ONTOLOGIES_)) {
+						formDataIsReady = false;
+						ontologies = null;
+						validationMessages.put(FIELD_ONTOLOGIES_,
+								"<strong>Ontologies archive not provided!</strong><br/>\n");
 					} else {
 						formDataIsReady = false;
 						ontologies = null;
@@ -468,6 +1043,7 @@ public class ExperimentServer extends NanoHTTPD {
 					}
 
 				} else {
+					discard(upload);
 					return newErrorResponse("Illegal value of field "
 							+ FIELD_SOURCE_ + ": " + params.get(FIELD_SOURCE_));
 				}
@@ -491,53 +1067,56 @@ public class ExperimentServer extends NanoHTTPD {
 			}
 			LOGGER_.info("selectedTools: {}", selectedTools);
 
-		} catch (final IOException | ResponseException e) {
-			return newErrorResponse("Cannot parse the request!", e);
+		} finally {
+			if (!formDataIsReady) {
+				discard(upload);
+			}
 		}
 
 		if (formDataIsReady) {
 			LOGGER_.info("Starting the experiments!");
 			try {
 
-				synchronized (this) {
-					if (experimentProcess_ != null) {
-						if (experimentProcess_.isAlive()) {
-							return newFixedLengthResponse(
-									TEMPLATE_ALREADY_RUNNING_);
-						} else {
-							try {
-								updateExperimentLog();
-							} catch (final IOException e) {
-								return newErrorResponse(
-										"Cannot read experiment log!", e);
-							}
-							experimentProcess_ = null;
-							final Response response = newFixedLengthResponse(
-									Status.REDIRECT, NanoHTTPD.MIME_HTML, "");
-							response.addHeader("Location", "/done/");
-							return response;
-						}
-					}
-					// else
-					Utils.cleanDir(expsDir_);
-					for (final String expFileName : selectedTools) {
-						final File source = new File(availableExpsDir_,
-								expFileName);
-						final File target = new File(expsDir_, expFileName);
-						Files.copy(source.toPath(), target.toPath(),
-								StandardCopyOption.REPLACE_EXISTING);
+				final ExperimentJob job;
+				final String jobSource;
+				final String jobOntologies;
+				if (upload == null || !FIELD_SOURCE_FILE_.equals(sourceValue)) {
+					discard(upload);
+					job = scheduler_.createJob();
+					jobSource = sourceValue;
+					jobOntologies = ontologies;
+				} else {
+					job = upload.job;
+					if (upload.extracted) {
+						jobSource = SOURCE_EXTRACTED_;
+						jobOntologies = job.getOntologiesDir()
+								.getAbsolutePath();
+					} else {
+						jobSource = sourceValue;
+						jobOntologies = upload.file.getAbsolutePath();
 					}
-					experimentLog_.setLength(0);
-					experimentLogLastLine_.setLength(0);
-					experimentProcess_ = new ProcessBuilder(substituteCommand(
-							command_, timeout, globalTimeout, sourceValue,
-							ontologies, queryGenerationOptions))
-									.redirectErrorStream(true).start();
+				}
+				Utils.cleanDir(job.getExperimentsDir());
+				for (final String expFileName : selectedTools) {
+					final File source = new File(availableExpsDir_,
+							expFileName);
+					final File target = new File(job.getExperimentsDir(),
+							expFileName);
+					Files.copy(source.toPath(), target.toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+				}
+				job.setCommand(substituteCommand(command_, timeout,
+						globalTimeout, jobSource, jobOntologies,
+						queryGenerationOptions,
+						job.getWorkspace().getPath()));
+				if (!scheduler_.submit(job)) {
+					return newFixedLengthResponse(Status.SERVICE_UNAVAILABLE,
+							NanoHTTPD.MIME_HTML, TEMPLATE_QUEUE_FULL_);
 				}
 
 				final Response response = newFixedLengthResponse(
 						Status.REDIRECT, NanoHTTPD.MIME_HTML, "");
-				response.addHeader("Location", "/log/");
+				response.addHeader("Location", getJobUri(job) + "/log/");
 				return response;
 
 			} catch (final IOException e) {
@@ -562,6 +1141,7 @@ public class ExperimentServer extends NanoHTTPD {
 				tools.append("</label>\n");
 			}
 			return newFixedLengthResponse(String.format(TEMPLATE_INDEX_,
+					jobsToString(),
 					validationMessages.get(FIELD_TIMEOUT_), timeoutValue,
 					validationMessages.get(FIELD_GLOBAL_TIMEOUT_),
 					globalTimeoutValue,
@@ -571,6 +1151,189 @@ public class ExperimentServer extends NanoHTTPD {
 
 	}
 
+	/**
+	 * Uploaded ontologies, which are stored in the workspace of a job that is
+	 * not submitted yet.
+	 */
+	private static class Upload {
+		final ExperimentJob job;
+		final File file;
+		/**
+		 * Whether the file is an archive that was extracted into the
+		 * ontologies directory of the job.
+		 */
+		final boolean extracted;
+
+		Upload(final ExperimentJob job, final File file,
+				final boolean extracted) {
+			this.job = job;
+			this.file = file;
+			this.extracted = extracted;
+		}
+
+	}
+
+	/**
+	 * Reads the fields of the submitted form. Uploaded ontologies are stored
+	 * and extracted while they arrive, instead of being stored in a temporary
+	 * file first.
+	 *
+	 * @param session
+	 * @param params
+	 *            into which the fields are put
+	 * @return the uploaded ontologies or {@code null} if there are none
+	 * @throws IOException
+	 * @throws ResponseException
+	 */
+	private Upload receiveForm(final IHTTPSession session,
+			final Map<String, String> params)
+			throws IOException, ResponseException {
+		final String contentType = session.getHeaders().get("content-type");
+		if (session.getMethod() != Method.POST
+				|| !MultipartStream.isMultipart(contentType)) {
+			session.parseBody(new HashMap<String, String>());
+			params.putAll(getParams(session));
+			return null;
+		}
+		// else
+		final String contentLength = session.getHeaders()
+				.get("content-length");
+		if (contentLength == null) {
+			throw new ResponseException(Status.LENGTH_REQUIRED,
+					"Content-Length required");
+		}
+		// else
+		final BoundedInputStream body;
+		try {
+			body = new BoundedInputStream(session.getInputStream(),
+					Long.parseLong(contentLength.trim()));
+		} catch (final NumberFormatException e) {
+			throw new ResponseException(Status.BAD_REQUEST,
+					"Illegal Content-Length: " + contentLength, e);
+		}
+		final MultipartStream parts = new MultipartStream(body, contentType);
+		Upload upload = null;
+		try {
+			Map<String, String> headers;
+			while ((headers = parts.nextPart()) != null) {
+				final String name = MultipartStream.getName(headers);
+				final String fileName = MultipartStream.getFileName(headers);
+				if (name == null) {
+					continue;
+				}
+				// else
+				if (fileName == null) {
+					params.put(name, parts.getValue(MAX_FIELD_LENGTH_));
+					continue;
+				}
+				// else
+				if (FIELD_ONTOLOGIES_.equals(name) && upload == null
+						&& !fileName.isEmpty()) {
+					// some browsers send the path
+					final String baseName = new File(fileName).getName();
+					params.put(name, baseName);
+					upload = receiveOntologies(parts.getContent(), baseName);
+				}
+			}
+			// the epilogue
+			body.drain();
+			return upload;
+		} catch (final IOException e) {
+			discard(upload);
+			throw e;
+		}
+	}
+
+	/**
+	 * Stores the uploaded ontologies in the input directory of a new job and,
+	 * if they are an archive, extracts them into the ontologies directory of
+	 * the job at the same time.
+	 *
+	 * @param content
+	 * @param fileName
+	 * @return the upload
+	 * @throws IOException
+	 */
+	private Upload receiveOntologies(final InputStream content,
+			final String fileName) throws IOException {
+		final ExperimentJob job = scheduler_.createJob();
+		try {
+			LOGGER_.info("receiving ontologies {} for {}", fileName, job);
+			final File file = new File(job.getInputDir(), fileName);
+			final boolean extract = ArchiveExtractor.isArchive(fileName);
+			final UploadInputStream in;
+			final OutputStream out = new FileOutputStream(file);
+			try {
+				in = new UploadInputStream(content, out, maxUpload_);
+				if (extract) {
+					Utils.cleanDir(job.getOntologiesDir());
+					final ArchiveExtractor extractor = new ArchiveExtractor(
+							job.getOntologiesDir(), archiveWriters_);
+					extractor.extract(fileName, in);
+					LOGGER_.info("extracted {} files", extractor.getEntryCount());
+				}
+				// e.g., the directory at the end of a zip archive
+				in.drain();
+			} finally {
+				out.close();
+			}
+			final String checksum = in.getDigest();
+			LOGGER_.info("received {} bytes, {} {}", in.getSize(),
+					UploadInputStream.DIGEST_ALGORITHM, checksum);
+			// in the format of sha256sum
+			final Writer checksumFile = new OutputStreamWriter(
+					new FileOutputStream(new File(job.getInputDir(),
+							fileName + CHECKSUM_SUFFIX_)),
+					StandardCharsets.UTF_8);
+			try {
+				checksumFile.write(checksum + "  " + fileName + "\n");
+			} finally {
+				checksumFile.close();
+			}
+			return new Upload(job, file, extract);
+		} catch (final IOException e) {
+			scheduler_.discard(job);
+			throw e;
+		}
+	}
+
+	/**
+	 * Discards the job of an upload that will not be run.
+	 *
+	 * @param upload
+	 *            or {@code null}
+	 */
+	private void discard(final Upload upload) {
+		if (upload != null) {
+			scheduler_.discard(upload.job);
+		}
+	}
+
+	private String jobsToString() {
+		final List<ExperimentJob> jobs = scheduler_.getJobs();
+		if (jobs.isEmpty()) {
+			return "";
+		}
+		// else
+		final StringBuilder result = new StringBuilder();
+		for (final ExperimentJob job : jobs) {
+			final ExperimentJob.State state = job.getState();
+			final String stateInfo;
+			if (state == ExperimentJob.State.QUEUED) {
+				stateInfo = " (queued, position "
+						+ (scheduler_.getQueuePosition(job) + 1) + ")";
+			} else if (state == ExperimentJob.State.RUNNING) {
+				stateInfo = " (running, <a href=" + getJobUri(job)
+						+ "/kill/>kill</a>)";
+			} else {
+				stateInfo = " (" + state.toString().toLowerCase() + ")";
+			}
+			result.append(String.format(TEMPLATE_JOB_, getJobUri(job),
+					"Experiment " + job.getId(), stateInfo));
+		}
+		return String.format(TEMPLATE_JOBS_, result);
+	}
+
 	private String createQueryGenerationOptions(final boolean direct,
 			final boolean untold, final boolean taut, final boolean nobottom) {
 		final StringBuilder result = new StringBuilder();
@@ -589,677 +1352,454 @@ public class ExperimentServer extends NanoHTTPD {
 		return result.toString();
 	}
 
-	private Response logView(final IHTTPSession session) {
-		LOGGER_.info("log view");
-		return newFixedLengthResponse(String.format(TEMPLATE_LOG_, ""));
+	private Response logView(final IHTTPSession session,
+			final ExperimentJob job) {
+		LOGGER_.info("log view: {}", job);
+		final int position = scheduler_.getQueuePosition(job);
+		final int lineCount = job.getLog().getLineCount();
+		final String status;
+		if (position >= 0) {
+			status = "Waiting for " + position + " other experiment(s) ...";
+		} else if (lineCount > LOG_VIEW_LINES_) {
+			status = "Showing only the last lines of the log.";
+		} else {
+			status = "";
+		}
+		return newFixedLengthResponse(String.format(TEMPLATE_LOG_,
+				getJobUri(job), status,
+				Math.max(0, lineCount - LOG_VIEW_LINES_)));
 	}
 
-	private synchronized Response doneView(final IHTTPSession session) {
-		LOGGER_.info("done view");
-		return newFixedLengthResponse(
-				String.format(TEMPLATE_DONE_, experimentLogToString()));
+	private Response doneView(final IHTTPSession session,
+			final ExperimentJob job) {
+		LOGGER_.info("done view: {}", job);
+		final ExperimentLog log = job.getLog();
+		final String tailInfo = log.getLineCount() > LOG_VIEW_LINES_
+				? "Showing only the last lines of the log."
+				: "";
+		final String tail;
+		try {
+			tail = log.getTail(LOG_VIEW_LINES_);
+		} catch (final IOException e) {
+			return newErrorResponse("Cannot read experiment log!", e);
+		}
+		return newFixedLengthResponse(String.format(TEMPLATE_DONE_,
+				getJobUri(job), tail, tailInfo));
 	}
 
-	private synchronized Response resultsView(final IHTTPSession session) {
-		LOGGER_.info("results view");
+	/**
+	 * Lines of the log starting from the line with index {@value #PARAM_SINCE_}
+	 * and at most {@value #PARAM_LIMIT_} of them. The index of the line after
+	 * the returned ones is in the header {@value #HEADER_NEXT_SINCE_}.
+	 */
+	private Response logLinesView(final IHTTPSession session,
+			final ExperimentJob job) {
+		final Map<String, String> params = getParams(session);
+		LOGGER_.info("log lines view: {} {}", job, params);
+		final int since = parseInt(params.get(PARAM_SINCE_), 0);
+		final int limit = Math.min(MAX_LOG_LINES_LIMIT_,
+				parseInt(params.get(PARAM_LIMIT_), DEFAULT_LOG_LINES_LIMIT_));
+		final List<String> lines;
+		try {
+			lines = job.getLog().getLines(since, limit);
+		} catch (final IOException e) {
+			return newErrorResponse("Cannot read experiment log!", e);
+		}
+		final StringBuilder text = new StringBuilder();
+		for (final String line : lines) {
+			text.append(line).append("\n");
+		}
+		final Response response = newFixedLengthResponse(Status.OK,
+				NanoHTTPD.MIME_PLAINTEXT, text.toString());
+		response.addHeader(HEADER_NEXT_SINCE_,
+				"" + (Math.max(0, since) + lines.size()));
+		response.addHeader("Cache-Control", "no-cache");
+		return response;
+	}
 
-		if (!resultsDir_.exists() || !resultsDir_.isDirectory()) {
-			return newErrorResponse("Results directory does not exist!");
+	private Response logFileView(final IHTTPSession session,
+			final ExperimentJob job) {
+		LOGGER_.info("log file view: {}", job);
+		final File file = job.getLog().getFile();
+		if (!file.exists() || file.isDirectory()) {
+			return newNotFoundResponse(file.getPath());
 		}
 		// else
+		try {
+			// the lines written so far, streamed from the disk
+			final Response response = newChunkedResponse(Status.OK,
+					NanoHTTPD.MIME_PLAINTEXT, new FileInputStream(file));
+			response.addHeader("Content-Disposition",
+					"attachment; filename=\"experiment.log\"");
+			response.addHeader("Cache-Control", "no-cache");
+			return response;
+		} catch (final FileNotFoundException e) {
+			return newErrorResponse("Cannot find the log file!", e);
+		}
+	}
 
-		// Paste the SVG plots into the template.
-		final StringBuilder resultList = new StringBuilder("<ul>\n");
-		final String[] fileNames = resultsDir_.list(new FilenameFilter() {
-			@Override
-			public boolean accept(final File dir, final String name) {
-				return name.endsWith(".csv");
-			}
-		});
-		ArrayList<String> ontologiesList = new ArrayList<String>();
-		Arrays.sort(fileNames);
-		for (final String fileName : fileNames) {
-			resultList.append("<li><a href='/results/");
-			resultList.append(fileName);
-			resultList.append("'>");
-			resultList.append(fileName);
-			resultList.append("</a></li>\n");
-
-			String[] fileNameSplit = fileName.split("\\.");
-			String ontologieName = fileNameSplit[1];
-			if(!ontologiesList.contains(ontologieName)) {
-				ontologiesList.add(ontologieName);
-			}
+	private static int parseInt(final String value, final int defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		// else
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (final NumberFormatException e) {
+			return defaultValue;
+		}
+	}
 
+	private static double parseDouble(final String value,
+			final double defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		// else
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (final NumberFormatException e) {
+			return defaultValue;
 		}
-		resultList.append("</ul>");
+	}
 
-		File[] files = resultsDir_.listFiles(new FileFilter() {
-			@Override
-			public boolean accept(File pathname) {
-				return pathname.getName().endsWith(".csv");
-			}
-		});
-		BufferedReader br = null;
-
-		// contains the javascript code
-		StringBuilder plotString = new StringBuilder();
-		int i=0;
-		boolean timeComp = false;
-		boolean minComp = false;
-		for (final String ontologieName : ontologiesList) {
-			
-			// contains all sorted results with name of queries and times
-			ArrayList<ArrayList<QueryResult>> queryResults_all = new ArrayList<ArrayList<QueryResult>>();
-			ArrayList<String> expNames = new ArrayList<String>();
-			for(final File file : files) {
-				String fileName = file.getName();
-				String[] fileNameSplit = fileName.split("\\.");
-				if(!fileNameSplit[1].equals(ontologieName)) {
-					continue;
-				}
-				timeComp = fileNameSplit[2].contains("_Times");
-				minComp = minComp || timeComp;
-				
-				ArrayList<QueryResult> queryResult_all = new ArrayList<QueryResult>();
-				ArrayList<QueryResult> queryResult_all_satSolver = new ArrayList<QueryResult>();
-				ArrayList<QueryResult> queryResult_all_justComp = new ArrayList<QueryResult>();
-				ArrayList<QueryResult> queryResult_all_cycleComp = new ArrayList<QueryResult>();
-				if(timeComp) {
-					expNames.add(fileNameSplit[2]+"_total");
-					expNames.add(fileNameSplit[2]+"_SatSolver");
-					expNames.add(fileNameSplit[2]+"_JustComp");
-					expNames.add(fileNameSplit[2]+"_CycleComp");					
-				} else {
-					expNames.add(fileNameSplit[2]);
-				}
-				String[] input = null;
-				String line;
-				int nameIndex = 0;
-				int timeIndex = 0;
-				int timeSatSolverIndex = 0;
-				int timeJustCompIndex = 0;
-				int timeCycleCompIndex = 0;
-				try {
-					// read data from csv files
-					br = new BufferedReader(new FileReader(file));
-					if((line=br.readLine()) != null) {
-		                input = line.split(",");
-		                for (int j = 0; j < input.length; j++) {
-							if(input[j].equals("query")) {
-								nameIndex = j;
-							}
-							if(input[j].equals("time")) {
-								timeIndex = j;
-							}
-							if(timeComp) {
-								if(input[j].equals("timeSatSolver")) {
-									timeSatSolverIndex = j;
-								}
-								if(input[j].equals("timeJustComp")) {
-									timeJustCompIndex = j;
-								}
-								if(input[j].equals("timeCycleComp")) {
-									timeCycleCompIndex = j;
-								}
-							}
-						}
-					}
-					while((line=br.readLine()) != null) {
-		                input = line.split(",");
-		                double time = Double.valueOf(input[timeIndex])/1000;
-						QueryResult qr = new QueryResult(input[nameIndex],time);
-						queryResult_all.add(qr);
-		                if(timeComp) {
-		                	double timeSatSolver = Double.valueOf(input[timeSatSolverIndex])/1000;
-							QueryResult qrSatSolver = new QueryResult(input[nameIndex],timeSatSolver);
-							queryResult_all_satSolver.add(qrSatSolver);
-			                double timeJustComp = Double.valueOf(input[timeJustCompIndex])/1000;
-							QueryResult qrJustComp = new QueryResult(input[nameIndex],timeJustComp);
-							queryResult_all_justComp.add(qrJustComp);
-			                double timeCycleComp = Double.valueOf(input[timeCycleCompIndex])/1000;
-							QueryResult qrCycleComp = new QueryResult(input[nameIndex],timeCycleComp);
-							queryResult_all_cycleComp.add(qrCycleComp);
-		                }
-					}
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				} catch (IOException e) {
-					e.printStackTrace();
-				} finally {
-					if (br != null) {
-						try {
-							br.close();
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-					}
-				}
-				queryResults_all.add(queryResult_all);
-				if(timeComp) {
-					queryResults_all.add(queryResult_all_satSolver);
-					queryResults_all.add(queryResult_all_justComp);
-					queryResults_all.add(queryResult_all_cycleComp);
-				}
-			}
-			
-			int expSize = expNames.size();
-			int minIndex = queryResults_all.stream().min(Comparator.comparing(list -> list.size())).get().size();
-			ArrayList<ArrayList<QueryResult>> queryResults_min = minimizeQueryResults(queryResults_all, minIndex);
-			
-			if(!minComp) {
-				expNames.add("minimum");
-				expSize++;
-				addMinimum(minIndex, queryResults_min);
-			}
-			
-			// sort
-			ArrayList<ArrayList<QueryResult>> queryResults_sort = sortQueryResults(queryResults_min);
-
-			// start javascript
-			plotString.append(
-					"<div id=\"myDiv" + i +"\"><!-- Plotly chart will be drawn inside this DIV --></div>\n" + 
-					"<div id=\"clickinfo"+i+"\" style=\"margin-left:80px;\"></div>\n"+
-					"<div id=\"hoverinfo"+i+"\" style=\"margin-left:80px;\"></div>\n"+
-					"<div id=\"test"+i+"\" style=\"margin-left:80px;\"></div>\n"+
-					"<script>\n" + 
-					"    var allColors = ['#426CDA','#53CE40','#FFC100','#8B008B','#D2691E','#87CEFA','#008000','#FF00FF','#FF8C00','#A9A9A9'],\n"+
-					"    expSize = "+expSize+",\n" +
-			// translate objects from java to javascript
-					"    query"+i+",\n" +
-					"    activeLines"+i+" = [],\n" + 
-					"    queryArr"+i+" = [],\n" + 
-					"    timesArr"+i+" = [],\n" + 
-					"    expNames"+i+" = [];\n" +
-					"    var colors = allColors.slice(0,expSize);\n"
-					);
-			if(!timeComp) {
-				plotString.append(
-					"    colors[(expSize-1)] = '#000000';\n"
-				);
-			}
-			
-			for(int k=0; k<expSize; k++) {
-				ArrayList<String> queryNames = new ArrayList<String>();
-				ArrayList<Double> queryTimes = new ArrayList<Double>();
-				for(QueryResult qr : queryResults_sort.get(k)) {
-					String query = qr.query;
-					double time = qr.time;
-					queryNames.add(query);
-					queryTimes.add(time);
-				}
-				plotString.append(
-						"  activeLines"+i+".push("+k+");\n" + 
-						"  queryArr"+i+".push("+queryNames.toString()+");\n" +
-						"  timesArr"+i+".push("+queryTimes.toString()+");\n" +
-						"  expNames"+i+".push('"+expNames.get(k)+"');\n");
-			}
+	private Response newJsonResponse(final CharSequence json) {
+		final Response response = newFixedLengthResponse(Status.OK, MIME_JSON_,
+				json.toString());
+		response.addHeader("Cache-Control", "no-cache");
+		return response;
+	}
 
-			plotString.append("  traces = [\n");
-			// add experiments to plot
-			for(int k=0; k<expSize; k++) {
-				addToPlot(expNames.get(k), queryResults_sort.get(k), plotString, k);
-			}
+	/**
+	 * The response must be validated before it is used from a cache.
+	 */
+	private Response newJsonResponse(final CharSequence json,
+			final String etag) {
+		final Response response = newJsonResponse(json);
+		response.addHeader("ETag", etag);
+		response.addHeader("Vary", "Accept-Encoding");
+		return response;
+	}
 
-			// markers for red points on click
-			plotString.append(
-			"{\n" + 
-			"  x: [], \n" + 
-			"  y: [],\n" + 
-			"  mode: 'markers',\n" +
-			"  visible: false,\n" +
-			"}];\n");
-
-			// add layout
-			plotString.append(
-			"    var layout = {\n" + 
-			"      hovermode:'closest',\n" + 
-			"  	   title: 'Plot for "+ontologieName+"',\n" + 
-			"      xaxis: {\n" + 
-			"        title: '\\% of queries',\n" +
-			"        showline: true,\n" + 
-			"        tickvals: [0, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100],\n" + 
-			"        ticktext: ['', '10', '20', '30', '40', '50', '60', '70', '80', '90', '100'],\n" + 
-			"        mirror: 'ticks',\n" + 
-			"        linewidth: 1,\n" + 
-			"    	 autorange: true,\n" +
-			"      },\n" + 
-			"      yaxis: {\n" + 
-			"       type: 'log',\n" + 
-			"    	tickvals: [0.001, 0.01, 0.1, 1, 10, 60],\n" + 
-			"    	ticktext: ['', '0.01', '0.1', '1', '10', '60'],\n" + 
-			"    	mirror: 'ticks',\n" + 
-			"    	linewidth: 1,\n" + 
-			"    	range: [-3, 2],\n" +
-			"       title: 'time in seconds'\n" +
-			"      }\n" + 
-			"    };\n");
-			
-			// plot
-			plotString.append(
-			"  Plotly.newPlot('myDiv"+i+"', traces, layout);\n" +
-			"  myPlot"+i+" = document.getElementById('myDiv"+i+"');\n"
-			);
-
-			// event legendclick
-			plotString.append(
-			"  myPlot"+i+".on('plotly_legendclick', function(data){\n" + 
-			"	 number = data.curveNumber;\n" + 
-			"	 if(activeLines"+i+".indexOf(number) < 0){\n" + 
-			"		activeLines"+i+".push(number);\n" + 
-			"	 } else {\n" + 
-			"	    activeLines"+i+".splice(activeLines"+i+".indexOf(number), 1);\n" + 
-			"	 }\n" + 
-			
-			"    refresh"+i+"();\n " +
-			"	 if(myPlot"+i+".data[expSize].visible == true){\n" +
-			"      visibleLines = false;\n" +
-			"	   for(k = 0; k<(expSize-1); k++){\n" + 
-			"        if(activeLines"+i+".indexOf(k) >= 0){\n" +
-			"          visibleLines = true;\n" +
-			"          break;\n" +
-			"        }\n" +
-		    "      }\n" +
-			"      if (visibleLines == true){" +
-			"        clickinfo"+i+".innerHTML = '<b><span style=\"color:#FF0000\">QUERY: '+query"+i+"+'</span></b><br>';\n" +
-			"	     for(k = 0; k<expSize; k++){\n" + 
-			"          if(activeLines"+i+".indexOf(k) < 0){\n" +
-			"            continue;\n" +
-			"          }\n" +
-			"          index = queryArr"+i+"[k].indexOf(query"+i+");" +
-			"          if((index >= 0) && (clickinfo"+i+".innerHTML != '')){\n" +
-			"            clickinfo"+i+".innerHTML += '<span style=\"color:'+colors[k]+'\"> '+expNames"+i+"[k]+': </span>'+" +
-			"              getTime(timesArr"+i+"[k][index])+' <br>';\n" +
-		    "          }\n" +
-			"        }\n" +
-			"        clickinfo"+i+".innerHTML += '<br>';\n" +
-			"      } else {\n" +
-			"        clickinfo"+i+".innerHTML = ' <br>';\n" +
-			"      }\n" +
-			"    } else {\n" +
-			"      clickinfo"+i+".innerHTML = ' <br>';\n" +
-			"    }" +
-			"  });\n" +
-
-			// event legend doubleclick
-			"  myPlot"+i+".on('plotly_legenddoubleclick', function(data){\n" + 
-			"	 number = data.curveNumber;\n" + 
-			"	 if(activeLines"+i+".indexOf(number) < 0){\n" + 
-			"		activeLines"+i+".push(number);\n" + 
-			"	 } else {\n" + 
-			"	    activeLines"+i+".splice(activeLines"+i+".indexOf(number), 1);\n" + 
-			"	 }\n" + 
-			"    refresh"+i+"();\n " +
-			"	 if(myPlot"+i+".data[expSize].visible == true){\n" +
-			"      visibleLines = false;\n" +
-			"	   for(k = 0; k<(expSize-1); k++){\n" + 
-			"        if(activeLines"+i+".indexOf(k) >= 0){\n" +
-			"          visibleLines = true;\n" +
-			"          break;\n" +
-			"        }\n" +
-		    "      }\n" +
-			"      if (visibleLines == true){" +
-			"        clickinfo"+i+".innerHTML = '<b><span style=\"color:#FF0000\">QUERY: '+query"+i+"+'</span></b><br>';\n" +
-			"	     for(k = 0; k<expSize; k++){\n" + 
-			"          if(activeLines"+i+".indexOf(k) < 0){\n" +
-			"            continue;\n" +
-			"          }\n" +
-			"          index = queryArr"+i+"[k].indexOf(query"+i+");" +
-			"          if((index >= 0) && (clickinfo"+i+".innerHTML != '')){\n" +
-			"            clickinfo"+i+".innerHTML += '<span style=\"color:'+colors[k]+'\"> '+expNames"+i+"[k]+': </span>'+" +
-			"              getTime(timesArr"+i+"[k][index])+' <br>';\n" +
-		    "          }\n" +
-			"        }\n" +
-			"        clickinfo"+i+".innerHTML += '<br>';\n" +
-			"      } else {\n" +
-			"        clickinfo"+i+".innerHTML = ' <br>';\n" +
-			"      }\n" +
-			"    } else {\n" +
-			"      clickinfo"+i+".innerHTML = ' <br>';\n" +
-			"    }" +
-			"	 return false;\n" +
-			"  });" +
-
-			// clear array
-			"  Array.prototype.clear = function() {\n" + 
-			"    this.splice(0, this.length);\n" + 
-			"  };\n" + 
-
-			// event mouseover
-			"  myPlot"+i+".on('plotly_hover', function(data){\n" + 
-			"    len = data.points.length;\n" + 
-			"    tn = data.points[0].curveNumber;\n" + 
-			"    if ((len == 1) && (tn < expSize)) {\n" + 
-			"      pn = data.points[0].pointNumber;\n" + 
-			"      name = data.points[0].data.name;\n" + 
-			"      query = queryArr"+i+"[tn][pn];\n" +
-			"      hoverinfo"+i+".innerHTML = '<b>QUERY: '+ query +'</b><br> ';\n" +
-			"	   for(k = 0; k<expSize; k++){\n" + 
-			"        if(activeLines"+i+".indexOf(k) < 0){" +
-			"          continue;" +
-			"        }" +
-			"        index = queryArr"+i+"[k].indexOf(query);" +
-			"        if(index >= 0){" +
-			"	       hoverinfo"+i+".innerHTML += '<span style=\"color:'+colors[k]+'\"> '+expNames"+i+"[k]+': </span>'+" +
-			"            getTime(timesArr"+i+"[k][index])+' <br>';" +
-			"        }" +			
-			"      }"+ 
-			"    } else {\n" + 
-			"      hoverinfo"+i+".innerHTML = '';\n" + 
-			"    }\n" + 
-			"  });\n"+
-			
-			// event not mouseover
-			"  myPlot"+i+".on('plotly_unhover', function(data){\n" + 
-			"    hoverinfo"+i+".innerHTML = '';\n" + 
-			"  });" + 
-			
-			// event on click
-			"  myPlot"+i+".on('plotly_click', function(data){\n" + 
-			"    len = data.points.length;\n" + 
-			"    tn = data.points[0].curveNumber;\n" + 
-			"    if ((len == 1)) {\n" + 
-			"      pn = data.points[0].pointNumber;\n" +
-			"      query"+i+" = queryArr"+i+"[tn][pn];\n" +
-			"      clickinfo"+i+".innerHTML = '<b><span style=\"color:#FF0000\">QUERY: '+query"+i+"+'</span></b><br>';\n" +
-			"      xArr=[];\n" +
-			"      yArr=[];\n" +
-			"      text=[];\n" +
-			"      opacities=[];\n" +
-			"	   for(k = 0; k<expSize; k++){\n" + 
-			"        if(activeLines"+i+".indexOf(k) < 0){" +
-			"          continue;" +
-			"        }" +
-			"        index = queryArr"+i+"[k].indexOf(query"+i+");" +
-			"        if(index >= 0){" +
-			"	       xArr[k] = round(((index+1)*100.0)/(queryArr"+i+"[k].length));\n" +
-			"	       yArr[k] = timesArr"+i+"[k][index];\n" +
-			"	       text[k] = getTime(timesArr"+i+"[k][index]);\n" +
-			"          opacities.push(1);\n" +
-			"          clickinfo"+i+".innerHTML += '<span style=\"color:'+colors[k]+'\"> '+expNames"+i+"[k]+': </span>'+" +
-			"            getTime(timesArr"+i+"[k][index])+' <br>';\n" +
-		    "        }\n" +
-			"      }" +
-
-			// plot restyle
-			"      update = {x: [xArr], y: [yArr],\n"+
-			"      text: [text],\n" + 
-			"      hoverinfo: 'x+text',\n" +
-			"      showlegend: false,\n" +
-			"      visible: true,\n" +
-			"      marker:{size:7, color: '#FF0000', opacity:opacities}};\n" +
-			"	   Plotly.restyle('myDiv"+i+"', update, expSize);\n" +
-			"      clickinfo"+i+".innerHTML += '<br>';\n" +
-			"    } else {\n" + 
-			"      clickinfo"+i+".innerHTML = '';\n" + 
-			"    }\n" + 
-			"  });\n" +
-
-			// event on doubleclick
-			"  myPlot"+i+".on('plotly_doubleclick', function(data){\n" +
-			"    update = {x: [[]], y: [[]], visible: false, marker:{opacity:[]}};" +
-			"	 Plotly.restyle('myDiv"+i+"', update, expSize);\n" +
-			"    clickinfo"+i+".innerHTML = '';\n" +
-			"  });\n" +
-			
-			// some help functions
-			"  function round(num) {\n" + 
-			"    return Math.round(num * 100) / 100;\n" +
-			"  }\n" + 
-			"  function getTime(time) {\n" + 
-			"	 if(time < 1) {\n" + 
-			"	   return round(time*1000)+' ms';\n" + 
-			"    }\n" + 
-			"	 return time < 60 ? round(time)+' s' : round(time/60)+' min';\n" + 
-			"  }\n" +
-			"  function refresh"+i+"() {\n" + 
-			"    minIndex = expSize-1;\n" +			
-			"    if(activeLines"+i+".indexOf(minIndex) >= 0) {\n " +
-			"      visitedQueries=[];\n" +
-
-			"	   for(k = 0; k<minIndex; k++){\n" + 
-			"        if(activeLines"+i+".indexOf(k) < 0){\n" +
-			"          continue;\n" +
-			"        }\n" +
-			"        if(visitedQueries.length == 0){\n" +
-			"          visitedQueries = queryArr"+i+"[k].slice();\n" +
-		    "        }else{\n" +
-		    "          visitedQueries = visitedQueries.filter(function(n) {\n" + 
-		    "		     return queryArr"+i+"[k].indexOf(n) !== -1;\n" + 
-		    "		   });\n" +
-		    "        }\n" +
-		    "      }" +
-
-			"      visitedResultQueries=[];\n" +
-		    "      queryResultArr=[];\n" +
-			"	   for(k = 0; k<minIndex; k++){\n" + 
-			"        if(activeLines"+i+".indexOf(k) < 0){\n" +
-			"          continue;\n" +
-			"        }\n" +
-			"	     for(l = 0; l<(visitedQueries.length); l++){\n" + 
-			"          query_ = visitedQueries[l];\n" +
-			"          visitedIndex = visitedResultQueries.indexOf(query_);\n" +
-			"          queryIndex = queryArr"+i+"[k].indexOf(query_);\n" +
-			"          if(visitedIndex < 0){\n" +
-			"            visitedResultQueries.push(query_);\n" +
-			"            queryResultArr.push({query : query_, time: timesArr"+i+"[k][queryIndex]});\n" +
-		    "          } else {\n" +
-			"            time_ = queryResultArr[visitedIndex].time;\n" +
-		    "            newTime = timesArr"+i+"[k][queryIndex];\n" +
-		    "            if(time_ > newTime) {\n" +
-		    "              queryResultArr[visitedIndex].time = newTime;\n" +
-		    "            }\n" +
-		    "          }\n" +
-		    "        }\n" +
-			"      }" +
-			"      queryResultArr.sort(custom_compare);\n" + 
-			"      xArrM=[];\n" +
-			"      yArrM=[];\n" +
-			"      textM=[];\n" +
-			"      queryNames=[];\n" +
-			"      queryTimes=[];\n" +
-			"      queryLength = visitedResultQueries.length;\n" +
-			"	   for(k = 0; k<queryLength; k++){\n" + 
-			"	       xArrM.push(round(((k+1)*100.0)/queryLength));\n" +
-			"	       yArrM.push(queryResultArr[k].time);\n" +
-			"	       textM.push(getTime(queryResultArr[k].time));\n" +
-			"		   queryNames.push(queryResultArr[k].query);\n" + 
-			"	       queryTimes.push(queryResultArr[k].time);\n" + 
-			"      }\n" +
-				   // plot restyle
-			"      if(myPlot"+i+".data[minIndex].visible == true) {\n" +
-			"        updateMin = {x: [xArrM], y: [yArrM],\n"+
-			"        text: [textM],\n" + 
-			"        visible: true,\n" +
-			"        hoverinfo: 'x+text'};" +
-			"	     Plotly.restyle('myDiv"+i+"', updateMin, [minIndex]);\n" + 
-			"      } else {\n" +
-			"        updateMin = {x: [xArrM], y: [yArrM],\n" +
-			"        text: [textM],\n" + 
-			"        visible: 'legendonly',\n" +
-			"        hoverinfo: 'x+text'};" +
-			"	     Plotly.restyle('myDiv"+i+"', updateMin, [minIndex]);\n" + 
-			"      }\n" +
-			"      queryArr"+i+"[minIndex] = queryNames;\n" +
-			"      timesArr"+i+"[minIndex] = queryTimes;\n" +
-			"    }\n" +
-
-			"      if(myPlot"+i+".data[expSize].visible == true) {\n " +
-			"        xArrP=[];\n" +
-			"        yArrP=[];\n" +
-			"        textP=[];\n" +
-			"        opacitiesP=[];\n" +
-			"  	     for(k = 0; k<expSize; k++){\n" + 
-			"          if(activeLines"+i+".indexOf(k) < 0){" +
-			"            continue;" +
-			"          }\n" +
-			"            index = queryArr"+i+"[k].indexOf(query"+i+");" +
-			"          if(index >= 0){" +
-			"  	         xArrP[k] = round(((index+1)*100.0)/(queryArr"+i+"[k].length));\n" +
-			"	         yArrP[k] = timesArr"+i+"[k][index];\n" +
-			"	         textP[k] = getTime(timesArr"+i+"[k][index]);\n" +
-			"            opacitiesP.push(1);\n" +
-		    "          }\n" +
-			"        }\n" +
-
-			// plot restyle
-			"        updatePoints = {x: [xArrP], y: [yArrP],\n"+
-			"        text: [textP],\n" + 
-			"        hoverinfo: 'x+text',\n" +
-			"        showlegend: false,\n" +
-			"        visible: true,\n" +
-			"        marker:{size:7, color: '#FF0000', opacity:opacitiesP}};" +
-			"	     Plotly.restyle('myDiv"+i+"', updatePoints, [expSize]);\n" + 
-			"      }\n" +
-			"  }\n" + 
-
-			"  function custom_compare (a,b) {\n" + 
-			"    return a.time - b.time;\n" + 
-			"  }\n" + 
-			"</script>\n");
-			i++;
-		}
-
-		return newFixedLengthResponse(String.format(TEMPLATE_RESULTS_, plotString.toString(), resultList.toString()));
+	private Response newNotModifiedResponse(final String etag) {
+		final Response response = newFixedLengthResponse(Status.NOT_MODIFIED,
+				null, "");
+		response.addHeader("ETag", etag);
+		return response;
 	}
 
-	
-	private static ArrayList<ArrayList<QueryResult>> sortQueryResults(ArrayList<ArrayList<QueryResult>> queryResults_min) {
-		ArrayList<ArrayList<QueryResult>> queryResults_sort = new ArrayList<ArrayList<QueryResult>>();
-		for(int k=0; k<queryResults_min.size(); k++) {
-			ArrayList<QueryResult> queryResult = queryResults_min.get(k);
-			queryResult.sort(Comparator.comparing((QueryResult q) -> q.time));
-			queryResults_sort.add(queryResult);
+	/**
+	 * The page is the same for all jobs and loads the results from the API of
+	 * the job, so that it can be cached.
+	 */
+	private Response resultsView(final IHTTPSession session,
+			final ExperimentJob job) {
+		LOGGER_.info("results view: {}", job);
+		if (ETags.matches(session.getHeaders().get(HEADER_IF_NONE_MATCH_),
+				ETAG_RESULTS_)) {
+			return newNotModifiedResponse(ETAG_RESULTS_);
 		}
-		return queryResults_sort;
+		// else
+		final Response response = newFixedLengthResponse(TEMPLATE_RESULTS_);
+		response.addHeader("ETag", ETAG_RESULTS_);
+		response.addHeader("Cache-Control", "max-age=" + RESULTS_MAX_AGE_);
+		return response;
 	}
 
-	private static void addMinimum(int minIndex, ArrayList<ArrayList<QueryResult>> queryResults) {
-		ArrayList<QueryResult> minQueryResult = new ArrayList<QueryResult>();
-		int k = 0;
-		while(k<minIndex) {
-			ArrayList<QueryResult> queryResult = getQueryResult(queryResults, k);
-			minQueryResult.add(queryResult.stream().min(Comparator.comparing((QueryResult q) -> q.time)).get());
-			k++;
+	/**
+	 * The plotted ontologies with the names of their lines and the names of
+	 * the result files as JSON.
+	 */
+	private Response apiResultsView(final IHTTPSession session,
+			final ExperimentJob job) {
+		LOGGER_.info("api results view: {}", job);
+		final ResultsIndex index = job.getResultsIndex();
+		index.update();
+		final StringBuilder json = new StringBuilder();
+		final String etag = getETag(session, index.appendJson(json));
+		if (ETags.matches(session.getHeaders().get(HEADER_IF_NONE_MATCH_),
+				etag)) {
+			return newNotModifiedResponse(etag);
 		}
-		queryResults.add(minQueryResult);
-	}
-	
-	private static ArrayList<QueryResult> getQueryResult(ArrayList<ArrayList<QueryResult>> queryResults, int k) {
-		return new ArrayList<QueryResult>(queryResults.stream().map(list -> list.get(k)).collect(Collectors.toList()));
+		// else
+		return newJsonResponse(json, etag);
 	}
 
-	private static ArrayList<ArrayList<QueryResult>> minimizeQueryResults(ArrayList<ArrayList<QueryResult>> queryResults_all,
-			int minIndex) {
-		ArrayList<ArrayList<QueryResult>> queryResults = new ArrayList<ArrayList<QueryResult>>();
-		for(int k = 0; k<queryResults_all.size(); k++) {
-			ArrayList<QueryResult> queryResult = new ArrayList<QueryResult>(queryResults_all.get(k).subList(0, minIndex));
-			queryResults.add(queryResult);
+	/**
+	 * The points of the lines of a plot as JSON, downsampled to
+	 * {@link #plotPoints_} per line for the requested range of queries.
+	 */
+	private Response apiOntologyView(final IHTTPSession session,
+			final ExperimentJob job, final String ontology) {
+		final Map<String, String> params = getParams(session);
+		LOGGER_.info("api ontology view: {} {} {}", job, ontology, params);
+		final ResultsIndex index = job.getResultsIndex();
+		index.update();
+		final ResultsPlot plot = index.getPlot(ontology);
+		if (plot == null) {
+			return newNotFoundResponse(ontology);
 		}
-		return queryResults;
+		// else
+		final String etag = getETag(session, plot.getTag());
+		if (ETags.matches(session.getHeaders().get(HEADER_IF_NONE_MATCH_),
+				etag)) {
+			return newNotModifiedResponse(etag);
+		}
+		// else
+		final BitSet active = parseActive(params.get(PARAM_ACTIVE_),
+				plot.getLineCount());
+		if (active == null) {
+			return newBadRequestResponse("Illegal active lines!");
+		}
+		// else
+		final double from = parseDouble(params.get(PARAM_FROM_), 0);
+		final double to = parseDouble(params.get(PARAM_TO_), 100);
+		final int points = Math.min(MAX_PLOT_POINTS_,
+				parseInt(params.get(PARAM_POINTS_), plotPoints_));
+		final StringBuilder json = new StringBuilder();
+		plot.appendPoints(json, from, to, points, plotSampling_, active);
+		return newJsonResponse(json, etag);
 	}
 
-	private void addToPlot(String expName, ArrayList<QueryResult> queryResult, StringBuilder plotString, int k) {
-		ArrayList<Double> xAxis = new ArrayList<Double>();
-		ArrayList<Double> times = new ArrayList<Double>();
-		ArrayList<String> text = new ArrayList<String>();
-
-		int qSize = queryResult.size();
-		int counter = 0;
-		for(QueryResult qr : queryResult) {
-			xAxis.add(round((++counter*100.0)/qSize));
-			times.add(qr.time);
-			text.add("'"+getTime(qr.time)+"'");
-		}
-
-		plotString.append(
-		"{\n" + 
-		"  x: "+xAxis.toString()+", \n" + 
-		"  y: "+times.toString()+",\n" + 
-		"  name: '"+expName+"',\n" + 
-		"  visible: true,\n" +
-		"  mode: 'lines',\n" +
-		"  text: "+text.toString()+",\n" + 
-		"  hoverinfo: 'x+text',\n" +
-		"  line: {color: colors["+k+"]},\n" +
-		"},\n");
+	/**
+	 * All queries of one line of a plot with their times as JSON.
+	 */
+	private Response apiExperimentView(final IHTTPSession session,
+			final ExperimentJob job, final String ontology,
+			final String experiment) {
+		LOGGER_.info("api experiment view: {} {} {}", job, ontology,
+				experiment);
+		final ResultsIndex index = job.getResultsIndex();
+		index.update();
+		final ResultsPlot plot = index.getPlot(ontology);
+		if (plot == null) {
+			return newNotFoundResponse(ontology);
+		}
+		// else
+		final String etag = getETag(session, plot.getTag());
+		if (ETags.matches(session.getHeaders().get(HEADER_IF_NONE_MATCH_),
+				etag)) {
+			return newNotModifiedResponse(etag);
+		}
+		// else
+		final StringBuilder json = new StringBuilder();
+		if (!plot.appendLine(json, experiment)) {
+			return newNotFoundResponse(ontology + "/" + experiment);
+		}
+		// else
+		return newJsonResponse(json, etag);
 	}
 
-	private String getTime(Double time) {
-		if(time < 1) {
-			return round(time*1000)+" ms";
+	/**
+	 * The times of a query in the lines of a plot as JSON. The query is either
+	 * given directly or by a line and its rank in the line.
+	 */
+	private Response apiQueryView(final IHTTPSession session,
+			final ExperimentJob job, final String ontology) {
+		final Map<String, String> params = getParams(session);
+		LOGGER_.info("api query view: {} {} {}", job, ontology, params);
+		final ResultsIndex index = job.getResultsIndex();
+		index.update();
+		final ResultsPlot plot = index.getPlot(ontology);
+		if (plot == null) {
+			return newNotFoundResponse(ontology);
 		}
-		return time < 60 ? round(time)+" s" : round(time/60)+" min";
-	}
-	
-	private Double round(Double number) {
-		return Math.round(number * 100) / 100.0;
+		// else
+		final String etag = getETag(session, plot.getTag());
+		if (ETags.matches(session.getHeaders().get(HEADER_IF_NONE_MATCH_),
+				etag)) {
+			return newNotModifiedResponse(etag);
+		}
+		// else
+		final BitSet active = parseActive(params.get(PARAM_ACTIVE_),
+				plot.getLineCount());
+		if (active == null) {
+			return newBadRequestResponse("Illegal active lines!");
+		}
+		// else
+		String query = params.get(PARAM_QUERY_);
+		if (query == null) {
+			query = plot.getQuery(parseInt(params.get(PARAM_LINE_), -1),
+					parseInt(params.get(PARAM_RANK_), -1), active);
+		}
+		if (query == null) {
+			return newBadRequestResponse("No such query!");
+		}
+		// else
+		final StringBuilder json = new StringBuilder();
+		plot.appendQuery(json, query, active);
+		return newJsonResponse(json, etag);
 	}
 
-	static class QueryResult {
-		final String query;
-		final double time;
+	/**
+	 * @param session
+	 * @param tag
+	 *            changes whenever the results change
+	 * @return the entity tag of the response to the request, which depends on
+	 *         the results, the request and whether it is compressed
+	 */
+	private String getETag(final IHTTPSession session, final String tag) {
+		final String acceptEncoding = session.getHeaders()
+				.get("accept-encoding");
+		return ETags.of(tag, session.getUri(),
+				String.valueOf(session.getQueryParameterString()),
+				"" + plotPoints_, plotSampling_.name(),
+				acceptEncoding != null && acceptEncoding.contains("gzip")
+						? "gzip"
+						: "identity");
+	}
 
-		QueryResult(String query, double time) {
-			this.query = query;
-			this.time = time;
+	/**
+	 * @param active
+	 *            comma separated numbers of lines
+	 * @param lineCount
+	 * @return the lines, all lines if the parameter is missing, or
+	 *         {@code null} if it cannot be parsed
+	 */
+	private static BitSet parseActive(final String active,
+			final int lineCount) {
+		final BitSet result = new BitSet();
+		if (active == null) {
+			result.set(0, lineCount);
+			return result;
 		}
+		// else
+		if (active.isEmpty()) {
+			return result;
+		}
+		// else
+		for (final String line : active.split(",")) {
+			final int k = parseInt(line, -1);
+			if (k < 0) {
+				return null;
+			}
+			// else
+			result.set(k);
+		}
+		return result;
 	}
 
+	/**
+	 * The rows of the file are loaded page by page from
+	 * {@link #resultRowsView(IHTTPSession, ExperimentJob, String)}.
+	 */
 	private Response resultFileView(final IHTTPSession session,
-			final String fileName) {
-		LOGGER_.info("result file view: {}", fileName);
-		final File file = new File(resultsDir_, fileName);
+			final ExperimentJob job, final String fileName) {
+		LOGGER_.info("result file view: {} {}", job, fileName);
+		final File file = new File(job.getResultsDir(), fileName);
 		if (!file.exists() || file.isDirectory()) {
 			return newFixedLengthResponse(Status.NOT_FOUND, NanoHTTPD.MIME_HTML,
 					String.format(TEMPLATE_NOT_FOUND_, file.getPath()));
 		}
 		// else
+		return newFixedLengthResponse(String.format(TEMPLATE_RESULT_FILE_,
+				fileName, getJobUri(job) + "/results/" + fileName,
+				DEFAULT_ROWS_LIMIT_));
+	}
 
-		// Paste the file into the template.
-		// TODO: do this with streams!
-		final StringBuilder fileString = new StringBuilder();
-		BufferedReader in = null;
+	/**
+	 * A window of rows of a result file as JSON, possibly sorted by a column
+	 * and filtered by a boolean column. The rows are read by seeking to them
+	 * using the index of the file.
+	 */
+	private Response resultRowsView(final IHTTPSession session,
+			final ExperimentJob job, final String fileName) {
+		final Map<String, String> params = getParams(session);
+		LOGGER_.info("result rows view: {} {} {}", job, fileName, params);
+		final File file = new File(job.getResultsDir(), fileName);
+		if (!file.exists() || file.isDirectory()) {
+			return newNotFoundResponse(file.getPath());
+		}
+		// else
 		try {
-			in = new BufferedReader(new FileReader(file));
-			String line;
-			while ((line = in.readLine()) != null) {
-				fileString.append(line).append("\n");
+			final RecordFile record = job.getResultsIndex()
+					.getRecord(fileName);
+
+			int sortColumn = -1;
+			final String sort = params.get(PARAM_SORT_);
+			if (sort != null && !sort.isEmpty()) {
+				sortColumn = record.getColumnIndex(sort);
+				if (sortColumn < 0) {
+					return newBadRequestResponse("No such column: " + sort);
+				}
+			}
+			final boolean descending = "desc".equals(params.get(PARAM_ORDER_));
+			int filterColumn = -1;
+			boolean filterValue = true;
+			String filter = params.get(PARAM_FILTER_);
+			if (filter != null && !filter.isEmpty()) {
+				if (filter.startsWith("!")) {
+					filterValue = false;
+					filter = filter.substring(1);
+				}
+				filterColumn = record.getColumnIndex(filter);
+				if (filterColumn < 0) {
+					return newBadRequestResponse("No such column: " + filter);
+				}
+			}
+			final int offset = Math.max(0,
+					parseInt(params.get(PARAM_OFFSET_), 0));
+			final int limit = Math.max(0,
+					Math.min(MAX_ROWS_LIMIT_, parseInt(params.get(PARAM_LIMIT_),
+							DEFAULT_ROWS_LIMIT_)));
+
+			final int[] rows = record.select(sortColumn, descending,
+					filterColumn, filterValue);
+
+			final StringBuilder json = new StringBuilder("{\"columns\":");
+			Json.appendArray(json, record.getColumns());
+			json.append(",\"total\":").append(rows.length);
+			json.append(",\"offset\":").append(offset);
+			json.append(",\"rows\":[");
+			boolean first = true;
+			for (final String[] row : record.readRows(rows, offset,
+					offset + limit)) {
+				if (!first) {
+					json.append(',');
+				}
+				first = false;
+				Json.appendArray(json, row);
 			}
-		} catch (IOException e) {
+			json.append("]}");
+
+			return newJsonResponse(json);
+		} catch (final IOException e) {
 			return newErrorResponse("Cannot read the result file!", e);
-		} finally {
-			Utils.closeQuietly(in);
 		}
+	}
 
-		return newFixedLengthResponse(String.format(TEMPLATE_RESULT_FILE_,
-				fileName, fileString.toString()));
+	private Response resultRawView(final IHTTPSession session,
+			final ExperimentJob job, final String fileName) {
+		LOGGER_.info("result raw view: {} {}", job, fileName);
+		final File file = new File(job.getResultsDir(), fileName);
+		if (!file.exists() || file.isDirectory()) {
+			return newNotFoundResponse(file.getPath());
+		}
+		// else
+		final Response response = FileResponse.serve(session, file,
+				"text/csv");
+		response.addHeader("Content-Disposition",
+				"attachment; filename=\"" + fileName + "\"");
+		return response;
 	}
 
 	private Response plotFileView(final IHTTPSession session,
-			final String fileName) {
-		LOGGER_.info("plot file view {}", fileName);
-		final File file = new File(plotsDir_, fileName);
+			final ExperimentJob job, final String fileName) {
+		LOGGER_.info("plot file view {} {}", job, fileName);
+		final File file = new File(job.getPlotsDir(), fileName);
 		if (!file.exists() || file.isDirectory()) {
 			return newFixedLengthResponse(Status.NOT_FOUND, NanoHTTPD.MIME_HTML,
 					String.format(TEMPLATE_NOT_FOUND_, file.getPath()));
 		}
 		// else
-		try {
-			final InputStream data = new FileInputStream(file);
-			final Response response = newChunkedResponse(Status.OK,
-					"image/svg+xml", data);
-			return response;
-		} catch (final FileNotFoundException e) {
-			return newErrorResponse("Cannot find the plot file!", e);
-		}
+		return FileResponse.serve(session, file, "image/svg+xml");
 	}
 
-	private synchronized Response killView(final IHTTPSession session) {
-		LOGGER_.info("kill view");
-		if (experimentProcess_ != null && experimentProcess_.isAlive()) {
-			experimentProcess_.destroyForcibly();
-			experimentProcess_ = null;
+	private Response killView(final IHTTPSession session,
+			final ExperimentJob job) {
+		LOGGER_.info("kill view: {}", job);
+		if (!job.isDone()) {
+			scheduler_.kill(job);
 		}
 		final Response response = newFixedLengthResponse(Status.REDIRECT,
 				NanoHTTPD.MIME_HTML, "");
@@ -1268,109 +1808,127 @@ public class ExperimentServer extends NanoHTTPD {
 		return response;
 	}
 
-	private synchronized Response logSourceView(final IHTTPSession session) {
-		LOGGER_.info("log source view");
-		LOGGER_.info("session: " + session.getQueryParameterString());
-
-		try {
-
-			final StringBuilder message = new StringBuilder();
-
-			if (experimentProcess_ != null) {
-
-				final boolean isDead = !experimentProcess_.isAlive();
-				
-				LOGGER_.info("before update exp log");				
-				updateExperimentLog();
-				LOGGER_.info("after update exp log");
+	/**
+	 * Pushes the log of the job as server-sent events until the log is
+	 * closed. All viewers read the same {@link ExperimentLog}, so the output
+	 * of the experiment is read only once.
+	 */
+	private Response logSourceView(final IHTTPSession session,
+			final ExperimentJob job) {
+		// a reconnecting client continues where it stopped
+		final String lastEventId = session.getHeaders().get("last-event-id");
+		final String since = getParams(session).get(PARAM_SINCE_);
+		LOGGER_.info("log source view: {}, last event id: {}, since: {}", job,
+				lastEventId, since);
+		final int firstLine = lastEventId == null ? parseInt(since, 0)
+				: parseInt(lastEventId, 0);
+		final LogEventStream events = new LogEventStream(job.getLog(),
+				firstLine);
+		final Response response = new DirectResponse(Status.OK,
+				LogEventStream.MIME_TYPE, -1) {
+			@Override
+			PushSource getPushSource() {
+				// the event loop of the NIO engine sends the events
+				return events;
+			}
 
-				// encode to text/event-stream
-				final String[] lines = experimentLogToString().split("\n", -1);
-				if (isDead) {
-					experimentProcess_ = null;
-					message.append("id: last_log\n");
-				} else {
-					message.append("id: log\n");
-				}
-				for (final String line : lines) {
-					message.append("data: ").append(line).append("\n");
+			@Override
+			void sendContent(final OutputStream out) throws IOException {
+				final byte[] buffer = new byte[8192];
+				int read;
+				while ((read = events.read(buffer)) >= 0) {
+					out.write(buffer, 0, read);
+					// every event is pushed to the client
+					out.flush();
 				}
-				message.append("\n");
-
 			}
-
-			LOGGER_.info("message: " + message.toString());				
-
-			final Response response = newFixedLengthResponse(message.toString());
-			response.addHeader("Content-Type", "text/event-stream");
-			response.addHeader("Cache-Control", "no-cache");
-			return response;
-
-		} catch (final IOException e) {
-			LOGGER_.error("Cannot read experiment log!", e);
-			final Response response = newFixedLengthResponse(Status.INTERNAL_ERROR, NanoHTTPD.MIME_HTML,
-					"Cannot read experiment log!\n" + e.getMessage());
-			response.addHeader("Content-Type", "text/event-stream");
-			response.addHeader("Cache-Control", "no-cache");
-			return response;
-		}
-
+		};
+		response.addHeader("Cache-Control", "no-cache");
+		return response;
 	}
 
-	private Response resultsArchiveView(final IHTTPSession session) {
-		LOGGER_.info("results archive view");
-		if (!resultsFile_.exists() || resultsFile_.isDirectory()) {
+	/**
+	 * The archive is packed while it is sent, so it contains the results that
+	 * are there so far.
+	 */
+	private Response resultsArchiveView(final IHTTPSession session,
+			final ExperimentJob job, final ResultsArchive.Format format) {
+		LOGGER_.info("results archive view: {} {}", job, format);
+		final File resultsDir = job.getResultsDir();
+		if (!resultsDir.isDirectory()) {
 			return newFixedLengthResponse(Status.NOT_FOUND, NanoHTTPD.MIME_HTML,
-					String.format(TEMPLATE_NOT_FOUND_, resultsFile_.getPath()));
+					String.format(TEMPLATE_NOT_FOUND_, resultsDir.getPath()));
 		}
 		// else
-		try {
-			final InputStream data = new FileInputStream(resultsFile_);
-			final Response response = newChunkedResponse(Status.OK,
-					"application/octet-stream", data);
-			response.addHeader("Content-Disposition",
-					"attachment; filename=\"results.zip\"");
-			return response;
-		} catch (final FileNotFoundException e) {
-			return newErrorResponse("Cannot find the results file!", e);
-		}
+		final Map<String, String> params = getParams(session);
+		final ResultsArchive archive = new ResultsArchive(resultsDir,
+				parseList(params.get(PARAM_ONTOLOGY_)),
+				parseList(params.get(PARAM_EXPERIMENT_)),
+				parseList(params.get(PARAM_DATE_)));
+		final Response response = new DirectResponse(Status.OK,
+				format.getMimeType(), -1) {
+			@Override
+			void sendContent(final OutputStream out) throws IOException {
+				archive.write(format, out);
+			}
+		};
+		response.addHeader("Content-Disposition",
+				"attachment; filename=\"" + ResultsArchive.DIRECTORY + "."
+						+ format.getExtension() + "\"");
+		return response;
 	}
 
-	private void updateExperimentLog() throws IOException {
-		final InputStream in = experimentProcess_.getInputStream();
-		final int available = in.available();
-		LOGGER_.debug("available: {}", available);
-		final byte[] buffer = new byte[available];
-		final int read = in.read(buffer);
-		LOGGER_.debug("read: {}", read);
-		if (read >= 0) {
-			// something was actually read
-			final String s = new String(buffer, 0, read);
-			LOGGER_.debug("string: {}", s);
-
-			final String[] lines = s.split("\n", -1);
-			int i = 0;
-			updateExperilentLogLastLine(lines[i]);
-			for (i = 1; i < lines.length; i++) {
-				experimentLog_.append(experimentLogLastLine_).append("\n");
-				experimentLogLastLine_.setLength(0);
-				updateExperilentLogLastLine(lines[i]);
+	/**
+	 * @param session
+	 * @return the first value of each parameter of the request
+	 */
+	private static Map<String, String> getParams(final IHTTPSession session) {
+		final Map<String, String> result = new HashMap<>();
+		for (final Map.Entry<String, List<String>> param : session
+				.getParameters().entrySet()) {
+			if (!param.getValue().isEmpty()) {
+				result.put(param.getKey(), param.getValue().get(0));
 			}
 		}
+		return result;
 	}
 
-	private void updateExperilentLogLastLine(final String line) {
-		final int lastIndex = line.lastIndexOf("\r");
-		if (lastIndex < 0) {
-			experimentLogLastLine_.append(line);
-		} else {
-			experimentLogLastLine_.setLength(0);
-			experimentLogLastLine_.append(line.substring(lastIndex + 1));
+	/**
+	 * @param values
+	 *            comma separated values or {@code null}
+	 * @return the non-empty values
+	 */
+	private static List<String> parseList(final String values) {
+		final List<String> result = new ArrayList<>();
+		if (values == null) {
+			return result;
+		}
+		// else
+		for (final String value : values.split(",")) {
+			if (!value.trim().isEmpty()) {
+				result.add(value.trim());
+			}
 		}
+		return result;
+	}
+
+	@Override
+	protected boolean useGzipWhenAccepted(final Response r) {
+		// compressed events would be buffered instead of pushed
+		return !LogEventStream.MIME_TYPE.equals(r.getMimeType())
+				&& r.getStatus() != Status.NOT_MODIFIED
+				&& super.useGzipWhenAccepted(r);
+	}
+
+	private Response newNotFoundResponse(final String path) {
+		return newFixedLengthResponse(Status.NOT_FOUND, NanoHTTPD.MIME_HTML,
+				String.format(TEMPLATE_NOT_FOUND_, path));
 	}
 
-	private String experimentLogToString() {
-		return experimentLog_.toString() + experimentLogLastLine_.toString();
+	private Response newBadRequestResponse(final String message) {
+		LOGGER_.warn(message);
+		return newFixedLengthResponse(Status.BAD_REQUEST,
+				NanoHTTPD.MIME_PLAINTEXT, message);
 	}
 
 	private Response newErrorResponse(final String message) {
@@ -1393,6 +1951,7 @@ public class ExperimentServer extends NanoHTTPD {
 	private static final String PATTERN_SOURCE_ = "<s>";
 	private static final String PATTERN_ONTOLOGIES_ = "<o>";
 	private static final String PATTERN_QUERY_GENERATION_OPTIONS_ = "<q>";
+	private static final String PATTERN_WORKSPACE_ = "<w>";
 
 	private static String substituteCommand(final String command,
 			final String pattern, final String value) {
@@ -1405,24 +1964,28 @@ public class ExperimentServer extends NanoHTTPD {
 		}
 	}
 
-	private static String[] substituteCommand(final String[] command,
+	static String[] substituteCommand(final String[] command,
 			final int localTimeout, final int globalTimeout,
 			final String source, final String ontologies,
-			final String queryGenerationOptions) {
+			final String queryGenerationOptions, final String workspace) {
 		final String[] result = new String[command.length];
 		for (int i = 0; i < command.length; i++) {
 			result[i] = substituteCommand(
 					substituteCommand(
 							substituteCommand(
 									substituteCommand(
-											substituteCommand(command[i],
-													PATTERN_TIMEPUT_,
-													"" + localTimeout),
-											PATTERN_GLOBAL_TIMEPUT_,
-											"" + globalTimeout),
-									PATTERN_SOURCE_, source),
-							PATTERN_ONTOLOGIES_, ontologies),
-					PATTERN_QUERY_GENERATION_OPTIONS_, queryGenerationOptions);
+											substituteCommand(
+													substituteCommand(
+															command[i],
+															PATTERN_TIMEPUT_,
+															"" + localTimeout),
+													PATTERN_GLOBAL_TIMEPUT_,
+													"" + globalTimeout),
+											PATTERN_SOURCE_, source),
+									PATTERN_ONTOLOGIES_, ontologies),
+							PATTERN_QUERY_GENERATION_OPTIONS_,
+							queryGenerationOptions),
+					PATTERN_WORKSPACE_, workspace);
 		}
 		return result;
 	}
@@ -0,0 +1,730 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.annotation.Arg;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+/**
+ * Runs {@link RunJustificationExperiments} for the experiment scripts in a JVM
+ * that stays alive between the runs, so that the code of the solvers is
+ * compiled only once and the first queries of a run are not measured on cold
+ * code. Before the first run of an experiment the worker runs it on a few
+ * queries of another ontology, whose encoding is next to the one of the run,
+ * without keeping the record, so that the measured queries are not run
+ * before. The file {@value #WARM_FILE} next to the record tells whether this
+ * warm-up succeeded, so that the record is the same as in a new JVM.
+ * <p>
+ * The worker accepts one run at a time on a port of the loopback interface.
+ * The script {@code run_java_experiment.sh} sends a random token and the
+ * number of arguments in a line each, and then the arguments of {@code java},
+ * each terminated by a NUL character, so that they may contain line breaks.
+ * The worker answers with the lines of the standard output and the standard
+ * error of the run, prefixed by {@value #STDOUT_PREFIX} and
+ * {@value #STDERR_PREFIX}, followed by a line with the token and the exit
+ * code. Output that is not a complete line yet, e.g., a progress bar that is
+ * redrawn after a carriage return, is sent as soon as it is written, prefixed
+ * by {@value #STDOUT_PART_PREFIX} and {@value #STDERR_PART_PREFIX}. A run
+ * whose options of {@code java} other than system properties and the class
+ * path differ from the ones of the worker is refused with the token followed
+ * by {@value #REFUSED}, so that the script runs it in a new JVM. A run that
+ * leaves threads behind or runs out of memory stops the worker after it
+ * answered, so that it does not disturb further runs.
+ * <p>
+ * A run that calls {@link System#exit(int)} is stopped by a
+ * {@link SecurityManager}. Java 12 to 23 allow to install it only if the
+ * worker is started with {@link #getJvmOptions()}; newer versions do not
+ * allow it at all, so the worker does not start there.
+ */
+public class ExperimentWorker {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(ExperimentWorker.class);
+
+	public static final String OPT_PORT_FILE = "port-file";
+	public static final String OPT_WARMUP_QUERIES = "warmup-queries";
+
+	public static final Integer DEFAULT_WARMUP_QUERIES = 100;
+
+	public static class Options {
+		@Arg(dest = OPT_PORT_FILE)
+		public File portFile;
+		@Arg(dest = OPT_WARMUP_QUERIES)
+		public Integer warmupQueries;
+	}
+
+	/**
+	 * The port of the worker that the experiment scripts should use.
+	 */
+	public static final String ENV_WORKER_PORT = "EXPERIMENT_WORKER_PORT";
+	public static final String WARM_FILE = "warm";
+	public static final String STDOUT_PREFIX = "1 ";
+	public static final String STDERR_PREFIX = "2 ";
+	public static final String STDOUT_PART_PREFIX = "1-";
+	public static final String STDERR_PART_PREFIX = "2-";
+	public static final String REFUSED = "refused";
+
+	private static final String RUN_CLASS_ = RunJustificationExperiments.class
+			.getName();
+	/**
+	 * The options of {@link RunJustificationExperiments} that have a value.
+	 */
+	private static final Set<String> OPTIONS_WITH_VALUE_ = new HashSet<>(
+			Arrays.asList("-t", "-g"));
+	private static final long THREAD_JOIN_MILLIS_ = 1000;
+
+	public static void main(final String[] args) {
+
+		final ArgumentParser parser = ArgumentParsers
+				.newArgumentParser(ExperimentWorker.class.getSimpleName())
+				.description(
+						"Runs justification experiments sent to a local port in this JVM.");
+		parser.addArgument(OPT_PORT_FILE).dest(OPT_PORT_FILE).type(File.class)
+				.help("the file into which the port is written when the worker accepts runs");
+		parser.addArgument("--" + OPT_WARMUP_QUERIES).dest(OPT_WARMUP_QUERIES)
+				.type(Integer.class).setDefault(DEFAULT_WARMUP_QUERIES)
+				.help("on how many queries an experiment is warmed up (default: "
+						+ DEFAULT_WARMUP_QUERIES + ")");
+
+		try {
+
+			final Options opt = new Options();
+			parser.parseArgs(args, opt);
+
+			new ExperimentWorker(opt).run();
+			// threads left by the runs would keep the JVM alive
+			System.exit(0);
+
+		} catch (final ArgumentParserException e) {
+			parser.handleError(e);
+			System.exit(2);
+		} catch (final IOException e) {
+			LOGGER_.error("Worker failed!", e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the options of {@code java} that the JVM of a worker needs
+	 */
+	public static List<String> getJvmOptions() {
+		final String version = System.getProperty("java.specification.version");
+		// "1.8" before Java 9
+		final int major = version.startsWith("1.")
+				? Integer.parseInt(version.substring(2))
+				: Integer.parseInt(version.split("\\.")[0]);
+		if (major >= 12) {
+			return Collections.singletonList("-Djava.security.manager=allow");
+		}
+		// else
+		return Collections.emptyList();
+	}
+
+	private final Options options_;
+	private final ExitTrap exitTrap_ = new ExitTrap();
+	/**
+	 * The keys of the experiments that were warmed up.
+	 */
+	private final Set<String> warm_ = new HashSet<>();
+	/**
+	 * Whether a run left this JVM in a state in which it should not run more.
+	 */
+	private boolean tainted_ = false;
+	private ServerSocket server_ = null;
+
+	ExperimentWorker(final Options options) {
+		this.options_ = options;
+	}
+
+	void run() throws IOException {
+		try {
+			System.setSecurityManager(exitTrap_);
+		} catch (final UnsupportedOperationException | SecurityException e) {
+			// a run that exits would stop the worker before it answers
+			throw new IOException("Cannot trap exits of the runs", e);
+		}
+		watchParent();
+
+		server_ = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		try {
+			final File tmp = new File(options_.portFile.getPath() + ".tmp");
+			Files.write(tmp.toPath(), ("" + server_.getLocalPort())
+					.getBytes(StandardCharsets.US_ASCII));
+			Files.move(tmp.toPath(), options_.portFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			while (!tainted_) {
+				final Socket socket = server_.accept();
+				try {
+					serve(socket);
+				} catch (final IOException | RuntimeException e) {
+					LOGGER_.warn("Cannot serve a run", e);
+				} finally {
+					socket.close();
+				}
+			}
+			LOGGER_.info("Stopping after a run that left the JVM tainted");
+		} finally {
+			server_.close();
+		}
+	}
+
+	/**
+	 * Stops the worker when its standard input closes, i.e., when the process
+	 * that started it is gone.
+	 */
+	private void watchParent() {
+		final Thread watcher = new Thread("parent-watcher") {
+			@Override
+			public void run() {
+				try {
+					while (System.in.read() >= 0) {
+						// the parent does not send anything
+					}
+				} catch (final IOException e) {
+					// gone as well
+				}
+				exitTrap_.armed = false;
+				Runtime.getRuntime().halt(0);
+			}
+		};
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	private void serve(final Socket socket) throws IOException {
+		final BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream(), StandardCharsets.UTF_8));
+		final String token = in.readLine();
+		if (token == null) {
+			// only checked whether the worker is up
+			return;
+		}
+		// else
+		final int count = Integer.parseInt(in.readLine());
+		final List<String> javaArgs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			javaArgs.add(readArg(in));
+		}
+
+		socket.setTcpNoDelay(true);
+		final OutputStream socketOut = socket.getOutputStream();
+		final String option = getForeignOption(javaArgs);
+		if (option != null) {
+			socketOut.write((STDERR_PREFIX + "The worker does not run with "
+					+ option + ", running the experiment in a new JVM\n"
+					+ token + " " + REFUSED + "\n")
+							.getBytes(StandardCharsets.UTF_8));
+			socketOut.flush();
+			return;
+		}
+		// else
+		final LineOutputStream outLines = new LineOutputStream(socketOut,
+				STDOUT_PREFIX, STDOUT_PART_PREFIX);
+		final LineOutputStream errLines = new LineOutputStream(socketOut,
+				STDERR_PREFIX, STDERR_PART_PREFIX);
+		final PrintStream out = new PrintStream(outLines, true, "UTF-8");
+		final PrintStream err = new PrintStream(errLines, true, "UTF-8");
+		final PrintStream stdout = System.out;
+		final PrintStream stderr = System.err;
+		System.setOut(out);
+		System.setErr(err);
+		// the system properties of a run must not affect the next one
+		final Properties properties = (Properties) System.getProperties()
+				.clone();
+		int exitCode;
+		try {
+			exitCode = run(javaArgs);
+		} finally {
+			System.setOut(stdout);
+			System.setErr(stderr);
+			System.setProperties(properties);
+			// back to the log files of the worker
+			reconfigureLogging();
+		}
+		if (tainted_) {
+			// the next run must not reach this worker
+			server_.close();
+		}
+		out.flush();
+		err.flush();
+		outLines.finish();
+		errLines.finish();
+		socketOut.write((token + " " + exitCode + "\n")
+				.getBytes(StandardCharsets.UTF_8));
+		socketOut.flush();
+	}
+
+	/**
+	 * @param javaArgs
+	 *            the arguments of {@code java} for a run
+	 * @return an option of {@code java} before the main class, other than a
+	 *         system property or the class path, with which this JVM was not
+	 *         started, e.g., another {@code -Xmx}, or {@code null} if there
+	 *         is none
+	 */
+	private static String getForeignOption(final List<String> javaArgs) {
+		final List<String> jvmArgs = ManagementFactory.getRuntimeMXBean()
+				.getInputArguments();
+		final int mainIndex = javaArgs.indexOf(RUN_CLASS_);
+		for (int i = 0; i < mainIndex; i++) {
+			final String arg = javaArgs.get(i);
+			if (arg.equals("-cp") || arg.equals("-classpath")) {
+				i++;
+			} else if (!arg.startsWith("-D") && !jvmArgs.contains(arg)) {
+				return arg;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param in
+	 * @return the characters up to the next NUL character
+	 * @throws IOException
+	 */
+	private static String readArg(final BufferedReader in)
+			throws IOException {
+		final StringBuilder result = new StringBuilder();
+		int c;
+		while ((c = in.read()) != 0) {
+			if (c < 0) {
+				throw new EOFException("Arguments incomplete");
+			}
+			// else
+			result.append((char) c);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param javaArgs
+	 *            the arguments of {@code java} that start
+	 *            {@link RunJustificationExperiments}; only its arguments and
+	 *            system properties are used
+	 * @return the exit code of the run
+	 */
+	private int run(final List<String> javaArgs) {
+		final int mainIndex = javaArgs.indexOf(RUN_CLASS_);
+		if (mainIndex < 0) {
+			System.err.println("The worker runs only " + RUN_CLASS_);
+			return 2;
+		}
+		// else
+		for (final String arg : javaArgs.subList(0, mainIndex)) {
+			if (arg.startsWith("-D")) {
+				final int equals = arg.indexOf('=');
+				if (equals < 0) {
+					System.setProperty(arg.substring(2), "");
+				} else {
+					System.setProperty(arg.substring(2, equals),
+							arg.substring(equals + 1));
+				}
+			}
+		}
+		// the log files are set by the system properties
+		reconfigureLogging();
+		final List<String> args = javaArgs.subList(mainIndex + 1,
+				javaArgs.size());
+		final int[] positions = getPositions(args);
+		if (positions.length < 3) {
+			// let the experiment report it
+			return runMain(args);
+		}
+		// else
+		final boolean warm = warmUp(args, positions);
+		// the log files of the run do not start with the warm-up
+		reconfigureLogging();
+		final int exitCode = runMain(args);
+		final File record = new File(args.get(positions[0]));
+		if (exitCode == 0 && record.exists()) {
+			final File warmFile = new File(record.getAbsoluteFile()
+					.getParentFile(), WARM_FILE);
+			try {
+				Files.write(warmFile.toPath(), ("" + warm + "\n")
+						.getBytes(StandardCharsets.US_ASCII));
+			} catch (final IOException e) {
+				System.err.println("Cannot write " + warmFile + ": "
+						+ e.getMessage());
+			}
+		}
+		return exitCode;
+	}
+
+	/**
+	 * @param args
+	 * @return the positions of the record, the query file and the experiment
+	 *         class in the arguments of {@link RunJustificationExperiments},
+	 *         as far as they are present
+	 */
+	private static int[] getPositions(final List<String> args) {
+		final int[] result = new int[3];
+		int found = 0;
+		for (int i = 0; i < args.size() && found < result.length; i++) {
+			final String arg = args.get(i);
+			if (arg.equals("--")) {
+				break;
+			}
+			// else
+			if (arg.startsWith("-")) {
+				if (OPTIONS_WITH_VALUE_.contains(arg)) {
+					i++;
+				}
+				continue;
+			}
+			// else
+			result[found++] = i;
+		}
+		return Arrays.copyOf(result, found);
+	}
+
+	/**
+	 * Runs the experiment on the first queries of another ontology, unless it
+	 * already ran in this JVM. The experiment is identified by its class and
+	 * its arguments after the encoding.
+	 *
+	 * @return whether the experiment is warmed up
+	 */
+	private boolean warmUp(final List<String> args, final int[] positions) {
+		final int separator = args.indexOf("--");
+		final List<String> key = new ArrayList<>();
+		key.add(args.get(positions[2]));
+		if (separator >= 0 && separator + 2 <= args.size()) {
+			key.addAll(args.subList(separator + 2, args.size()));
+		}
+		final String experiment = key.toString();
+		if (warm_.contains(experiment)) {
+			return true;
+		}
+		// else
+		final File[] input = separator < 0 || separator + 1 >= args.size()
+				? null
+				: getWarmupInput(new File(args.get(positions[1])),
+						new File(args.get(separator + 1)));
+		if (input == null) {
+			System.out.println("no other ontology to warm up on");
+			return false;
+		}
+		// else
+		File dir = null;
+		try {
+			dir = Files.createTempDirectory("warmup").toFile();
+			final File queries = new File(dir, "queries");
+			int count = 0;
+			final BufferedReader in = new BufferedReader(
+					new FileReader(input[0]));
+			final BufferedWriter out = new BufferedWriter(
+					new FileWriter(queries));
+			try {
+				String line;
+				while (count < options_.warmupQueries
+						&& (line = in.readLine()) != null) {
+					out.write(line);
+					out.write('\n');
+					count++;
+				}
+			} finally {
+				Utils.closeQuietly(in);
+				out.close();
+			}
+			final List<String> warmupArgs = new ArrayList<>(args);
+			warmupArgs.set(positions[0],
+					new File(dir, "record.csv").getPath());
+			warmupArgs.set(positions[1], queries.getPath());
+			warmupArgs.set(separator + 1, input[1].getPath());
+			warmupArgs.remove("--progress");
+
+			System.out.println("warming up on " + count + " queries of "
+					+ input[1].getName());
+			final long start = System.nanoTime();
+			final PrintStream stdout = System.out;
+			final PrintStream discard = new PrintStream(new OutputStream() {
+				@Override
+				public void write(final int b) {
+					// the output of the warm-up is not needed
+				}
+			});
+			final int exitCode;
+			System.setOut(discard);
+			try {
+				exitCode = runMain(warmupArgs);
+			} finally {
+				System.setOut(stdout);
+			}
+			System.out.println(String.format("warm-up %s in %.3f s",
+					exitCode == 0 ? "done" : "failed with " + exitCode,
+					(System.nanoTime() - start) / 1e9));
+			if (exitCode == 0) {
+				warm_.add(experiment);
+			}
+		} catch (final IOException e) {
+			System.err.println("Cannot warm up: " + e.getMessage());
+		} finally {
+			if (dir != null) {
+				Utils.cleanDir(dir);
+				dir.delete();
+			}
+		}
+		return warm_.contains(experiment);
+	}
+
+	/**
+	 * @param queries
+	 *            the query file of a run, whose name starts with the name of
+	 *            the encoding
+	 * @param encoding
+	 *            the encoding of the run
+	 * @return the query file and the encoding of the ontology with the
+	 *         fewest queries among the others whose encodings are next to the
+	 *         one of the run, or {@code null} if there is none
+	 */
+	private static File[] getWarmupInput(final File queries,
+			final File encoding) {
+		final String name = encoding.getName();
+		final File[] encodings = encoding.getAbsoluteFile().getParentFile()
+				.listFiles();
+		if (!queries.getName().startsWith(name) || encodings == null) {
+			return null;
+		}
+		// else
+		final String suffix = queries.getName().substring(name.length());
+		File[] result = null;
+		for (final File other : encodings) {
+			final File otherQueries = new File(
+					queries.getAbsoluteFile().getParentFile(),
+					other.getName() + suffix);
+			if (other.isDirectory() && !other.getName().equals(name)
+					&& otherQueries.length() > 0 && (result == null
+							|| otherQueries.length() < result[0].length())) {
+				result = new File[] { otherQueries, other };
+			}
+		}
+		return result;
+	}
+
+	private int runMain(final List<String> args) {
+		final Set<Thread> threads = Thread.getAllStackTraces().keySet();
+		int exitCode = 0;
+		exitTrap_.armed = true;
+		try {
+			RunJustificationExperiments
+					.main(args.toArray(new String[args.size()]));
+		} catch (final ExitException e) {
+			exitCode = e.status;
+		} catch (final OutOfMemoryError e) {
+			e.printStackTrace();
+			tainted_ = true;
+			exitCode = 1;
+		} catch (final Throwable e) {
+			e.printStackTrace();
+			exitCode = 1;
+		} finally {
+			exitTrap_.armed = false;
+		}
+		for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!thread.isDaemon() && !threads.contains(thread)) {
+				try {
+					thread.join(THREAD_JOIN_MILLIS_);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (thread.isAlive()) {
+					LOGGER_.warn("Thread {} is still running after the run",
+							thread.getName());
+					tainted_ = true;
+				}
+			}
+		}
+		return exitCode;
+	}
+
+	/**
+	 * Makes Log4j 2, if it is used, read its configuration again, so that it
+	 * writes to the files of the current run and to the current standard
+	 * streams.
+	 */
+	private static void reconfigureLogging() {
+		try {
+			final Object context = Class
+					.forName("org.apache.logging.log4j.LogManager")
+					.getMethod("getContext", boolean.class)
+					.invoke(null, false);
+			context.getClass().getMethod("reconfigure").invoke(context);
+		} catch (final ReflectiveOperationException | LinkageError e) {
+			LOGGER_.debug("Cannot reconfigure logging", e);
+		}
+	}
+
+	/**
+	 * Turns {@link System#exit(int)} during a run into an exception.
+	 */
+	private static class ExitTrap extends SecurityManager {
+
+		volatile boolean armed = false;
+
+		@Override
+		public void checkExit(final int status) {
+			if (armed) {
+				throw new ExitException(status);
+			}
+		}
+
+		@Override
+		public void checkPermission(final Permission perm) {
+			// everything else is allowed
+		}
+
+		@Override
+		public void checkPermission(final Permission perm,
+				final Object context) {
+			// everything else is allowed
+		}
+
+	}
+
+	private static class ExitException extends SecurityException {
+
+		private static final long serialVersionUID = 1L;
+
+		final int status;
+
+		ExitException(final int status) {
+			super("exit " + status);
+			this.status = status;
+		}
+
+	}
+
+	/**
+	 * Writes the lines that are written to it, each with a prefix, so that the
+	 * lines of several streams can be told apart. A line that is not complete
+	 * yet is written with another prefix after each carriage return and when
+	 * the stream is flushed, so that progress is not held back.
+	 */
+	private static class LineOutputStream extends OutputStream {
+
+		private final OutputStream out_;
+		private final byte[] prefix_;
+		private final byte[] partPrefix_;
+		private final ByteArrayOutputStream line_ = new ByteArrayOutputStream();
+
+		/**
+		 * @param out
+		 *            the output shared with other streams, which is locked
+		 *            while a line is written to it
+		 * @param prefix
+		 *            of complete lines
+		 * @param partPrefix
+		 *            of parts of lines
+		 */
+		LineOutputStream(final OutputStream out, final String prefix,
+				final String partPrefix) {
+			this.out_ = out;
+			this.prefix_ = prefix.getBytes(StandardCharsets.UTF_8);
+			this.partPrefix_ = partPrefix.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public synchronized void write(final int b) throws IOException {
+			if (b == '\n') {
+				writeLine(prefix_);
+			} else {
+				line_.write(b);
+				if (b == '\r') {
+					writeLine(partPrefix_);
+				}
+			}
+		}
+
+		@Override
+		public synchronized void write(final byte[] b, final int off,
+				final int len) throws IOException {
+			for (int i = off; i < off + len; i++) {
+				write(b[i]);
+			}
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			if (line_.size() > 0) {
+				writeLine(partPrefix_);
+			}
+			synchronized (out_) {
+				out_.flush();
+			}
+		}
+
+		/**
+		 * Writes the rest of an unterminated line.
+		 *
+		 * @throws IOException
+		 */
+		synchronized void finish() throws IOException {
+			if (line_.size() > 0) {
+				writeLine(prefix_);
+			}
+		}
+
+		private void writeLine(final byte[] prefix) throws IOException {
+			synchronized (out_) {
+				out_.write(prefix);
+				line_.writeTo(out_);
+				out_.write('\n');
+			}
+			line_.reset();
+		}
+
+	}
+
+}
@@ -0,0 +1,259 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * A response with the content of a file or of a range of it. The content is
+ * never compressed, so that ranges refer to the bytes of the file. On a
+ * {@link FileOutput}, i.e., with the engine {@code nio}, the kernel copies the
+ * content to the socket by
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. The
+ * connections of {@link NanoHTTPD} are streams, so on the default engine the
+ * content is copied through a buffer in the heap.
+ * <p>
+ * Use {@link #serve(IHTTPSession, File, String)} to honor the conditional and
+ * range headers of the request, so that unchanged files are not sent again
+ * and interrupted downloads can be resumed.
+ */
+public class FileResponse extends DirectResponse {
+
+	private static final String HEADER_RANGE_ = "range";
+	private static final String HEADER_IF_RANGE_ = "if-range";
+	private static final String HEADER_IF_NONE_MATCH_ = "if-none-match";
+	private static final String HEADER_IF_MODIFIED_SINCE_ = "if-modified-since";
+	/**
+	 * Only single ranges are served, other requests get the whole file.
+	 */
+	private static final Pattern RANGE_ = Pattern
+			.compile("^bytes=(\\d*)-(\\d*)$");
+
+	/**
+	 * An output that can send a region of a file without copying it through
+	 * the heap.
+	 */
+	interface FileOutput {
+
+		/**
+		 * Sends the region after what was written so far.
+		 *
+		 * @param channel
+		 *            the file, which is closed when the region was sent
+		 * @param position
+		 * @param count
+		 * @throws IOException
+		 */
+		void transferFrom(FileChannel channel, long position, long count)
+				throws IOException;
+
+	}
+
+	private final File file_;
+	private final long start_;
+	private final long length_;
+
+	private FileResponse(final IStatus status, final String mimeType,
+			final File file, final long start, final long length) {
+		super(status, mimeType, length);
+		this.file_ = file;
+		this.start_ = start;
+		this.length_ = length;
+	}
+
+	/**
+	 * @param session
+	 * @param file
+	 *            an existing file
+	 * @param mimeType
+	 * @return {@code 304 Not Modified} if the client has the file, the
+	 *         requested range of the file, or the whole file
+	 */
+	public static Response serve(final IHTTPSession session, final File file,
+			final String mimeType) {
+		final long size = file.length();
+		final long lastModified = file.lastModified();
+		final String etag = ETags.of(file.getAbsolutePath(), "" + size,
+				"" + lastModified);
+		final String lastModifiedDate = formatDate(lastModified);
+		final Map<String, String> headers = session.getHeaders();
+
+		final String ifNoneMatch = headers.get(HEADER_IF_NONE_MATCH_);
+		if (ifNoneMatch == null
+				? !isModifiedSince(lastModified,
+						headers.get(HEADER_IF_MODIFIED_SINCE_))
+				: ETags.matches(ifNoneMatch, etag)) {
+			final Response response = NanoHTTPD.newFixedLengthResponse(
+					Status.NOT_MODIFIED, mimeType, "");
+			response.addHeader("ETag", etag);
+			response.addHeader("Last-Modified", lastModifiedDate);
+			return response;
+		}
+		// else
+		long start = 0;
+		long length = size;
+		IStatus status = Status.OK;
+		final String range = headers.get(HEADER_RANGE_);
+		final Matcher m = range == null ? null
+				: RANGE_.matcher(range.replace(" ", ""));
+		if (m != null && m.matches()
+				&& isCurrent(headers.get(HEADER_IF_RANGE_), etag,
+						lastModifiedDate)
+				&& !(m.group(1).isEmpty() && m.group(2).isEmpty())) {
+			try {
+				if (m.group(1).isEmpty()) {
+					// the last bytes of the file
+					length = Math.min(size, Long.parseLong(m.group(2)));
+					start = size - length;
+					status = Status.PARTIAL_CONTENT;
+				} else {
+					final long first = Long.parseLong(m.group(1));
+					final long last = m.group(2).isEmpty() ? Long.MAX_VALUE
+							: Long.parseLong(m.group(2));
+					// an inverted range is invalid, so the whole file is sent
+					if (first <= last) {
+						start = first;
+						length = Math.min(size - 1, last) - start + 1;
+						status = Status.PARTIAL_CONTENT;
+					}
+				}
+			} catch (final NumberFormatException e) {
+				// too large, so the whole file is sent
+				start = 0;
+				length = size;
+			}
+			if (status == Status.PARTIAL_CONTENT && (start >= size
+					|| length <= 0)) {
+				final Response response = NanoHTTPD.newFixedLengthResponse(
+						Status.RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT,
+						"");
+				response.addHeader("Content-Range", "bytes */" + size);
+				return response;
+			}
+		}
+		final FileResponse response = new FileResponse(status, mimeType, file,
+				start, length);
+		response.addHeader("ETag", etag);
+		response.addHeader("Last-Modified", lastModifiedDate);
+		response.addHeader("Cache-Control", "no-cache");
+		response.addHeader("Accept-Ranges", "bytes");
+		if (status == Status.PARTIAL_CONTENT) {
+			response.addHeader("Content-Range", "bytes " + start + "-"
+					+ (start + length - 1) + "/" + size);
+		}
+		return response;
+	}
+
+	/**
+	 * @param lastModified
+	 * @param ifModifiedSince
+	 *            the value of the {@code If-Modified-Since} header or
+	 *            {@code null}
+	 * @return {@code false} if the file was not modified since the date
+	 */
+	private static boolean isModifiedSince(final long lastModified,
+			final String ifModifiedSince) {
+		if (ifModifiedSince == null) {
+			return true;
+		}
+		// else
+		final SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT,
+				Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			// HTTP dates have seconds
+			return lastModified / 1000 > format.parse(ifModifiedSince)
+					.getTime() / 1000;
+		} catch (final ParseException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * @param ifRange
+	 *            the value of the {@code If-Range} header or {@code null}
+	 * @param etag
+	 * @param lastModifiedDate
+	 * @return whether the range may be sent, i.e., whether the part of the
+	 *         file that the client has is still current
+	 */
+	private static boolean isCurrent(final String ifRange, final String etag,
+			final String lastModifiedDate) {
+		return ifRange == null || ifRange.trim().equals(etag)
+				|| ifRange.trim().equals(lastModifiedDate);
+	}
+
+	@Override
+	void sendContent(final OutputStream out) throws IOException {
+		final FileChannel channel = FileChannel.open(file_.toPath(),
+				StandardOpenOption.READ);
+		if (out instanceof FileOutput) {
+			((FileOutput) out).transferFrom(channel, start_, length_);
+		} else {
+			try {
+				// not a socket channel, so copied through the heap
+				transfer(channel, Channels.newChannel(out));
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return file_.toString();
+	}
+
+	private void transfer(final FileChannel channel,
+			final WritableByteChannel target) throws IOException {
+		long position = start_;
+		final long end = start_ + length_;
+		while (position < end) {
+			final long sent = channel.transferTo(position, end - position,
+					target);
+			if (sent <= 0) {
+				throw new EOFException(file_ + " is shorter than expected");
+			}
+			// else
+			position += sent;
+		}
+	}
+
+}
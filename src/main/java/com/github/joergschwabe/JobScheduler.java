@@ -0,0 +1,369 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs at most a fixed number of {@link ExperimentJob}s at once and queues the
+ * others until a running job finishes. Only the most recently used jobs that
+ * are done keep their logs and results in memory, the others read them from
+ * their workspaces again when they are used.
+ */
+public class JobScheduler {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(JobScheduler.class);
+
+	/**
+	 * How many jobs that are done keep their logs and results in memory.
+	 */
+	private static final int MAX_CACHED_DONE_JOBS_ = 4;
+
+	private final File jobsDir_;
+	private final Map<String, String> environment_;
+	private final int maxRunning_;
+	private final int maxQueued_;
+	private final CpuPool cpus_;
+	private final int cpusPerJob_;
+	private final long memoryPerJob_;
+
+	@GuardedBy("this")
+	private final Map<String, ExperimentJob> jobs_ = new LinkedHashMap<>();
+	@GuardedBy("this")
+	private final Queue<ExperimentJob> queued_ = new ArrayDeque<>();
+	@GuardedBy("this")
+	private final List<ExperimentJob> running_ = new ArrayList<>();
+	/**
+	 * The jobs that are done and keep their logs and results in memory, the
+	 * least recently used first.
+	 */
+	@GuardedBy("this")
+	private final Map<String, ExperimentJob> cachedDone_ = new LinkedHashMap<>(
+			16, 0.75f, true);
+	@GuardedBy("this")
+	private int lastJobId_ = 0;
+
+	private final ExecutorService waiters_ = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "job-waiter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Each running job gets an equal share of the available CPUs and memory.
+	 * The CPUs of different jobs are disjoint, unless there are more jobs than
+	 * CPUs, in which case the jobs are not pinned.
+	 *
+	 * @param jobsDir
+	 *            the directory in which the workspaces of the jobs are created
+	 * @param environment
+	 *            the variables added to the environment of the jobs, e.g.,
+	 *            the caches that they share
+	 * @param maxRunning
+	 *            how many jobs may run at once
+	 * @param maxQueued
+	 *            how many jobs may wait for running
+	 * @throws IOException
+	 */
+	public JobScheduler(final File jobsDir,
+			final Map<String, String> environment, final int maxRunning,
+			final int maxQueued) throws IOException {
+		this.jobsDir_ = jobsDir;
+		this.environment_ = environment;
+		Utils.cleanIfNotDir(jobsDir_);
+		this.maxRunning_ = maxRunning;
+		this.maxQueued_ = maxQueued;
+		this.cpus_ = new CpuPool(CpuSet.getAvailable());
+		this.cpusPerJob_ = cpus_.getCpus().size() / maxRunning;
+		this.memoryPerJob_ = SystemResources.getTotalMemory() / maxRunning;
+		LOGGER_.info("{} CPUs and {} MB of memory per job", cpusPerJob_,
+				memoryPerJob_ >> 20);
+		// continue numbering after the jobs of the previous runs
+		final String[] oldJobs = jobsDir_.list();
+		if (oldJobs != null) {
+			for (final String oldJob : oldJobs) {
+				try {
+					lastJobId_ = Math.max(lastJobId_, Integer.parseInt(oldJob));
+				} catch (final NumberFormatException e) {
+					// not a job directory
+				}
+			}
+		}
+	}
+
+	/**
+	 * How many jobs can run at once, so that each of them can use at least one
+	 * core and the memory for one JVM started with
+	 * {@value SystemResources#ENV_JAVA_MEMORY_OPTIONS}.
+	 *
+	 * @return the default for the maximal number of running jobs
+	 */
+	public static int getDefaultMaxRunning() {
+		final long byMemory = SystemResources.getTotalMemory()
+				/ SystemResources.getJvmMemory();
+		return (int) Math.max(1, Math.min(
+				SystemResources.getAvailableProcessors(), byMemory));
+	}
+
+	public int getMaxRunning() {
+		return maxRunning_;
+	}
+
+	/**
+	 * Creates a new job with its own workspace. The job is not submitted.
+	 *
+	 * @return the new job
+	 * @throws IOException
+	 */
+	public synchronized ExperimentJob createJob() throws IOException {
+		final String id = "" + (++lastJobId_);
+		final ExperimentJob job = new ExperimentJob(id, new File(jobsDir_, id),
+				environment_);
+		jobs_.put(id, job);
+		return job;
+	}
+
+	/**
+	 * Submits a job created by {@link #createJob()}. It is started right away
+	 * if fewer than the maximal number of jobs is running.
+	 *
+	 * @param job
+	 * @return {@code false} if the queue is full and the job was discarded
+	 */
+	public synchronized boolean submit(final ExperimentJob job) {
+		if (queued_.size() >= maxQueued_) {
+			LOGGER_.info("queue full, discarding {}", job);
+			jobs_.remove(job.getId());
+			return false;
+		}
+		// else
+		queued_.add(job);
+		LOGGER_.info("{} queued", job);
+		schedule();
+		return true;
+	}
+
+	/**
+	 * Forgets a job created by {@link #createJob()} that is not submitted and
+	 * deletes its workspace.
+	 *
+	 * @param job
+	 */
+	public void discard(final ExperimentJob job) {
+		synchronized (this) {
+			if (jobs_.remove(job.getId()) == null) {
+				// already discarded
+				return;
+			}
+		}
+		try {
+			Files.walkFileTree(job.getWorkspace().toPath(),
+					new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(final Path file,
+								final BasicFileAttributes attrs)
+								throws IOException {
+							Files.delete(file);
+							return FileVisitResult.CONTINUE;
+						}
+
+						@Override
+						public FileVisitResult postVisitDirectory(
+								final Path dir, final IOException e)
+								throws IOException {
+							Files.delete(dir);
+							return FileVisitResult.CONTINUE;
+						}
+					});
+		} catch (final IOException e) {
+			LOGGER_.warn("Cannot delete the workspace of {}", job, e);
+		}
+	}
+
+	public ExperimentJob getJob(final String id) {
+		final ExperimentJob job;
+		final ExperimentJob evicted;
+		synchronized (this) {
+			job = jobs_.get(id);
+			evicted = job == null ? null : used(job);
+		}
+		release(evicted);
+		return job;
+	}
+
+	/**
+	 * @return the most recently created job or {@code null} if there are no
+	 *         jobs
+	 */
+	public ExperimentJob getLatestJob() {
+		ExperimentJob job = null;
+		final ExperimentJob evicted;
+		synchronized (this) {
+			for (final ExperimentJob created : jobs_.values()) {
+				job = created;
+			}
+			evicted = job == null ? null : used(job);
+		}
+		release(evicted);
+		return job;
+	}
+
+	public synchronized List<ExperimentJob> getJobs() {
+		return new ArrayList<>(jobs_.values());
+	}
+
+	/**
+	 * @param job
+	 * @return how many jobs are queued before the job, or -1 if it is not
+	 *         queued
+	 */
+	public synchronized int getQueuePosition(final ExperimentJob job) {
+		int position = 0;
+		for (final ExperimentJob queued : queued_) {
+			if (queued == job) {
+				return position;
+			}
+			position++;
+		}
+		return -1;
+	}
+
+	public void kill(final ExperimentJob job) {
+		final ExperimentJob evicted;
+		synchronized (this) {
+			queued_.remove(job);
+			job.kill();
+			if (running_.remove(job)) {
+				cpus_.release(job.getCpus());
+				schedule();
+			}
+			evicted = used(job);
+		}
+		release(evicted);
+	}
+
+	@GuardedBy("this")
+	private void schedule() {
+		while (running_.size() < maxRunning_ && !queued_.isEmpty()) {
+			final ExperimentJob job = queued_.poll();
+			final CpuSet cpus = cpus_.acquire(cpusPerJob_);
+			try {
+				job.start(cpus, memoryPerJob_);
+			} catch (final IOException e) {
+				LOGGER_.error("Cannot start " + job, e);
+				cpus_.release(cpus);
+				job.kill();
+				continue;
+			}
+			running_.add(job);
+			waiters_.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						job.waitFor();
+					} catch (final InterruptedException e) {
+						LOGGER_.warn("Interrupted while waiting for {}", job);
+					}
+					finished(job);
+				}
+			});
+		}
+	}
+
+	private void finished(final ExperimentJob job) {
+		final ExperimentJob evicted;
+		synchronized (this) {
+			LOGGER_.info("{} finished", job);
+			if (running_.remove(job)) {
+				cpus_.release(job.getCpus());
+				schedule();
+			}
+			evicted = used(job);
+		}
+		release(evicted);
+	}
+
+	/**
+	 * Marks a job that is done as the most recently used one that keeps its
+	 * log and results in memory.
+	 *
+	 * @param job
+	 * @return the least recently used job that should not keep its log and
+	 *         results in memory any more, or {@code null} if there is none
+	 */
+	@GuardedBy("this")
+	private ExperimentJob used(final ExperimentJob job) {
+		if (!job.isDone()) {
+			return null;
+		}
+		// else
+		cachedDone_.put(job.getId(), job);
+		if (cachedDone_.size() <= MAX_CACHED_DONE_JOBS_) {
+			return null;
+		}
+		// else
+		final Iterator<ExperimentJob> eldest = cachedDone_.values().iterator();
+		final ExperimentJob result = eldest.next();
+		eldest.remove();
+		return result;
+	}
+
+	/**
+	 * Releases the memory of a job outside of the lock of the scheduler,
+	 * because it waits for readers of the results of the job.
+	 *
+	 * @param job
+	 *            or {@code null}
+	 */
+	private static void release(final ExperimentJob job) {
+		if (job != null) {
+			job.release();
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+/**
+ * Writing of JSON values that may also be embedded in a script of an HTML
+ * page.
+ */
+class Json {
+
+	static void appendArray(final StringBuilder json, final String[] values) {
+		json.append('[');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			appendString(json, values[i]);
+		}
+		json.append(']');
+	}
+
+	static void appendString(final StringBuilder json, final String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '<':
+				// so that it cannot close a script
+				json.append("\\u003c");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Appends the number rounded to the given number of decimals, or
+	 * {@code null} if it is not finite.
+	 */
+	static void appendNumber(final StringBuilder json, final double value,
+			final int decimals) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			json.append("null");
+			return;
+		}
+		// else
+		final double scale = Math.pow(10, decimals);
+		final double rounded = Math.round(value * scale) / scale;
+		if (rounded == Math.rint(rounded) && Math.abs(rounded) < 1e15) {
+			json.append((long) rounded);
+		} else {
+			json.append(rounded);
+		}
+	}
+
+}
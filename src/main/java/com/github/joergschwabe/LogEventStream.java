@@ -0,0 +1,212 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes an {@link ExperimentLog} as a {@code text/event-stream} that ends
+ * only when the log is closed. Reads block until there is something new in
+ * the log, so the stream can be sent as a chunked response that pushes the
+ * new lines to the client as soon as they are appended. Alternatively,
+ * {@link #poll()} takes the new events without waiting.
+ * <p>
+ * The terminated lines are sent in message events whose id is the number of
+ * lines sent so far, so that a client can resume with {@code Last-Event-ID}.
+ * Changes of the current line are sent in {@value #EVENT_PROGRESS} events and
+ * the end of the log in a {@value #EVENT_DONE} event.
+ */
+public class LogEventStream extends InputStream
+		implements DirectResponse.PushSource {
+
+	public static final String MIME_TYPE = "text/event-stream";
+
+	public static final String EVENT_PROGRESS = "progress";
+	public static final String EVENT_DONE = "done";
+
+	/**
+	 * If nothing happens for this long, a comment is sent, so that proxies do
+	 * not close the connection and a closed connection is noticed.
+	 */
+	private static final long HEARTBEAT_MILLIS_ = 15000;
+	private static final int MAX_LINES_PER_EVENT_ = 1000;
+	private static final String HEARTBEAT_ = ": heartbeat\n\n";
+
+	private final ExperimentLog log_;
+	private int nextLine_;
+	private String lastLineSent_ = "";
+	private boolean doneSent_ = false;
+	private byte[] buffer_ = new byte[0];
+	private int position_ = 0;
+	private long lastSent_ = System.currentTimeMillis();
+	private Runnable listener_ = null;
+
+	/**
+	 * @param log
+	 * @param firstLine
+	 *            index of the first line that is sent
+	 */
+	public LogEventStream(final ExperimentLog log, final int firstLine) {
+		this.log_ = log;
+		this.nextLine_ = Math.max(0, firstLine);
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		// else
+		while (position_ >= buffer_.length) {
+			if (doneSent_) {
+				return -1;
+			}
+			// else
+			try {
+				fill();
+			} catch (final InterruptedException e) {
+				throw new InterruptedIOException(e.getMessage());
+			}
+		}
+		final int read = Math.min(len, buffer_.length - position_);
+		System.arraycopy(buffer_, position_, b, off, read);
+		position_ += read;
+		return read;
+	}
+
+	@Override
+	public int available() {
+		return buffer_.length - position_;
+	}
+
+	/**
+	 * Encodes what is new in the log into the buffer, waiting for a change if
+	 * there is nothing new.
+	 *
+	 * @throws IOException
+	 *             if older lines cannot be read from the log file
+	 * @throws InterruptedException
+	 */
+	private void fill() throws IOException, InterruptedException {
+		String events = "";
+		while (events.isEmpty()) {
+			final long version = log_.getVersion();
+			events = encode();
+			if (events.isEmpty()
+					&& !log_.awaitChange(version, HEARTBEAT_MILLIS_)) {
+				events = HEARTBEAT_;
+			}
+		}
+		buffer_ = events.getBytes(StandardCharsets.UTF_8);
+		position_ = 0;
+	}
+
+	/**
+	 * Does not wait for changes of the log, so that an event loop can send
+	 * the events when the listener tells it about a change. A heartbeat is
+	 * sent if nothing was sent for {@value #HEARTBEAT_MILLIS_} milliseconds
+	 * when this is called.
+	 */
+	@Override
+	public byte[] poll() throws IOException {
+		if (doneSent_) {
+			return null;
+		}
+		// else
+		String events = encode();
+		final long now = System.currentTimeMillis();
+		if (!events.isEmpty()) {
+			lastSent_ = now;
+		} else if (now - lastSent_ >= HEARTBEAT_MILLIS_) {
+			lastSent_ = now;
+			events = HEARTBEAT_;
+		}
+		return events.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public synchronized void setListener(final Runnable listener) {
+		if (listener_ != null) {
+			log_.removeListener(listener_);
+		}
+		listener_ = listener;
+		if (listener_ != null) {
+			log_.addListener(listener_);
+		}
+	}
+
+	/**
+	 * @return the events for what is new in the log, which are empty if
+	 *         nothing is new
+	 * @throws IOException
+	 *             if older lines cannot be read from the log file
+	 */
+	private String encode() throws IOException {
+		final StringBuilder events = new StringBuilder();
+		// all lines are in the log when it is closed
+		final boolean closed = log_.isClosed();
+
+		final List<String> lines = log_.getLines(nextLine_,
+				MAX_LINES_PER_EVENT_);
+		if (!lines.isEmpty()) {
+			nextLine_ += lines.size();
+			events.append("id: ").append(nextLine_).append('\n');
+			for (final String line : lines) {
+				events.append("data: ").append(line).append('\n');
+			}
+			events.append('\n');
+			if (nextLine_ < log_.getLineCount()) {
+				/*
+				 * more lines follow, also when the batch was short because it
+				 * ended where the lines in memory begin
+				 */
+				return events.toString();
+			}
+		}
+
+		final String lastLine = log_.getLastLine();
+		if (!lastLine.equals(lastLineSent_)) {
+			lastLineSent_ = lastLine;
+			events.append("event: ").append(EVENT_PROGRESS).append('\n');
+			events.append("data: ").append(lastLine).append("\n\n");
+		}
+
+		if (closed && nextLine_ >= log_.getLineCount()) {
+			doneSent_ = true;
+			events.append("event: ").append(EVENT_DONE).append('\n');
+			events.append("data: \n\n");
+		}
+		return events.toString();
+	}
+
+}
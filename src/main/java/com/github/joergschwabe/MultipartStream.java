@@ -0,0 +1,368 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the parts of a {@code multipart/form-data} body one after the other
+ * while it arrives, so that uploaded files need not be stored before they are
+ * processed. The content of a part must be read before the next part.
+ */
+public class MultipartStream {
+
+	public static final String HEADER_CONTENT_DISPOSITION = "content-disposition";
+
+	private static final Pattern BOUNDARY_ = Pattern
+			.compile("boundary=(?:\"([^\"]+)\"|([^;\\s]+))");
+	private static final Pattern NAME_ = Pattern
+			.compile("[;\\s]name=\"([^\"]*)\"");
+	private static final Pattern FILE_NAME_ = Pattern
+			.compile("[;\\s]filename=\"([^\"]*)\"");
+	private static final int BUFFER_SIZE_ = 65536;
+	private static final int MAX_HEADERS_SIZE_ = 8192;
+
+	private final InputStream in_;
+	/**
+	 * What precedes each boundary, the line break of the previous part
+	 * included.
+	 */
+	private final byte[] delimiter_;
+	private final byte[] buffer_ = new byte[BUFFER_SIZE_];
+	private int position_ = 0;
+	private int end_ = 0;
+	/**
+	 * The bytes of the buffer before this position that were not read yet
+	 * belong to the current part.
+	 */
+	private int contentEnd_ = 0;
+	/**
+	 * Whether the delimiter is at {@link #contentEnd_}.
+	 */
+	private boolean delimiterFound_ = false;
+	private boolean eof_ = false;
+	private boolean finished_ = false;
+	private PartInputStream part_ = null;
+
+	/**
+	 * @param in
+	 *            the body, which must end after the last part
+	 * @param contentType
+	 *            the value of the {@code Content-Type} header
+	 * @throws IOException
+	 *             if the content type has no boundary
+	 */
+	public MultipartStream(final InputStream in, final String contentType)
+			throws IOException {
+		final Matcher m = contentType == null ? null
+				: BOUNDARY_.matcher(contentType);
+		if (m == null || !m.find()) {
+			throw new IOException("No multipart boundary: " + contentType);
+		}
+		// else
+		final String boundary = m.group(1) == null ? m.group(2) : m.group(1);
+		this.in_ = in;
+		this.delimiter_ = ("\r\n--" + boundary)
+				.getBytes(StandardCharsets.US_ASCII);
+		// the first boundary is not preceded by a line break
+		buffer_[end_++] = '\r';
+		buffer_[end_++] = '\n';
+	}
+
+	/**
+	 * @param contentType
+	 * @return whether the content type is {@code multipart/form-data}
+	 */
+	public static boolean isMultipart(final String contentType) {
+		return contentType != null && contentType.trim().toLowerCase()
+				.startsWith("multipart/form-data");
+	}
+
+	/**
+	 * Skips the rest of the current part.
+	 *
+	 * @return the headers of the next part with lower case names, or
+	 *         {@code null} if there are no more parts
+	 * @throws IOException
+	 */
+	public Map<String, String> nextPart() throws IOException {
+		if (part_ == null) {
+			// the preamble
+			part_ = new PartInputStream();
+		}
+		while (part_.skip(BUFFER_SIZE_) > 0) {
+			// skipping
+		}
+		if (finished_) {
+			return null;
+		}
+		// else
+		if (!fill(2)) {
+			throw new IOException("Truncated multipart body");
+		}
+		// else
+		if (buffer_[position_] == '-' && buffer_[position_ + 1] == '-') {
+			finished_ = true;
+			return null;
+		}
+		// else
+		// the rest of the boundary line
+		readLine();
+		final Map<String, String> headers = new HashMap<>();
+		String line;
+		int size = 0;
+		while (!(line = readLine()).isEmpty()) {
+			size += line.length();
+			if (size > MAX_HEADERS_SIZE_) {
+				throw new IOException("Multipart headers too large");
+			}
+			// else
+			final int colon = line.indexOf(':');
+			if (colon > 0) {
+				headers.put(line.substring(0, colon).trim().toLowerCase(),
+						line.substring(colon + 1).trim());
+			}
+		}
+		part_ = new PartInputStream();
+		return headers;
+	}
+
+	/**
+	 * @return the content of the current part, which ends at the next
+	 *         boundary
+	 */
+	public InputStream getContent() {
+		return part_;
+	}
+
+	/**
+	 * Reads the content of the current part as a string.
+	 *
+	 * @param maxLength
+	 *            the maximal number of bytes
+	 * @return the content as UTF-8
+	 * @throws IOException
+	 *             if the content is longer
+	 */
+	public String getValue(final int maxLength) throws IOException {
+		final ByteArrayOutputStream value = new ByteArrayOutputStream();
+		final byte[] bytes = new byte[1024];
+		int read;
+		while ((read = part_.read(bytes)) != -1) {
+			value.write(bytes, 0, read);
+			if (value.size() > maxLength) {
+				throw new IOException("Form field too long");
+			}
+		}
+		return new String(value.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param headers
+	 *            the headers of a part
+	 * @return the name of the form field of the part or {@code null}
+	 */
+	public static String getName(final Map<String, String> headers) {
+		return getDispositionParameter(headers, NAME_);
+	}
+
+	/**
+	 * @param headers
+	 *            the headers of a part
+	 * @return the name of the uploaded file or {@code null} if the part is
+	 *         not a file
+	 */
+	public static String getFileName(final Map<String, String> headers) {
+		return getDispositionParameter(headers, FILE_NAME_);
+	}
+
+	private static String getDispositionParameter(
+			final Map<String, String> headers, final Pattern parameter) {
+		final String disposition = headers.get(HEADER_CONTENT_DISPOSITION);
+		if (disposition == null) {
+			return null;
+		}
+		// else
+		final Matcher m = parameter.matcher(disposition);
+		return m.find() ? m.group(1) : null;
+	}
+
+	/**
+	 * Reads until at least the number of bytes is buffered or the body ends.
+	 *
+	 * @param count
+	 * @return whether the bytes are buffered
+	 * @throws IOException
+	 */
+	private boolean fill(final int count) throws IOException {
+		while (end_ - position_ < count && !eof_) {
+			if (position_ > 0) {
+				System.arraycopy(buffer_, position_, buffer_, 0,
+						end_ - position_);
+				end_ -= position_;
+				contentEnd_ -= position_;
+				position_ = 0;
+			}
+			final int read = in_.read(buffer_, end_, buffer_.length - end_);
+			if (read == -1) {
+				eof_ = true;
+			} else {
+				end_ += read;
+			}
+		}
+		return end_ - position_ >= count;
+	}
+
+	private String readLine() throws IOException {
+		final StringBuilder line = new StringBuilder();
+		while (true) {
+			if (!fill(1)) {
+				throw new IOException("Truncated multipart headers");
+			}
+			// else
+			final byte b = buffer_[position_++];
+			if (b == '\n') {
+				final int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == '\r') {
+					line.setLength(length - 1);
+				}
+				return line.toString();
+			}
+			// else
+			if (line.length() > MAX_HEADERS_SIZE_) {
+				throw new IOException("Multipart header too long");
+			}
+			// else
+			line.append((char) (b & 0xFF));
+		}
+	}
+
+	/**
+	 * @return the position of the delimiter in the buffer or -1
+	 */
+	private int findDelimiter() {
+		final int last = end_ - delimiter_.length;
+		next: for (int i = position_; i <= last; i++) {
+			for (int j = 0; j < delimiter_.length; j++) {
+				if (buffer_[i + j] != delimiter_[j]) {
+					continue next;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * The content of a part up to the next delimiter.
+	 */
+	private class PartInputStream extends InputStream {
+
+		private boolean ended_ = false;
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			if (ended_) {
+				return -1;
+			}
+			// else
+			if (len == 0) {
+				return 0;
+			}
+			// else
+			final int available = buffered();
+			if (available == -1) {
+				return -1;
+			}
+			// else
+			final int n = Math.min(len, available);
+			System.arraycopy(buffer_, position_, b, off, n);
+			position_ += n;
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final int available = buffered();
+			if (available == -1) {
+				return 0;
+			}
+			// else
+			final int skipped = (int) Math.min(n, available);
+			position_ += skipped;
+			return skipped;
+		}
+
+		/**
+		 * Buffers more content if all known content was read.
+		 *
+		 * @return the number of known content bytes, or -1 if the delimiter
+		 *         was reached and consumed
+		 * @throws IOException
+		 */
+		private int buffered() throws IOException {
+			if (ended_) {
+				return -1;
+			}
+			// else
+			if (position_ >= contentEnd_) {
+				if (!delimiterFound_) {
+					fill(delimiter_.length);
+					final int delimiter = findDelimiter();
+					if (delimiter != -1) {
+						contentEnd_ = delimiter;
+						delimiterFound_ = true;
+					} else if (eof_) {
+						throw new IOException("Truncated multipart body");
+					} else {
+						// the end of the buffer may start the delimiter
+						contentEnd_ = end_ - delimiter_.length + 1;
+					}
+				}
+				if (delimiterFound_ && position_ >= contentEnd_) {
+					position_ += delimiter_.length;
+					delimiterFound_ = false;
+					ended_ = true;
+					return -1;
+				}
+			}
+			// else
+			return contentEnd_ - position_;
+		}
+
+	}
+
+}
@@ -0,0 +1,1156 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * An HTTP server in which one event loop owns all connections, as an
+ * alternative to the thread per connection of {@link NanoHTTPD}. Requests are
+ * read and responses are written without blocking, so idle keep-alive
+ * connections and slow clients do not hold any thread. A request holds a
+ * worker only while its response is produced, and the response is passed to
+ * the connection in bounded portions, so it is never buffered whole. The
+ * content of a {@link FileResponse} is sent by the kernel, and content that
+ * is pushed by a {@link DirectResponse.PushSource}, such as the events of a
+ * {@link LogEventStream}, is sent by the event loop whenever the source has
+ * something new, so neither holds a worker.
+ * <p>
+ * The requests are parsed and the responses are encoded by a {@link Handler},
+ * which can use the sessions of a {@link NanoHTTPD} server, so that both serve
+ * the same routes in the same way. A request with a small body is handed to a
+ * session when it was received completely. A larger body, such as an upload,
+ * is passed to the session while it is received, through a bounded buffer
+ * that the connection is not read into while it is full, so the body is
+ * neither held in memory nor written to a temporary file. Requests must
+ * announce the length of their body, which must not exceed the configured
+ * maximum, otherwise they are rejected before the body is received.
+ */
+public class NioHttpServer {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(NioHttpServer.class);
+
+	/**
+	 * The size of the input buffer of a connection, which limits the size of
+	 * the request head as in {@link NanoHTTPD}.
+	 */
+	private static final int BUFFER_SIZE_ = 8192;
+	private static final int MAX_BODY_IN_MEMORY_ = 1 << 20;
+	/**
+	 * The number of bytes of a larger body that are received before the
+	 * session reads them.
+	 */
+	private static final int MAX_BODY_BUFFERED_ = 1 << 18;
+	/**
+	 * A worker waits while this many bytes of its response are not sent.
+	 */
+	private static final int MAX_PENDING_OUTPUT_ = 1 << 18;
+	/**
+	 * Keep-alive connections without requests are closed after this time.
+	 */
+	private static final long IDLE_TIMEOUT_MILLIS_ = 60000;
+	private static final byte[] HEAD_END_ = "\r\n\r\n"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final String CONTENT_LENGTH_ = "content-length:";
+	private static final String TRANSFER_ENCODING_ = "transfer-encoding:";
+
+	/**
+	 * Parses a complete request and sends the response, as a session of
+	 * {@link NanoHTTPD} does.
+	 */
+	public interface Handler {
+
+		/**
+		 * @param request
+		 *            the head and the body of one request
+		 * @param response
+		 * @param address
+		 *            the address of the client
+		 * @throws SocketException
+		 *             if the connection should be closed after the response
+		 * @throws IOException
+		 */
+		void handle(InputStream request, OutputStream response,
+				InetAddress address) throws IOException;
+
+	}
+
+	private final Handler handler_;
+	private final ExecutorService workers_;
+	private final long maxBodyLength_;
+	private final Selector selector_;
+	private final ServerSocketChannel channel_;
+	/**
+	 * Connections whose state was changed by a worker.
+	 */
+	private final Queue<Connection> changed_ = new ConcurrentLinkedQueue<>();
+	private final Thread loop_;
+	private volatile boolean stopped_ = false;
+
+	/**
+	 * Binds the port. The server starts accepting connections when it is
+	 * started.
+	 *
+	 * @param handler
+	 * @param port
+	 * @param workers
+	 *            the executor that produces the responses
+	 * @param maxBodyLength
+	 *            the number of bytes of the largest request body that is
+	 *            received
+	 * @throws IOException
+	 */
+	public NioHttpServer(final Handler handler, final int port,
+			final ExecutorService workers, final long maxBodyLength)
+			throws IOException {
+		this.handler_ = handler;
+		this.workers_ = workers;
+		this.maxBodyLength_ = maxBodyLength;
+		this.selector_ = Selector.open();
+		this.channel_ = ServerSocketChannel.open();
+		try {
+			channel_.socket().setReuseAddress(true);
+			channel_.bind(new InetSocketAddress(port));
+			channel_.configureBlocking(false);
+			channel_.register(selector_, SelectionKey.OP_ACCEPT);
+		} catch (final IOException e) {
+			Utils.closeQuietly(channel_);
+			Utils.closeQuietly(selector_);
+			throw e;
+		}
+		this.loop_ = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "http-event-loop");
+	}
+
+	public void start() {
+		loop_.start();
+	}
+
+	/**
+	 * Closes all connections and stops accepting new ones.
+	 */
+	public void stop() {
+		stopped_ = true;
+		selector_.wakeup();
+		try {
+			loop_.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		workers_.shutdownNow();
+	}
+
+	private void loop() {
+		try {
+			while (!stopped_) {
+				selector_.select(IDLE_TIMEOUT_MILLIS_ / 4);
+				Connection changed;
+				while ((changed = changed_.poll()) != null) {
+					update(changed);
+				}
+				final Iterator<SelectionKey> keys = selector_.selectedKeys()
+						.iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					// else
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					// else
+					final Connection connection = (Connection) key
+							.attachment();
+					if (key.isWritable()) {
+						write(connection);
+					}
+					if (key.isValid() && key.isReadable()) {
+						read(connection);
+					}
+				}
+				checkTimers();
+			}
+		} catch (final IOException | ClosedSelectorException e) {
+			LOGGER_.error("HTTP event loop failed!", e);
+		} finally {
+			for (final SelectionKey key : selector_.keys()) {
+				if (key.attachment() instanceof Connection) {
+					close((Connection) key.attachment());
+				}
+			}
+			Utils.closeQuietly(channel_);
+			Utils.closeQuietly(selector_);
+		}
+	}
+
+	private void accept() {
+		final SocketChannel channel;
+		try {
+			channel = channel_.accept();
+			if (channel == null) {
+				return;
+			}
+			// else
+			channel.configureBlocking(false);
+		} catch (final IOException e) {
+			LOGGER_.warn("Cannot accept connection", e);
+			return;
+		}
+		final Connection connection = new Connection(channel);
+		try {
+			connection.key = channel.register(selector_, SelectionKey.OP_READ,
+					connection);
+		} catch (final IOException e) {
+			LOGGER_.warn("Cannot register connection", e);
+			Utils.closeQuietly(channel);
+		}
+	}
+
+	private void read(final Connection connection) {
+		if (!connection.input.hasRemaining()) {
+			// the head of the request does not fit
+			LOGGER_.warn("Request header too large, closing connection");
+			close(connection);
+			return;
+		}
+		// else
+		final int read;
+		try {
+			read = connection.channel.read(connection.input);
+		} catch (final IOException e) {
+			close(connection);
+			return;
+		}
+		if (read < 0) {
+			close(connection);
+			return;
+		}
+		// else
+		connection.lastActive = System.currentTimeMillis();
+		process(connection);
+	}
+
+	/**
+	 * Receives the request in the input of the connection and hands it to a
+	 * worker when it is complete, or when its body is streamed, as soon as
+	 * its head is received.
+	 *
+	 * @param connection
+	 */
+	private void process(final Connection connection) {
+		synchronized (connection) {
+			if (connection.closed
+					|| connection.responding && connection.request == null) {
+				// the next request is processed after the response
+				return;
+			}
+		}
+		// else
+		if (connection.request == null) {
+			final int headLength = indexOf(connection.input, HEAD_END_);
+			if (headLength < 0) {
+				return;
+			}
+			// else
+			final byte[] head = take(connection.input,
+					headLength + HEAD_END_.length);
+			if (getHeader(head, TRANSFER_ENCODING_) != null) {
+				// the body could not be told apart from the next request
+				reject(connection, "411 Length Required",
+						"Chunked request bodies are not supported");
+				return;
+			}
+			// else
+			final long bodyLength = getContentLength(head);
+			if (bodyLength < 0) {
+				LOGGER_.warn("Invalid request header, closing connection");
+				close(connection);
+				return;
+			}
+			// else
+			if (bodyLength > maxBodyLength_) {
+				LOGGER_.warn("Request body of {} bytes from {} too large",
+						bodyLength, connection.address);
+				reject(connection, "413 Payload Too Large",
+						"The request body must not exceed " + maxBodyLength_
+								+ " bytes");
+				return;
+			}
+			// else
+			connection.request = new Request(head, bodyLength,
+					new Runnable() {
+						@Override
+						public void run() {
+							changed(connection);
+						}
+					});
+		}
+		final Request request = connection.request;
+		request.receive(connection.input);
+		if (!request.isComplete()) {
+			if (request.isStreamed()) {
+				synchronized (connection) {
+					if (!connection.responding) {
+						respondLater(connection, request);
+					}
+					int ops = connection.pending.isEmpty() ? 0
+							: SelectionKey.OP_WRITE;
+					if (!request.isStalled()) {
+						ops |= SelectionKey.OP_READ;
+					}
+					connection.key.interestOps(ops);
+				}
+			}
+			return;
+		}
+		// else
+		connection.request = null;
+		synchronized (connection) {
+			if (connection.responding) {
+				// the streamed body is received, the next request is read
+				// after the response
+				connection.key.interestOps(connection.pending.isEmpty() ? 0
+						: SelectionKey.OP_WRITE);
+				return;
+			}
+			// else
+			respondLater(connection, request);
+		}
+		connection.key.interestOps(0);
+	}
+
+	/**
+	 * Lets a worker produce the response to the request.
+	 *
+	 * @param connection
+	 * @param request
+	 */
+	@GuardedBy("connection")
+	private void respondLater(final Connection connection,
+			final Request request) {
+		connection.responding = true;
+		workers_.execute(new Runnable() {
+			@Override
+			public void run() {
+				respond(connection, request);
+			}
+		});
+	}
+
+	private static int indexOf(final ByteBuffer buffer, final byte[] bytes) {
+		final byte[] array = buffer.array();
+		for (int i = 0; i + bytes.length <= buffer.position(); i++) {
+			int j = 0;
+			while (j < bytes.length && array[i + j] == bytes[j]) {
+				j++;
+			}
+			if (j == bytes.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the bytes from the beginning of the buffer.
+	 *
+	 * @param buffer
+	 * @param length
+	 * @return the removed bytes
+	 */
+	private static byte[] take(final ByteBuffer buffer, final int length) {
+		final byte[] result = Arrays.copyOf(buffer.array(), length);
+		buffer.flip();
+		buffer.position(length);
+		buffer.compact();
+		return result;
+	}
+
+	/**
+	 * Sends an error response without a worker and closes the connection
+	 * after it, without receiving the rest of the request.
+	 *
+	 * @param connection
+	 * @param status
+	 * @param message
+	 */
+	private void reject(final Connection connection, final String status,
+			final String message) {
+		final byte[] content = message.getBytes(StandardCharsets.UTF_8);
+		final byte[] head = ("HTTP/1.1 " + status + "\r\n"
+				+ "Content-Type: text/plain; charset=UTF-8\r\n"
+				+ "Content-Length: " + content.length + "\r\n"
+				+ "Connection: close\r\n\r\n")
+						.getBytes(StandardCharsets.US_ASCII);
+		synchronized (connection) {
+			connection.keepAlive = false;
+			connection.pending.add(ByteBuffer.wrap(head));
+			connection.pending.add(ByteBuffer.wrap(content));
+			connection.pendingBytes += head.length + content.length;
+		}
+		connection.key.interestOps(SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * @param head
+	 * @param name
+	 *            the lower case name of the header followed by a colon
+	 * @return the value of the first header with the name or {@code null}
+	 */
+	private static String getHeader(final byte[] head, final String name) {
+		for (final String line : new String(head, StandardCharsets.ISO_8859_1)
+				.split("\r\n")) {
+			if (line.toLowerCase(Locale.ROOT).startsWith(name)) {
+				return line.substring(name.length()).trim();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param head
+	 * @return the length of the body of the request, 0 if there is no body,
+	 *         or -1 if the length is not valid
+	 */
+	private static long getContentLength(final byte[] head) {
+		final String value = getHeader(head, CONTENT_LENGTH_);
+		if (value == null) {
+			return 0;
+		}
+		// else
+		try {
+			final long result = Long.parseLong(value);
+			return result < 0 ? -1 : result;
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Produces the response to a request in a worker.
+	 *
+	 * @param connection
+	 * @param request
+	 */
+	private void respond(final Connection connection, final Request request) {
+		boolean keepAlive = false;
+		try {
+			final InputStream in = request.getInputStream();
+			try {
+				handler_.handle(in, connection.output, connection.address);
+				// otherwise the rest of the body precedes the next request
+				keepAlive = request.isReceived();
+			} finally {
+				Utils.closeQuietly(in);
+			}
+		} catch (final SocketException e) {
+			// the session closes connections that are not kept alive
+		} catch (final IOException e) {
+			LOGGER_.debug("Cannot respond to request", e);
+		} catch (final RuntimeException e) {
+			LOGGER_.error("Cannot respond to request", e);
+		} finally {
+			request.delete();
+			synchronized (connection) {
+				connection.responding = false;
+				connection.keepAlive = keepAlive;
+			}
+			changed(connection);
+		}
+	}
+
+	private void changed(final Connection connection) {
+		changed_.add(connection);
+		selector_.wakeup();
+	}
+
+	/**
+	 * Brings the interest of the event loop in the connection up to date
+	 * with its state.
+	 *
+	 * @param connection
+	 */
+	private void update(final Connection connection) {
+		final boolean process;
+		synchronized (connection) {
+			if (connection.closed || !connection.key.isValid()) {
+				return;
+			}
+			// else
+			if (!pump(connection)) {
+				return;
+			}
+			// else
+			int ops = connection.pending.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+			process = !connection.responding && connection.push == null;
+			if (process && !connection.keepAlive) {
+				if (connection.pending.isEmpty()) {
+					close(connection);
+					return;
+				}
+				// else
+				connection.key.interestOps(ops);
+				return;
+			}
+			// else
+			final Request request = connection.request;
+			if (process || request != null && !request.isStalled()) {
+				ops |= SelectionKey.OP_READ;
+			}
+			connection.key.interestOps(ops);
+		}
+		if (process || connection.request != null) {
+			// the next request or more of the body may already be received
+			process(connection);
+		}
+	}
+
+	/**
+	 * Moves what the pushed source of the connection has now to the pending
+	 * output, as long as not too much of it is pending.
+	 *
+	 * @param connection
+	 * @return {@code false} if the source failed and the connection was
+	 *         closed
+	 */
+	@GuardedBy("connection")
+	private static boolean pump(final Connection connection) {
+		final Push push = connection.push;
+		if (push == null) {
+			return true;
+		}
+		// else
+		try {
+			while (connection.pendingBytes < MAX_PENDING_OUTPUT_) {
+				final byte[] content = push.source.poll();
+				if (content == null) {
+					if (push.chunked) {
+						connection.pending.add(ByteBuffer.wrap(
+								"0\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+						connection.pendingBytes += 5;
+					}
+					push.source.setListener(null);
+					connection.push = null;
+					return true;
+				}
+				// else
+				if (content.length == 0) {
+					return true;
+				}
+				// else
+				final ByteBuffer buffer;
+				if (push.chunked) {
+					final byte[] size = (Integer.toHexString(content.length)
+							+ "\r\n").getBytes(StandardCharsets.US_ASCII);
+					buffer = ByteBuffer
+							.allocate(size.length + content.length + 2);
+					buffer.put(size).put(content).put((byte) '\r')
+							.put((byte) '\n');
+					buffer.flip();
+				} else {
+					buffer = ByteBuffer.wrap(content);
+				}
+				connection.pending.add(buffer);
+				connection.pendingBytes += buffer.remaining();
+			}
+			return true;
+		} catch (final IOException e) {
+			LOGGER_.error("Cannot push response", e);
+			close(connection);
+			return false;
+		}
+	}
+
+	private void write(final Connection connection) {
+		synchronized (connection) {
+			try {
+				while (!connection.pending.isEmpty()) {
+					final Object next = connection.pending.peek();
+					if (next instanceof FileRegion) {
+						if (!((FileRegion) next).sendTo(connection.channel)) {
+							break;
+						}
+					} else {
+						final ByteBuffer buffer = (ByteBuffer) next;
+						connection.pendingBytes -= connection.channel
+								.write(buffer);
+						if (buffer.hasRemaining()) {
+							break;
+						}
+					}
+					// else
+					connection.pending.poll();
+				}
+			} catch (final IOException e) {
+				close(connection);
+				return;
+			}
+			connection.lastActive = System.currentTimeMillis();
+			connection.notifyAll();
+		}
+		update(connection);
+	}
+
+	/**
+	 * Closes the idle connections and lets the pushed sources send
+	 * heartbeats, which they do when nothing was sent for a while.
+	 */
+	private void checkTimers() {
+		final long now = System.currentTimeMillis();
+		final List<Connection> idle = new ArrayList<>();
+		final List<Connection> pushing = new ArrayList<>();
+		for (final SelectionKey key : selector_.keys()) {
+			if (key.attachment() instanceof Connection) {
+				final Connection connection = (Connection) key.attachment();
+				synchronized (connection) {
+					if (connection.push != null) {
+						pushing.add(connection);
+					} else if ((!connection.responding
+							|| connection.request != null
+									&& !connection.request.isStalled())
+							&& connection.pending.isEmpty()
+							&& now - connection.lastActive > IDLE_TIMEOUT_MILLIS_) {
+						idle.add(connection);
+					}
+				}
+			}
+		}
+		for (final Connection connection : idle) {
+			close(connection);
+		}
+		for (final Connection connection : pushing) {
+			update(connection);
+		}
+	}
+
+	private static void close(final Connection connection) {
+		synchronized (connection) {
+			if (connection.closed) {
+				return;
+			}
+			// else
+			connection.closed = true;
+			for (final Object pending : connection.pending) {
+				if (pending instanceof FileRegion) {
+					Utils.closeQuietly(((FileRegion) pending).channel);
+				}
+			}
+			connection.pending.clear();
+			connection.pendingBytes = 0;
+			if (connection.push != null) {
+				connection.push.source.setListener(null);
+				connection.push = null;
+			}
+			// wake up the worker that waits for sending
+			connection.notifyAll();
+		}
+		if (connection.key != null) {
+			connection.key.cancel();
+		}
+		if (connection.request != null) {
+			connection.request.delete();
+			connection.request = null;
+		}
+		Utils.closeQuietly(connection.channel);
+	}
+
+	private class Connection {
+
+		final SocketChannel channel;
+		final InetAddress address;
+		final OutputStream output = new ConnectionOutputStream(this);
+		SelectionKey key = null;
+		/**
+		 * The received bytes that do not belong to a request yet, accessed
+		 * only by the event loop.
+		 */
+		final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE_);
+		/**
+		 * The request that is being received, accessed only by the event
+		 * loop.
+		 */
+		Request request = null;
+		volatile long lastActive = System.currentTimeMillis();
+
+		/**
+		 * The {@link ByteBuffer}s and {@link FileRegion}s that are not sent
+		 * yet.
+		 */
+		@GuardedBy("this")
+		final Queue<Object> pending = new ArrayDeque<>();
+		/**
+		 * The number of bytes in the pending buffers.
+		 */
+		@GuardedBy("this")
+		int pendingBytes = 0;
+		/**
+		 * Whether a worker produces a response.
+		 */
+		@GuardedBy("this")
+		boolean responding = false;
+		/**
+		 * The source whose content is sent after the pending output.
+		 */
+		@GuardedBy("this")
+		Push push = null;
+		@GuardedBy("this")
+		boolean keepAlive = true;
+		@GuardedBy("this")
+		boolean closed = false;
+
+		Connection(final SocketChannel channel) {
+			this.channel = channel;
+			InetAddress address = null;
+			try {
+				address = ((InetSocketAddress) channel.getRemoteAddress())
+						.getAddress();
+			} catch (final IOException e) {
+				LOGGER_.debug("Unknown remote address", e);
+			}
+			this.address = address;
+		}
+
+	}
+
+	/**
+	 * A region of a file that is sent by the kernel.
+	 */
+	private static class FileRegion {
+
+		final FileChannel channel;
+		private long position_;
+		private final long end_;
+
+		FileRegion(final FileChannel channel, final long position,
+				final long end) {
+			this.channel = channel;
+			this.position_ = position;
+			this.end_ = end;
+		}
+
+		/**
+		 * Sends as much of the region as the connection takes.
+		 *
+		 * @param target
+		 * @return whether the whole region was sent, in which case the file
+		 *         is closed
+		 * @throws IOException
+		 */
+		boolean sendTo(final SocketChannel target) throws IOException {
+			final long sent = channel.transferTo(position_, end_ - position_,
+					target);
+			position_ += sent;
+			if (position_ >= end_) {
+				Utils.closeQuietly(channel);
+				return true;
+			}
+			// else
+			if (sent == 0 && position_ >= channel.size()) {
+				throw new EOFException("File shorter than expected");
+			}
+			// else
+			return false;
+		}
+
+	}
+
+	/**
+	 * A source whose content is sent by the event loop.
+	 */
+	private static class Push {
+
+		final DirectResponse.PushSource source;
+		/**
+		 * Whether the content is framed in chunks.
+		 */
+		final boolean chunked;
+
+		Push(final DirectResponse.PushSource source, final boolean chunked) {
+			this.source = source;
+			this.chunked = chunked;
+		}
+
+	}
+
+	/**
+	 * Passes what a worker writes to the event loop, waiting while too much
+	 * of it is not sent. Files are passed without reading them and pushed
+	 * sources without waiting for them.
+	 */
+	private class ConnectionOutputStream extends OutputStream
+			implements FileResponse.FileOutput, DirectResponse.PushOutput {
+
+		private final Connection connection_;
+
+		ConnectionOutputStream(final Connection connection) {
+			this.connection_ = connection;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len)
+				throws IOException {
+			if (len == 0) {
+				return;
+			}
+			// else
+			synchronized (connection_) {
+				try {
+					while (!connection_.closed
+							&& connection_.pendingBytes >= MAX_PENDING_OUTPUT_) {
+						connection_.wait();
+					}
+				} catch (final InterruptedException e) {
+					throw new InterruptedIOException(e.getMessage());
+				}
+				if (connection_.closed) {
+					throw new SocketException("Connection closed");
+				}
+				// else
+				connection_.pending
+						.add(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+				connection_.pendingBytes += len;
+			}
+			changed(connection_);
+		}
+
+		@Override
+		public void transferFrom(final FileChannel channel,
+				final long position, final long count) throws IOException {
+			synchronized (connection_) {
+				if (connection_.closed) {
+					Utils.closeQuietly(channel);
+					throw new SocketException("Connection closed");
+				}
+				// else
+				connection_.pending
+						.add(new FileRegion(channel, position, position + count));
+			}
+			changed(connection_);
+		}
+
+		@Override
+		public void pushFrom(final DirectResponse.PushSource source,
+				final boolean chunked) throws IOException {
+			synchronized (connection_) {
+				if (connection_.closed) {
+					throw new SocketException("Connection closed");
+				}
+				// else
+				connection_.push = new Push(source, chunked);
+				source.setListener(new Runnable() {
+					@Override
+					public void run() {
+						changed(connection_);
+					}
+				});
+			}
+			changed(connection_);
+		}
+
+	}
+
+	/**
+	 * A request that is being received. A small body is buffered in memory, a
+	 * larger one is streamed to the worker.
+	 */
+	private static class Request {
+
+		private final byte[] head_;
+		private long remaining_;
+		private ByteArrayOutputStream memory_ = null;
+		private BodyStream stream_ = null;
+
+		/**
+		 * @param head
+		 * @param bodyLength
+		 * @param listener
+		 *            notified when a stalled body can take more bytes
+		 */
+		Request(final byte[] head, final long bodyLength,
+				final Runnable listener) {
+			this.head_ = head;
+			this.remaining_ = bodyLength;
+			if (bodyLength > MAX_BODY_IN_MEMORY_) {
+				stream_ = new BodyStream(listener);
+			} else if (bodyLength > 0) {
+				memory_ = new ByteArrayOutputStream((int) bodyLength);
+			}
+		}
+
+		/**
+		 * Moves the bytes of the body from the beginning of the input, as
+		 * many as the body takes.
+		 *
+		 * @param input
+		 */
+		void receive(final ByteBuffer input) {
+			int length = (int) Math.min(remaining_, input.position());
+			if (length == 0) {
+				return;
+			}
+			// else
+			if (stream_ != null) {
+				length = stream_.offer(input.array(), length);
+			} else {
+				memory_.write(input.array(), 0, length);
+			}
+			take(input, length);
+			remaining_ -= length;
+			if (remaining_ == 0 && stream_ != null) {
+				stream_.end();
+			}
+		}
+
+		boolean isComplete() {
+			return remaining_ == 0;
+		}
+
+		boolean isStreamed() {
+			return stream_ != null;
+		}
+
+		/**
+		 * @return whether the body does not take more bytes until the worker
+		 *         reads it
+		 */
+		boolean isStalled() {
+			return stream_ != null && stream_.isStalled();
+		}
+
+		/**
+		 * @return whether the whole body was received, which may be called
+		 *         by the worker
+		 */
+		boolean isReceived() {
+			return stream_ == null || stream_.isEnded();
+		}
+
+		InputStream getInputStream() {
+			final InputStream head = new ByteArrayInputStream(head_);
+			if (stream_ != null) {
+				return new SequenceInputStream(head, stream_);
+			}
+			// else
+			if (memory_ != null) {
+				return new SequenceInputStream(head,
+						new ByteArrayInputStream(memory_.toByteArray()));
+			}
+			// else
+			return head;
+		}
+
+		void delete() {
+			if (stream_ != null) {
+				stream_.close();
+			}
+		}
+
+	}
+
+	/**
+	 * The body of a request that the event loop writes while a worker reads
+	 * it.
+	 */
+	private static class BodyStream extends InputStream {
+
+		private final Runnable listener_;
+		@GuardedBy("this")
+		private final Queue<byte[]> chunks_ = new ArrayDeque<>();
+		/**
+		 * The position in the first chunk.
+		 */
+		@GuardedBy("this")
+		private int position_ = 0;
+		@GuardedBy("this")
+		private int buffered_ = 0;
+		/**
+		 * Whether the event loop waits until half of the buffer is read.
+		 */
+		@GuardedBy("this")
+		private boolean stalled_ = false;
+		@GuardedBy("this")
+		private boolean ended_ = false;
+		@GuardedBy("this")
+		private boolean closed_ = false;
+
+		BodyStream(final Runnable listener) {
+			this.listener_ = listener;
+		}
+
+		/**
+		 * Copies bytes from the beginning of the array, as many as fit.
+		 *
+		 * @param bytes
+		 * @param length
+		 * @return the number of copied bytes
+		 */
+		synchronized int offer(final byte[] bytes, final int length) {
+			if (closed_) {
+				// nobody reads them
+				return length;
+			}
+			// else
+			final int result = Math.min(length,
+					MAX_BODY_BUFFERED_ - buffered_);
+			if (result < length) {
+				stalled_ = true;
+			}
+			if (result > 0) {
+				chunks_.add(Arrays.copyOf(bytes, result));
+				buffered_ += result;
+				notifyAll();
+			}
+			return result;
+		}
+
+		synchronized void end() {
+			ended_ = true;
+			notifyAll();
+		}
+
+		synchronized boolean isStalled() {
+			return stalled_;
+		}
+
+		synchronized boolean isEnded() {
+			return ended_;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			// else
+			final int result;
+			boolean resume = false;
+			synchronized (this) {
+				try {
+					while (chunks_.isEmpty() && !ended_ && !closed_) {
+						wait();
+					}
+				} catch (final InterruptedException e) {
+					throw new InterruptedIOException(e.getMessage());
+				}
+				if (closed_) {
+					throw new SocketException("Connection closed");
+				}
+				// else
+				if (chunks_.isEmpty()) {
+					return -1;
+				}
+				// else
+				final byte[] chunk = chunks_.peek();
+				result = Math.min(len, chunk.length - position_);
+				System.arraycopy(chunk, position_, b, off, result);
+				position_ += result;
+				if (position_ == chunk.length) {
+					chunks_.poll();
+					position_ = 0;
+				}
+				buffered_ -= result;
+				if (stalled_ && buffered_ <= MAX_BODY_BUFFERED_ / 2) {
+					stalled_ = false;
+					resume = true;
+				}
+			}
+			if (resume) {
+				listener_.run();
+			}
+			return result;
+		}
+
+		@Override
+		public synchronized int available() {
+			return buffered_;
+		}
+
+		@Override
+		public synchronized void close() {
+			closed_ = true;
+			chunks_.clear();
+			buffered_ = 0;
+			if (stalled_) {
+				stalled_ = false;
+				// the rest of the body is discarded
+				listener_.run();
+			}
+			notifyAll();
+		}
+
+	}
+
+}
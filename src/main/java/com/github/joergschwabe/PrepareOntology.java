@@ -0,0 +1,426 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.annotation.Arg;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+/**
+ * Generates the queries of an ontology and encodes its ELK inferences to SAT
+ * in one JVM, so that the classes of the OWL API and ELK are loaded and
+ * compiled only once for all phases. The time of each phase is reported. The
+ * queries can be encoded in several parts side by side, each but the first in
+ * its own JVM.
+ */
+public class PrepareOntology {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(PrepareOntology.class);
+
+	public static final String OPT_ONTOLOGY = "ontology";
+	public static final String OPT_QUERIES = "queries";
+	public static final String OPT_ENCODING = "encoding";
+	public static final String OPT_QUERY_OPTIONS = "query_options";
+	public static final String OPT_THREADS = "threads";
+
+	public static final Integer DEFAULT_THREADS = 1;
+
+	public static class Options {
+		@Arg(dest = OPT_ONTOLOGY)
+		public File ontology;
+		@Arg(dest = OPT_QUERIES)
+		public String queries;
+		@Arg(dest = OPT_ENCODING)
+		public File encoding;
+		@Arg(dest = OPT_QUERY_OPTIONS)
+		public List<String> queryOptions;
+		@Arg(dest = OPT_THREADS)
+		public Integer threads;
+	}
+
+	public static final String SUFFIX_SORTED = ".sorted";
+	public static final String SUFFIX_SHUFFLED = ".seed1";
+	public static final String SUFFIX_BOTTOM_UP = ".bottom_up";
+
+	private static final String SHUFFLE_SEED_ = "1";
+	private static final String QUERIES_PART_ = "queries.";
+	private static final String ENCODING_PART_ = "encoding.";
+	/**
+	 * The prefix of the system properties with the log files of
+	 * {@code log4j2-paramfiles.xml}.
+	 */
+	private static final String PROPERTY_LOG_FILE_ = "log.file.";
+	private static final String LOG_SUFFIX_ = ".log";
+
+	private static final String TIME_LOG_FORMAT_ = "yy-MM-dd HH:mm:ss";
+
+	public static void main(final String[] args) {
+
+		final ArgumentParser parser = ArgumentParsers
+				.newArgumentParser(PrepareOntology.class.getSimpleName())
+				.description(
+						"Generates the queries of the ontology and encodes its ELK inferences to SAT.");
+		parser.addArgument(OPT_ONTOLOGY).type(File.class)
+				.help("the ontology file");
+		parser.addArgument(OPT_QUERIES)
+				.help("the prefix of the query files, to which " + SUFFIX_SORTED + ", " + SUFFIX_SHUFFLED + " and "
+				+ SUFFIX_BOTTOM_UP + " are appended");
+		parser.addArgument(OPT_ENCODING).type(File.class)
+				.help("the directory of the encoding");
+		parser.addArgument(OPT_QUERY_OPTIONS).nargs("*")
+				.help("the options for generating the queries, after --");
+		parser.addArgument("--" + OPT_THREADS).dest(OPT_THREADS)
+				.type(Integer.class).setDefault(DEFAULT_THREADS)
+				.help("how many parts of the queries are encoded side by side, each but the first by another JVM with the same options (default: "
+						+ DEFAULT_THREADS + ")");
+
+		try {
+
+			final Options opt = new Options();
+			parser.parseArgs(args, opt);
+
+			new PrepareOntology(opt).run();
+
+		} catch (final ArgumentParserException e) {
+			parser.handleError(e);
+			System.exit(2);
+		} catch (final PartFailedException e) {
+			LOGGER_.error("Cannot prepare the ontology!", e);
+			// e.g., so that running out of memory is noticed
+			System.exit(e.exitCode);
+		} catch (final Exception e) {
+			LOGGER_.error("Cannot prepare the ontology!", e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * A step of the preparation, which is timed.
+	 */
+	private static abstract class Phase {
+
+		final String name;
+
+		Phase(final String name) {
+			this.name = name;
+		}
+
+		abstract void run() throws Exception;
+
+	}
+
+	private final Options options_;
+	private final String name_;
+
+	PrepareOntology(final Options options) {
+		this.options_ = options;
+		final String name = options.ontology.getName();
+		this.name_ = name.endsWith(".owl")
+				? name.substring(0, name.length() - ".owl".length())
+				: name;
+	}
+
+	void run() throws Exception {
+		final String ontology = options_.ontology.getPath();
+		final String sorted = options_.queries + SUFFIX_SORTED;
+		final String shuffled = options_.queries + SUFFIX_SHUFFLED;
+		final String bottomUp = options_.queries + SUFFIX_BOTTOM_UP;
+
+		final List<Phase> phases = Arrays.asList(
+				new Phase("generating sorted queries") {
+					@Override
+					void run() throws Exception {
+						ExtractSubsumptions.main(concat(options_.queryOptions,
+								"--sort", ontology, sorted));
+					}
+				}, new Phase("shuffling queries") {
+					@Override
+					void run() throws Exception {
+						shuffle(new File(sorted), new File(shuffled));
+					}
+				}, new Phase("generating bottom-up queries") {
+					@Override
+					void run() throws Exception {
+						ExtractSubsumptions.main(concat(options_.queryOptions,
+								"--traversal", "BOTTOM_UP", "--collection",
+								"SUB_TO_SUPER", ontology, bottomUp));
+					}
+				}, new Phase("tracing elk inferences") {
+					@Override
+					void run() throws Exception {
+						encode(new File(bottomUp));
+					}
+				});
+
+		final StringBuilder timings = new StringBuilder();
+		final long start = System.nanoTime();
+		for (final Phase phase : phases) {
+			log(phase.name + " for " + name_);
+			final long phaseStart = System.nanoTime();
+			phase.run();
+			final String time = formatSeconds(System.nanoTime() - phaseStart);
+			log(phase.name + " for " + name_ + " took " + time);
+			timings.append(timings.length() == 0 ? "" : ", ")
+					.append(phase.name).append(' ').append(time);
+		}
+		log("prepared " + name_ + " in "
+				+ formatSeconds(System.nanoTime() - start) + " (" + timings
+				+ ")");
+	}
+
+	/**
+	 * Encodes the inferences for the queries into the encoding directory. With
+	 * more than one thread, contiguous parts of the distinct queries are
+	 * encoded side by side into separate directories, which are merged
+	 * afterwards. The first part is encoded by this JVM and each other part
+	 * by a JVM started with the same options, so that the encoders do not
+	 * share any state. Each query is encoded into its own directory, so the
+	 * parts do not overlap.
+	 */
+	private void encode(final File queries) throws Exception {
+		// a query in two parts would be encoded twice into the same directory
+		final Map<String, String> distinct = new LinkedHashMap<>();
+		for (final String line : Files.readAllLines(queries.toPath(),
+				StandardCharsets.UTF_8)) {
+			if (!distinct.containsKey(line.trim())) {
+				distinct.put(line.trim(), line);
+			}
+		}
+		final List<String> lines = new ArrayList<>(distinct.values());
+		final int parts = Math.min(options_.threads, lines.size());
+		if (parts <= 1) {
+			encode(queries, options_.encoding, true);
+			return;
+		}
+		// else
+		final File partsDir = new File(options_.encoding.getPath() + ".parts");
+		Utils.cleanDir(partsDir);
+		final List<Process> processes = new ArrayList<>();
+		try {
+			final List<File> outputs = new ArrayList<>();
+			for (int i = 0; i < parts; i++) {
+				final File input = new File(partsDir, QUERIES_PART_ + i);
+				final File output = new File(partsDir, ENCODING_PART_ + i);
+				Files.write(input.toPath(),
+						lines.subList(i * lines.size() / parts,
+								(i + 1) * lines.size() / parts),
+						StandardCharsets.UTF_8);
+				outputs.add(output);
+				if (i > 0) {
+					processes.add(startEncoding(input, output, i));
+				}
+			}
+			encode(new File(partsDir, QUERIES_PART_ + 0), outputs.get(0),
+					false);
+			for (int i = 1; i < parts; i++) {
+				final int exitCode = processes.get(i - 1).waitFor();
+				if (exitCode != 0) {
+					throw new PartFailedException("Encoding part " + i
+							+ " of " + name_ + " exited with " + exitCode,
+							exitCode);
+				}
+			}
+			log("encoded " + lines.size() + " queries of " + name_ + " in "
+					+ parts + " parts");
+			Utils.cleanDir(options_.encoding);
+			for (final File output : outputs) {
+				merge(output.toPath(), options_.encoding.toPath());
+			}
+		} finally {
+			for (final Process process : processes) {
+				process.destroy();
+			}
+			Utils.cleanDir(partsDir);
+			partsDir.delete();
+		}
+	}
+
+	private void encode(final File queries, final File encoding,
+			final boolean progress) throws Exception {
+		final List<String> args = getEncodingArgs(queries, encoding, progress);
+		DirectSatEncodingUsingElkCsvQuery
+				.main(args.toArray(new String[args.size()]));
+	}
+
+	private List<String> getEncodingArgs(final File queries,
+			final File encoding, final boolean progress) {
+		final List<String> args = new ArrayList<>(
+				Arrays.asList(options_.ontology.getPath(), queries.getPath(),
+						encoding.getPath(), "--minimal"));
+		if (progress) {
+			args.add("--progress");
+		}
+		return args;
+	}
+
+	/**
+	 * Starts a JVM with the options of this one that encodes a part of the
+	 * queries. Its log files are those of this JVM with the number of the
+	 * part.
+	 */
+	private Process startEncoding(final File queries, final File encoding,
+			final int part) throws IOException {
+		final List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"),
+				"java").getPath());
+		for (final String arg : ManagementFactory.getRuntimeMXBean()
+				.getInputArguments()) {
+			if (!arg.startsWith("-D" + PROPERTY_LOG_FILE_)) {
+				command.add(arg);
+			}
+		}
+		for (final String property : System.getProperties()
+				.stringPropertyNames()) {
+			if (property.startsWith(PROPERTY_LOG_FILE_)) {
+				final String file = System.getProperty(property);
+				command.add("-D" + property + "=" + (file.endsWith(LOG_SUFFIX_)
+						? file.substring(0, file.length() - LOG_SUFFIX_.length())
+								+ ".part" + part + LOG_SUFFIX_
+						: file + ".part" + part));
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(DirectSatEncodingUsingElkCsvQuery.class.getName());
+		command.addAll(getEncodingArgs(queries, encoding, false));
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+
+	/**
+	 * Moves the files of the source directory into the target directory.
+	 * Files that are in both must be equal.
+	 *
+	 * @throws FileAlreadyExistsException
+	 *             if a file in the target differs from the one in the source,
+	 *             which means that the parts of the encoding do not fit
+	 *             together
+	 */
+	private static void merge(final Path source, final Path target)
+			throws IOException {
+		final DirectoryStream<Path> files = Files.newDirectoryStream(source);
+		try {
+			for (final Path file : files) {
+				final Path moved = target.resolve(file.getFileName());
+				if (!Files.exists(moved)) {
+					Files.move(file, moved);
+				} else if (Files.isDirectory(file)
+						&& Files.isDirectory(moved)) {
+					merge(file, moved);
+				} else if (Files.isDirectory(file) || Files.isDirectory(moved)
+						|| !Arrays.equals(Files.readAllBytes(file),
+								Files.readAllBytes(moved))) {
+					throw new FileAlreadyExistsException(moved.toString());
+				}
+			}
+		} finally {
+			files.close();
+		}
+	}
+
+	private static String[] concat(final List<String> first,
+			final String... second) {
+		final List<String> result = new ArrayList<>(first);
+		result.addAll(Arrays.asList(second));
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Runs {@link Shuffler}, which reads the queries from the standard input
+	 * and writes them to the standard output.
+	 */
+	private static void shuffle(final File input, final File output)
+			throws Exception {
+		final InputStream stdin = System.in;
+		final PrintStream stdout = System.out;
+		final InputStream in = new BufferedInputStream(
+				new FileInputStream(input));
+		final PrintStream out = new PrintStream(
+				new BufferedOutputStream(new FileOutputStream(output)));
+		try {
+			System.setIn(in);
+			System.setOut(out);
+			Shuffler.main(new String[] { SHUFFLE_SEED_ });
+		} finally {
+			System.setIn(stdin);
+			System.setOut(stdout);
+			Utils.closeQuietly(in);
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Cannot write " + output);
+		}
+	}
+
+	/**
+	 * The JVM that encoded a part of the queries failed.
+	 */
+	private static class PartFailedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		final int exitCode;
+
+		PartFailedException(final String message, final int exitCode) {
+			super(message);
+			this.exitCode = exitCode;
+		}
+
+	}
+
+	private static String formatSeconds(final long nanos) {
+		return String.format("%.3f s", nanos / 1e9);
+	}
+
+	private static synchronized void log(final String message) {
+		System.out.println(
+				new SimpleDateFormat(TIME_LOG_FORMAT_).format(new Date()) + " "
+						+ message);
+	}
+
+}
@@ -0,0 +1,347 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.annotation.Arg;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+/**
+ * Prepares the ontologies of a workspace for the experiments by running a
+ * script on each of them, side by side. The heap of each run is estimated from
+ * the size of the ontology and a run starts only when the memory of the job
+ * can hold its JVM next to the running ones, largest ontologies first. A run
+ * that runs out of memory is repeated with twice the heap. When there are
+ * fewer ontologies than CPUs, the remaining CPUs encode parts of the
+ * ontologies in further JVMs, as far as the memory allows.
+ */
+public class Preprocessing {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(Preprocessing.class);
+
+	public static final String OPT_SCRIPT = "script";
+	public static final String OPT_WORKSPACE = "workspace";
+	public static final String OPT_QUERY_OPTIONS = "query_options";
+	public static final String OPT_HEAP_FACTOR = "heap-factor";
+
+	public static final Integer DEFAULT_HEAP_FACTOR = 64;
+
+	/**
+	 * In how many parts, each in its own JVM, the script should encode the
+	 * ontology.
+	 */
+	public static final String ENV_ENCODING_THREADS = "ENCODING_THREADS";
+
+	public static class Options {
+		@Arg(dest = OPT_SCRIPT)
+		public File script;
+		@Arg(dest = OPT_WORKSPACE)
+		public File workspace;
+		@Arg(dest = OPT_QUERY_OPTIONS)
+		public List<String> queryOptions;
+		@Arg(dest = OPT_HEAP_FACTOR)
+		public Integer heapFactor;
+	}
+
+	private static final String WS_ONTOLOGIES_ = "ontologies";
+	private static final String WS_PREPROCESSING_ = "preprocessing";
+
+	private static final long MIN_HEAP_ = 1L << 30;
+	/**
+	 * The exit code of a JVM with {@code -XX:+ExitOnOutOfMemoryError} that
+	 * ran out of memory.
+	 */
+	private static final int EXIT_OUT_OF_MEMORY_ = 3;
+
+	private static final String TIME_LOG_FORMAT_ = "yy-MM-dd HH:mm:ss";
+
+	public static void main(final String[] args) {
+
+		final ArgumentParser parser = ArgumentParsers
+				.newArgumentParser(Preprocessing.class.getSimpleName())
+				.description(
+						"Runs the script on all ontologies of the workspace in parallel, as far as the memory allows.");
+		parser.addArgument(OPT_SCRIPT).type(File.class).help(
+				"the script that is called with an ontology, the workspace and the query options");
+		parser.addArgument(OPT_WORKSPACE).type(File.class)
+				.help("the workspace with the ontologies");
+		parser.addArgument(OPT_QUERY_OPTIONS).nargs("*")
+				.help("the options for generating the queries, after --");
+		parser.addArgument("--" + OPT_HEAP_FACTOR).dest(OPT_HEAP_FACTOR)
+				.type(Integer.class)
+				.setDefault(DEFAULT_HEAP_FACTOR)
+				.help("how many bytes of heap a run needs for a byte of the ontology (default: "
+						+ DEFAULT_HEAP_FACTOR + ")");
+
+		try {
+
+			final Options opt = new Options();
+			parser.parseArgs(args, opt);
+
+			final Preprocessing preprocessing = new Preprocessing(opt,
+					SystemResources.getExperimentCpus().size(),
+					SystemResources.getExperimentMemory());
+			final int failed = preprocessing.run();
+			if (failed > 0) {
+				LOGGER_.error("Preparing {} ontologies failed!", failed);
+				System.exit(1);
+			}
+
+		} catch (final ArgumentParserException e) {
+			parser.handleError(e);
+			System.exit(2);
+		} catch (final InterruptedException e) {
+			LOGGER_.error("Interrupted!", e);
+			System.exit(1);
+		}
+	}
+
+	private final Options options_;
+	private final File ontologiesDir_;
+	private final File logsDir_;
+	private final String queryOptions_;
+	private final int parallelism_;
+	private final long memory_;
+	private final long maxHeap_;
+	@GuardedBy("this")
+	private long freeMemory_;
+
+	Preprocessing(final Options options, final int cpus, final long memory) {
+		this.options_ = options;
+		this.ontologiesDir_ = new File(options.workspace, WS_ONTOLOGIES_);
+		this.logsDir_ = new File(options.workspace, WS_PREPROCESSING_);
+		final StringBuilder queryOptions = new StringBuilder();
+		for (final String option : options.queryOptions) {
+			if (queryOptions.length() > 0) {
+				queryOptions.append(' ');
+			}
+			queryOptions.append(option);
+		}
+		this.queryOptions_ = queryOptions.toString();
+		this.parallelism_ = Math.max(1, cpus);
+		this.memory_ = memory;
+		// a single run may use all memory
+		this.maxHeap_ = Math.max(memory - SystemResources.getJvmMemory(0),
+				MIN_HEAP_);
+		this.freeMemory_ = memory;
+	}
+
+	/**
+	 * @param ontology
+	 * @return the heap estimated for preparing the ontology
+	 */
+	long estimateHeap(final File ontology) {
+		final long heap = Math.max(MIN_HEAP_,
+				ontology.length() * options_.heapFactor);
+		return Math.min(heap, maxHeap_);
+	}
+
+	private List<File> getOntologies() {
+		final File[] files = ontologiesDir_.listFiles();
+		if (files == null) {
+			return Collections.emptyList();
+		}
+		// else
+		final List<File> result = new ArrayList<>();
+		for (final File file : files) {
+			if (file.isFile()) {
+				result.add(file);
+			}
+		}
+		// the largest first, so that the small ones fill the gaps at the end
+		Collections.sort(result, new Comparator<File>() {
+			@Override
+			public int compare(final File first, final File second) {
+				return Long.compare(second.length(), first.length());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @return the number of ontologies whose preparation failed
+	 * @throws InterruptedException
+	 */
+	int run() throws InterruptedException {
+		final List<File> ontologies = getOntologies();
+		logsDir_.mkdirs();
+		log("preparing " + ontologies.size() + " ontologies, at most "
+				+ parallelism_ + " at once in " + (memory_ >> 20) + " MB");
+
+		final ExecutorService executor = Executors
+				.newFixedThreadPool(parallelism_);
+		// the ontologies are admitted in order, so that large ones do not
+		// wait for ever behind small ones
+		final Semaphore slots = new Semaphore(parallelism_);
+		final AtomicInteger done = new AtomicInteger(0);
+		final AtomicInteger failed = new AtomicInteger(0);
+		// CPUs that no other ontology would use go to the encoding JVMs
+		final int maxJvms = Math.max(1,
+				parallelism_ / Math.max(1, ontologies.size()));
+		for (final File ontology : ontologies) {
+			// each part of the encoding runs in its own JVM with this heap
+			final long heap = estimateHeap(ontology);
+			final int jvms = getJvms(heap, maxJvms);
+			slots.acquire(jvms);
+			acquireMemory(jvms * SystemResources.getJvmMemory(heap));
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!prepare(ontology, heap, jvms)) {
+							failed.incrementAndGet();
+						}
+					} catch (final IOException | RuntimeException e) {
+						failed.incrementAndGet();
+						log("preparing " + ontology.getName() + " failed: "
+								+ e);
+						LOGGER_.error("Preparing ontology {} failed!",
+								ontology.getName(), e);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					} finally {
+						slots.release(jvms);
+					}
+					log("prepared " + done.incrementAndGet() + " of "
+							+ ontologies.size() + " ontologies");
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		if (failed.get() > 0) {
+			log("preparing " + failed.get() + " of " + ontologies.size()
+					+ " ontologies failed");
+		}
+		return failed.get();
+	}
+
+	/**
+	 * @param heap
+	 * @param max
+	 * @return how many JVMs with the heap, at most the maximum, fit into the
+	 *         memory, but at least one
+	 */
+	private int getJvms(final long heap, final int max) {
+		return (int) Math.max(1, Math.min(max,
+				memory_ / SystemResources.getJvmMemory(heap)));
+	}
+
+	/**
+	 * Runs the script on the ontology, with more heap while it runs out of
+	 * memory. The script may start as many JVMs with the heap as it is told.
+	 * The memory for them must be acquired and is released.
+	 *
+	 * @return whether the script succeeded
+	 */
+	private boolean prepare(final File ontology, final long heap,
+			final int jvms) throws IOException, InterruptedException {
+		final File output = new File(logsDir_, ontology.getName() + ".log");
+		long current = heap;
+		int parts = jvms;
+		try {
+			// keeps the output of the runs that ran out of memory
+			Files.deleteIfExists(output.toPath());
+			for (;;) {
+				log("preparing " + ontology.getName() + " with "
+						+ (current >> 20) + " MB heap"
+						+ (parts > 1 ? " in " + parts + " JVMs" : ""));
+				final ProcessBuilder builder = new ProcessBuilder(
+						options_.script.getPath(), ontology.getPath(),
+						options_.workspace.getPath(), queryOptions_)
+								.redirectErrorStream(true)
+								.redirectOutput(Redirect.appendTo(output));
+				builder.environment().put(
+						SystemResources.ENV_JAVA_MEMORY_OPTIONS,
+						"-Xmx" + (current >> 20)
+								+ "m -XX:+ExitOnOutOfMemoryError");
+				builder.environment().put(ENV_ENCODING_THREADS, "" + parts);
+				final int exitCode = builder.start().waitFor();
+				if (exitCode == 0) {
+					return true;
+				}
+				// else
+				if (exitCode != EXIT_OUT_OF_MEMORY_ || current >= maxHeap_) {
+					log("preparing " + ontology.getName() + " exited with "
+							+ exitCode + ", see " + output);
+					return false;
+				}
+				// else
+				final long more = Math.min(2 * current, maxHeap_);
+				releaseMemory(parts * SystemResources.getJvmMemory(current));
+				current = 0;
+				parts = getJvms(more, parts);
+				acquireMemory(parts * SystemResources.getJvmMemory(more));
+				current = more;
+			}
+		} finally {
+			if (current > 0) {
+				releaseMemory(parts * SystemResources.getJvmMemory(current));
+			}
+		}
+	}
+
+	private synchronized void acquireMemory(final long memory)
+			throws InterruptedException {
+		// more than all memory is granted when nothing else runs
+		while (freeMemory_ < Math.min(memory, memory_)) {
+			wait();
+		}
+		freeMemory_ -= memory;
+	}
+
+	private synchronized void releaseMemory(final long memory) {
+		freeMemory_ += memory;
+		notifyAll();
+	}
+
+	private static synchronized void log(final String message) {
+		System.out.println(
+				new SimpleDateFormat(TIME_LOG_FORMAT_).format(new Date()) + " "
+						+ message);
+	}
+
+}
@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starting and killing of commands together with all processes they spawn.
+ */
+public class Processes {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(Processes.class);
+
+	private static final String[] SETSID_ = { "/usr/bin/setsid",
+			"/bin/setsid" };
+
+	/**
+	 * @param command
+	 * @return the command prefixed so that it starts a new process group, whose
+	 *         id is the id of the started process, or the command itself if
+	 *         {@code setsid} is not available
+	 */
+	public static List<String> inNewGroup(final List<String> command) {
+		for (final String setsid : SETSID_) {
+			if (new File(setsid).canExecute()) {
+				final List<String> result = new ArrayList<>(
+						command.size() + 1);
+				result.add(setsid);
+				result.addAll(command);
+				return result;
+			}
+		}
+		return command;
+	}
+
+	/**
+	 * @param process
+	 * @return the operating system id of the process or -1 if it cannot be
+	 *         found out
+	 */
+	public static long getPid(final Process process) {
+		try {
+			// Java 9+
+			final Method pid = Process.class.getMethod("pid");
+			return (Long) pid.invoke(process);
+		} catch (final ReflectiveOperationException e) {
+			// Java 8 on Unix
+			try {
+				final Field pid = process.getClass().getDeclaredField("pid");
+				pid.setAccessible(true);
+				return pid.getInt(process);
+			} catch (final ReflectiveOperationException
+					| RuntimeException e2) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Kills the process and, if it was started by {@link #inNewGroup(List)},
+	 * all processes in its group.
+	 *
+	 * @param process
+	 */
+	public static void destroyGroup(final Process process) {
+		final long pid = getPid(process);
+		if (pid > 0) {
+			try {
+				new ProcessBuilder("kill", "-KILL", "--", "-" + pid)
+						.redirectErrorStream(true).start().waitFor();
+			} catch (final IOException e) {
+				LOGGER_.warn("Cannot kill process group {}", pid, e);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		process.destroyForcibly();
+	}
+
+}
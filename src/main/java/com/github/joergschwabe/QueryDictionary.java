@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Numbers for the queries of one ontology, shared by the records of all
+ * experiments on this ontology. The dictionary is a text file with one query
+ * per line, the number of a query is the number of its line starting from 0.
+ * Queries are only appended, so numbers never change and readers may read the
+ * file while it is extended.
+ */
+public class QueryDictionary {
+
+	public static final String SUFFIX = ".queries";
+
+	private final File file_;
+
+	@GuardedBy("this")
+	private final Map<String, Integer> ids_ = new HashMap<>();
+	@GuardedBy("this")
+	private final List<String> pending_ = new ArrayList<>();
+
+	/**
+	 * @param file
+	 *            the file of the dictionary, which is read if it exists
+	 * @throws IOException
+	 */
+	public QueryDictionary(final File file) throws IOException {
+		this.file_ = file;
+		if (file.exists()) {
+			final byte[] bytes = Files.readAllBytes(file.toPath());
+			for (final String query : read(bytes)) {
+				ids_.put(query, ids_.size());
+			}
+			int complete = bytes.length;
+			while (complete > 0 && bytes[complete - 1] != '\n') {
+				complete--;
+			}
+			if (complete < bytes.length) {
+				// the rest of an interrupted flush, to which new queries
+				// would be appended
+				final FileChannel channel = FileChannel.open(file.toPath(),
+						StandardOpenOption.WRITE);
+				try {
+					channel.truncate(complete);
+				} finally {
+					channel.close();
+				}
+			}
+		}
+	}
+
+	public File getFile() {
+		return file_;
+	}
+
+	/**
+	 * @param query
+	 * @return the number of the query, which is added to the dictionary if it
+	 *         is new
+	 */
+	public synchronized int getId(final String query) {
+		Integer id = ids_.get(query);
+		if (id == null) {
+			id = ids_.size();
+			ids_.put(query, id);
+			pending_.add(query);
+		}
+		return id;
+	}
+
+	/**
+	 * Appends the new queries to the file. The numbers returned by
+	 * {@link #getId(String)} may be used by readers of the file only after
+	 * this.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (pending_.isEmpty()) {
+			return;
+		}
+		// else
+		final Writer out = new OutputStreamWriter(
+				new FileOutputStream(file_, true), StandardCharsets.UTF_8);
+		try {
+			for (final String query : pending_) {
+				out.write(query);
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+		pending_.clear();
+	}
+
+	/**
+	 * @param file
+	 *            the file of a dictionary
+	 * @return the queries in the order of their numbers; a last line without
+	 *         a line break is being appended by {@link #flush()} and is not
+	 *         returned
+	 * @throws IOException
+	 */
+	public static List<String> read(final File file) throws IOException {
+		return read(Files.readAllBytes(file.toPath()));
+	}
+
+	private static List<String> read(final byte[] bytes) {
+		final List<String> result = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == '\n') {
+				result.add(new String(bytes, start, i - start,
+						StandardCharsets.UTF_8));
+				start = i + 1;
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Consecutive numbers of the queries on one ontology, so that results refer
+ * to queries by numbers and the results of different experiments can be
+ * joined by them.
+ */
+class QueryNames {
+
+	@GuardedBy("this")
+	private final Map<String, Integer> ids_ = new HashMap<>();
+	@GuardedBy("this")
+	private String[] names_ = new String[16];
+
+	/**
+	 * @param name
+	 * @return the number of the query, which is assigned if the query has none
+	 */
+	synchronized int getId(final String name) {
+		final Integer id = ids_.get(name);
+		if (id != null) {
+			return id;
+		}
+		// else
+		final int result = ids_.size();
+		if (result == names_.length) {
+			names_ = Arrays.copyOf(names_, 2 * result);
+		}
+		names_[result] = name;
+		ids_.put(name, result);
+		return result;
+	}
+
+	/**
+	 * @param name
+	 * @return the number of the query or -1 if it has none
+	 */
+	synchronized int find(final String name) {
+		final Integer id = ids_.get(name);
+		return id == null ? -1 : id;
+	}
+
+	synchronized String getName(final int id) {
+		return names_[id];
+	}
+
+	/**
+	 * @return how many queries have a number, i.e., an upper bound of the
+	 *         numbers
+	 */
+	synchronized int size() {
+		return ids_.size();
+	}
+
+}
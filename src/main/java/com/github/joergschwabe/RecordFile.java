@@ -0,0 +1,344 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A CSV record of an experiment with an index of the offsets of its rows, so
+ * that any window of rows can be read by seeking instead of parsing the file
+ * from the beginning. The order of the rows by a column and the rows with a
+ * true value in a column are computed once per column and then reused.
+ */
+public class RecordFile {
+
+	private final File file_;
+	private final long size_;
+	private final long lastModified_;
+	private final String[] columns_;
+	/**
+	 * Row i consists of {@code rowLengths_[i]} bytes starting from
+	 * {@code rowStarts_[i]}, without the line terminator.
+	 */
+	private final long[] rowStarts_;
+	private final int[] rowLengths_;
+
+	@GuardedBy("this")
+	private final Map<Integer, int[]> orders_ = new HashMap<>();
+	@GuardedBy("this")
+	private final Map<Integer, BitSet> trueRows_ = new HashMap<>();
+
+	private RecordFile(final File file, final long size,
+			final long lastModified, final String[] columns,
+			final long[] rowStarts, final int[] rowLengths) {
+		this.file_ = file;
+		this.size_ = size;
+		this.lastModified_ = lastModified;
+		this.columns_ = columns;
+		this.rowStarts_ = rowStarts;
+		this.rowLengths_ = rowLengths;
+	}
+
+	/**
+	 * Reads the file once and records where its rows start. Empty lines are
+	 * not rows.
+	 *
+	 * @param file
+	 * @return the indexed file
+	 * @throws IOException
+	 */
+	public static RecordFile index(final File file) throws IOException {
+		final long size = file.length();
+		final long lastModified = file.lastModified();
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		boolean inHeader = true;
+		long[] rowStarts = new long[1024];
+		int[] rowLengths = new int[1024];
+		int rowCount = 0;
+
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[1 << 16];
+			long offset = 0;
+			long lineStart = 0;
+			int previous = -1;
+			int read;
+			do {
+				read = in.read(buffer);
+				// the end of the file terminates the last line
+				final int end = read < 0 ? 1 : read;
+				for (int i = 0; i < end; i++, offset++) {
+					final int b = read < 0 ? '\n' : buffer[i];
+					if (b != '\n') {
+						if (inHeader) {
+							header.write(b);
+						}
+						previous = b;
+						continue;
+					}
+					// else
+					final long lineEnd = previous == '\r' ? offset - 1
+							: offset;
+					if (inHeader) {
+						inHeader = false;
+					} else if (lineEnd > lineStart) {
+						if (rowCount == rowStarts.length) {
+							rowStarts = Arrays.copyOf(rowStarts, 2 * rowCount);
+							rowLengths = Arrays.copyOf(rowLengths,
+									2 * rowCount);
+						}
+						rowStarts[rowCount] = lineStart;
+						rowLengths[rowCount] = (int) (lineEnd - lineStart);
+						rowCount++;
+					}
+					lineStart = offset + 1;
+					previous = b;
+				}
+			} while (read >= 0);
+		} finally {
+			Utils.closeQuietly(in);
+		}
+		String columns = new String(header.toByteArray(),
+				StandardCharsets.UTF_8);
+		if (columns.endsWith("\r")) {
+			columns = columns.substring(0, columns.length() - 1);
+		}
+		return new RecordFile(file, size, lastModified, splitRow(columns),
+				Arrays.copyOf(rowStarts, rowCount),
+				Arrays.copyOf(rowLengths, rowCount));
+	}
+
+	private static String[] splitRow(final String row) {
+		return row.split(",", -1);
+	}
+
+	/**
+	 * @param file
+	 * @return whether this is the index of the current content of the file
+	 */
+	public boolean isUpToDate(final File file) {
+		return file_.equals(file) && size_ == file.length()
+				&& lastModified_ == file.lastModified();
+	}
+
+	public String[] getColumns() {
+		return columns_.clone();
+	}
+
+	public int getRowCount() {
+		return rowStarts_.length;
+	}
+
+	/**
+	 * @param column
+	 * @return the index of the column or -1 if there is no such column
+	 */
+	public int getColumnIndex(final String column) {
+		return Arrays.asList(columns_).indexOf(column);
+	}
+
+	/**
+	 * @param sortColumn
+	 *            the index of the column by which the rows are sorted, or -1
+	 *            to keep the order of the file
+	 * @param descending
+	 * @param filterColumn
+	 *            the index of the column whose value must be
+	 *            {@code filterValue}, or -1 to select all rows
+	 * @param filterValue
+	 * @return the numbers of the selected rows in the requested order
+	 * @throws IOException
+	 */
+	public int[] select(final int sortColumn, final boolean descending,
+			final int filterColumn, final boolean filterValue)
+			throws IOException {
+		final int[] order = sortColumn < 0 ? null : getOrder(sortColumn);
+		final BitSet trueRows = filterColumn < 0 ? null
+				: getTrueRows(filterColumn);
+		final int rowCount = getRowCount();
+		final int[] result = new int[rowCount];
+		int size = 0;
+		for (int i = 0; i < rowCount; i++) {
+			final int position = descending ? rowCount - 1 - i : i;
+			final int row = order == null ? position : order[position];
+			if (trueRows == null || trueRows.get(row) == filterValue) {
+				result[size++] = row;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * @param rows
+	 *            numbers of rows
+	 * @param from
+	 *            the first position in {@code rows} to read
+	 * @param to
+	 *            the position in {@code rows} after the last one to read
+	 * @return the values of the rows
+	 * @throws IOException
+	 */
+	public List<String[]> readRows(final int[] rows, final int from,
+			final int to) throws IOException {
+		final List<String[]> result = new ArrayList<>(Math.max(0, to - from));
+		final RandomAccessFile in = new RandomAccessFile(file_, "r");
+		try {
+			byte[] buffer = new byte[256];
+			for (int i = Math.max(0, from); i < Math.min(to, rows.length); i++) {
+				final int row = rows[i];
+				final int length = rowLengths_[row];
+				if (buffer.length < length) {
+					buffer = new byte[length];
+				}
+				in.seek(rowStarts_[row]);
+				in.readFully(buffer, 0, length);
+				result.add(splitRow(
+						new String(buffer, 0, length, StandardCharsets.UTF_8)));
+			}
+		} finally {
+			Utils.closeQuietly(in);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the values of a column sequentially.
+	 */
+	private String[] readColumn(final int column) throws IOException {
+		final String[] result = new String[getRowCount()];
+		final InputStream in = new BufferedInputStream(
+				new FileInputStream(file_));
+		try {
+			long position = 0;
+			byte[] buffer = new byte[256];
+			for (int row = 0; row < result.length; row++) {
+				long skip = rowStarts_[row] - position;
+				while (skip > 0) {
+					final long skipped = in.skip(skip);
+					if (skipped <= 0) {
+						throw new IOException(file_ + " changed while reading");
+					}
+					skip -= skipped;
+				}
+				final int length = rowLengths_[row];
+				if (buffer.length < length) {
+					buffer = new byte[length];
+				}
+				int read = 0;
+				while (read < length) {
+					final int n = in.read(buffer, read, length - read);
+					if (n < 0) {
+						throw new IOException(file_ + " changed while reading");
+					}
+					read += n;
+				}
+				position = rowStarts_[row] + length;
+				final String[] values = splitRow(
+						new String(buffer, 0, length, StandardCharsets.UTF_8));
+				result[row] = column < values.length ? values[column] : "";
+			}
+		} finally {
+			Utils.closeQuietly(in);
+		}
+		return result;
+	}
+
+	private synchronized int[] getOrder(final int column) throws IOException {
+		int[] order = orders_.get(column);
+		if (order != null) {
+			return order;
+		}
+		// else
+		final String[] values = readColumn(column);
+		final double[] numbers = new double[values.length];
+		boolean numeric = true;
+		for (int row = 0; row < values.length && numeric; row++) {
+			try {
+				numbers[row] = Double.parseDouble(values[row]);
+			} catch (final NumberFormatException e) {
+				numeric = false;
+			}
+		}
+		final Integer[] rows = new Integer[values.length];
+		for (int row = 0; row < rows.length; row++) {
+			rows[row] = row;
+		}
+		// stable, so equal values keep the order of the file
+		if (numeric) {
+			Arrays.sort(rows, new Comparator<Integer>() {
+				@Override
+				public int compare(final Integer row1, final Integer row2) {
+					return Double.compare(numbers[row1], numbers[row2]);
+				}
+			});
+		} else {
+			Arrays.sort(rows, new Comparator<Integer>() {
+				@Override
+				public int compare(final Integer row1, final Integer row2) {
+					return values[row1].compareTo(values[row2]);
+				}
+			});
+		}
+		order = new int[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			order[i] = rows[i];
+		}
+		orders_.put(column, order);
+		return order;
+	}
+
+	private synchronized BitSet getTrueRows(final int column)
+			throws IOException {
+		BitSet result = trueRows_.get(column);
+		if (result != null) {
+			return result;
+		}
+		// else
+		final String[] values = readColumn(column);
+		result = new BitSet(values.length);
+		for (int row = 0; row < values.length; row++) {
+			final String value = values[row].trim();
+			if (value.equalsIgnoreCase("true") || value.equals("1")) {
+				result.set(row);
+			}
+		}
+		trueRows_.put(column, result);
+		return result;
+	}
+
+}
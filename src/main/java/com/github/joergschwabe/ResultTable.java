@@ -0,0 +1,250 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The results of one experiment as primitive columns: the number of the query
+ * of each row in its {@link QueryNames}, the time in seconds and whether it
+ * timed out. The time components of one record are tables that share the
+ * query and time-out columns. The columns are either arrays or the columns of
+ * a memory-mapped {@link ColumnarRecord}.
+ */
+abstract class ResultTable {
+
+	/**
+	 * @param size
+	 *            the number of rows, the arrays may be longer
+	 * @param queryIds
+	 * @param times
+	 * @param timedOut
+	 * @return the table of the arrays
+	 */
+	static ResultTable of(final int size, final int[] queryIds,
+			final double[] times, final BitSet timedOut) {
+		return new ArrayTable(size, queryIds, times, timedOut);
+	}
+
+	/**
+	 * @param record
+	 * @param queryColumn
+	 *            the column of the query numbers in the dictionary of the
+	 *            record
+	 * @param queryIds
+	 *            for the number of each query in the dictionary its number in
+	 *            the {@link QueryNames}
+	 * @param timeColumn
+	 *            the column of the times in milliseconds
+	 * @param timedOutColumn
+	 *            the boolean column that tells whether the query timed out or
+	 *            -1 if there is none
+	 * @return the table that reads the columns of the record
+	 */
+	static ResultTable of(final ColumnarRecord record, final int queryColumn,
+			final int[] queryIds, final int timeColumn,
+			final int timedOutColumn) {
+		return new ColumnarTable(record, queryColumn, queryIds, timeColumn,
+				timedOutColumn);
+	}
+
+	abstract int size();
+
+	abstract int getQueryId(int row);
+
+	abstract double getTime(int row);
+
+	abstract boolean isTimedOut(int row);
+
+	/**
+	 * @return the rows in the order of ascending time, rows with equal times in
+	 *         their original order
+	 */
+	int[] sortByTime() {
+		final int size = size();
+		final double[] times = new double[size];
+		final int[] result = new int[size];
+		for (int row = 0; row < size; row++) {
+			times[row] = getTime(row);
+			result[row] = row;
+		}
+		final int[] buffer = new int[size];
+		// bottom-up merge sort of the row numbers
+		int[] from = result;
+		int[] to = buffer;
+		for (int width = 1; width < size; width *= 2) {
+			for (int start = 0; start < size; start += 2 * width) {
+				final int middle = Math.min(start + width, size);
+				final int end = Math.min(start + 2 * width, size);
+				int left = start;
+				int right = middle;
+				for (int i = start; i < end; i++) {
+					if (left < middle && (right >= end
+							|| times[from[left]] <= times[from[right]])) {
+						to[i] = from[left++];
+					} else {
+						to[i] = from[right++];
+					}
+				}
+			}
+			final int[] swap = from;
+			from = to;
+			to = swap;
+		}
+		return from;
+	}
+
+	private static class ArrayTable extends ResultTable {
+
+		private final int size_;
+		private final int[] queryIds_;
+		private final double[] times_;
+		private final BitSet timedOut_;
+
+		ArrayTable(final int size, final int[] queryIds, final double[] times,
+				final BitSet timedOut) {
+			this.size_ = size;
+			this.queryIds_ = queryIds;
+			this.times_ = times;
+			this.timedOut_ = timedOut;
+		}
+
+		@Override
+		int size() {
+			return size_;
+		}
+
+		@Override
+		int getQueryId(final int row) {
+			return queryIds_[row];
+		}
+
+		@Override
+		double getTime(final int row) {
+			return times_[row];
+		}
+
+		@Override
+		boolean isTimedOut(final int row) {
+			return timedOut_.get(row);
+		}
+
+	}
+
+	private static class ColumnarTable extends ResultTable {
+
+		private final ColumnarRecord record_;
+		private final int queryColumn_;
+		private final int[] queryIds_;
+		private final int timeColumn_;
+		private final int timedOutColumn_;
+
+		ColumnarTable(final ColumnarRecord record, final int queryColumn,
+				final int[] queryIds, final int timeColumn,
+				final int timedOutColumn) {
+			this.record_ = record;
+			this.queryColumn_ = queryColumn;
+			this.queryIds_ = queryIds;
+			this.timeColumn_ = timeColumn;
+			this.timedOutColumn_ = timedOutColumn;
+		}
+
+		@Override
+		int size() {
+			return record_.getRowCount();
+		}
+
+		@Override
+		int getQueryId(final int row) {
+			return queryIds_[record_.getQueryId(queryColumn_, row)];
+		}
+
+		@Override
+		double getTime(final int row) {
+			return record_.getDouble(timeColumn_, row) / 1000;
+		}
+
+		@Override
+		boolean isTimedOut(final int row) {
+			return timedOutColumn_ >= 0 && record_.getBoolean(timedOutColumn_, row);
+		}
+
+	}
+
+	/**
+	 * Collects the rows of tables with one or more time columns.
+	 */
+	static class Builder {
+
+		private int size_ = 0;
+		private int[] queryIds_ = new int[16];
+		private final double[][] times_;
+		private final BitSet timedOut_ = new BitSet();
+
+		/**
+		 * @param columns
+		 *            the number of time columns
+		 */
+		Builder(final int columns) {
+			this.times_ = new double[columns][16];
+		}
+
+		/**
+		 * Adds a row whose times are set by {@link #setTime(int, double)}.
+		 *
+		 * @param queryId
+		 * @param timedOut
+		 */
+		void addRow(final int queryId, final boolean timedOut) {
+			if (size_ == queryIds_.length) {
+				queryIds_ = Arrays.copyOf(queryIds_, 2 * size_);
+				for (int c = 0; c < times_.length; c++) {
+					times_[c] = Arrays.copyOf(times_[c], 2 * size_);
+				}
+			}
+			queryIds_[size_] = queryId;
+			timedOut_.set(size_, timedOut);
+			size_++;
+		}
+
+		/**
+		 * Sets a time of the last added row.
+		 *
+		 * @param column
+		 * @param time
+		 */
+		void setTime(final int column, final double time) {
+			times_[column][size_ - 1] = time;
+		}
+
+		/**
+		 * @param column
+		 * @return the table with the time column
+		 */
+		ResultTable build(final int column) {
+			return of(size_, queryIds_, times_[column], timedOut_);
+		}
+
+	}
+
+}
@@ -0,0 +1,346 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * A selection of the result files of a job, which is packed when it is sent,
+ * so that the results can be downloaded while the experiments are running.
+ * The result files are named
+ * {@code <date>.<ontology>.<experiment>.<machine>.<inferences>.csv} and are
+ * packed in the directory {@value #DIRECTORY}.
+ */
+public class ResultsArchive {
+
+	public static final String DIRECTORY = "results";
+
+	private static final String RESULT_SUFFIX_ = ".csv";
+	private static final int ZSTD_LEVEL_ = 3;
+	private static final int TAR_BLOCK_SIZE_ = 512;
+
+	public static enum Format {
+		ZIP("zip", "application/zip"), TAR_ZST("tar.zst", "application/zstd");
+
+		private final String extension_;
+		private final String mimeType_;
+
+		private Format(final String extension, final String mimeType) {
+			this.extension_ = extension;
+			this.mimeType_ = mimeType;
+		}
+
+		public String getExtension() {
+			return extension_;
+		}
+
+		public String getMimeType() {
+			return mimeType_;
+		}
+
+		/**
+		 * @param extension
+		 * @return the format with the extension or {@code null} if there is
+		 *         no such format
+		 */
+		public static Format of(final String extension) {
+			for (final Format format : values()) {
+				if (format.extension_.equals(extension)) {
+					return format;
+				}
+			}
+			return null;
+		}
+
+	}
+
+	private final File dir_;
+	private final Set<String> ontologies_;
+	private final Set<String> experiments_;
+	private final Collection<String> datePrefixes_;
+
+	/**
+	 * An empty collection does not restrict the selection.
+	 *
+	 * @param dir
+	 *            the results directory
+	 * @param ontologies
+	 *            the ontologies whose results are selected
+	 * @param experiments
+	 *            the experiments whose results are selected
+	 * @param datePrefixes
+	 *            the prefixes of the dates of the selected results
+	 */
+	public ResultsArchive(final File dir, final Collection<String> ontologies,
+			final Collection<String> experiments,
+			final Collection<String> datePrefixes) {
+		this.dir_ = dir;
+		this.ontologies_ = new HashSet<>(ontologies);
+		this.experiments_ = new HashSet<>(experiments);
+		this.datePrefixes_ = new ArrayList<>(datePrefixes);
+	}
+
+	/**
+	 * @return the selected result files in the order of their names
+	 */
+	public List<File> getFiles() {
+		final List<File> result = new ArrayList<>();
+		final String[] names = dir_.list();
+		if (names == null) {
+			return result;
+		}
+		// else
+		Arrays.sort(names);
+		for (final String name : names) {
+			final File file = new File(dir_, name);
+			if (isSelected(name) && file.isFile()) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	private boolean isSelected(final String name) {
+		// temporary files start with a dot
+		if (!name.endsWith(RESULT_SUFFIX_) || name.startsWith(".")) {
+			return false;
+		}
+		// else
+		final String[] nameSplit = name.split("\\.");
+		if (nameSplit.length < 3) {
+			return false;
+		}
+		// else
+		if (!ontologies_.isEmpty() && !ontologies_.contains(nameSplit[1])) {
+			return false;
+		}
+		// else
+		if (!experiments_.isEmpty() && !experiments_.contains(nameSplit[2])) {
+			return false;
+		}
+		// else
+		if (datePrefixes_.isEmpty()) {
+			return true;
+		}
+		// else
+		for (final String prefix : datePrefixes_) {
+			if (nameSplit[0].startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Packs the selected files. Only what is in one file at a time is kept in
+	 * memory.
+	 *
+	 * @param format
+	 * @param out
+	 *            the stream to which the archive is written, which is not
+	 *            closed
+	 * @throws IOException
+	 */
+	public void write(final Format format, final OutputStream out)
+			throws IOException {
+		final OutputStream target = new UnclosableOutputStream(out);
+		switch (format) {
+		case TAR_ZST:
+			writeTar(new ZstdOutputStream(target, ZSTD_LEVEL_));
+			break;
+		default:
+			writeZip(new ZipOutputStream(target));
+		}
+	}
+
+	private void writeZip(final ZipOutputStream out) throws IOException {
+		try {
+			for (final File file : getFiles()) {
+				final ZipEntry entry = new ZipEntry(
+						DIRECTORY + "/" + file.getName());
+				entry.setTime(file.lastModified());
+				out.putNextEntry(entry);
+				copy(file, file.length(), out);
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeTar(final OutputStream out) throws IOException {
+		try {
+			for (final File file : getFiles()) {
+				// result files are moved into place when they are complete
+				final long size = file.length();
+				out.write(getTarHeader(DIRECTORY + "/" + file.getName(), size,
+						file.lastModified()));
+				copy(file, size, out);
+				final int padding = (int) (size % TAR_BLOCK_SIZE_);
+				if (padding > 0) {
+					out.write(new byte[TAR_BLOCK_SIZE_ - padding]);
+				}
+			}
+			// the end of the archive
+			out.write(new byte[2 * TAR_BLOCK_SIZE_]);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Copies the first bytes of the file and fills up with zeros if the file
+	 * got shorter.
+	 */
+	private static void copy(final File file, final long size,
+			final OutputStream out) throws IOException {
+		final byte[] buffer = new byte[8192];
+		long remaining = size;
+		final InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while (remaining > 0 && (read = in.read(buffer, 0,
+					(int) Math.min(buffer.length, remaining))) != -1) {
+				out.write(buffer, 0, read);
+				remaining -= read;
+			}
+		} finally {
+			Utils.closeQuietly(in);
+		}
+		Arrays.fill(buffer, (byte) 0);
+		while (remaining > 0) {
+			final int n = (int) Math.min(buffer.length, remaining);
+			out.write(buffer, 0, n);
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * @return the ustar header of a regular file
+	 */
+	private static byte[] getTarHeader(final String path, final long size,
+			final long lastModified) throws IOException {
+		final byte[] header = new byte[TAR_BLOCK_SIZE_];
+		final byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+		if (pathBytes.length <= 100) {
+			System.arraycopy(pathBytes, 0, header, 0, pathBytes.length);
+		} else {
+			// the prefix field holds the directory
+			final int slash = path.indexOf('/');
+			final byte[] name = path.substring(slash + 1)
+					.getBytes(StandardCharsets.UTF_8);
+			final byte[] prefix = path.substring(0, slash)
+					.getBytes(StandardCharsets.UTF_8);
+			if (name.length > 100 || prefix.length > 155) {
+				throw new IOException("File name too long for tar: " + path);
+			}
+			// else
+			System.arraycopy(name, 0, header, 0, name.length);
+			System.arraycopy(prefix, 0, header, 345, prefix.length);
+		}
+		putOctal(header, 100, 8, 0644);
+		putOctal(header, 108, 8, 0);
+		putOctal(header, 116, 8, 0);
+		putOctal(header, 124, 12, size);
+		putOctal(header, 136, 12, lastModified / 1000);
+		header[156] = '0';
+		put(header, 257, "ustar\0");
+		put(header, 263, "00");
+		// the checksum is computed with spaces in its field
+		Arrays.fill(header, 148, 156, (byte) ' ');
+		long checksum = 0;
+		for (final byte b : header) {
+			checksum += b & 0xFF;
+		}
+		putOctal(header, 148, 7, checksum);
+		return header;
+	}
+
+	/**
+	 * Writes the number with leading zeros and a terminating zero byte.
+	 */
+	private static void putOctal(final byte[] header, final int offset,
+			final int length, final long value) throws IOException {
+		final String octal = Long.toOctalString(value);
+		if (octal.length() > length - 1) {
+			throw new IOException("Value too large for tar: " + value);
+		}
+		// else
+		final StringBuilder field = new StringBuilder();
+		for (int i = octal.length(); i < length - 1; i++) {
+			field.append('0');
+		}
+		put(header, offset, field.append(octal).append('\0').toString());
+	}
+
+	private static void put(final byte[] header, final int offset,
+			final String value) {
+		final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+
+	@Override
+	public String toString() {
+		return dir_ + " " + ontologies_ + " " + experiments_ + " "
+				+ datePrefixes_;
+	}
+
+	/**
+	 * Lets the archive streams end the archive without closing the
+	 * connection.
+	 */
+	private static class UnclosableOutputStream extends FilterOutputStream {
+
+		UnclosableOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len)
+				throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+	}
+
+}
@@ -0,0 +1,577 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The results of a job, read from the CSV files in its results directory, or
+ * rather from their {@link ColumnarRecord}s if they exist. Each file is read
+ * only once unless the size or modification time of the CSV file changes,
+ * and the plot of an ontology is prepared again only when its results change.
+ * While the job runs, changes of the directory are noticed by a
+ * {@link WatchService}, so that an unchanged directory is not even listed.
+ */
+public class ResultsIndex {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(ResultsIndex.class);
+
+	private static final String RESULT_SUFFIX_ = ".csv";
+	/**
+	 * How many indexed record files are cached.
+	 */
+	private static final int MAX_RECORDS_ = 16;
+	private static final String TIMES_EXPERIMENT_ = "_Times";
+	private static final String TIMED_OUT_COLUMN_ = "didTimeOut";
+	/**
+	 * The total time followed by the times of the components, which are only
+	 * in the records of {@value #TIMES_EXPERIMENT_} experiments.
+	 */
+	private static final String[] TIME_COLUMNS_ = { "time", "timeSatSolver",
+			"timeJustComp", "timeCycleComp" };
+
+	/**
+	 * A parsed result file.
+	 */
+	static class ResultFile {
+		final String name;
+		final long size;
+		final long lastModified;
+		final String ontology;
+		final String experiment;
+		final boolean timeComp;
+		/**
+		 * The total times and, if {@link #timeComp}, the times of the SAT
+		 * solver, of justification computation and of cycle computation.
+		 */
+		final List<ResultTable> results;
+
+		ResultFile(final File file, final List<ResultTable> results) {
+			this.name = file.getName();
+			this.size = file.length();
+			this.lastModified = file.lastModified();
+			final String[] fileNameSplit = name.split("\\.");
+			this.ontology = fileNameSplit[1];
+			this.experiment = fileNameSplit[2];
+			this.timeComp = experiment.contains(TIMES_EXPERIMENT_);
+			this.results = results;
+		}
+
+		boolean isUpToDate(final File file) {
+			return size == file.length() && lastModified == file.lastModified();
+		}
+
+	}
+
+	private final File dir_;
+
+	@GuardedBy("this")
+	private final Map<String, ResultFile> files_ = new TreeMap<>();
+	@GuardedBy("this")
+	private Map<String, ResultsPlot> plots_ = Collections.emptyMap();
+	@GuardedBy("this")
+	private final Map<String, QueryNames> queryNames_ = new HashMap<>();
+	/**
+	 * For the dictionaries of the columnar records the numbers of their
+	 * queries in {@link #queryNames_}.
+	 */
+	@GuardedBy("this")
+	private final Map<File, int[]> dictionaries_ = new HashMap<>();
+	@GuardedBy("this")
+	private final Map<String, RecordFile> records_ = new LinkedHashMap<String, RecordFile>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<String, RecordFile> eldest) {
+			return size() > MAX_RECORDS_;
+		}
+	};
+	@GuardedBy("this")
+	private String tag_ = getTag(Collections.<ResultFile> emptyList());
+	@GuardedBy("this")
+	private boolean upToDate_ = false;
+	@GuardedBy("this")
+	private long dirLastModified_ = 0;
+	@GuardedBy("this")
+	private WatchService watcher_ = null;
+	/**
+	 * Whether the directory is watched while it changes.
+	 */
+	@GuardedBy("this")
+	private boolean watch_ = true;
+
+	public ResultsIndex(final File dir) {
+		this.dir_ = dir;
+	}
+
+	/**
+	 * Brings the index up to date with the results directory.
+	 */
+	public synchronized void update() {
+		if (!hasChanged()) {
+			return;
+		}
+		// else
+		if (watcher_ == null && watch_ && dir_.isDirectory()) {
+			// watch before listing, so that no change is missed
+			try {
+				watcher_ = FileSystems.getDefault().newWatchService();
+				dir_.toPath().register(watcher_,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+			} catch (final IOException e) {
+				LOGGER_.warn("Cannot watch {}", dir_, e);
+				stopWatching();
+			}
+		}
+		rescan();
+	}
+
+	@GuardedBy("this")
+	private boolean hasChanged() {
+		if (!upToDate_) {
+			return true;
+		}
+		// else
+		if (watcher_ == null) {
+			// only additions and removals of files are noticed
+			return dir_.lastModified() != dirLastModified_;
+		}
+		// else
+		boolean changed = false;
+		WatchKey key;
+		while ((key = watcher_.poll()) != null) {
+			key.pollEvents();
+			changed = true;
+			if (!key.reset()) {
+				// the directory is gone
+				stopWatching();
+				return true;
+			}
+		}
+		return changed;
+	}
+
+	@GuardedBy("this")
+	private void rescan() {
+		dirLastModified_ = dir_.lastModified();
+		final File[] files = dir_.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.endsWith(RESULT_SUFFIX_) && !name.startsWith(".");
+			}
+		});
+		final Set<String> names = new HashSet<>();
+		final Set<String> changedOntologies = new HashSet<>();
+		if (files != null) {
+			for (final File file : files) {
+				names.add(file.getName());
+				final ResultFile cached = files_.get(file.getName());
+				if (cached != null && cached.isUpToDate(file)) {
+					continue;
+				}
+				// else
+				final List<ResultTable> results = parse(file);
+				final ResultFile parsed = results == null ? null
+						: new ResultFile(file, results);
+				if (parsed == null) {
+					files_.remove(file.getName());
+				} else {
+					files_.put(file.getName(), parsed);
+					changedOntologies.add(parsed.ontology);
+				}
+				if (cached != null) {
+					changedOntologies.add(cached.ontology);
+				}
+			}
+		}
+		final Iterator<ResultFile> iter = files_.values().iterator();
+		while (iter.hasNext()) {
+			final ResultFile file = iter.next();
+			if (!names.contains(file.name)) {
+				iter.remove();
+				changedOntologies.add(file.ontology);
+			}
+		}
+		upToDate_ = true;
+		LOGGER_.debug("{} result files, changed ontologies: {}", files_.size(),
+				changedOntologies);
+
+		// group by ontology in the order of the file names
+		final Map<String, List<ResultFile>> byOntology = new LinkedHashMap<>();
+		for (final ResultFile file : files_.values()) {
+			List<ResultFile> ontologyFiles = byOntology.get(file.ontology);
+			if (ontologyFiles == null) {
+				ontologyFiles = new ArrayList<>();
+				byOntology.put(file.ontology, ontologyFiles);
+			}
+			ontologyFiles.add(file);
+		}
+		final Map<String, ResultsPlot> plots = new LinkedHashMap<>();
+		for (final Map.Entry<String, List<ResultFile>> entry : byOntology
+				.entrySet()) {
+			final String ontology = entry.getKey();
+			ResultsPlot plot = plots_.get(ontology);
+			if (plot == null || changedOntologies.contains(ontology)) {
+				plot = render(ontology, entry.getValue());
+			}
+			plots.put(ontology, plot);
+		}
+		plots_ = plots;
+		tag_ = getTag(files_.values());
+	}
+
+	/**
+	 * Stops watching the directory, e.g., because the job that writes into it
+	 * finished. Only additions and removals of files are noticed afterwards.
+	 */
+	public synchronized void stopWatching() {
+		watch_ = false;
+		if (watcher_ != null) {
+			Utils.closeQuietly(watcher_);
+			watcher_ = null;
+			// changes after the last poll
+			upToDate_ = false;
+		}
+	}
+
+	/**
+	 * Forgets the parsed result files, the plots and the indexed record files,
+	 * e.g., because nobody looked at the results of the job for a while. They
+	 * are read again from the results directory by the next {@link #update()}
+	 * or {@link #getRecord(String)}.
+	 */
+	public synchronized void release() {
+		files_.clear();
+		plots_ = Collections.emptyMap();
+		queryNames_.clear();
+		dictionaries_.clear();
+		records_.clear();
+		upToDate_ = false;
+	}
+
+	/**
+	 * @param fileName
+	 *            the name of a file in the results directory
+	 * @return the file with an index of its rows, which is created again if
+	 *         the file changed
+	 * @throws IOException
+	 */
+	public RecordFile getRecord(final String fileName) throws IOException {
+		final File file = new File(dir_, fileName);
+		synchronized (this) {
+			final RecordFile cached = records_.get(fileName);
+			if (cached != null && cached.isUpToDate(file)) {
+				return cached;
+			}
+		}
+		// else
+		final RecordFile record = RecordFile.index(file);
+		synchronized (this) {
+			records_.put(fileName, record);
+		}
+		return record;
+	}
+
+	/**
+	 * @param ontology
+	 * @return the plot of the results on the ontology or {@code null} if there
+	 *         are none
+	 */
+	synchronized ResultsPlot getPlot(final String ontology) {
+		return plots_.get(ontology);
+	}
+
+	/**
+	 * Appends the plotted ontologies with the names of their lines and the
+	 * names of the result files as JSON.
+	 *
+	 * @param json
+	 * @return a tag that changes whenever a result file is added, removed or
+	 *         changed
+	 */
+	synchronized String appendJson(final StringBuilder json) {
+		json.append("{\"ontologies\":[");
+		boolean first = true;
+		for (final ResultsPlot plot : plots_.values()) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+			plot.appendSummary(json);
+		}
+		json.append("],\"files\":");
+		Json.appendArray(json,
+				files_.keySet().toArray(new String[files_.size()]));
+		json.append('}');
+		return tag_;
+	}
+
+	private static String getTag(final Collection<ResultFile> files) {
+		final StringBuilder tag = new StringBuilder();
+		for (final ResultFile file : files) {
+			tag.append(file.name).append('/').append(file.size).append('/')
+					.append(file.lastModified).append('\n');
+		}
+		return ETags.digest(tag.toString());
+	}
+
+	/**
+	 * @param file
+	 * @return the results in the file or {@code null} if it cannot be parsed
+	 */
+	@GuardedBy("this")
+	private List<ResultTable> parse(final File file) {
+		final String[] fileNameSplit = file.getName().split("\\.");
+		if (fileNameSplit.length < 3) {
+			LOGGER_.warn("Unexpected name of result file: {}", file);
+			return null;
+		}
+		// else
+		final QueryNames queries = getQueryNames(fileNameSplit[1]);
+		final int timeColumns = fileNameSplit[2].contains(TIMES_EXPERIMENT_)
+				? TIME_COLUMNS_.length
+				: 1;
+		final File columnar = new File(
+				new File(dir_, ColumnarRecord.DIRECTORY),
+				file.getName().substring(0,
+						file.getName().length() - RESULT_SUFFIX_.length())
+						+ ColumnarRecord.SUFFIX);
+		if (columnar.exists()) {
+			try {
+				return readColumnar(columnar, queries, timeColumns);
+			} catch (final IOException e) {
+				LOGGER_.warn("Cannot read {}, parsing {}", columnar, file, e);
+			}
+		}
+		// else
+		return parseCsv(file, queries, timeColumns);
+	}
+
+	@GuardedBy("this")
+	private QueryNames getQueryNames(final String ontology) {
+		QueryNames result = queryNames_.get(ontology);
+		if (result == null) {
+			result = new QueryNames();
+			queryNames_.put(ontology, result);
+		}
+		return result;
+	}
+
+	@GuardedBy("this")
+	private List<ResultTable> readColumnar(final File file,
+			final QueryNames queries, final int timeColumns)
+			throws IOException {
+		final ColumnarRecord record = ColumnarRecord.open(file);
+		final int queryColumn = getColumn(record, ColumnarRecord.QUERY_COLUMN);
+		int maxId = -1;
+		for (int row = 0; row < record.getRowCount(); row++) {
+			maxId = Math.max(maxId, record.getQueryId(queryColumn, row));
+		}
+		final int[] queryIds = getQueryIds(record.getDictionaryFile(),
+				maxId + 1, queries);
+		final int timedOutColumn = record.getColumnIndex(TIMED_OUT_COLUMN_);
+		if (timedOutColumn >= 0 && record
+				.getType(timedOutColumn) != ColumnarRecord.TYPE_BOOLEAN) {
+			throw new IOException("Column " + TIMED_OUT_COLUMN_
+					+ " is not boolean");
+		}
+		// else
+		final List<ResultTable> results = new ArrayList<>(timeColumns);
+		for (int c = 0; c < timeColumns; c++) {
+			// the tables read the mapped record
+			results.add(ResultTable.of(record, queryColumn, queryIds,
+					getColumn(record, TIME_COLUMNS_[c]), timedOutColumn));
+		}
+		return results;
+	}
+
+	private static int getColumn(final ColumnarRecord record,
+			final String column) throws IOException {
+		final int result = record.getColumnIndex(column);
+		if (result < 0 || (record.getType(result) == ColumnarRecord.TYPE_QUERY)
+				!= ColumnarRecord.QUERY_COLUMN.equals(column)) {
+			throw new IOException("No column " + column);
+		}
+		// else
+		return result;
+	}
+
+	/**
+	 * @param dictionary
+	 * @param size
+	 *            how many queries of the dictionary are needed
+	 * @param queries
+	 *            the names of the queries on the ontology of the dictionary
+	 * @return for the number of each query in the dictionary its number in
+	 *         the names; the dictionary is read again if it has fewer queries
+	 *         than needed
+	 * @throws IOException
+	 */
+	@GuardedBy("this")
+	private int[] getQueryIds(final File dictionary, final int size,
+			final QueryNames queries) throws IOException {
+		int[] result = dictionaries_.get(dictionary);
+		if (result == null || result.length < size) {
+			final List<String> names = QueryDictionary.read(dictionary);
+			final int known = result == null ? 0 : result.length;
+			result = result == null ? new int[names.size()]
+					: Arrays.copyOf(result, names.size());
+			for (int id = known; id < result.length; id++) {
+				result[id] = queries.getId(names.get(id));
+			}
+			dictionaries_.put(dictionary, result);
+		}
+		if (result.length < size) {
+			throw new IOException("Queries missing in " + dictionary);
+		}
+		// else
+		return result;
+	}
+
+	/**
+	 * @param file
+	 * @param queries
+	 *            the names of the queries on the ontology of the file
+	 * @param timeColumns
+	 *            how many of {@link #TIME_COLUMNS_} are read
+	 * @return the results in the file or {@code null} if it cannot be parsed
+	 */
+	private static List<ResultTable> parseCsv(final File file,
+			final QueryNames queries, final int timeColumns) {
+		final ResultTable.Builder builder = new ResultTable.Builder(
+				timeColumns);
+		String[] input = null;
+		String line;
+		int nameIndex = 0;
+		int timedOutIndex = -1;
+		final int[] timeIndices = new int[timeColumns];
+		BufferedReader br = null;
+		try {
+			// read data from csv files
+			br = new BufferedReader(new FileReader(file));
+			if ((line = br.readLine()) != null) {
+				input = line.split(",");
+				for (int j = 0; j < input.length; j++) {
+					if (input[j].equals("query")) {
+						nameIndex = j;
+					}
+					if (input[j].equals(TIMED_OUT_COLUMN_)) {
+						timedOutIndex = j;
+					}
+					for (int c = 0; c < timeColumns; c++) {
+						if (input[j].equals(TIME_COLUMNS_[c])) {
+							timeIndices[c] = j;
+						}
+					}
+				}
+			}
+			while ((line = br.readLine()) != null) {
+				input = line.split(",");
+				builder.addRow(queries.getId(input[nameIndex]),
+						timedOutIndex >= 0 && ColumnarRecord
+								.parseBoolean(input[timedOutIndex]));
+				for (int c = 0; c < timeColumns; c++) {
+					builder.setTime(c,
+							Double.parseDouble(input[timeIndices[c]]) / 1000);
+				}
+			}
+		} catch (final IOException | NumberFormatException
+				| ArrayIndexOutOfBoundsException e) {
+			LOGGER_.error("Cannot parse the result file " + file, e);
+			return null;
+		} finally {
+			Utils.closeQuietly(br);
+		}
+		final List<ResultTable> results = new ArrayList<>(timeColumns);
+		for (int c = 0; c < timeColumns; c++) {
+			results.add(builder.build(c));
+		}
+		return results;
+	}
+
+	@GuardedBy("this")
+	private ResultsPlot render(final String ontologieName,
+			final List<ResultFile> files) {
+		// contains all results of the plotted lines
+		final List<ResultTable> results = new ArrayList<>();
+		final List<String> expNames = new ArrayList<String>();
+		boolean minComp = false;
+		for (final ResultFile file : files) {
+			minComp = minComp || file.timeComp;
+			if (file.timeComp) {
+				expNames.add(file.experiment + "_total");
+				expNames.add(file.experiment + "_SatSolver");
+				expNames.add(file.experiment + "_JustComp");
+				expNames.add(file.experiment + "_CycleComp");
+			} else {
+				expNames.add(file.experiment);
+			}
+			results.addAll(file.results);
+		}
+
+		// the percentage of queries refers to all queries on the ontology
+		final QueryNames queries = getQueryNames(ontologieName);
+		final VirtualBestSolver vbs = new VirtualBestSolver(queries.size());
+		for (final ResultTable result : results) {
+			vbs.add(result);
+		}
+
+		if (!minComp) {
+			expNames.add("minimum");
+			results.add(vbs.getResults());
+		}
+
+		return new ResultsPlot(ontologieName, getTag(files), expNames, queries,
+				results, vbs.getQueryCount(), !minComp);
+	}
+
+}
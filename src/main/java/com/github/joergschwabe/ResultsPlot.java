@@ -0,0 +1,488 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * The data of the cactus plot of the results of all experiments on one
+ * ontology. The results page loads the points of its lines from the server. A
+ * line is downsampled to a budget of points for the currently shown range of
+ * queries, so that it is sent in full resolution only when the user zooms in
+ * far enough.
+ */
+class ResultsPlot {
+
+	/**
+	 * How the points of a line are chosen if it has more points than the
+	 * budget.
+	 */
+	enum Sampling {
+		/**
+		 * Largest-Triangle-Three-Buckets, which keeps the points that change
+		 * the shape of the line the most.
+		 */
+		LTTB,
+		/**
+		 * Points at equidistant fractions of the queries.
+		 */
+		QUANTILES,
+	}
+
+	/**
+	 * The smallest time on the time axis, which is logarithmic.
+	 */
+	private static final double MIN_TIME_ = 0.001;
+	private static final int MIN_POINTS_ = 3;
+
+	/**
+	 * The results of one line in ascending order of time.
+	 */
+	private static class Line {
+		final ResultTable results;
+		/**
+		 * The rows of the results in ascending order of time.
+		 */
+		final int[] rows;
+		/**
+		 * The rank of each query in the line or -1 if it is not in the line,
+		 * created when it is first needed.
+		 */
+		int[] ranks = null;
+
+		Line(final ResultTable results) {
+			this.results = results;
+			this.rows = results.sortByTime();
+		}
+
+		int size() {
+			return rows.length;
+		}
+
+		double getTime(final int rank) {
+			return results.getTime(rows[rank]);
+		}
+
+		int getQueryId(final int rank) {
+			return results.getQueryId(rows[rank]);
+		}
+
+		boolean isTimedOut(final int rank) {
+			return results.isTimedOut(rows[rank]);
+		}
+
+		/**
+		 * @param queryId
+		 * @param maxQueries
+		 *            an upper bound of the numbers of the queries
+		 * @return the rank of the query in the line or -1 if it is not in the
+		 *         line
+		 */
+		int getRank(final int queryId, final int maxQueries) {
+			if (ranks == null) {
+				ranks = new int[maxQueries];
+				Arrays.fill(ranks, -1);
+				for (int r = rows.length - 1; r >= 0; r--) {
+					ranks[getQueryId(r)] = r;
+				}
+			}
+			return queryId < 0 || queryId >= ranks.length ? -1
+					: ranks[queryId];
+		}
+
+	}
+
+	private final String ontology_;
+	private final String tag_;
+	private final String[] names_;
+	private final QueryNames queries_;
+	@GuardedBy("this")
+	private final Line[] lines_;
+	/**
+	 * The number of all queries, to which the x coordinates refer, so that a
+	 * line with fewer queries ends before 100%.
+	 */
+	private final int queryCount_;
+	/**
+	 * Whether the last line is the minimum of the other lines.
+	 */
+	private final boolean hasMinimum_;
+	/**
+	 * The lines of which the minimum was computed for a subset of the lines.
+	 */
+	@GuardedBy("this")
+	private BitSet minimumOf_ = null;
+	@GuardedBy("this")
+	private Line minimum_ = null;
+
+	/**
+	 * @param ontology
+	 * @param tag
+	 *            changes whenever the results change
+	 * @param names
+	 *            the names of the lines
+	 * @param queries
+	 *            the names of the queries in the results
+	 * @param results
+	 *            the results of each line
+	 * @param queryCount
+	 *            the number of different queries in all lines
+	 * @param hasMinimum
+	 *            whether the last line is the minimum of the other lines
+	 */
+	ResultsPlot(final String ontology, final String tag,
+			final List<String> names, final QueryNames queries,
+			final List<ResultTable> results, final int queryCount,
+			final boolean hasMinimum) {
+		this.ontology_ = ontology;
+		this.tag_ = tag;
+		this.names_ = names.toArray(new String[names.size()]);
+		this.queries_ = queries;
+		this.lines_ = new Line[results.size()];
+		for (int k = 0; k < lines_.length; k++) {
+			lines_[k] = new Line(results.get(k));
+		}
+		this.queryCount_ = Math.max(1, queryCount);
+		this.hasMinimum_ = hasMinimum;
+	}
+
+	int getLineCount() {
+		return lines_.length;
+	}
+
+	/**
+	 * @return a tag that changes whenever the results of the plot change
+	 */
+	String getTag() {
+		return tag_;
+	}
+
+	/**
+	 * Appends the names of the lines as JSON.
+	 *
+	 * @param json
+	 */
+	void appendSummary(final StringBuilder json) {
+		json.append("{\"name\":");
+		Json.appendString(json, ontology_);
+		json.append(",\"lines\":");
+		Json.appendArray(json, names_);
+		json.append(",\"hasMinimum\":").append(hasMinimum_).append('}');
+	}
+
+	/**
+	 * Appends all queries of a line and their times in ascending order as
+	 * JSON.
+	 *
+	 * @param json
+	 * @param name
+	 *            the name of the line
+	 * @return {@code false} if there is no line with this name
+	 */
+	synchronized boolean appendLine(final StringBuilder json,
+			final String name) {
+		final int k = Arrays.asList(names_).indexOf(name);
+		if (k < 0) {
+			return false;
+		}
+		// else
+		final Line line = lines_[k];
+		json.append("{\"name\":");
+		Json.appendString(json, name);
+		json.append(",\"queries\":[");
+		for (int r = 0; r < line.size(); r++) {
+			if (r > 0) {
+				json.append(',');
+			}
+			Json.appendString(json, queries_.getName(line.getQueryId(r)));
+		}
+		json.append("],\"times\":[");
+		for (int r = 0; r < line.size(); r++) {
+			if (r > 0) {
+				json.append(',');
+			}
+			Json.appendNumber(json, line.getTime(r), 6);
+		}
+		json.append("]}");
+		return true;
+	}
+
+	/**
+	 * Appends the points of the active lines as JSON. For each line there is
+	 * {@code null} if it is not active, or the coordinates and the ranks of the
+	 * points that are in the range of queries, including one point on either
+	 * side of the range.
+	 *
+	 * @param json
+	 * @param from
+	 *            the start of the range in percent of the queries
+	 * @param to
+	 *            the end of the range in percent of the queries
+	 * @param budget
+	 *            how many points per line are sent at most
+	 * @param sampling
+	 *            how the points are chosen if there are more than the budget
+	 * @param active
+	 *            the active lines
+	 */
+	synchronized void appendPoints(final StringBuilder json, final double from,
+			final double to, final int budget, final Sampling sampling,
+			final BitSet active) {
+		json.append("{\"lines\":[");
+		for (int k = 0; k < lines_.length; k++) {
+			if (k > 0) {
+				json.append(',');
+			}
+			if (!active.get(k)) {
+				json.append("null");
+				continue;
+			}
+			// else
+			final Line line = getLine(k, active);
+			// the ranks whose x is from (r + 1) * 100 / queryCount_
+			final int first = Math.max(0,
+					(int) Math.ceil(from * queryCount_ / 100.0) - 2);
+			final int last = Math.min(line.size() - 1,
+					(int) Math.floor(to * queryCount_ / 100.0));
+			final int[] ranks = first > last ? new int[0]
+					: sample(line, first, last,
+							Math.max(MIN_POINTS_, budget), sampling);
+			json.append("{\"x\":[");
+			for (int p = 0; p < ranks.length; p++) {
+				if (p > 0) {
+					json.append(',');
+				}
+				Json.appendNumber(json, getX(ranks[p]), 4);
+			}
+			json.append("],\"y\":[");
+			for (int p = 0; p < ranks.length; p++) {
+				if (p > 0) {
+					json.append(',');
+				}
+				Json.appendNumber(json, line.getTime(ranks[p]), 6);
+			}
+			json.append("],\"r\":[");
+			for (int p = 0; p < ranks.length; p++) {
+				if (p > 0) {
+					json.append(',');
+				}
+				json.append(ranks[p]);
+			}
+			json.append("]}");
+		}
+		json.append("]}");
+	}
+
+	/**
+	 * @param line
+	 * @param rank
+	 * @param active
+	 *            the active lines
+	 * @return the query at the rank of the line or {@code null} if there is no
+	 *         such query
+	 */
+	synchronized String getQuery(final int line, final int rank,
+			final BitSet active) {
+		if (line < 0 || line >= lines_.length) {
+			return null;
+		}
+		// else
+		final Line result = getLine(line, active);
+		return rank < 0 || rank >= result.size() ? null
+				: queries_.getName(result.getQueryId(rank));
+	}
+
+	/**
+	 * Appends the point of the query in each active line as JSON, or
+	 * {@code null} if the line is not active or does not contain the query.
+	 *
+	 * @param json
+	 * @param query
+	 * @param active
+	 *            the active lines
+	 */
+	synchronized void appendQuery(final StringBuilder json, final String query,
+			final BitSet active) {
+		json.append("{\"query\":");
+		Json.appendString(json, query);
+		json.append(",\"points\":[");
+		final int queryId = queries_.find(query);
+		final int maxQueries = queries_.size();
+		for (int k = 0; k < lines_.length; k++) {
+			if (k > 0) {
+				json.append(',');
+			}
+			final int rank = active.get(k)
+					? getLine(k, active).getRank(queryId, maxQueries)
+					: -1;
+			if (rank < 0) {
+				json.append("null");
+				continue;
+			}
+			// else
+			final Line line = getLine(k, active);
+			json.append("{\"x\":");
+			Json.appendNumber(json, getX(rank), 4);
+			json.append(",\"y\":");
+			Json.appendNumber(json, line.getTime(rank), 6);
+			if (line.isTimedOut(rank)) {
+				json.append(",\"timedOut\":true");
+			}
+			json.append('}');
+		}
+		json.append("]}");
+	}
+
+	/**
+	 * @param k
+	 * @param active
+	 *            the active lines
+	 * @return the line, or if it is the minimum line, the minimum of the
+	 *         active lines
+	 */
+	@GuardedBy("this")
+	private Line getLine(final int k, final BitSet active) {
+		final int minIndex = lines_.length - 1;
+		if (!hasMinimum_ || k != minIndex
+				|| active.nextClearBit(0) >= minIndex) {
+			return lines_[k];
+		}
+		// else
+		final BitSet of = active.get(0, minIndex);
+		if (!of.equals(minimumOf_)) {
+			minimum_ = computeMinimum(of);
+			minimumOf_ = of;
+		}
+		return minimum_;
+	}
+
+	/**
+	 * @param of
+	 *            the lines of which the minimum is computed
+	 * @return the virtual best solver of the lines
+	 */
+	@GuardedBy("this")
+	private Line computeMinimum(final BitSet of) {
+		final VirtualBestSolver vbs = new VirtualBestSolver(queries_.size());
+		for (int k = of.nextSetBit(0); k >= 0; k = of.nextSetBit(k + 1)) {
+			vbs.add(lines_[k].results);
+		}
+		return new Line(vbs.getResults());
+	}
+
+	private double getX(final int rank) {
+		return ((rank + 1) * 100.0) / queryCount_;
+	}
+
+	/**
+	 * @param line
+	 * @param first
+	 * @param last
+	 * @param budget
+	 *            at least 3
+	 * @param sampling
+	 * @return the sorted ranks from the first to the last, inclusive, of at
+	 *         most budget points that represent the line
+	 */
+	private static int[] sample(final Line line, final int first,
+			final int last, final int budget, final Sampling sampling) {
+		final int count = last - first + 1;
+		if (count <= budget) {
+			final int[] result = new int[count];
+			for (int p = 0; p < count; p++) {
+				result[p] = first + p;
+			}
+			return result;
+		}
+		// else
+		switch (sampling) {
+		case QUANTILES:
+			return sampleQuantiles(first, count, budget);
+		default:
+			return sampleLttb(line, first, last, budget);
+		}
+	}
+
+	private static int[] sampleQuantiles(final int first, final int count,
+			final int budget) {
+		final int[] result = new int[budget];
+		for (int p = 0; p < budget; p++) {
+			result[p] = first
+					+ (int) Math.round(p * (count - 1) / (double) (budget - 1));
+		}
+		return result;
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets downsampling on the logarithmic time axis.
+	 * The points between the first and the last are split into buckets, one
+	 * for each chosen point, and from each bucket the point is chosen that
+	 * forms the largest triangle with the point chosen from the previous
+	 * bucket and the average of the next bucket.
+	 */
+	private static int[] sampleLttb(final Line line, final int first,
+			final int last, final int budget) {
+		final int[] result = new int[budget];
+		result[0] = first;
+		result[budget - 1] = last;
+		final double bucketSize = (last - first - 1) / (double) (budget - 2);
+		int previous = first;
+		for (int b = 0; b < budget - 2; b++) {
+			final int start = first + 1 + (int) (b * bucketSize);
+			final int end = first + 1 + (int) ((b + 1) * bucketSize);
+			final int nextEnd = Math.min(last + 1,
+					first + 1 + (int) ((b + 2) * bucketSize));
+			double nextX = 0;
+			double nextY = 0;
+			for (int r = end; r < nextEnd; r++) {
+				nextX += r;
+				nextY += logTime(line.getTime(r));
+			}
+			nextX /= nextEnd - end;
+			nextY /= nextEnd - end;
+			final double previousY = logTime(line.getTime(previous));
+			double maxArea = -1;
+			int chosen = start;
+			for (int r = start; r < end; r++) {
+				final double area = Math
+						.abs((previous - nextX) * (logTime(line.getTime(r)) - previousY)
+								- (previous - r) * (nextY - previousY));
+				if (area > maxArea) {
+					maxArea = area;
+					chosen = r;
+				}
+			}
+			result[b + 1] = chosen;
+			previous = chosen;
+		}
+		return result;
+	}
+
+	private static double logTime(final double time) {
+		return Math.log10(Math.max(MIN_TIME_, time));
+	}
+
+}
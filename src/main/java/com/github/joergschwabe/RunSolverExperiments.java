@@ -0,0 +1,694 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.annotation.Arg;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+/**
+ * Runs a native solver, EL2MUS, EL2MCS or SATPin, on the encoding of every
+ * query in a query file and records the results in {@code record.csv}. The
+ * queries are hashed, the runs timed and the output of the solver parsed in
+ * this JVM, so that only the solver is started for each query. Several
+ * queries can be solved at once, each pinned to its own CPU; they are
+ * recorded in the order of the query file and the global timeout applies to
+ * the sum of their times. The time of a run includes starting the solver by
+ * {@code setsid} and {@code taskset}, as the time of the former scripts
+ * included starting it by {@code timeout}.
+ */
+public class RunSolverExperiments {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(RunSolverExperiments.class);
+
+	public static final String OPT_SOLVER = "solver";
+	public static final String OPT_EXE = "exe";
+	public static final String OPT_TIMEOUT = "timeout";
+	public static final String OPT_GLOBAL_TIMEOUT = "global_timeout";
+	public static final String OPT_QUERIES = "queries";
+	public static final String OPT_ENCODING = "encoding";
+	public static final String OPT_OUTPUT = "output";
+	public static final String OPT_SCRIPTS = "scripts";
+	public static final String OPT_TOOLS = "tools";
+	public static final String OPT_ONLY_ONE = "only-one";
+	public static final String OPT_PARALLEL = "parallel";
+
+	public static class Options {
+		@Arg(dest = OPT_SOLVER)
+		public String solver;
+		@Arg(dest = OPT_EXE)
+		public String exe;
+		@Arg(dest = OPT_TIMEOUT)
+		public Long timeout;
+		@Arg(dest = OPT_GLOBAL_TIMEOUT)
+		public Long globalTimeout;
+		@Arg(dest = OPT_QUERIES)
+		public File queries;
+		@Arg(dest = OPT_ENCODING)
+		public File encoding;
+		@Arg(dest = OPT_OUTPUT)
+		public File output;
+		@Arg(dest = OPT_SCRIPTS)
+		public File scripts;
+		@Arg(dest = OPT_TOOLS)
+		public File tools;
+		@Arg(dest = OPT_ONLY_ONE)
+		public boolean onlyOne;
+		@Arg(dest = OPT_PARALLEL)
+		public Integer parallel;
+	}
+
+	public static final String RECORD = "record.csv";
+
+	/**
+	 * How much longer than the timeout of the solver it may run before it is
+	 * killed.
+	 */
+	private static final long KILL_AFTER_SECONDS_ = 10;
+	private static final long REPORT_INTERVAL_NANOS_ = 1000000000L;
+
+	private static final Pattern NUMBER_ = Pattern
+			.compile("([0-9]+\\.?[0-9]*)");
+
+	/**
+	 * A solver together with how to run it and how to read its output.
+	 */
+	public static enum Solver {
+		EL2MUS("nJust", "-nmus", "Number of MUSes", "Parsing CPU Time",
+				"c CPU Time", "^c.* MUS: (.*)$"),
+		EL2MCS("nRepair", "-nmcs", "Number of MCSes", "Parsing CPU Time",
+				"c CPU Time", "^c.* MCS: (.*)$"),
+		SATPIN("nJust", null, "(unsat:", "Parse time", "CPU time", null) {
+			@Override
+			List<String> getCommand(final String exe, final long timeout,
+					final boolean onlyOne, final File queryDir) {
+				return Arrays.asList(exe,
+						"-assumptions="
+								+ new File(queryDir, "encoding.assumptions"),
+						"-question=" + new File(queryDir, "encoding.question"),
+						"-cpu-lim=" + timeout, "-rotate=1", "-no-eldbg",
+						"-reduce=0", "-modelClauses", "-keepSearch",
+						"-minimal");
+			}
+
+			@Override
+			boolean usesWcnf() {
+				return false;
+			}
+
+			@Override
+			List<File> getInput(final File queryDir) {
+				return Arrays.asList(new File(queryDir, "encoding.h"),
+						new File(queryDir, "encoding.cnf"));
+			}
+
+			@Override
+			Pattern getCountPattern() {
+				return SATPIN_COUNT_;
+			}
+		};
+
+		private final String countColumn_;
+		private final String onlyOneOption_;
+		private final String countLine_;
+		private final String parseTimeLine_;
+		private final String cpuTimeLine_;
+		private final Pattern justification_;
+
+		private Solver(final String countColumn, final String onlyOneOption,
+				final String countLine, final String parseTimeLine,
+				final String cpuTimeLine, final String justification) {
+			this.countColumn_ = countColumn;
+			this.onlyOneOption_ = onlyOneOption;
+			this.countLine_ = countLine;
+			this.parseTimeLine_ = parseTimeLine;
+			this.cpuTimeLine_ = cpuTimeLine;
+			this.justification_ = justification == null ? null
+					: Pattern.compile(justification);
+		}
+
+		/**
+		 * @return the header of the record
+		 */
+		String getHeader() {
+			return "query,didTimeOut,time,realTime,cpuTime," + countColumn_
+					+ (justification_ == null ? "" : ",meanJustSize");
+		}
+
+		/**
+		 * @param exe
+		 * @param timeout
+		 *            in seconds
+		 * @param onlyOne
+		 *            whether the solver should stop after the first
+		 *            justification
+		 * @param queryDir
+		 *            the encoding of the query
+		 * @return the command that solves the query
+		 * @throws IOException
+		 */
+		List<String> getCommand(final String exe, final long timeout,
+				final boolean onlyOne, final File queryDir)
+				throws IOException {
+			final List<String> command = new ArrayList<>();
+			command.add(exe);
+			command.add("-T");
+			command.add(Long.toString(timeout));
+			if (onlyOne) {
+				command.add(onlyOneOption_);
+				command.add("1");
+			}
+			command.add(getWcnf(queryDir).getPath());
+			return command;
+		}
+
+		/**
+		 * @return whether the solver reads the WCNF file of the query, see
+		 *         {@link RunSolverExperiments#getWcnf(File)}
+		 */
+		boolean usesWcnf() {
+			return true;
+		}
+
+		/**
+		 * @param queryDir
+		 * @return the files that are passed to the standard input of the
+		 *         solver
+		 */
+		List<File> getInput(final File queryDir) {
+			return null;
+		}
+
+		Pattern getCountPattern() {
+			return NUMBER_;
+		}
+
+	}
+
+	private static final Pattern SATPIN_COUNT_ = Pattern
+			.compile("\\(unsat: ([0-9]+\\.?[0-9]*)\\)");
+
+	public static void main(final String[] args) {
+
+		final ArgumentParser parser = ArgumentParsers
+				.newArgumentParser(
+						RunSolverExperiments.class.getSimpleName())
+				.description(
+						"Runs a native solver on the encoding of every query and records the results in "
+								+ RECORD + ".");
+		parser.addArgument(OPT_SOLVER).choices("el2mus", "el2mcs", "satpin")
+				.help("the solver");
+		parser.addArgument(OPT_EXE).help("the executable of the solver");
+		parser.addArgument(OPT_TIMEOUT).type(Long.class)
+				.help("the timeout of each query in seconds");
+		parser.addArgument(OPT_GLOBAL_TIMEOUT).type(Long.class)
+				.help("the timeout of all queries in seconds");
+		parser.addArgument(OPT_QUERIES).type(File.class)
+				.help("the query file");
+		parser.addArgument(OPT_ENCODING).type(File.class)
+				.help("the directory with the encoding of each query");
+		parser.addArgument(OPT_OUTPUT).type(File.class)
+				.help("the directory into which the record and the output of the solver are written");
+		parser.addArgument("--" + OPT_SCRIPTS).dest(OPT_SCRIPTS)
+				.type(File.class)
+				.help("the directory with create-wcnf, which creates missing WCNF files of EL2MUS and EL2MCS");
+		parser.addArgument("--" + OPT_TOOLS).dest(OPT_TOOLS).type(File.class)
+				.help("the tools used by create-wcnf");
+		parser.addArgument("--" + OPT_ONLY_ONE).dest(OPT_ONLY_ONE)
+				.action(Arguments.storeTrue())
+				.help("stop after the first justification or repair");
+		parser.addArgument("--" + OPT_PARALLEL).dest(OPT_PARALLEL)
+				.type(Integer.class)
+				.help("how many queries are solved at once, each on its own CPU (default: the number of CPUs on which this process may run)");
+
+		try {
+
+			final Options opt = new Options();
+			parser.parseArgs(args, opt);
+
+			new RunSolverExperiments(opt).run();
+
+		} catch (final ArgumentParserException e) {
+			parser.handleError(e);
+			System.exit(2);
+		} catch (final Exception e) {
+			LOGGER_.error("Cannot run the experiments!", e);
+			System.exit(1);
+		}
+	}
+
+	private final Options options_;
+	private final Solver solver_;
+	private final MessageDigest sha1_;
+
+	private final int parallel_;
+	/**
+	 * The CPUs of this process, one of which is used by each run of the
+	 * solver.
+	 */
+	private final CpuPool cpus_;
+
+	private final long startNanos_ = System.nanoTime();
+	private int totalQueries_;
+	private int doneQueries_ = 0;
+	/**
+	 * The sum of the times of the recorded runs, which is compared with the
+	 * global timeout.
+	 */
+	private long totalNanos_ = 0;
+	private long nextReportNanos_;
+
+	RunSolverExperiments(final Options options) {
+		this.options_ = options;
+		this.solver_ = Solver.valueOf(options.solver.toUpperCase(Locale.ROOT));
+		final CpuSet cpus = CpuSet.getAvailable();
+		this.cpus_ = new CpuPool(cpus);
+		this.parallel_ = Math.max(1,
+				options.parallel == null ? cpus.size() : options.parallel);
+		try {
+			this.sha1_ = MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			// every JVM implements SHA-1
+			throw new RuntimeException(e);
+		}
+	}
+
+	void run() throws IOException, InterruptedException {
+		final List<String> queries = Files.readAllLines(
+				options_.queries.toPath(), StandardCharsets.UTF_8);
+		totalQueries_ = queries.size();
+
+		Utils.cleanDir(options_.output);
+		final Writer record = new BufferedWriter(
+				new FileWriter(new File(options_.output, RECORD)));
+		final ExecutorService executor = Executors
+				.newFixedThreadPool(parallel_);
+		try {
+			record.write(solver_.getHeader());
+			record.write('\n');
+			record.flush();
+
+			System.out.print(String.format(Locale.ROOT,
+					"%" + width() + "d/%d %6.2f%%  elapsed: 00:00:00", 0,
+					totalQueries_, 0.0));
+			System.out.flush();
+			nextReportNanos_ = System.nanoTime() + REPORT_INTERVAL_NANOS_;
+
+			// the runs that are not recorded yet, in the order of the queries
+			final Deque<Future<Run>> pending = new ArrayDeque<>();
+			for (final String line : queries) {
+				final String query = line.trim();
+				final String hash = ETags.toHex(
+						sha1_.digest(query.getBytes(StandardCharsets.UTF_8)));
+				final File queryDir = new File(options_.encoding, hash);
+				if (!queryDir.exists()) {
+					System.err.println("No Input Dir: " + queryDir);
+					break;
+				}
+				// else
+				pending.add(executor.submit(new Callable<Run>() {
+					@Override
+					public Run call() throws Exception {
+						return runQuery(query, queryDir,
+								new File(options_.output, hash));
+					}
+				}));
+				if (pending.size() > 2 * parallel_
+						&& !record(pending.remove(), record)) {
+					pending.clear();
+					break;
+				}
+			}
+			while (!pending.isEmpty() && record(pending.remove(), record)) {
+				// recorded
+			}
+		} finally {
+			// kills the runs after the global timeout
+			executor.shutdownNow();
+			record.close();
+		}
+		executor.awaitTermination(KILL_AFTER_SECONDS_, TimeUnit.SECONDS);
+		reportProgress();
+		System.out.println();
+	}
+
+	/**
+	 * The result of the solver on a query.
+	 */
+	private static class Run {
+		/**
+		 * The line of the record without the line break.
+		 */
+		final String row;
+		final long nanos;
+
+		Run(final String row, final long nanos) {
+			this.row = row;
+			this.nanos = nanos;
+		}
+	}
+
+	/**
+	 * Appends the result of the run to the record and sums up its time.
+	 *
+	 * @return whether the global timeout is not yet exceeded, so that further
+	 *         runs should be recorded
+	 */
+	private boolean record(final Future<Run> future, final Writer record)
+			throws IOException, InterruptedException {
+		final Run run;
+		try {
+			run = future.get();
+		} catch (final ExecutionException e) {
+			throw e.getCause() instanceof IOException
+					? (IOException) e.getCause()
+					: new IOException(e.getCause());
+		}
+		record.write(run.row);
+		record.write('\n');
+		doneQueries_++;
+		totalNanos_ += run.nanos;
+		if (totalNanos_ > options_.globalTimeout * 1000000000L) {
+			return false;
+		}
+		// else
+		if (System.nanoTime() >= nextReportNanos_) {
+			record.flush();
+			reportProgress();
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the solver on the query pinned to a free CPU, if there is one.
+	 *
+	 * @return the result of the run
+	 */
+	private Run runQuery(final String query, final File queryDir,
+			final File logDir) throws IOException, InterruptedException {
+		final Solver solver = solver_;
+		if (solver.usesWcnf() && getWcnf(queryDir).length() == 0) {
+			createWcnf(queryDir);
+		}
+		final List<String> command = solver.getCommand(options_.exe,
+				options_.timeout, options_.onlyOne, queryDir);
+		final List<File> input = solver.getInput(queryDir);
+		final File out = new File(logDir, "out.log");
+		final File err = new File(logDir, "err.log");
+		logDir.mkdirs();
+
+		final CpuSet cpu = cpus_.acquire(1);
+		final long nanos;
+		try {
+			final List<String> group = Processes.inNewGroup(command);
+			final ProcessBuilder builder = new ProcessBuilder(
+					cpu == null ? group : cpu.pin(group)).redirectOutput(out)
+							.redirectError(err);
+			final long start = System.nanoTime();
+			final Process process = builder.start();
+			if (input == null) {
+				Utils.closeQuietly(process.getOutputStream());
+			} else {
+				feed(process, input);
+			}
+			try {
+				if (!process.waitFor(options_.timeout + KILL_AFTER_SECONDS_,
+						TimeUnit.SECONDS)) {
+					Processes.destroyGroup(process);
+					process.waitFor();
+				}
+			} catch (final InterruptedException e) {
+				Processes.destroyGroup(process);
+				throw e;
+			}
+			nanos = System.nanoTime() - start;
+		} finally {
+			cpus_.release(cpu);
+		}
+		if (err.length() > 0) {
+			synchronized (System.err) {
+				System.out.flush();
+				Files.copy(err.toPath(), System.err);
+				System.err.flush();
+			}
+		}
+
+		final String millis = formatMillis(nanos);
+		final StringBuilder row = new StringBuilder();
+		row.append('"').append(query).append("\",")
+				.append(options_.timeout * 1000000000L < nanos ? "TRUE"
+						: "FALSE")
+				.append(',').append(millis).append(',').append(millis)
+				.append(',');
+		appendResults(solver, out, millis, row);
+		return new Run(row.toString(), nanos);
+	}
+
+	/**
+	 * Appends the CPU time, the number of justifications and, if the solver
+	 * prints them, their mean size parsed from the output of the solver.
+	 */
+	private static void appendResults(final Solver solver, final File out,
+			final String millis, final StringBuilder row) throws IOException {
+		String count = null;
+		double parseTime = 0;
+		double cpuTime = 0;
+		long justifications = 0;
+		long justificationSize = 0;
+		final BufferedReader reader = new BufferedReader(new FileReader(out));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (count == null && line.contains(solver.countLine_)) {
+					count = find(solver.getCountPattern(), line);
+				} else if (line.contains(solver.parseTimeLine_)) {
+					parseTime = parseNumber(line);
+				} else if (line.contains(solver.cpuTimeLine_)) {
+					cpuTime = parseNumber(line);
+				}
+				if (solver.justification_ != null) {
+					final Matcher matcher = solver.justification_
+							.matcher(line);
+					if (matcher.matches()) {
+						justifications++;
+						final String axioms = matcher.group(1).trim();
+						if (!axioms.isEmpty()) {
+							justificationSize += axioms.split("\\s+").length;
+						}
+					}
+				}
+			}
+		} finally {
+			Utils.closeQuietly(reader);
+		}
+		if (count == null) {
+			row.append(millis).append(",0");
+		} else {
+			row.append(String.format(Locale.ROOT, "%.6f",
+					cpuTime * 1000 - parseTime * 1000)).append(',')
+					.append(count);
+		}
+		if (solver.justification_ != null) {
+			row.append(',');
+			if (justifications > 0) {
+				row.append(formatMean(
+						(double) justificationSize / justifications));
+			}
+		}
+	}
+
+	/**
+	 * Writes the files to the standard input of the process in a separate
+	 * thread, so that a solver that does not read all of it cannot block this
+	 * one.
+	 */
+	private static void feed(final Process process, final List<File> input) {
+		final Thread feeder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final OutputStream stdin = process.getOutputStream();
+				try {
+					for (final File file : input) {
+						final InputStream in = new FileInputStream(file);
+						try {
+							final byte[] buffer = new byte[65536];
+							int read;
+							while ((read = in.read(buffer)) >= 0) {
+								stdin.write(buffer, 0, read);
+							}
+						} finally {
+							Utils.closeQuietly(in);
+						}
+					}
+				} catch (final IOException e) {
+					// the solver stopped reading
+				} finally {
+					Utils.closeQuietly(stdin);
+				}
+			}
+		}, "feeder");
+		feeder.setDaemon(true);
+		feeder.start();
+	}
+
+	/**
+	 * @return the WCNF file of EL2MUS and EL2MCS in the encoding of the query
+	 */
+	static File getWcnf(final File queryDir) throws IOException {
+		final String literal = new String(
+				Files.readAllBytes(new File(queryDir, "encoding.q").toPath()),
+				StandardCharsets.UTF_8).trim();
+		return new File(queryDir, "encoding." + literal + ".wcnf");
+	}
+
+	/**
+	 * Creates the WCNF file of the query by {@code create-wcnf} of EL2MUS or
+	 * EL2MCS. It is created in a directory of its own and then moved in place,
+	 * so that runs on the same query in other threads or cells never see it
+	 * incomplete. If several runs create it at once, the last one replaces the
+	 * same content.
+	 */
+	private void createWcnf(final File queryDir)
+			throws IOException, InterruptedException {
+		final File wcnf = getWcnf(queryDir);
+		if (options_.scripts == null || options_.tools == null) {
+			throw new IOException("Missing " + wcnf + ", --" + OPT_SCRIPTS
+					+ " and --" + OPT_TOOLS + " are needed to create it!");
+		}
+		// else
+		final File tmpDir = Files
+				.createTempDirectory(queryDir.toPath(), ".wcnf").toFile();
+		try {
+			System.out.flush();
+			final int exitCode = new ProcessBuilder(
+					new File(options_.scripts, "create-wcnf").getPath(),
+					"encoding", queryDir.getPath(),
+					new File(queryDir, "encoding.q").getPath(),
+					tmpDir.getPath(), options_.tools.getPath(), "no-opt")
+							.inheritIO().start().waitFor();
+			if (exitCode != 0) {
+				LOGGER_.warn("create-wcnf exited with {} for {}", exitCode,
+						queryDir);
+			}
+			final File created = new File(tmpDir, wcnf.getName());
+			if (created.length() == 0) {
+				// the solver fails on this query
+				LOGGER_.warn("create-wcnf did not create {}", wcnf);
+				return;
+			}
+			// else
+			Files.move(created.toPath(), wcnf.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			final File[] files = tmpDir.listFiles();
+			if (files != null) {
+				for (final File file : files) {
+					Files.deleteIfExists(file.toPath());
+				}
+			}
+			Files.deleteIfExists(tmpDir.toPath());
+		}
+	}
+
+	private static String find(final Pattern pattern, final String line) {
+		final Matcher matcher = pattern.matcher(line);
+		return matcher.find() ? matcher.group(1) : "0";
+	}
+
+	private static double parseNumber(final String line) {
+		return Double.parseDouble(find(NUMBER_, line));
+	}
+
+	private static String formatMillis(final long nanos) {
+		return String.format(Locale.ROOT, "%.6f", nanos / 1000000.0);
+	}
+
+	/**
+	 * @return the mean as {@code awk} prints it
+	 */
+	private static String formatMean(final double mean) {
+		if (mean == Math.rint(mean)) {
+			return Long.toString((long) mean);
+		}
+		// else
+		return String.format(Locale.ROOT, "%.6g", mean)
+				.replaceFirst("\\.?0+$", "");
+	}
+
+	private int width() {
+		return Integer.toString(totalQueries_).length();
+	}
+
+	private void reportProgress() {
+		final long elapsedNanos = System.nanoTime() - startNanos_;
+		final long elapsed = elapsedNanos / 1000000000L;
+		final long eta = doneQueries_ == 0 ? 0
+				: elapsedNanos / doneQueries_
+						* (totalQueries_ - doneQueries_) / 1000000000L;
+		System.out.print(String.format(Locale.ROOT,
+				"\r%" + width()
+						+ "d/%d %6.2f%%  elapsed: %02d:%02d:%02d  ETA: %02d:%02d:%02d",
+				doneQueries_, totalQueries_,
+				totalQueries_ == 0 ? 0.0 : 100.0 * doneQueries_ / totalQueries_,
+				elapsed / 3600 % 24, elapsed / 60 % 60, elapsed % 60,
+				eta / 3600 % 24, eta / 60 % 60, eta % 60));
+		System.out.flush();
+		nextReportNanos_ = System.nanoTime() + REPORT_INTERVAL_NANOS_;
+	}
+
+}
@@ -0,0 +1,211 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cores and memory that are available to the experiments, taking the limits
+ * of the container into account.
+ */
+public class SystemResources {
+
+	private static final Logger LOGGER_ = LoggerFactory
+			.getLogger(SystemResources.class);
+
+	public static final String ENV_JAVA_MEMORY_OPTIONS = "JAVA_MEMORY_OPTIONS";
+	/**
+	 * The CPUs assigned to an experiment by {@link JobScheduler}.
+	 */
+	public static final String ENV_EXPERIMENT_CPUS = "EXPERIMENT_CPUS";
+	/**
+	 * The memory in bytes assigned to an experiment by {@link JobScheduler}.
+	 */
+	public static final String ENV_EXPERIMENT_MEMORY = "EXPERIMENT_MEMORY";
+
+	private static final long DEFAULT_JVM_MEMORY_ = 6L << 30;
+	/**
+	 * Memory that a JVM needs on top of its maximal heap.
+	 */
+	private static final long JVM_OVERHEAD_ = 512L << 20;
+
+	private static final String[] CGROUP_MEMORY_LIMITS_ = {
+			"/sys/fs/cgroup/memory.max",
+			"/sys/fs/cgroup/memory/memory.limit_in_bytes", };
+
+	private static final Pattern MEMORY_SIZE_ = Pattern
+			.compile("^(?<number>\\d+)(?<unit>[kKmMgGtT]?)[bB]?$");
+	private static final Pattern XMX_ = Pattern
+			.compile("(?:^|\\s)-Xmx(?<size>\\S+)");
+
+	public static int getAvailableProcessors() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return the physical memory of this machine or the memory limit of the
+	 *         container if it is lower
+	 */
+	public static long getTotalMemory() {
+		long result = Long.MAX_VALUE;
+		final java.lang.management.OperatingSystemMXBean os = ManagementFactory
+				.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			result = ((com.sun.management.OperatingSystemMXBean) os)
+					.getTotalPhysicalMemorySize();
+		}
+		for (final String limitFile : CGROUP_MEMORY_LIMITS_) {
+			final long limit = readMemoryLimit(new File(limitFile));
+			if (limit > 0 && limit < result) {
+				result = limit;
+			}
+		}
+		return result;
+	}
+
+	private static long readMemoryLimit(final File file) {
+		if (!file.canRead()) {
+			return -1;
+		}
+		// else
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader(file));
+			final String line = in.readLine();
+			if (line == null || line.trim().equals("max")) {
+				return -1;
+			}
+			// else
+			return Long.parseLong(line.trim());
+		} catch (final IOException | NumberFormatException e) {
+			LOGGER_.debug("Cannot read memory limit from {}", file, e);
+			return -1;
+		} finally {
+			Utils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * @return the CPUs from {@value #ENV_EXPERIMENT_CPUS} or all available
+	 *         CPUs if it is not set
+	 */
+	public static CpuSet getExperimentCpus() {
+		final String cpus = System.getenv(ENV_EXPERIMENT_CPUS);
+		if (cpus != null && !cpus.trim().isEmpty()) {
+			try {
+				return CpuSet.parse(cpus);
+			} catch (final NumberFormatException e) {
+				LOGGER_.warn("Cannot parse {}: {}", ENV_EXPERIMENT_CPUS, cpus);
+			}
+		}
+		return CpuSet.getAvailable();
+	}
+
+	/**
+	 * @return the memory from {@value #ENV_EXPERIMENT_MEMORY} or
+	 *         {@link #getTotalMemory()} if it is not set
+	 */
+	public static long getExperimentMemory() {
+		final String memory = System.getenv(ENV_EXPERIMENT_MEMORY);
+		if (memory != null && !memory.trim().isEmpty()) {
+			try {
+				return parseMemorySize(memory);
+			} catch (final NumberFormatException e) {
+				LOGGER_.warn("Cannot parse {}: {}", ENV_EXPERIMENT_MEMORY,
+						memory);
+			}
+		}
+		return getTotalMemory();
+	}
+
+	/**
+	 * Parses sizes in the format of the JVM memory options, e.g., "6G", "512m"
+	 * or "1024".
+	 *
+	 * @param size
+	 * @return the number of bytes
+	 * @throws NumberFormatException
+	 *             if the size cannot be parsed
+	 */
+	public static long parseMemorySize(final String size) {
+		final Matcher m = MEMORY_SIZE_.matcher(size.trim());
+		if (!m.matches()) {
+			throw new NumberFormatException("Illegal memory size: " + size);
+		}
+		// else
+		final long number = Long.parseLong(m.group("number"));
+		switch (m.group("unit").toLowerCase()) {
+		case "k":
+			return number << 10;
+		case "m":
+			return number << 20;
+		case "g":
+			return number << 30;
+		case "t":
+			return number << 40;
+		default:
+			return number;
+		}
+	}
+
+	/**
+	 * @return memory needed by one JVM started with
+	 *         {@value #ENV_JAVA_MEMORY_OPTIONS}, including its non-heap
+	 *         overhead
+	 */
+	public static long getJvmMemory() {
+		long heap = DEFAULT_JVM_MEMORY_;
+		final String options = System.getenv(ENV_JAVA_MEMORY_OPTIONS);
+		if (options != null) {
+			final Matcher m = XMX_.matcher(options);
+			if (m.find()) {
+				try {
+					heap = parseMemorySize(m.group("size"));
+				} catch (final NumberFormatException e) {
+					LOGGER_.warn("Cannot parse {}: {}", ENV_JAVA_MEMORY_OPTIONS,
+							options);
+				}
+			}
+		}
+		return getJvmMemory(heap);
+	}
+
+	/**
+	 * @param heap
+	 *            the maximal heap of a JVM
+	 * @return memory needed by a JVM with this heap, including its non-heap
+	 *         overhead
+	 */
+	public static long getJvmMemory(final long heap) {
+		return heap + JVM_OVERHEAD_;
+	}
+
+}
@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stores everything that is read from an uploaded file and computes its
+ * checksum on the way, so that the file can be processed while it arrives.
+ */
+public class UploadInputStream extends FilterInputStream {
+
+	public static final String DIGEST_ALGORITHM = "SHA-256";
+
+	/**
+	 * Thrown when an upload exceeds the maximal size.
+	 */
+	public static class TooLargeException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public TooLargeException(final long maxSize) {
+			super("Upload larger than " + maxSize + " bytes");
+		}
+
+	}
+
+	private final OutputStream copy_;
+	private final long maxSize_;
+	private final MessageDigest digest_;
+	private long size_ = 0;
+
+	/**
+	 * @param in
+	 *            the uploaded file
+	 * @param copy
+	 *            where the file is stored, which is not closed
+	 * @param maxSize
+	 *            the maximal number of bytes of the file
+	 */
+	public UploadInputStream(final InputStream in, final OutputStream copy,
+			final long maxSize) {
+		super(in);
+		this.copy_ = copy;
+		this.maxSize_ = maxSize;
+		try {
+			this.digest_ = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (final NoSuchAlgorithmException e) {
+			// every JVM implements SHA-256
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		final int read = in.read(b, off, len);
+		if (read > 0) {
+			size_ += read;
+			if (size_ > maxSize_) {
+				throw new TooLargeException(maxSize_);
+			}
+			// else
+			copy_.write(b, off, read);
+			digest_.update(b, off, read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		// skipped bytes must be stored as well
+		final byte[] skipped = new byte[(int) Math.min(n, 8192)];
+		final int read = read(skipped, 0, skipped.length);
+		return read == -1 ? 0 : read;
+	}
+
+	/**
+	 * Reads the rest of the file, which a reader may not need.
+	 *
+	 * @throws IOException
+	 */
+	public void drain() throws IOException {
+		while (skip(Long.MAX_VALUE) > 0) {
+			// storing
+		}
+	}
+
+	@Override
+	public void close() {
+		// the rest of the body may follow
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	public long getSize() {
+		return size_;
+	}
+
+	/**
+	 * @return the hexadecimal checksum of what was read so far
+	 */
+	public String getDigest() {
+		try {
+			return ETags.toHex(((MessageDigest) digest_.clone()).digest());
+		} catch (final CloneNotSupportedException e) {
+			// the digests of the JVM can be cloned
+			throw new RuntimeException(e);
+		}
+	}
+
+}
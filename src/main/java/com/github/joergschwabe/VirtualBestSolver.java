@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import java.util.BitSet;
+
+/**
+ * The virtual best solver of several experiments, i.e., for each query the
+ * fastest experiment that did not time out. The results of the experiments
+ * are joined by the numbers of their queries, so the experiments may contain
+ * different queries in different order, e.g., when some of them were stopped
+ * by the global timeout. A query that timed out in all experiments that
+ * contain it is timed out also in the virtual best solver. The best times are
+ * kept in primitive arrays indexed by the number of the query.
+ */
+class VirtualBestSolver {
+
+	private static final byte NONE_ = 0;
+	private static final byte TIMED_OUT_ = 1;
+	private static final byte SOLVED_ = 2;
+
+	private final double[] times_;
+	private final byte[] states_;
+	private int queryCount_ = 0;
+
+	/**
+	 * @param maxQueries
+	 *            an upper bound of the numbers of the queries
+	 */
+	VirtualBestSolver(final int maxQueries) {
+		this.times_ = new double[maxQueries];
+		this.states_ = new byte[maxQueries];
+	}
+
+	/**
+	 * Adds the results of one experiment.
+	 *
+	 * @param results
+	 */
+	void add(final ResultTable results) {
+		for (int row = 0; row < results.size(); row++) {
+			final int id = results.getQueryId(row);
+			final byte state = results.isTimedOut(row) ? TIMED_OUT_ : SOLVED_;
+			final double time = results.getTime(row);
+			if (states_[id] == NONE_) {
+				queryCount_++;
+			}
+			if (state > states_[id]
+					|| (state == states_[id] && time < times_[id])) {
+				states_[id] = state;
+				times_[id] = time;
+			}
+		}
+	}
+
+	/**
+	 * @return how many different queries the added results contain
+	 */
+	int getQueryCount() {
+		return queryCount_;
+	}
+
+	/**
+	 * @return the best result of each query in the order of the numbers of the
+	 *         queries
+	 */
+	ResultTable getResults() {
+		final int[] queryIds = new int[queryCount_];
+		final double[] times = new double[queryCount_];
+		final BitSet timedOut = new BitSet(queryCount_);
+		int row = 0;
+		for (int id = 0; id < states_.length; id++) {
+			if (states_[id] == NONE_) {
+				continue;
+			}
+			// else
+			queryIds[row] = id;
+			times[row] = times_[id];
+			timedOut.set(row, states_[id] != SOLVED_);
+			row++;
+		}
+		return ResultTable.of(queryCount_, queryIds, times, timedOut);
+	}
+
+}
@@ -0,0 +1,225 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveExtractorTest {
+
+	private static final int BLOCK_ = 512;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private ExecutorService writers_;
+	private File dir_;
+
+	@Before
+	public void setUp() throws IOException {
+		writers_ = Executors.newFixedThreadPool(2);
+		dir_ = folder.newFolder("extracted");
+	}
+
+	@After
+	public void tearDown() {
+		writers_.shutdownNow();
+	}
+
+	@Test
+	public void extractTar() throws IOException {
+		final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		addDir(tar, "ontologies/");
+		addFile(tar, "ontologies/a.owl", bytes("a"));
+		// written by the thread that reads the archive
+		final byte[] large = new byte[9 << 20];
+		Arrays.fill(large, (byte) 'b');
+		addFile(tar, "ontologies/b.owl", large);
+		final ArchiveExtractor extractor = extract("input.tar.gz",
+				finish(tar));
+		assertEquals(2, extractor.getEntryCount());
+		assertArrayEquals(bytes("a"), read("ontologies/a.owl"));
+		assertArrayEquals(large, read("ontologies/b.owl"));
+	}
+
+	@Test
+	public void gnuLongName() throws IOException {
+		final char[] chars = new char[150];
+		Arrays.fill(chars, 'n');
+		final String name = "ontologies/" + new String(chars) + ".owl";
+		final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		add(tar, header("././@LongLink", 'L', name.length() + 1),
+				bytes(name + "\0"));
+		addFile(tar, name.substring(0, 100), bytes("long"));
+		addFile(tar, "short.owl", bytes("short"));
+		extract("input.tgz", finish(tar));
+		assertArrayEquals(bytes("long"), read(name));
+		assertFalse(new File(dir_, name.substring(0, 100)).exists());
+		// the long name applies only to the next entry
+		assertArrayEquals(bytes("short"), read("short.owl"));
+	}
+
+	@Test
+	public void base256Size() throws IOException {
+		final byte[] content = bytes("sized in base 256");
+		final byte[] header = header("a.owl", '0', 0);
+		Arrays.fill(header, 124, 136, (byte) 0);
+		header[124] = (byte) 0x80;
+		header[135] = (byte) content.length;
+		final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		add(tar, header, content);
+		addFile(tar, "b.owl", bytes("b"));
+		extract("input.tar.gz", finish(tar));
+		assertArrayEquals(content, read("a.owl"));
+		assertArrayEquals(bytes("b"), read("b.owl"));
+	}
+
+	@Test
+	public void tarEntryOutsideOfDirectory() throws IOException {
+		final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		addFile(tar, "../escaped.owl", bytes("x"));
+		try {
+			extract("input.tar.gz", finish(tar));
+			fail("an entry must not be written outside of the directory");
+		} catch (final IOException e) {
+			// expected
+		}
+		assertFalse(new File(dir_.getParentFile(), "escaped.owl").exists());
+	}
+
+	@Test
+	public void zipEntryOutsideOfDirectory() throws IOException {
+		final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		final ZipOutputStream out = new ZipOutputStream(zip);
+		out.putNextEntry(new ZipEntry("ontologies/../../escaped.owl"));
+		out.write(bytes("x"));
+		out.close();
+		try {
+			extract("input.zip", zip.toByteArray());
+			fail("an entry must not be written outside of the directory");
+		} catch (final IOException e) {
+			// expected
+		}
+		assertFalse(new File(dir_.getParentFile(), "escaped.owl").exists());
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedTar() throws IOException {
+		final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		addFile(tar, "a.owl", new byte[2000]);
+		extract("input.tar.gz",
+				gzip(Arrays.copyOf(tar.toByteArray(), 1000)));
+	}
+
+	private ArchiveExtractor extract(final String fileName,
+			final byte[] archive) throws IOException {
+		final ArchiveExtractor extractor = new ArchiveExtractor(dir_,
+				writers_);
+		extractor.extract(fileName, new ByteArrayInputStream(archive));
+		return extractor;
+	}
+
+	private byte[] read(final String name) throws IOException {
+		return Files.readAllBytes(new File(dir_, name).toPath());
+	}
+
+	private static byte[] bytes(final String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void addDir(final ByteArrayOutputStream tar,
+			final String name) throws IOException {
+		add(tar, header(name, '5', 0), new byte[0]);
+	}
+
+	private static void addFile(final ByteArrayOutputStream tar,
+			final String name, final byte[] content) throws IOException {
+		add(tar, header(name, '0', content.length), content);
+	}
+
+	private static void add(final ByteArrayOutputStream tar,
+			final byte[] header, final byte[] content) throws IOException {
+		tar.write(header);
+		tar.write(content);
+		tar.write(new byte[(BLOCK_ - content.length % BLOCK_) % BLOCK_]);
+	}
+
+	/**
+	 * @return a ustar header with an octal size
+	 */
+	private static byte[] header(final String name, final char type,
+			final long size) {
+		final byte[] header = new byte[BLOCK_];
+		put(header, 0, name);
+		put(header, 100, "0000644");
+		put(header, 124, String.format("%011o", size));
+		header[156] = (byte) type;
+		put(header, 257, "ustar");
+		put(header, 263, "00");
+		return header;
+	}
+
+	private static void put(final byte[] header, final int offset,
+			final String value) {
+		final byte[] bytes = bytes(value);
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+
+	/**
+	 * @return the gzipped archive with its end
+	 */
+	private static byte[] finish(final ByteArrayOutputStream tar)
+			throws IOException {
+		tar.write(new byte[2 * BLOCK_]);
+		return gzip(tar.toByteArray());
+	}
+
+	private static byte[] gzip(final byte[] content) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final GZIPOutputStream out = new GZIPOutputStream(result);
+		out.write(content);
+		out.close();
+		return result.toByteArray();
+	}
+
+}
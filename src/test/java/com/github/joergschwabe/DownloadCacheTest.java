@@ -0,0 +1,173 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class DownloadCacheTest {
+
+	private static final String ETAG_ = "\"v1\"";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server_;
+	private String url_;
+	private DownloadCache cache_;
+	private File target_;
+
+	private volatile int status_ = 200;
+	private volatile String content_ = "first";
+	private volatile int downloads_ = 0;
+	private volatile int revalidations_ = 0;
+
+	@Before
+	public void setUp() throws IOException {
+		server_ = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server_.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				respond(exchange);
+			}
+		});
+		server_.start();
+		url_ = "http://localhost:" + server_.getAddress().getPort()
+				+ "/ontology.owl";
+		cache_ = new DownloadCache(folder.newFolder("cache"),
+				new PrintStream(new ByteArrayOutputStream()));
+		target_ = folder.newFolder("target");
+	}
+
+	@After
+	public void tearDown() {
+		server_.stop(0);
+	}
+
+	private void respond(final HttpExchange exchange) throws IOException {
+		try {
+			if (status_ != 200) {
+				exchange.sendResponseHeaders(status_, -1);
+				return;
+			}
+			// else
+			if (ETAG_.equals(
+					exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				revalidations_++;
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			// else
+			downloads_++;
+			final byte[] content = content_.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("ETag", ETAG_);
+			exchange.sendResponseHeaders(200, content.length);
+			final OutputStream out = exchange.getResponseBody();
+			out.write(content);
+			out.close();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static String read(final File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()),
+				StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testDownload() throws IOException {
+		final File file = cache_.get(url_, target_);
+		assertEquals(new File(target_, "ontology.owl"), file);
+		assertEquals("first", read(file));
+		assertEquals(1, downloads_);
+	}
+
+	@Test
+	public void testNotModified() throws IOException {
+		cache_.get(url_, target_);
+		// the server would send other content if it were asked for it
+		content_ = "second";
+		final File file = cache_.get(url_, target_);
+		assertEquals("first", read(file));
+		assertEquals(1, downloads_);
+		assertEquals(1, revalidations_);
+	}
+
+	@Test
+	public void testNotFound() throws IOException {
+		status_ = 404;
+		try {
+			cache_.get(url_, target_);
+			fail("a missing file must not be downloaded");
+		} catch (final IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("404"));
+		}
+	}
+
+	@Test
+	public void testErrorStatusIsNotHiddenByCachedCopy() throws IOException {
+		cache_.get(url_, target_);
+		status_ = 404;
+		try {
+			cache_.get(url_, target_);
+			fail("the error of the server must not be ignored");
+		} catch (final IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("404"));
+		}
+	}
+
+	@Test
+	public void testOffline() throws IOException {
+		cache_.get(url_, target_);
+		server_.stop(0);
+		final File file = cache_.get(url_, target_);
+		assertEquals("first", read(file));
+	}
+
+	@Test(expected = IOException.class)
+	public void testOfflineWithoutCachedCopy() throws IOException {
+		server_.stop(0);
+		cache_.get(url_, target_);
+	}
+
+}
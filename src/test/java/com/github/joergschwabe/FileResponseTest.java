@@ -0,0 +1,198 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+import fi.iki.elonen.NanoHTTPD.Response.Status;
+
+public class FileResponseTest {
+
+	private static final String CONTENT_ = "0123456789";
+	private static final String MIME_TYPE_ = "text/plain";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private File file_;
+
+	@Before
+	public void setUp() throws IOException {
+		file_ = folder.newFile("results.csv");
+		Files.write(file_.toPath(), CONTENT_.getBytes(StandardCharsets.UTF_8));
+		// HTTP dates have seconds
+		assertTrue(file_.setLastModified(1500000000000L));
+	}
+
+	@Test
+	public void wholeFile() throws IOException {
+		final Response response = serve();
+		assertEquals(Status.OK, response.getStatus());
+		assertNull(response.getHeader("Content-Range"));
+		assertEquals("bytes", response.getHeader("Accept-Ranges"));
+		assertEquals(CONTENT_, getContent(response));
+	}
+
+	@Test
+	public void range() throws IOException {
+		final Response response = serve("range", "bytes=2-4");
+		assertEquals(Status.PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 2-4/10", response.getHeader("Content-Range"));
+		assertEquals("234", getContent(response));
+	}
+
+	@Test
+	public void suffixRange() throws IOException {
+		final Response response = serve("range", "bytes=-3");
+		assertEquals(Status.PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 7-9/10", response.getHeader("Content-Range"));
+		assertEquals("789", getContent(response));
+	}
+
+	@Test
+	public void suffixRangeLongerThanFile() throws IOException {
+		final Response response = serve("range", "bytes=-100");
+		assertEquals(Status.PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 0-9/10", response.getHeader("Content-Range"));
+		assertEquals(CONTENT_, getContent(response));
+	}
+
+	@Test
+	public void openEndedRange() throws IOException {
+		final Response response = serve("range", "bytes=6-");
+		assertEquals(Status.PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 6-9/10", response.getHeader("Content-Range"));
+		assertEquals("6789", getContent(response));
+	}
+
+	@Test
+	public void rangeBeyondEnd() throws IOException {
+		final Response response = serve("range", "bytes=8-99");
+		assertEquals(Status.PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 8-9/10", response.getHeader("Content-Range"));
+		assertEquals("89", getContent(response));
+	}
+
+	@Test
+	public void invertedRange() throws IOException {
+		final Response response = serve("range", "bytes=5-3");
+		assertEquals(Status.OK, response.getStatus());
+		assertNull(response.getHeader("Content-Range"));
+		assertEquals(CONTENT_, getContent(response));
+	}
+
+	@Test
+	public void unsatisfiableRange() throws IOException {
+		Response response = serve("range", "bytes=10-");
+		assertEquals(Status.RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */10", response.getHeader("Content-Range"));
+		response = serve("range", "bytes=-0");
+		assertEquals(Status.RANGE_NOT_SATISFIABLE, response.getStatus());
+	}
+
+	@Test
+	public void staleIfRange() throws IOException {
+		final Response response = serve("range", "bytes=2-4", "if-range",
+				"\"outdated\"");
+		assertEquals(Status.OK, response.getStatus());
+		assertEquals(CONTENT_, getContent(response));
+	}
+
+	@Test
+	public void notModifiedByETag() throws IOException {
+		final String etag = serve().getHeader("ETag");
+		final Response response = serve("if-none-match", etag);
+		assertEquals(Status.NOT_MODIFIED, response.getStatus());
+		assertEquals(etag, response.getHeader("ETag"));
+		assertEquals(Status.OK, serve("if-none-match", "\"other\"",
+				"if-modified-since",
+				serve().getHeader("Last-Modified")).getStatus());
+	}
+
+	@Test
+	public void notModifiedSinceDate() throws IOException {
+		final String lastModified = serve().getHeader("Last-Modified");
+		Response response = serve("if-modified-since", lastModified);
+		assertEquals(Status.NOT_MODIFIED, response.getStatus());
+		assertEquals(lastModified, response.getHeader("Last-Modified"));
+		assertTrue(file_.setLastModified(file_.lastModified() + 1000));
+		response = serve("if-modified-since", lastModified);
+		assertEquals(Status.OK, response.getStatus());
+		assertEquals(CONTENT_, getContent(response));
+	}
+
+	/**
+	 * @param headers
+	 *            the lower case names and the values of the request headers
+	 * @return the response to a request with the headers
+	 */
+	private Response serve(final String... headers) {
+		final Map<String, String> map = new HashMap<>();
+		for (int i = 0; i < headers.length; i += 2) {
+			map.put(headers[i], headers[i + 1]);
+		}
+		final IHTTPSession session = (IHTTPSession) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { IHTTPSession.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy,
+							final Method method, final Object[] args) {
+						if (method.getName().equals("getHeaders")) {
+							return map;
+						}
+						// else
+						throw new UnsupportedOperationException(
+								method.getName());
+					}
+				});
+		return FileResponse.serve(session, file_, MIME_TYPE_);
+	}
+
+	private static String getContent(final Response response)
+			throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		((FileResponse) response).sendContent(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogEventStreamTest {
+
+	/**
+	 * More than the lines that the log keeps in memory.
+	 */
+	private static final int LINES_ = 10 * 1024 + 7;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private ExperimentLog log_;
+
+	@Before
+	public void setUp() throws IOException {
+		log_ = new ExperimentLog(folder.newFile("log"));
+		for (int i = 0; i < LINES_; i++) {
+			log_.append("line " + i + "\n");
+		}
+		log_.close();
+	}
+
+	@Test
+	public void readClosedLogFromFile() throws IOException {
+		final InputStream stream = new LogEventStream(log_, 0);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = stream.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		check(new String(out.toByteArray(), StandardCharsets.UTF_8), 0);
+	}
+
+	@Test
+	public void pollClosedLogFromFile() throws IOException {
+		final LogEventStream stream = new LogEventStream(log_, 5);
+		final StringBuilder events = new StringBuilder();
+		byte[] content;
+		while ((content = stream.poll()) != null) {
+			events.append(new String(content, StandardCharsets.UTF_8));
+		}
+		check(events.toString(), 5);
+	}
+
+	@Test
+	public void pollReleasedLog() throws IOException {
+		log_.release();
+		final LogEventStream stream = new LogEventStream(log_, 0);
+		final StringBuilder events = new StringBuilder();
+		byte[] content;
+		while ((content = stream.poll()) != null) {
+			events.append(new String(content, StandardCharsets.UTF_8));
+		}
+		check(events.toString(), 0);
+	}
+
+	@Test
+	public void tailOfReleasedLog() throws IOException {
+		final String tail = log_.getTail(3000);
+		log_.release();
+		assertEquals(tail, log_.getTail(3000));
+		assertTrue(tail.startsWith("line " + (LINES_ - 3000) + "\n"));
+		assertTrue(tail.endsWith("line " + (LINES_ - 1) + "\n"));
+	}
+
+	private void check(final String events, final int firstLine) {
+		int lastId = -1;
+		int lines = 0;
+		for (final String line : events.split("\n")) {
+			if (line.startsWith("id: ")) {
+				lastId = Integer.parseInt(line.substring(4));
+			} else if (line.startsWith("data: line ")) {
+				assertEquals("data: line " + (firstLine + lines), line);
+				lines++;
+			}
+		}
+		assertEquals(log_.getLineCount(), lastId);
+		assertEquals(LINES_ - firstLine, lines);
+		assertTrue(events.endsWith(
+				"event: " + LogEventStream.EVENT_DONE + "\ndata: \n\n"));
+	}
+
+}
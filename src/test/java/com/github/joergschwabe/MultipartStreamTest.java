@@ -0,0 +1,173 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MultipartStreamTest {
+
+	private static final String BOUNDARY_ = "----boundary42";
+	private static final String CONTENT_TYPE_ = "multipart/form-data; boundary="
+			+ BOUNDARY_;
+
+	@Test
+	public void boundarySplitAcrossReads() throws IOException {
+		// longer than the buffer and with prefixes of the delimiter
+		final String pattern = "\r\n--\r\n------boundary4x";
+		final byte[] file = new byte[200000];
+		for (int i = 0; i < file.length; i++) {
+			file[i] = (byte) pattern.charAt(i % pattern.length());
+		}
+		final byte[] body = concat(
+				part("form-data; name=\"name\"", "value".getBytes(
+						StandardCharsets.UTF_8)),
+				part("form-data; name=\"file\"; filename=\"a.owl\"", file),
+				end());
+		for (final int chunk : new int[] { 1, 7, BOUNDARY_.length() + 3,
+				65536 }) {
+			final MultipartStream parts = new MultipartStream(
+					new ChunkedInputStream(body, chunk), CONTENT_TYPE_);
+			Map<String, String> headers = parts.nextPart();
+			assertEquals("name", MultipartStream.getName(headers));
+			assertEquals("value", parts.getValue(100));
+			headers = parts.nextPart();
+			assertEquals("file", MultipartStream.getName(headers));
+			assertEquals("a.owl", MultipartStream.getFileName(headers));
+			assertArrayEquals("chunks of " + chunk, file,
+					readAll(parts.getContent()));
+			assertNull(parts.nextPart());
+		}
+	}
+
+	@Test
+	public void skippedParts() throws IOException {
+		final byte[] body = concat(
+				part("form-data; name=\"a\"", new byte[100000]),
+				part("form-data; name=\"b\"",
+						"b".getBytes(StandardCharsets.UTF_8)),
+				end());
+		final MultipartStream parts = new MultipartStream(
+				new ChunkedInputStream(body, 1000), CONTENT_TYPE_);
+		assertEquals("a", MultipartStream.getName(parts.nextPart()));
+		assertEquals("b", MultipartStream.getName(parts.nextPart()));
+		assertEquals("b", parts.getValue(100));
+		assertNull(parts.nextPart());
+	}
+
+	@Test(expected = IOException.class)
+	public void headerTooLarge() throws IOException {
+		final char[] name = new char[10000];
+		Arrays.fill(name, 'n');
+		final byte[] body = concat(
+				part("form-data; name=\"" + new String(name) + "\"",
+						new byte[1]),
+				end());
+		new MultipartStream(new ByteArrayInputStream(body), CONTENT_TYPE_)
+				.nextPart();
+	}
+
+	@Test(expected = IOException.class)
+	public void headersTooLarge() throws IOException {
+		final StringBuilder disposition = new StringBuilder(
+				"form-data; name=\"a\"");
+		for (int i = 0; i < 1000; i++) {
+			disposition.append("\r\nX-Header-").append(i).append(": value");
+		}
+		final byte[] body = concat(part(disposition.toString(), new byte[1]),
+				end());
+		new MultipartStream(new ByteArrayInputStream(body), CONTENT_TYPE_)
+				.nextPart();
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedBody() throws IOException {
+		final byte[] body = part("form-data; name=\"a\"", new byte[10]);
+		final MultipartStream parts = new MultipartStream(
+				new ByteArrayInputStream(body), CONTENT_TYPE_);
+		parts.nextPart();
+		readAll(parts.getContent());
+	}
+
+	private static byte[] part(final String disposition,
+			final byte[] content) {
+		return concat(("--" + BOUNDARY_ + "\r\nContent-Disposition: "
+				+ disposition + "\r\n\r\n").getBytes(StandardCharsets.UTF_8),
+				content, "\r\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static byte[] end() {
+		return ("--" + BOUNDARY_ + "--\r\n")
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] concat(final byte[]... arrays) {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		for (final byte[] array : arrays) {
+			result.write(array, 0, array.length);
+		}
+		return result.toByteArray();
+	}
+
+	private static byte[] readAll(final InputStream in) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			result.write(buffer, 0, read);
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 * Returns at most a fixed number of bytes from each read, as a network
+	 * connection may.
+	 */
+	private static class ChunkedInputStream extends ByteArrayInputStream {
+
+		private final int chunk_;
+
+		ChunkedInputStream(final byte[] content, final int chunk) {
+			super(content);
+			this.chunk_ = chunk;
+		}
+
+		@Override
+		public synchronized int read(final byte[] b, final int off,
+				final int len) {
+			return super.read(b, off, Math.min(len, chunk_));
+		}
+
+	}
+
+}
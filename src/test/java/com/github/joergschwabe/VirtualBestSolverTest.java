@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * Docker Image for Axiom Pinpointing Experiments
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2017 - 2018 Live Ontologies Project
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.joergschwabe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class VirtualBestSolverTest {
+
+	private static final double DELTA_ = 1e-9;
+
+	@Test
+	public void joinsQueriesByNumber() {
+		final VirtualBestSolver vbs = new VirtualBestSolver(10);
+		// queries 0 to 4 in order, 4 timed out
+		vbs.add(table(new int[] { 0, 1, 2, 3, 4 },
+				new double[] { 5, 10, 3, 8, 60 }, 4));
+		// fewer queries in another order, 3 timed out faster than it was
+		// solved before
+		vbs.add(table(new int[] { 3, 1, 0 }, new double[] { 1, 4, 7 }, 0));
+		// queries that the others do not have, 7 timed out only here
+		vbs.add(table(new int[] { 7, 4, 6, 2 },
+				new double[] { 60, 50, 2, 6 }, 0));
+
+		assertEquals(7, vbs.getQueryCount());
+		final ResultTable results = vbs.getResults();
+		assertEquals(7, results.size());
+		final int[] ids = { 0, 1, 2, 3, 4, 6, 7 };
+		final double[] times = { 5, 4, 3, 8, 50, 2, 60 };
+		for (int row = 0; row < ids.length; row++) {
+			assertEquals(ids[row], results.getQueryId(row));
+			assertEquals("query " + ids[row], times[row],
+					results.getTime(row), DELTA_);
+		}
+		for (int row = 0; row < ids.length - 1; row++) {
+			assertFalse("query " + ids[row], results.isTimedOut(row));
+		}
+		assertTrue(results.isTimedOut(ids.length - 1));
+	}
+
+	@Test
+	public void fastestTimeOut() {
+		final VirtualBestSolver vbs = new VirtualBestSolver(2);
+		vbs.add(table(new int[] { 1 }, new double[] { 70 }, 0));
+		vbs.add(table(new int[] { 1 }, new double[] { 60 }, 0));
+		final ResultTable results = vbs.getResults();
+		assertEquals(1, results.size());
+		assertEquals(1, results.getQueryId(0));
+		assertEquals(60, results.getTime(0), DELTA_);
+		assertTrue(results.isTimedOut(0));
+	}
+
+	@Test
+	public void noResults() {
+		final VirtualBestSolver vbs = new VirtualBestSolver(5);
+		assertEquals(0, vbs.getQueryCount());
+		assertEquals(0, vbs.getResults().size());
+	}
+
+	/**
+	 * @return the results in which the queries of the given rows timed out
+	 */
+	private static ResultTable table(final int[] queryIds,
+			final double[] times, final int... timedOutRows) {
+		final BitSet timedOut = new BitSet();
+		for (final int row : timedOutRows) {
+			timedOut.set(row);
+		}
+		return ResultTable.of(queryIds.length, queryIds, times, timedOut);
+	}
+
+}